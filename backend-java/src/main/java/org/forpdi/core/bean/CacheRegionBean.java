@@ -0,0 +1,58 @@
+package org.forpdi.core.bean;
+
+import java.io.Serializable;
+
+/**
+ * Acertos e falhas de uma região do cache de segundo nível.
+ */
+public class CacheRegionBean implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private String region;
+	private long hits;
+	private long misses;
+	private long puts;
+	private long elements;
+
+	public CacheRegionBean() {
+	}
+
+	public CacheRegionBean(String region, long hits, long misses, long puts, long elements) {
+		this.region = region;
+		this.hits = hits;
+		this.misses = misses;
+		this.puts = puts;
+		this.elements = elements;
+	}
+
+	public String getRegion() {
+		return region;
+	}
+	public void setRegion(String region) {
+		this.region = region;
+	}
+	public long getHits() {
+		return hits;
+	}
+	public void setHits(long hits) {
+		this.hits = hits;
+	}
+	public long getMisses() {
+		return misses;
+	}
+	public void setMisses(long misses) {
+		this.misses = misses;
+	}
+	public long getPuts() {
+		return puts;
+	}
+	public void setPuts(long puts) {
+		this.puts = puts;
+	}
+	public long getElements() {
+		return elements;
+	}
+	public void setElements(long elements) {
+		this.elements = elements;
+	}
+}
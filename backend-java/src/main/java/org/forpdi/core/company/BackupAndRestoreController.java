@@ -1,14 +1,12 @@
 package org.forpdi.core.company;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.time.LocalDateTime;
 
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.constraints.NotNull;
 
-import org.apache.commons.io.FileUtils;
 import org.forpdi.core.event.Current;
 import org.forpdi.core.properties.SystemConfigs;
 import org.forpdi.core.user.authz.AccessLevels;
@@ -16,6 +14,7 @@ import org.forpdi.core.user.authz.Permissioned;
 import org.forpdi.core.user.authz.permission.ExportDataPermission;
 import org.forpdi.core.user.authz.permission.RestoreDataPermission;
 import org.forpdi.system.Archive;
+import org.forpdi.system.FileStreamer;
 
 import br.com.caelum.vraptor.Controller;
 import br.com.caelum.vraptor.Get;
@@ -188,7 +187,7 @@ public class BackupAndRestoreController extends AbstractController  {
 			archive = new Archive();
 			archive.setName(file.getFileName());
 			File targetFile = new File(SystemConfigs.getConfig("store.files")+archive.getName());
-			FileUtils.copyInputStreamToFile(file.getFile(), targetFile);
+			FileStreamer.store(file.getFile(), targetFile);
 
 			this.dbbackup.persist(archive);
 			this.success(archive);
@@ -200,13 +199,13 @@ public class BackupAndRestoreController extends AbstractController  {
 	}
 
 	/**
-	 * Leitura de arquivo local.
+	 * Leitura de arquivo local. O arquivo é enviado sem ser carregado na
+	 * memória, com suporte a requisições condicionais e de intervalo.
 	 * 
 	 * @param Id do arquivo.
 	 * 
 	 */
 	@Get("api/file/{id}")
-	@NoCache
 	public void readFile(@NotNull Long id) {
 		
 		Archive file =this.dbbackup.exists(id, Archive.class);
@@ -215,23 +214,15 @@ public class BackupAndRestoreController extends AbstractController  {
 			this.fail("(No such file or directory)");
 			return;
 		}
-		LOGGER.error("arquivo: "+SystemConfigs.getConfig("store.files")+file.getName());
 		
 		try{
 			File initialFile = new File(SystemConfigs.getConfig("store.files")+file.getName());
 			
-			byte[] bytes = new byte[(int)initialFile.length()];
-			
-			if(initialFile.exists()){
-				FileInputStream fis = new FileInputStream(initialFile);
-				fis.read(bytes);
-				fis.close();
-				response.getOutputStream().write(bytes);
-				response.getOutputStream().close();
+			if(initialFile.isFile()){
+				FileStreamer.serve(this.request, this.response, initialFile, null, null);
 				this.result.nothing();
 			}else {
 				this.fail("(No such file or directory):"+SystemConfigs.getConfig("store.files")+file.getName() );
-				this.fail("arquivo: "+SystemConfigs.getConfig("store.files")+file.getName());
 			}
 		} catch (Throwable ex) {
 			LOGGER.error("Error while proxying the file upload.", ex);
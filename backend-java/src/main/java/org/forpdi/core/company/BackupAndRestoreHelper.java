@@ -1,19 +1,29 @@
  	package org.forpdi.core.company;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -26,6 +36,7 @@ import org.forpdi.core.event.Current;
 import org.forpdi.core.exception.RestoreException;
 import org.forpdi.core.user.User;
 import org.forpdi.core.user.UserBS;
+import org.forpdi.core.utils.LongLongMap;
 import org.forpdi.dashboard.manager.LevelInstanceHistory;
 import org.forpdi.planning.attribute.AggregateIndicator;
 import org.forpdi.planning.attribute.Attribute;
@@ -53,6 +64,8 @@ import org.forpdi.planning.plan.Plan;
 import org.forpdi.planning.plan.PlanBS;
 import org.forpdi.planning.plan.PlanDetailed;
 import org.forpdi.planning.plan.PlanMacro;
+import org.forpdi.planning.structure.LevelInstancePath;
+import org.forpdi.planning.structure.LevelInstanceResponsibles;
 import org.forpdi.planning.structure.Structure;
 import org.forpdi.planning.structure.StructureBS;
 import org.forpdi.planning.structure.StructureLevel;
@@ -60,13 +73,20 @@ import org.forpdi.planning.structure.StructureLevelInstance;
 import org.forpdi.planning.structure.StructureLevelInstanceDetailed;
 import org.forpdi.system.Archive;
 import org.hibernate.Criteria;
+import org.hibernate.Session;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.sql.JoinType;
 import org.json.simple.parser.ParseException;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 import br.com.caelum.vraptor.boilerplate.HibernateBusiness;
+import br.com.caelum.vraptor.boilerplate.SimpleEntity;
 import br.com.caelum.vraptor.boilerplate.util.GeneralUtils;
 import br.com.caelum.vraptor.observer.upload.UploadedFile;
 import br.com.caelum.vraptor.serialization.gson.GsonSerializerBuilder;
@@ -74,9 +94,27 @@ import br.com.caelum.vraptor.serialization.gson.GsonSerializerBuilder;
 @RequestScoped
 public class BackupAndRestoreHelper extends HibernateBusiness {
 
+	/** Quantidade de registros lidos por página na exportação. */
+	private static final int EXPORT_PAGE_SIZE = 500;
+
+	/** Quantidade de registros gravados por lote na importação. */
+	private static final int RESTORE_BATCH_SIZE = 500;
+
+	private static final String UPDATE_LEVEL_INSTANCE_PARENT = "UPDATE " + StructureLevelInstance.TABLE
+			+ " SET parent = ? WHERE id = ?";
+	private static final String INSERT_LEVEL_INSTANCE_DETAILED = "INSERT INTO " + StructureLevelInstanceDetailed.TABLE
+			+ " (deleted, month, year, levelInstance_id, levelValue, levelMinimum, levelMaximum)"
+			+ " VALUES (?, ?, ?, ?, ?, ?, ?)";
+	private static final String INSERT_LEVEL_INSTANCE_HISTORY = "INSERT INTO " + LevelInstanceHistory.TABLE
+			+ " (deleted, creation, value, levelInstance_id)"
+			+ " VALUES (?, ?, ?, ?)";
+	private static final String INSERT_ATTRIBUTE_INSTANCE = "INSERT INTO " + AttributeInstance.TABLE
+			+ " (deleted, value, valueAsNumber, valueAsDate, creation, attribute_id, levelInstance_id)"
+			+ " VALUES (?, ?, ?, ?, ?, ?, ?)";
+
 	private Gson gson;
-	private static int quantity;
-	private static int quantityTotal;
+	private static volatile int quantity;
+	private static volatile int quantityTotal;
 
 	@Inject private PlanBS planBS;
 	@Inject private DocumentBS docBS;
@@ -99,6 +137,11 @@ public class BackupAndRestoreHelper extends HibernateBusiness {
 
 	/**
 	 * consulta o banco e salva as informações em um arquivo
+	 * 
+	 * As entidades de cadastro (planos, estruturas, documentos, etc.) são
+	 * carregadas de uma vez, enquanto as entidades ligadas às instâncias de
+	 * nível são lidas em páginas e escritas diretamente no zip, de forma que
+	 * o consumo de memória não depende do tamanho da instituição.
 	 *
 	 * @throws IOException
 	 *
@@ -106,55 +149,55 @@ public class BackupAndRestoreHelper extends HibernateBusiness {
 	public void export(Company company, OutputStream output) throws IOException {
 		
 		final ZipOutputStream zos = new ZipOutputStream(output);
-		zipAdd(zos, Company.class.getSimpleName(), this.gson.toJson(company));
-		zos.flush();
+		zipAdd(zos, Company.class, company);
 		
 		final HashMap<Long, Structure> structuresMap = new HashMap<>();
 		
 		//Exportando os elementos orçamentários
 		final List<BudgetElement> budgetElements = this.budgetBS.listAllBudgetElementsByCompany(company);
 		if(!GeneralUtils.isEmpty(budgetElements)) {
+			this.clearSession();
 			for(final BudgetElement budgetElement : budgetElements) {
 				budgetElement.setCompany(null);
 			}
-			zipAdd(zos, BudgetElement.class.getSimpleName(), this.gson.toJson(budgetElements));
-			zos.flush();
+			zipAdd(zos, BudgetElement.class, budgetElements);
 		}
 		
 		// Exportando labels customizadas da company
 		final List<CompanyMessage> companyMessage = companyBS.retrieveMessages(company);
 		if(!GeneralUtils.isEmpty(companyMessage)) {
+			this.clearSession();
 			companyMessage.forEach(it -> {
 				it.setCompany(null);
 			});
-			zipAdd(zos, CompanyMessage.class.getSimpleName(), this.gson.toJson(companyMessage));
-			zos.flush();
+			zipAdd(zos, CompanyMessage.class, companyMessage);
 		}
 
 		//Exportando os Planos Macro
 		final List<PlanMacro> plansMacro = this.planBS.listAllMacros(company);
 		if(!GeneralUtils.isEmpty(plansMacro)) {
+			this.clearSession();
 			for(final PlanMacro planMacro : plansMacro) {
 				planMacro.setCompany(null);
 			}
-			zipAdd(zos, PlanMacro.class.getSimpleName(), this.gson.toJson(plansMacro));
-			zos.flush();
+			zipAdd(zos, PlanMacro.class, plansMacro);
 		}
 		
 		//Exportando os documentos do PDI
 		final List<Document> documents = this.docBS.listAllByPlansMacro(plansMacro);
 		if(!GeneralUtils.isEmpty(documents)) {
+			this.clearSession();
 			for (final Document document : documents) {
 				document.setExportPlanMacroId(document.getPlan().getId());
 				document.setPlan(null);
 			}
-			zipAdd(zos, Document.class.getSimpleName(), this.gson.toJson(documents));
-			zos.flush();
+			zipAdd(zos, Document.class, documents);
 		}
 
 		//Exportando as seções dos documentos
 		final List<DocumentSection> documentSections = this.docBS.listAllSectionsByDocuments(documents);
 		if(!GeneralUtils.isEmpty(documentSections)) {
+			this.clearSession();
 			for (final DocumentSection documentSection : documentSections) {
 				documentSection.setExportDocumentId(documentSection.getDocument().getId());
 				documentSection.setDocument(null);
@@ -163,26 +206,28 @@ public class BackupAndRestoreHelper extends HibernateBusiness {
 					documentSection.setParent(null);
 				}
 			}
-			zipAdd(zos, DocumentSection.class.getSimpleName(), this.gson.toJson(documentSections));
-			zos.flush();
+			zipAdd(zos, DocumentSection.class, documentSections);
 		}
 
 		//Exportando os atributos das seções dos documentos
 		final List<DocumentAttribute> documentAttributes = this.docBS.listAllAttributesBySections(documentSections);
 		if(!GeneralUtils.isEmpty(documentAttributes)) {
+			this.clearSession();
 			for (final DocumentAttribute attr : documentAttributes) {
 				attr.setExportDocumentSectionId(attr.getSection().getId());
 				attr.setSection(null);
 			}
-			zipAdd(zos, DocumentAttribute.class.getSimpleName(), this.gson.toJson(documentAttributes));
-			zos.flush();
+			zipAdd(zos, DocumentAttribute.class, documentAttributes);
 		}
 		
 		//Exportando os planos de metas
 		final List<Plan> plans = this.planBS.listAllPlansForPlansMacro(plansMacro);
+		final List<Long> planIds = new ArrayList<>();
 		if(!GeneralUtils.isEmpty(plans)) {
+			this.clearSession();
 			for (final Plan plan : plans) {
 				final Structure structure = plan.getStructure();
+				planIds.add(plan.getId());
 				plan.setExportPlanMacroId(plan.getParent().getId());
 				plan.setExportStructureId(structure.getId());
 				plan.setParent(null);
@@ -191,19 +236,17 @@ public class BackupAndRestoreHelper extends HibernateBusiness {
 					structuresMap.put(structure.getId(), structure);
 				}
 			}
-			zipAdd(zos, Plan.class.getSimpleName(), this.gson.toJson(plans));
-			zos.flush();
+			zipAdd(zos, Plan.class, plans);
 		}
 		
 		//Exporta plano detalhado
-		final List<PlanDetailed> plansDetailed = this.planBS.listAllPlansDetailed(plans);
-		if(!GeneralUtils.isEmpty(plansDetailed)) {
-			for (final PlanDetailed pd : plansDetailed) {
-				pd.setExportPlanId(pd.getPlan().getId());
-				pd.setPlan(null);
-			}
-			zipAdd(zos, PlanDetailed.class.getSimpleName(), this.gson.toJson(plansDetailed));
-			zos.flush();
+		if (!planIds.isEmpty()) {
+			zipAddPaged(zos, PlanDetailed.class, () -> this.dao.newCriteria(PlanDetailed.class)
+				.add(Restrictions.in("plan.id", planIds)),
+				(pd) -> {
+					pd.setExportPlanId(pd.getPlan().getId());
+					pd.setPlan(null);
+				});
 		}
 		
 		// Exportando estruturas
@@ -212,258 +255,279 @@ public class BackupAndRestoreHelper extends HibernateBusiness {
 			for (final Structure structure : structures) {
 				structure.setCompany(null);
 			}
-			zipAdd(zos, Structure.class.getSimpleName(), this.gson.toJson(structures));
-			zos.flush();
+			zipAdd(zos, Structure.class, structures);
 		}
 		
 		// Exportando níveis de estruturas
 		final List<StructureLevel> structureLevels = this.structureBS.listAllStructuresLevels(structures);
 		if (!GeneralUtils.isEmpty(structureLevels)) {
+			this.clearSession();
 			for (final StructureLevel structureLevel : structureLevels) {
 				structureLevel.setExportStructureId(structureLevel.getStructure().getId());
 				structureLevel.setStructure(null);
 			}
-			zipAdd(zos, StructureLevel.class.getSimpleName(), this.gson.toJson(structureLevels));
-			zos.flush();
+			zipAdd(zos, StructureLevel.class, structureLevels);
 		}
 
 		// Exportando atributos
 		final List<Attribute> attributes = this.structureBS.listAllAttributes(structureLevels);
 		if (!GeneralUtils.isEmpty(attributes)) {
+			this.clearSession();
 			for (final Attribute attribute : attributes) {
 				attribute.setExportStructureLevelId(attribute.getLevel().getId());
 				attribute.setLevel(null);
 			}
-			zipAdd(zos, Attribute.class.getSimpleName(), this.gson.toJson(attributes));
-			zos.flush();
-		}
-		
-		//Exportando as estruturas level instance necessárias.
-		final List<StructureLevelInstance> structureLevelInstances = this.structureBS.listAllLevelInstanceByPlans(plans);
-		if(!GeneralUtils.isEmpty(structureLevelInstances)) {
-			for (final StructureLevelInstance sli : structureLevelInstances) {
-				sli.setExportLevelId(sli.getLevel().getId());
-				sli.setExportPlanId(sli.getPlan().getId());
-				sli.setLevel(null);
-				sli.setPlan(null);
-				
-				final AttributeInstance responsible = this.structureBS.listResponsibleAttributeByLevel(sli);
-				if (responsible != null) {
-					User user = this.userBS.existsByUser(Long.parseLong(responsible.getValue()));
-					sli.setExportResponsibleMail(user.getEmail());
-				}
-			}
-			zipAdd(zos, StructureLevelInstance.class.getSimpleName(), this.gson.toJson(structureLevelInstances));
-			zos.flush();
-		}
-
-		//Exportando os detalhes das estruturas level instance.
-		final List<StructureLevelInstanceDetailed> structureLevelInstancesDetailed =
-			this.structureBS.listAllLevelInstancesDetailedByLevelInstances(structureLevelInstances);
-		if(!GeneralUtils.isEmpty(structureLevelInstancesDetailed)) {
-			for (final StructureLevelInstanceDetailed slid : structureLevelInstancesDetailed) {
-				slid.setExportStructureLevelInstanceId(slid.getLevelInstance().getId());
-				slid.setLevelInstance(null);
-			}
-			zipAdd(zos, StructureLevelInstanceDetailed.class.getSimpleName(), this.gson.toJson(structureLevelInstancesDetailed));
-			zos.flush();
-		}
-
-		//Exportando o histórico das estruturas level instance.
-		final List<LevelInstanceHistory> levelInstancesHistory =
-			this.structureBS.listAllLevelInstancesHistoryByLevelInstances(structureLevelInstances);
-		if(!GeneralUtils.isEmpty(levelInstancesHistory)) {
-			for (final LevelInstanceHistory lih : levelInstancesHistory) {
-				lih.setExportStructureLevelInstanceId(lih.getLevelInstance().getId());
-				lih.setLevelInstance(null);
-			}
-			zipAdd(zos, LevelInstanceHistory.class.getSimpleName(), this.gson.toJson(levelInstancesHistory));
-			zos.flush();
-		}
-
-		//Exportando os planos de ação
-		final List<ActionPlan> actionPlans = this.structureBS.listAllActionPlansByLevelInstances(structureLevelInstances);
-		if(!GeneralUtils.isEmpty(actionPlans)) {
-			for (final ActionPlan actionPlan : actionPlans) {
-				actionPlan.setExportStructureLevelInstanceId(actionPlan.getLevelInstance().getId());
-				actionPlan.setLevelInstance(null);
-			}
-			zipAdd(zos, ActionPlan.class.getSimpleName(), this.gson.toJson(actionPlans));
-			zos.flush();
-		}
-
-		//Exportando os indicadores agregados
-		final List<AggregateIndicator> aggregateIndicators = this.structureBS.listAllAggregateIndicatorsByLevelInstances(structureLevelInstances);
-		if(!GeneralUtils.isEmpty(aggregateIndicators)) {
-			for (final AggregateIndicator aggregateIndicator : aggregateIndicators) {
-				aggregateIndicator.setExportAggregateId(aggregateIndicator.getAggregate().getId());
-				aggregateIndicator.setExportIndicatorId(aggregateIndicator.getIndicator().getId());
-				aggregateIndicator.setAggregate(null);
-				aggregateIndicator.setIndicator(null);
-			}
-			zipAdd(zos, AggregateIndicator.class.getSimpleName(), this.gson.toJson(aggregateIndicators));
-			zos.flush();
-		}
-
-		//Exportando os anexos
-		final List<Attachment> attachments = this.structureBS.listAllAttachmentsByLevelInstances(structureLevelInstances);
-		if(!GeneralUtils.isEmpty(attachments)) {
-			for (final Attachment attachment : attachments) {
-				attachment.setExportStructureLevelInstanceId(attachment.getLevelInstance().getId());
-				attachment.setLevelInstance(null);
-				if (attachment.getAuthor() != null) {
-					attachment.setExportAuthorMail(attachment.getAuthor().getEmail());
-				} else {
-					attachment.setExportAuthorMail("");
-				}
-				attachment.setAuthor(null);
-			}
-			zipAdd(zos, Attachment.class.getSimpleName(), this.gson.toJson(attachments));
-			zos.flush();
-		}
-
-		//Exportando os orçamentos
-		final List<Budget> budgets = this.budgetBS.listAllBudgetsByElementsAndLevelInstances(budgetElements, structureLevelInstances);
-		if(!GeneralUtils.isEmpty(budgets)) {
-			for(final Budget budget : budgets) {
-				budget.setExportBudgetElementId(budget.getBudgetElement().getId());
-				budget.setExportStructureLevelInstanceId(budget.getLevelInstance().getId());
-				budget.setBudgetElement(null);
-				budget.setLevelInstance(null);
-			}
-			zipAdd(zos, Budget.class.getSimpleName(), this.gson.toJson(budgets));
-			zos.flush();
+			zipAdd(zos, Attribute.class, attributes);
 		}
 		
-		//Exportando as instância de atributos
-		final List<AttributeInstance> attributeInstances = this.structureBS.listAllAttributeInstanceByLevelInstances(structureLevelInstances);
-		if(!GeneralUtils.isEmpty(attributeInstances)) {
-			for (final AttributeInstance attrInstance : attributeInstances) {
-				attrInstance.setExportAttributeId(attrInstance.getAttribute().getId());
-				attrInstance.setExportStructureLevelInstanceId(attrInstance.getLevelInstance().getId());
-				attrInstance.setAttribute(null);
-				attrInstance.setLevelInstance(null);
-			}
-			zipAdd(zos, AttributeInstance.class.getSimpleName(), this.gson.toJson(attributeInstances));
-			zos.flush();
+		if (!planIds.isEmpty()) {
+			//Exportando as estruturas level instance necessárias.
+			final Map<Long, String> responsibleMails = this.listResponsibleMailsByPlans(planIds);
+			zipAddPaged(zos, StructureLevelInstance.class, () -> this.dao.newCriteria(StructureLevelInstance.class)
+				.add(Restrictions.in("plan.id", planIds)),
+				(sli) -> {
+					sli.setExportLevelId(sli.getLevel().getId());
+					sli.setExportPlanId(sli.getPlan().getId());
+					sli.setLevel(null);
+					sli.setPlan(null);
+					sli.setExportResponsibleMail(responsibleMails.get(sli.getId()));
+				});
+	
+			//Exportando os detalhes das estruturas level instance.
+			zipAddPaged(zos, StructureLevelInstanceDetailed.class, () -> this.dao.newCriteria(StructureLevelInstanceDetailed.class)
+				.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
+				.add(Restrictions.in("levelInstance.plan.id", planIds)),
+				(slid) -> {
+					slid.setExportStructureLevelInstanceId(slid.getLevelInstance().getId());
+					slid.setLevelInstance(null);
+				});
+	
+			//Exportando o histórico das estruturas level instance.
+			zipAddPaged(zos, LevelInstanceHistory.class, () -> this.dao.newCriteria(LevelInstanceHistory.class)
+				.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
+				.add(Restrictions.in("levelInstance.plan.id", planIds)),
+				(lih) -> {
+					lih.setExportStructureLevelInstanceId(lih.getLevelInstance().getId());
+					lih.setLevelInstance(null);
+				});
+	
+			//Exportando os planos de ação
+			zipAddPaged(zos, ActionPlan.class, () -> this.dao.newCriteria(ActionPlan.class)
+				.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
+				.add(Restrictions.in("levelInstance.plan.id", planIds)),
+				(actionPlan) -> {
+					actionPlan.setExportStructureLevelInstanceId(actionPlan.getLevelInstance().getId());
+					actionPlan.setLevelInstance(null);
+				});
+	
+			//Exportando os indicadores agregados
+			zipAddPaged(zos, AggregateIndicator.class, () -> this.dao.newCriteria(AggregateIndicator.class)
+				.createAlias("aggregate", "aggregate", JoinType.INNER_JOIN)
+				.createAlias("indicator", "indicator", JoinType.INNER_JOIN)
+				.add(Restrictions.in("aggregate.plan.id", planIds))
+				.add(Restrictions.in("indicator.plan.id", planIds)),
+				(aggregateIndicator) -> {
+					aggregateIndicator.setExportAggregateId(aggregateIndicator.getAggregate().getId());
+					aggregateIndicator.setExportIndicatorId(aggregateIndicator.getIndicator().getId());
+					aggregateIndicator.setAggregate(null);
+					aggregateIndicator.setIndicator(null);
+				});
+	
+			//Exportando os anexos
+			zipAddPaged(zos, Attachment.class, () -> this.dao.newCriteria(Attachment.class)
+				.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
+				.add(Restrictions.in("levelInstance.plan.id", planIds)),
+				(attachment) -> {
+					attachment.setExportStructureLevelInstanceId(attachment.getLevelInstance().getId());
+					attachment.setLevelInstance(null);
+					if (attachment.getAuthor() != null) {
+						attachment.setExportAuthorMail(attachment.getAuthor().getEmail());
+					} else {
+						attachment.setExportAuthorMail("");
+					}
+					attachment.setAuthor(null);
+				});
+	
+			//Exportando os orçamentos
+			zipAddPaged(zos, Budget.class, () -> this.dao.newCriteria(Budget.class)
+				.createAlias("budgetElement", "budgetElement", JoinType.INNER_JOIN)
+				.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
+				.add(Restrictions.eq("budgetElement.company", company))
+				.add(Restrictions.in("levelInstance.plan.id", planIds)),
+				(budget) -> {
+					budget.setExportBudgetElementId(budget.getBudgetElement().getId());
+					budget.setExportStructureLevelInstanceId(budget.getLevelInstance().getId());
+					budget.setBudgetElement(null);
+					budget.setLevelInstance(null);
+				});
+			
+			//Exportando as instância de atributos
+			zipAddPaged(zos, AttributeInstance.class, () -> this.dao.newCriteria(AttributeInstance.class)
+				.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
+				.add(Restrictions.in("levelInstance.plan.id", planIds)),
+				(attrInstance) -> {
+					attrInstance.setExportAttributeId(attrInstance.getAttribute().getId());
+					attrInstance.setExportStructureLevelInstanceId(attrInstance.getLevelInstance().getId());
+					attrInstance.setAttribute(null);
+					attrInstance.setLevelInstance(null);
+				});
 		}
 
 		//Exportando as opções do select field
 		final List<OptionsField> optionsFields = this.fieldsBS.listOptionsFieldsByAttrsAndDocAttrs(attributes, documentAttributes);
 		if(!GeneralUtils.isEmpty(optionsFields)) {
-			zipAdd(zos, OptionsField.class.getSimpleName(), this.gson.toJson(optionsFields));
-			zos.flush();
+			zipAdd(zos, OptionsField.class, optionsFields);
 		}
 
 		//Exportando os cronogramas
 		final List<Schedule> schedules = this.fieldsBS.listSchedulesByAttrsAndDocAttrs(attributes, documentAttributes);
 		if(!GeneralUtils.isEmpty(schedules)) {
+			this.clearSession();
+			final List<Long> scheduleIds = new ArrayList<>(schedules.size());
 			for (Schedule schedule : schedules) {
+				scheduleIds.add(schedule.getId());
 				schedule.setScheduleInstances(null);
 				schedule.setScheduleStructures(null);
 			}
-			zipAdd(zos, Schedule.class.getSimpleName(), this.gson.toJson(schedules));
-			zos.flush();
-		}
-		
-		//Exportando os instâncias de cronogramas
-		final List<ScheduleInstance> scheduleInstances = this.fieldsBS.listAllScheduleInstancesBySchedules(schedules);
-		if(!GeneralUtils.isEmpty(scheduleInstances)) {
-			for (final ScheduleInstance scheduleInstance : scheduleInstances) {
-				scheduleInstance.setExportScheduleId(scheduleInstance.getSchedule().getId());
-				scheduleInstance.setSchedule(null);
-			}
-			zipAdd(zos, ScheduleInstance.class.getSimpleName(), this.gson.toJson(scheduleInstances));
-			zos.flush();
-		}
+			zipAdd(zos, Schedule.class, schedules);
 		
-		//Exportando os estruturas de cronogramas
-		final List<ScheduleStructure> scheduleStructures = this.fieldsBS.listAllScheduleStructuresBySchedules(schedules);
-		if(!GeneralUtils.isEmpty(scheduleStructures)) {
-			for (final ScheduleStructure scheduleStructure : scheduleStructures) {
-				scheduleStructure.setExportScheduleId(scheduleStructure.getSchedule().getId());
-				scheduleStructure.setSchedule(null);
-			}
-			zipAdd(zos, ScheduleStructure.class.getSimpleName(), this.gson.toJson(scheduleStructures));
-			zos.flush();
-		}
+			//Exportando os instâncias de cronogramas
+			zipAddPaged(zos, ScheduleInstance.class, () -> this.dao.newCriteria(ScheduleInstance.class)
+				.add(Restrictions.in("schedule.id", scheduleIds)),
+				(scheduleInstance) -> {
+					scheduleInstance.setExportScheduleId(scheduleInstance.getSchedule().getId());
+					scheduleInstance.setSchedule(null);
+					scheduleInstance.setScheduleValues(null);
+				});
+			
+			//Exportando os estruturas de cronogramas
+			zipAddPaged(zos, ScheduleStructure.class, () -> this.dao.newCriteria(ScheduleStructure.class)
+				.add(Restrictions.in("schedule.id", scheduleIds)),
+				(scheduleStructure) -> {
+					scheduleStructure.setExportScheduleId(scheduleStructure.getSchedule().getId());
+					scheduleStructure.setSchedule(null);
+				});
 
-		//Exportando os valores de cronogramas
-		if (!GeneralUtils.isEmpty(scheduleInstances) || !GeneralUtils.isEmpty(scheduleStructures)) {
-			final List<ScheduleValues> scheduleValues = this.fieldsBS.listAllScheduleValuesByInstancesAndStructures(scheduleInstances, scheduleStructures);
-			if(!GeneralUtils.isEmpty(scheduleValues)) {
-				for (final ScheduleValues scheduleValue : scheduleValues) {
+			//Exportando os valores de cronogramas
+			zipAddPaged(zos, ScheduleValues.class, () -> this.dao.newCriteria(ScheduleValues.class)
+				.createAlias("scheduleInstance", "scheduleInstance", JoinType.INNER_JOIN)
+				.createAlias("scheduleStructure", "scheduleStructure", JoinType.INNER_JOIN)
+				.add(Restrictions.in("scheduleInstance.schedule.id", scheduleIds))
+				.add(Restrictions.in("scheduleStructure.schedule.id", scheduleIds)),
+				(scheduleValue) -> {
 					scheduleValue.setExportScheduleInstanceId(scheduleValue.getScheduleInstance().getId());
 					scheduleValue.setExportScheduleStructureId(scheduleValue.getScheduleStructure().getId());
 					scheduleValue.setScheduleInstance(null);
 					scheduleValue.setScheduleStructure(null);
-				}
-				zipAdd(zos, ScheduleValues.class.getSimpleName(), this.gson.toJson(scheduleValues));
-				zos.flush();
-			}
+				});
 		}
 
 		//Exportando as tabelas
 		final List<TableFields> tableFields = this.fieldsBS.listTableFieldsByAttrsAndDocAttrs(attributes, documentAttributes);
 		if(!GeneralUtils.isEmpty(tableFields)) {
+			this.clearSession();
+			final List<Long> tableFieldsIds = new ArrayList<>(tableFields.size());
 			for (TableFields tableField : tableFields) {
+				tableFieldsIds.add(tableField.getId());
 				tableField.setTableInstances(null);
 				tableField.setTableStructures(null);
 			}
-			zipAdd(zos, TableFields.class.getSimpleName(), this.gson.toJson(tableFields));
-			zos.flush();
-		}
+			zipAdd(zos, TableFields.class, tableFields);
 		
-		//Exportando os instâncias de tabelas
-		final List<TableInstance> tableInstances = this.fieldsBS.listAllTableInstancesByTableFields(tableFields);
-		if(!GeneralUtils.isEmpty(tableInstances)) {
-			for (final TableInstance tableInstance : tableInstances) {
-				tableInstance.setExportTableFieldsId(tableInstance.getTableFields().getId());
-				tableInstance.setTableFields(null);
-				tableInstance.setTableValues(null);
-			}
-			zipAdd(zos, TableInstance.class.getSimpleName(), this.gson.toJson(tableInstances));
-			zos.flush();
-		}
+			//Exportando os instâncias de tabelas
+			zipAddPaged(zos, TableInstance.class, () -> this.dao.newCriteria(TableInstance.class)
+				.add(Restrictions.in("tableFields.id", tableFieldsIds)),
+				(tableInstance) -> {
+					tableInstance.setExportTableFieldsId(tableInstance.getTableFields().getId());
+					tableInstance.setTableFields(null);
+					tableInstance.setTableValues(null);
+				});
 
-		//Exportando os estruturas de tabelas
-		final List<TableStructure> tableStructures = this.fieldsBS.listAllTableStructuresByTableFields(tableFields);
-		if(!GeneralUtils.isEmpty(tableStructures)) {
-			for (final TableStructure tableStructure : tableStructures) {
-				tableStructure.setExportTableFieldsId(tableStructure.getTableFields().getId());
-				tableStructure.setTableFields(null);
-			}
-			zipAdd(zos, TableStructure.class.getSimpleName(), this.gson.toJson(tableStructures));
-			zos.flush();
-		}
-		
-		//Exportando os valores de tabelas
-		if (!GeneralUtils.isEmpty(tableInstances) || !GeneralUtils.isEmpty(tableStructures)) {
-			final List<TableValues> tableValues = this.fieldsBS.listAllTableValuesByInstancesAndStructures(tableInstances, tableStructures);
-			if(!GeneralUtils.isEmpty(tableValues)) {
-				for (final TableValues tableValue : tableValues) {
+			//Exportando os estruturas de tabelas
+			zipAddPaged(zos, TableStructure.class, () -> this.dao.newCriteria(TableStructure.class)
+				.add(Restrictions.in("tableFields.id", tableFieldsIds)),
+				(tableStructure) -> {
+					tableStructure.setExportTableFieldsId(tableStructure.getTableFields().getId());
+					tableStructure.setTableFields(null);
+				});
+			
+			//Exportando os valores de tabelas
+			zipAddPaged(zos, TableValues.class, () -> this.dao.newCriteria(TableValues.class)
+				.createAlias("tableInstance", "tableInstance", JoinType.INNER_JOIN)
+				.createAlias("tableStructure", "tableStructure", JoinType.INNER_JOIN)
+				.add(Restrictions.in("tableInstance.tableFields.id", tableFieldsIds))
+				.add(Restrictions.in("tableStructure.tableFields.id", tableFieldsIds)),
+				(tableValue) -> {
 					tableValue.setExportTableInstanceId(tableValue.getTableInstance().getId());
 					tableValue.setExportTableStructureId(tableValue.getTableStructure().getId());
 					tableValue.setTableInstance(null);
 					tableValue.setTableStructure(null);
-				}
-				zipAdd(zos, TableValues.class.getSimpleName(), this.gson.toJson(tableValues));
-				zos.flush();
-			}
+				});
 		}
 		
 		zos.close();
 	}
 
+	/**
+	 * Busca o e-mail do responsável de cada instância de nível dos planos
+	 * em duas consultas, indexado pelo id da instância de nível.
+	 */
+	private Map<Long, String> listResponsibleMailsByPlans(List<Long> planIds) {
+		Criteria criteria = this.dao.newCriteria(AttributeInstance.class)
+			.createAlias("attribute", "attribute", JoinType.INNER_JOIN)
+			.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
+			.add(Restrictions.eq("attribute.label", "Responsável"))
+			.add(Restrictions.in("levelInstance.plan.id", planIds))
+			.add(Restrictions.isNotNull("value"))
+			.addOrder(Order.asc("id"))
+			.setProjection(Projections.projectionList()
+				.add(Projections.property("levelInstance.id"))
+				.add(Projections.property("value"))
+			);
+		final Map<Long, Long> responsibles = new HashMap<>();
+		for (Object[] row : this.dao.findByCriteria(criteria, Object[].class)) {
+			final Long levelInstanceId = (Long) row[0];
+			if (!responsibles.containsKey(levelInstanceId)) {
+				try {
+					responsibles.put(levelInstanceId, Long.parseLong((String) row[1]));
+				} catch (NumberFormatException ex) {
+					LOGGER.warnf("Invalid responsible '%s' for level instance %d.", row[1], levelInstanceId);
+				}
+			}
+		}
+		final Map<Long, String> mails = new HashMap<>();
+		if (responsibles.isEmpty()) {
+			return mails;
+		}
+		final Map<Long, String> userMails = new HashMap<>();
+		Criteria users = this.dao.newCriteria(User.class)
+			.add(Restrictions.in("id", new LinkedHashSet<>(responsibles.values())))
+			.setProjection(Projections.projectionList()
+				.add(Projections.property("id"))
+				.add(Projections.property("email"))
+			);
+		for (Object[] row : this.dao.findByCriteria(users, Object[].class)) {
+			userMails.put((Long) row[0], (String) row[1]);
+		}
+		responsibles.forEach((levelInstanceId, userId) -> {
+			if (userMails.containsKey(userId))
+				mails.put(levelInstanceId, userMails.get(userId));
+		});
+		return mails;
+	}
 
 	/**
 	 * adiciona dados ao banco a partir do arquivo
 	 * 
-	 * @param file arquivo a ser importado
-	 * 
-	 * @throws IOException
-	 * 
-	 * @throws ParseException
+	 * Cada entrada do arquivo é lida como um fluxo de registros, sem carregar
+	 * a lista inteira em memória. Os ids antigos são mapeados para os novos em
+	 * mapas de long e as entidades persistidas pelo Hibernate são descarregadas
+	 * da sessão periodicamente. As instâncias de atributos, os detalhes e o
+	 * histórico das instâncias de nível, que são a maior parte dos registros,
+	 * são inseridos em lotes JDBC. O progresso é contado por registro
+	 * importado e pode ser consultado por {@link #getPorcentagem()}.
+	 *
+	 * @param file arquivo de backup
 	 * 
 	 */
 	public void restore(UploadedFile file) throws IOException, ParseException {
@@ -473,416 +537,559 @@ public class BackupAndRestoreHelper extends HibernateBusiness {
 		}
 		
 		final Map<String, File> files = this.uncompress(file.getFile());
-		final Map<Long, BudgetElement> budgetElements = new LinkedHashMap<>();
-		final Map<Long, PlanMacro> plansMacro = new LinkedHashMap<>();
-		final Map<Long, Document> documents = new LinkedHashMap<>();
-		final Map<Long, DocumentSection> documentSections = new LinkedHashMap<>();
-		final Map<Long, DocumentAttribute> documentAttributes = new LinkedHashMap<>();
-		final Map<Long, Structure> structures = new LinkedHashMap<>();
-		final Map<Long, StructureLevel> structureLevels = new LinkedHashMap<>();
-		final Map<Long, Attribute> attributes = new LinkedHashMap<>();
-		final Map<Long, Plan> plans = new LinkedHashMap<>();
-		final Map<Long, StructureLevelInstance> structureLevelInstances = new LinkedHashMap<>();
-		final Map<Long, Schedule> schedules = new LinkedHashMap<>();
-		final Map<Long, ScheduleInstance> scheduleInstances = new LinkedHashMap<>();
-		final Map<Long, ScheduleStructure> scheduleStructures = new LinkedHashMap<>();
-		final Map<Long, TableFields> tableFields = new LinkedHashMap<>();
-		final Map<Long, TableInstance> tableInstances = new LinkedHashMap<>();
-		final Map<Long, TableStructure> tableStructures = new LinkedHashMap<>();
-		
+		try {
+			quantity = 0;
+			// O registro extra representa a conclusão da transação.
+			quantityTotal = this.countRecords(files) + 1;
 
-		this.dao.execute((session) -> {
-			String content;
-			
-			// Importando elementos orçamentários
-			content = this.readFromFile(files, BudgetElement.class);
-			List<BudgetElement> budgetElementsList = this.gson.fromJson(content, new TypeToken<List<BudgetElement>>() {}.getType());
-			if (!GeneralUtils.isEmpty(budgetElementsList)) {
-				budgetElementsList.forEach((budgetElement) -> {
+			final LongLongMap budgetElements = new LongLongMap();
+			final LongLongMap plansMacro = new LongLongMap();
+			final LongLongMap documents = new LongLongMap();
+			final LongLongMap documentSections = new LongLongMap();
+			final LongLongMap documentSectionParents = new LongLongMap();
+			final LongLongMap documentAttributes = new LongLongMap();
+			final LongLongMap structures = new LongLongMap();
+			final LongLongMap structureLevels = new LongLongMap();
+			final LongLongMap attributes = new LongLongMap();
+			final LongLongMap responsibleAttributes = new LongLongMap();
+			final LongLongMap plans = new LongLongMap();
+			final LongLongMap structureLevelInstances = new LongLongMap(4096);
+			final LongLongMap structureLevelInstanceParents = new LongLongMap();
+			final LongLongMap responsibles = new LongLongMap();
+			final LongLongMap schedules = new LongLongMap();
+			final LongLongMap scheduleInstances = new LongLongMap();
+			final LongLongMap scheduleStructures = new LongLongMap();
+			final LongLongMap tableFields = new LongLongMap();
+			final LongLongMap tableInstances = new LongLongMap();
+			final LongLongMap tableStructures = new LongLongMap();
+			final Map<String, Long> users = new HashMap<>();
+
+			this.dao.execute((session) -> {
+				final int[] pending = new int[1];
+				final Runnable persisted = () -> {
+					if (++pending[0] % RESTORE_BATCH_SIZE == 0) {
+						session.flush();
+						session.clear();
+					}
+				};
+				
+				// Importando elementos orçamentários
+				this.forEachRecord(files, BudgetElement.class, (budgetElement) -> {
 					final Long oldId = budgetElement.getId();
 					budgetElement.setId(null);
 					budgetElement.setCompany(company);
 					session.persist(budgetElement);
-					budgetElements.put(oldId, budgetElement);
+					budgetElements.put(oldId, budgetElement.getId());
+					persisted.run();
 				});
-			}
-
-			// Importando mensagens customizadas
-			content = this.readFromFile(files, CompanyMessage.class);
-			List<CompanyMessage> companyMessagesList = this.gson.fromJson(content, new TypeToken<List<CompanyMessage>>() {}.getType());
-			if (!GeneralUtils.isEmpty(companyMessagesList)) {
-				companyMessagesList.forEach((companyMessage) -> {
+	
+				// Importando mensagens customizadas
+				this.forEachRecord(files, CompanyMessage.class, (companyMessage) -> {
 					this.companyBS.updateMessageOverlay(session, company, companyMessage.getMessageKey(), companyMessage.getMessageValue());
 				});
-			}
-			
-			// Importando os planos macro
-			content = this.readFromFile(files, PlanMacro.class);
-			List<PlanMacro> plansMacroList = this.gson.fromJson(content, new TypeToken<List<PlanMacro>>() {}.getType());
-			if (!GeneralUtils.isEmpty(plansMacroList)) {
-				plansMacroList.forEach((planMacro) -> {
+				
+				// Importando os planos macro
+				this.forEachRecord(files, PlanMacro.class, (planMacro) -> {
 					final Long oldId = planMacro.getId();
 					planMacro.setId(null);
 					planMacro.setCompany(company);
 					session.persist(planMacro);
-					plansMacro.put(oldId, planMacro);
+					plansMacro.put(oldId, planMacro.getId());
+					persisted.run();
 				});
-			}
-
-			// Importando os documentos
-			content = this.readFromFile(files, Document.class);
-			List<Document> documentsList = this.gson.fromJson(content, new TypeToken<List<Document>>() {}.getType());
-			if (!GeneralUtils.isEmpty(documentsList)) {
-				documentsList.forEach((document) -> {
+	
+				// Importando os documentos
+				this.forEachRecord(files, Document.class, (document) -> {
 					final Long oldId = document.getId();
 					document.setId(null);
-					document.setPlan(plansMacro.get(document.getExportPlanMacroId()));
+					document.setPlan(this.reference(session, PlanMacro.class, plansMacro, document.getExportPlanMacroId()));
 					session.persist(document);
-					documents.put(oldId, document);
+					documents.put(oldId, document.getId());
+					persisted.run();
 				});
-			}
-
-			// Importando as seções dos documentos
-			content = this.readFromFile(files, DocumentSection.class);
-			List<DocumentSection> documentSectionsList = this.gson.fromJson(content, new TypeToken<List<DocumentSection>>() {}.getType());
-			if (!GeneralUtils.isEmpty(documentSectionsList)) {
-				documentSectionsList.forEach((documentSection) -> {
+	
+				// Importando as seções dos documentos
+				this.forEachRecord(files, DocumentSection.class, (documentSection) -> {
 					final Long oldId = documentSection.getId();
 					documentSection.setId(null);
-					documentSection.setDocument(documents.get(documentSection.getExportDocumentId()));
+					documentSection.setDocument(this.reference(session, Document.class, documents, documentSection.getExportDocumentId()));
 					session.persist(documentSection);
-					documentSections.put(oldId, documentSection);
+					documentSections.put(oldId, documentSection.getId());
+					if (documentSection.getExportDocumentSectionId() != 0) {
+						documentSectionParents.put(documentSection.getId(), documentSection.getExportDocumentSectionId());
+					}
+					persisted.run();
 				});
-				documentSectionsList.forEach((documentSection) -> {
-					documentSection.setParent(documentSections.get(documentSection.getExportDocumentSectionId()));
-					session.persist(documentSection);
+				session.flush();
+				documentSectionParents.forEach((newId, oldParentId) -> {
+					final DocumentSection documentSection = (DocumentSection) session.load(DocumentSection.class, newId);
+					documentSection.setParent(this.reference(session, DocumentSection.class, documentSections, oldParentId));
+					persisted.run();
 				});
-			}
-
-			// Importando os atributos dos documentos
-			content = this.readFromFile(files, DocumentAttribute.class);
-			List<DocumentAttribute> documentAttributesList = this.gson.fromJson(content, new TypeToken<List<DocumentAttribute>>() {}.getType());
-			if (!GeneralUtils.isEmpty(documentAttributesList)) {
-				documentAttributesList.forEach((documentAttribute) -> {
+	
+				// Importando os atributos dos documentos
+				this.forEachRecord(files, DocumentAttribute.class, (documentAttribute) -> {
 					final Long oldId = documentAttribute.getId();
 					documentAttribute.setId(null);
-					documentAttribute.setSection(documentSections.get(documentAttribute.getExportDocumentSectionId()));
+					documentAttribute.setSection(this.reference(session, DocumentSection.class, documentSections, documentAttribute.getExportDocumentSectionId()));
 					session.persist(documentAttribute);
-					documentAttributes.put(oldId, documentAttribute);
+					documentAttributes.put(oldId, documentAttribute.getId());
+					persisted.run();
 				});
-			}
-
-			// Importando as estruturas
-			content = this.readFromFile(files, Structure.class);
-			List<Structure> structuresList = this.gson.fromJson(content, new TypeToken<List<Structure>>() {}.getType());
-			if (!GeneralUtils.isEmpty(structuresList)) {
-				structuresList.forEach((structure) -> {
+	
+				// Importando as estruturas
+				this.forEachRecord(files, Structure.class, (structure) -> {
 					final Long oldId = structure.getId();
 					structure.setId(null);
 					structure.setCompany(company);
 					session.persist(structure);
-					structures.put(oldId, structure);
+					structures.put(oldId, structure.getId());
+					persisted.run();
 				});
-			}
-
-			// Importando os níveis de estruturas
-			content = this.readFromFile(files, StructureLevel.class);
-			List<StructureLevel> structureLevelsList = this.gson.fromJson(content, new TypeToken<List<StructureLevel>>() {}.getType());
-			if (!GeneralUtils.isEmpty(structureLevelsList)) {
-				structureLevelsList.forEach((structureLevel) -> {
+	
+				// Importando os níveis de estruturas
+				this.forEachRecord(files, StructureLevel.class, (structureLevel) -> {
 					final Long oldId = structureLevel.getId();
 					structureLevel.setId(null);
-					structureLevel.setStructure(structures.get(structureLevel.getExportStructureId()));
+					structureLevel.setStructure(this.reference(session, Structure.class, structures, structureLevel.getExportStructureId()));
 					session.persist(structureLevel);
-					structureLevels.put(oldId, structureLevel);
+					structureLevels.put(oldId, structureLevel.getId());
+					persisted.run();
 				});
-			}
-
-			// Importando os atributos
-			content = this.readFromFile(files, Attribute.class);
-			List<Attribute> attributesList = this.gson.fromJson(content, new TypeToken<List<Attribute>>() {}.getType());
-			if (!GeneralUtils.isEmpty(attributesList)) {
-				attributesList.forEach((attribute) -> {
+	
+				// Importando os atributos
+				this.forEachRecord(files, Attribute.class, (attribute) -> {
 					final Long oldId = attribute.getId();
 					attribute.setId(null);
-					attribute.setLevel(structureLevels.get(attribute.getExportStructureLevelId()));
+					attribute.setLevel(this.reference(session, StructureLevel.class, structureLevels, attribute.getExportStructureLevelId()));
 					session.persist(attribute);
-					attributes.put(oldId, attribute);
+					attributes.put(oldId, attribute.getId());
+					if ("Responsável".equals(attribute.getLabel())) {
+						responsibleAttributes.put(oldId, attribute.getId());
+					}
+					persisted.run();
 				});
-			}
-
-			// Importando os planos
-			content = this.readFromFile(files, Plan.class);
-			List<Plan> plansList = this.gson.fromJson(content, new TypeToken<List<Plan>>() {}.getType());
-			if (!GeneralUtils.isEmpty(plansList)) {
-				plansList.forEach((plan) -> {
+	
+				// Importando os planos
+				this.forEachRecord(files, Plan.class, (plan) -> {
 					final Long oldId = plan.getId();
 					plan.setId(null);
-					plan.setParent(plansMacro.get(plan.getExportPlanMacroId()));
-					plan.setStructure(structures.get(plan.getExportStructureId()));
+					plan.setParent(this.reference(session, PlanMacro.class, plansMacro, plan.getExportPlanMacroId()));
+					plan.setStructure(this.reference(session, Structure.class, structures, plan.getExportStructureId()));
 					session.persist(plan);
-					plans.put(oldId, plan);
+					plans.put(oldId, plan.getId());
+					persisted.run();
 				});
-			}
-
-			// Importando os detalhes dos planos
-			content = this.readFromFile(files, PlanDetailed.class);
-			List<PlanDetailed> plansDetailedList = this.gson.fromJson(content, new TypeToken<List<PlanDetailed>>() {}.getType());
-			if (!GeneralUtils.isEmpty(plansDetailedList)) {
-				plansDetailedList.forEach((planDetailed) -> {
+	
+				// Importando os detalhes dos planos
+				this.forEachRecord(files, PlanDetailed.class, (planDetailed) -> {
 					planDetailed.setId(null);
-					planDetailed.setPlan(plans.get(planDetailed.getExportPlanId()));
+					planDetailed.setPlan(this.reference(session, Plan.class, plans, planDetailed.getExportPlanId()));
 					session.persist(planDetailed);
+					persisted.run();
 				});
-			}
-
-			// Importando as instâncias de nível de estrutura
-			content = this.readFromFile(files, StructureLevelInstance.class);
-			List<StructureLevelInstance> structureLevelInstancesList = this.gson.fromJson(content, new TypeToken<List<StructureLevelInstance>>() {}.getType());
-			if (!GeneralUtils.isEmpty(structureLevelInstancesList)) {
-				structureLevelInstancesList.forEach((levelInstance) -> {
+	
+				// Importando as instâncias de nível de estrutura
+				this.forEachRecord(files, StructureLevelInstance.class, (levelInstance) -> {
 					final Long oldId = levelInstance.getId();
+					final Long oldParentId = levelInstance.getParent();
 					levelInstance.setId(null);
-					levelInstance.setLevel(structureLevels.get(levelInstance.getExportLevelId()));
-					levelInstance.setPlan(plans.get(levelInstance.getExportPlanId()));
-					
-					if(levelInstance.getParent() != null) {
-						StructureLevelInstance sli = structureLevelInstances.get(levelInstance.getParent());
-						levelInstance.setParent(sli.getId());
-					}
-						
+					levelInstance.setPath(null);
+					levelInstance.setLevel(this.reference(session, StructureLevel.class, structureLevels, levelInstance.getExportLevelId()));
+					levelInstance.setPlan(this.reference(session, Plan.class, plans, levelInstance.getExportPlanId()));
+					// O pai ainda não importado é resolvido ao final.
+					levelInstance.setParent(importedId(structureLevelInstances, oldParentId));
 					session.persist(levelInstance);
-					structureLevelInstances.put(oldId, levelInstance);
-				});
-			}
-
-			// Importando os detalhes das instâncias de nível de estrutura
-			content = this.readFromFile(files, StructureLevelInstanceDetailed.class);
-			List<StructureLevelInstanceDetailed> structureLevelInstancesDetailedList = this.gson.fromJson(content, new TypeToken<List<StructureLevelInstanceDetailed>>() {}.getType());
-			if (!GeneralUtils.isEmpty(structureLevelInstancesDetailedList)) {
-				structureLevelInstancesDetailedList.forEach((levelInstanceDetailed) -> {
-					levelInstanceDetailed.setId(null);
-					levelInstanceDetailed.setLevelInstance(structureLevelInstances.get(levelInstanceDetailed.getExportStructureLevelInstanceId()));
-					session.persist(levelInstanceDetailed);
-				});
-			}
-
-			// Importando o histórico das instâncias de nível de estrutura
-			content = this.readFromFile(files, LevelInstanceHistory.class);
-			List<LevelInstanceHistory> levelInstancesHistoryList = this.gson.fromJson(content, new TypeToken<List<LevelInstanceHistory>>() {}.getType());
-			if (!GeneralUtils.isEmpty(levelInstancesHistoryList)) {
-				levelInstancesHistoryList.forEach((levelInstanceHistory) -> {
-					levelInstanceHistory.setId(null);
-					levelInstanceHistory.setLevelInstance(structureLevelInstances.get(levelInstanceHistory.getExportStructureLevelInstanceId()));
-					session.persist(levelInstanceHistory);
+					structureLevelInstances.put(oldId, levelInstance.getId());
+					if (oldParentId != null && levelInstance.getParent() == null) {
+						structureLevelInstanceParents.put(levelInstance.getId(), oldParentId);
+					}
+					final Long userId = this.findUserId(users, levelInstance.getExportResponsibleMail());
+					if (userId != null) {
+						responsibles.put(oldId, userId);
+					}
+					persisted.run();
 				});
-			}
-
-			// Importando os planos de ação
-			content = this.readFromFile(files, ActionPlan.class);
-			List<ActionPlan> actionPlansList = this.gson.fromJson(content, new TypeToken<List<ActionPlan>>() {}.getType());
-			if (!GeneralUtils.isEmpty(actionPlansList)) {
-				actionPlansList.forEach((actionPlan) -> {
+				session.flush();
+				session.clear();
+				if (!structureLevelInstanceParents.isEmpty()) {
+					session.doWork((connection) -> {
+						try (PreparedStatement stmt = connection.prepareStatement(UPDATE_LEVEL_INSTANCE_PARENT)) {
+							final int[] count = new int[1];
+							structureLevelInstanceParents.forEach((newId, oldParentId) -> {
+								try {
+									stmt.setLong(1, newId(structureLevelInstances, oldParentId, StructureLevelInstance.class));
+									stmt.setLong(2, newId);
+									stmt.addBatch();
+									if (++count[0] % RESTORE_BATCH_SIZE == 0) {
+										stmt.executeBatch();
+									}
+								} catch (SQLException e) {
+									throw new RestoreException(e);
+								}
+							});
+							stmt.executeBatch();
+						}
+					});
+				}
+				session.doWork((connection) -> LevelInstancePath.fillCompany(connection, company.getId()));
+	
+				// Importando os detalhes das instâncias de nível de estrutura
+				this.insertBatches(session, files, StructureLevelInstanceDetailed.class, INSERT_LEVEL_INSTANCE_DETAILED,
+					(stmt, levelInstanceDetailed) -> {
+						stmt.setBoolean(1, levelInstanceDetailed.isDeleted());
+						stmt.setInt(2, levelInstanceDetailed.getMonth());
+						stmt.setInt(3, levelInstanceDetailed.getYear());
+						stmt.setLong(4, newId(structureLevelInstances, levelInstanceDetailed.getExportStructureLevelInstanceId(), StructureLevelInstance.class));
+						stmt.setObject(5, levelInstanceDetailed.getLevelValue(), Types.DOUBLE);
+						stmt.setObject(6, levelInstanceDetailed.getLevelMinimum(), Types.DOUBLE);
+						stmt.setObject(7, levelInstanceDetailed.getLevelMaximum(), Types.DOUBLE);
+					});
+	
+				// Importando o histórico das instâncias de nível de estrutura
+				this.insertBatches(session, files, LevelInstanceHistory.class, INSERT_LEVEL_INSTANCE_HISTORY,
+					(stmt, levelInstanceHistory) -> {
+						stmt.setBoolean(1, levelInstanceHistory.isDeleted());
+						stmt.setTimestamp(2, this.timestamp(levelInstanceHistory.getCreation() == null ? new Date() : levelInstanceHistory.getCreation()));
+						stmt.setObject(3, levelInstanceHistory.getValue(), Types.DOUBLE);
+						stmt.setLong(4, newId(structureLevelInstances, levelInstanceHistory.getExportStructureLevelInstanceId(), StructureLevelInstance.class));
+					});
+	
+				// Importando os planos de ação
+				this.forEachRecord(files, ActionPlan.class, (actionPlan) -> {
 					actionPlan.setId(null);
-					actionPlan.setLevelInstance(structureLevelInstances.get(actionPlan.getExportStructureLevelInstanceId()));
+					actionPlan.setLevelInstance(this.reference(session, StructureLevelInstance.class, structureLevelInstances, actionPlan.getExportStructureLevelInstanceId()));
 					session.persist(actionPlan);
+					persisted.run();
 				});
-			}
-
-			// Importando os indicadores agregados
-			content = this.readFromFile(files, AggregateIndicator.class);
-			List<AggregateIndicator> aggregateIndicatorsList = this.gson.fromJson(content, new TypeToken<List<AggregateIndicator>>() {}.getType());
-			if (!GeneralUtils.isEmpty(aggregateIndicatorsList)) {
-				aggregateIndicatorsList.forEach((aggregateIndicator) -> {
+	
+				// Importando os indicadores agregados
+				this.forEachRecord(files, AggregateIndicator.class, (aggregateIndicator) -> {
 					aggregateIndicator.setId(null);
-					aggregateIndicator.setAggregate(structureLevelInstances.get(aggregateIndicator.getExportAggregateId()));
-					aggregateIndicator.setIndicator(structureLevelInstances.get(aggregateIndicator.getExportIndicatorId()));
+					aggregateIndicator.setAggregate(this.reference(session, StructureLevelInstance.class, structureLevelInstances, aggregateIndicator.getExportAggregateId()));
+					aggregateIndicator.setIndicator(this.reference(session, StructureLevelInstance.class, structureLevelInstances, aggregateIndicator.getExportIndicatorId()));
 					session.persist(aggregateIndicator);
+					persisted.run();
 				});
-			}
-
-			// Importando os anexos
-			content = this.readFromFile(files, Attachment.class);
-			List<Attachment> attachmentsList = this.gson.fromJson(content, new TypeToken<List<Attachment>>() {}.getType());
-			if (!GeneralUtils.isEmpty(attachmentsList)) {
-				attachmentsList.forEach((attachment) -> {
+	
+				// Importando os anexos
+				this.forEachRecord(files, Attachment.class, (attachment) -> {
 					attachment.setId(null);
-					attachment.setLevelInstance(structureLevelInstances.get(attachment.getExportStructureLevelInstanceId()));
+					attachment.setLevelInstance(this.reference(session, StructureLevelInstance.class, structureLevelInstances, attachment.getExportStructureLevelInstanceId()));
 					final String authorEmail = attachment.getExportAuthorMail();
-					final User author = this.userBS.existsByEmail(authorEmail);
-					if (author != null) {
-						attachment.setAuthor(author);
+					final Long authorId = this.findUserId(users, authorEmail);
+					if (authorId != null) {
+						attachment.setAuthor((User) session.load(User.class, authorId));
 					} else {
-						LOGGER.warnf("Ignoring unexistent attachment author: %s", authorEmail);
+						attachment.setAuthor(null);
 					}
 					session.persist(attachment);
+					persisted.run();
 				});
-			}
-	
-			// Importando os orçamentos
-			content = this.readFromFile(files, Budget.class);
-			List<Budget> budgetsList = this.gson.fromJson(content, new TypeToken<List<Budget>>() {}.getType());
-			if (!GeneralUtils.isEmpty(budgetsList)) {
-				budgetsList.forEach((budget) -> {
+		
+				// Importando os orçamentos
+				this.forEachRecord(files, Budget.class, (budget) -> {
 					budget.setId(null);
-					budget.setBudgetElement(budgetElements.get(budget.getExportBudgetElementId()));
-					budget.setLevelInstance(structureLevelInstances.get(budget.getExportStructureLevelInstanceId()));
+					budget.setBudgetElement(this.reference(session, BudgetElement.class, budgetElements, budget.getExportBudgetElementId()));
+					budget.setLevelInstance(this.reference(session, StructureLevelInstance.class, structureLevelInstances, budget.getExportStructureLevelInstanceId()));
 					session.persist(budget);
+					persisted.run();
 				});
-			}
-
-			// Importando as instâncias de atributos
-			final Set<String> emails = new LinkedHashSet<>();
-	
-			content = this.readFromFile(files, AttributeInstance.class);
-			List<AttributeInstance> attributeInstancesList = this.gson.fromJson(content, new TypeToken<List<AttributeInstance>>() {}.getType());
-			if (!GeneralUtils.isEmpty(attributeInstancesList)) {
-				attributeInstancesList.forEach((attributeInstance) -> {
-					attributeInstance.setId(null);
-					attributeInstance.setAttribute(attributes.get(attributeInstance.getExportAttributeId()));
-					attributeInstance.setLevelInstance(structureLevelInstances.get(attributeInstance.getExportStructureLevelInstanceId()));
-					if ("Responsável".equals(attributeInstance.getAttribute().getLabel())) {
-						User user = this.userBS.existsByEmail(attributeInstance.getLevelInstance().getExportResponsibleMail());
-						if (user != null) {
-							attributeInstance.setValue(user.getId().toString());
-							attributeInstance.setValueAsNumber(user.getId().doubleValue());
-						} else {
-							if(!emails.contains(attributeInstance.getLevelInstance().getExportResponsibleMail())) {
-								emails.add(attributeInstance.getLevelInstance().getExportResponsibleMail());
-								LOGGER.warnf("Usuário responsável não encontrado: %s", attributeInstance.getLevelInstance().getExportResponsibleMail());
-							}
+				session.flush();
+				session.clear();
+	
+				// Importando as instâncias de atributos
+				this.insertBatches(session, files, AttributeInstance.class, INSERT_ATTRIBUTE_INSTANCE,
+					(stmt, attributeInstance) -> {
+						final Long oldLevelInstanceId = attributeInstance.getExportStructureLevelInstanceId();
+						final Long oldAttributeId = attributeInstance.getExportAttributeId();
+						if (oldAttributeId != null && oldLevelInstanceId != null
+								&& responsibleAttributes.containsKey(oldAttributeId)
+								&& responsibles.containsKey(oldLevelInstanceId)) {
+							final long userId = responsibles.get(oldLevelInstanceId, -1L);
+							attributeInstance.setValue(String.valueOf(userId));
+							attributeInstance.setValueAsNumber((double) userId);
 						}
-					}
-					session.persist(attributeInstance);
-				});
-			}
-
-			// Importando os campos de opções
-			content = this.readFromFile(files, OptionsField.class);
-			List<OptionsField> optionsFieldsList = this.gson.fromJson(content, new TypeToken<List<OptionsField>>() {}.getType());
-			if (!GeneralUtils.isEmpty(optionsFieldsList)) {
-				optionsFieldsList.forEach((optionsField) -> {
+						stmt.setBoolean(1, attributeInstance.isDeleted());
+						stmt.setString(2, attributeInstance.getValue());
+						stmt.setObject(3, attributeInstance.getValueAsNumber(), Types.DOUBLE);
+						stmt.setTimestamp(4, this.timestamp(attributeInstance.getValueAsDate()));
+						stmt.setTimestamp(5, this.timestamp(attributeInstance.getCreation() == null ? new Date() : attributeInstance.getCreation()));
+						stmt.setLong(6, newId(attributes, oldAttributeId, Attribute.class));
+						stmt.setLong(7, newId(structureLevelInstances, oldLevelInstanceId, StructureLevelInstance.class));
+					});
+				session.doWork((connection) -> LevelInstanceResponsibles.rebuildCompany(connection, company.getId()));
+	
+				// Importando os campos de opções
+				this.forEachRecord(files, OptionsField.class, (optionsField) -> {
 					optionsField.setId(null);
 					if (optionsField.isDocument()) {
-						optionsField.setAttributeId(documentAttributes.get(optionsField.getAttributeId()).getId());
+						optionsField.setAttributeId(newId(documentAttributes, optionsField.getAttributeId(), DocumentAttribute.class));
 					} else {
-						optionsField.setAttributeId(attributes.get(optionsField.getAttributeId()).getId());
+						optionsField.setAttributeId(newId(attributes, optionsField.getAttributeId(), Attribute.class));
 					}
 					session.persist(optionsField);
+					persisted.run();
 				});
-			}
-
-			// Importando os cronogramas
-			content = this.readFromFile(files, Schedule.class);
-			List<Schedule> schedulesList = this.gson.fromJson(content, new TypeToken<List<Schedule>>() {}.getType());
-			if (!GeneralUtils.isEmpty(schedulesList)) {
-				schedulesList.forEach((schedule) -> {
+	
+				// Importando os cronogramas
+				this.forEachRecord(files, Schedule.class, (schedule) -> {
 					final Long oldId = schedule.getId();
 					schedule.setId(null);
 					if (schedule.isDocument()) {
-						schedule.setAttributeId(documentAttributes.get(schedule.getAttributeId()).getId());
+						schedule.setAttributeId(newId(documentAttributes, schedule.getAttributeId(), DocumentAttribute.class));
 					} else {
-						schedule.setAttributeId(attributes.get(schedule.getAttributeId()).getId());
+						schedule.setAttributeId(newId(attributes, schedule.getAttributeId(), Attribute.class));
 					}
 					session.persist(schedule);
-					schedules.put(oldId, schedule);
+					schedules.put(oldId, schedule.getId());
+					persisted.run();
 				});
-			}
-
-			// Importando as instâncias de cronogramas
-			content = this.readFromFile(files, ScheduleInstance.class);
-			List<ScheduleInstance> scheduleInstancesList = this.gson.fromJson(content, new TypeToken<List<ScheduleInstance>>() {}.getType());
-			if (!GeneralUtils.isEmpty(scheduleInstancesList)) {
-				scheduleInstancesList.forEach((scheduleInstance) -> {
+	
+				// Importando as instâncias de cronogramas
+				this.forEachRecord(files, ScheduleInstance.class, (scheduleInstance) -> {
 					final Long oldId = scheduleInstance.getId();
 					scheduleInstance.setId(null);
-					scheduleInstance.setSchedule(schedules.get(scheduleInstance.getExportScheduleId()));
+					scheduleInstance.setSchedule(this.reference(session, Schedule.class, schedules, scheduleInstance.getExportScheduleId()));
 					session.persist(scheduleInstance);
-					scheduleInstances.put(oldId, scheduleInstance);
+					scheduleInstances.put(oldId, scheduleInstance.getId());
+					persisted.run();
 				});
-			}
-
-			// Importando as estruturas de cronogramas
-			content = this.readFromFile(files, ScheduleStructure.class);
-			List<ScheduleStructure> scheduleStructuresList = this.gson.fromJson(content, new TypeToken<List<ScheduleStructure>>() {}.getType());
-			if (!GeneralUtils.isEmpty(scheduleStructuresList)) {
-				scheduleStructuresList.forEach((scheduleStructure) -> {
+	
+				// Importando as estruturas de cronogramas
+				this.forEachRecord(files, ScheduleStructure.class, (scheduleStructure) -> {
 					final Long oldId = scheduleStructure.getId();
 					scheduleStructure.setId(null);
-					scheduleStructure.setSchedule(schedules.get(scheduleStructure.getExportScheduleId()));
+					scheduleStructure.setSchedule(this.reference(session, Schedule.class, schedules, scheduleStructure.getExportScheduleId()));
 					session.persist(scheduleStructure);
-					scheduleStructures.put(oldId, scheduleStructure);
+					scheduleStructures.put(oldId, scheduleStructure.getId());
+					persisted.run();
 				});
-			}
-
-			// Importando os valores de cronogramas
-			content = this.readFromFile(files, ScheduleValues.class);
-			List<ScheduleValues> scheduleValuesList = this.gson.fromJson(content, new TypeToken<List<ScheduleValues>>() {}.getType());
-			if (!GeneralUtils.isEmpty(scheduleValuesList)) {
-				scheduleValuesList.forEach((scheduleValue) -> {
+	
+				// Importando os valores de cronogramas
+				this.forEachRecord(files, ScheduleValues.class, (scheduleValue) -> {
 					scheduleValue.setId(null);
-					scheduleValue.setScheduleInstance(scheduleInstances.get(scheduleValue.getExportScheduleInstanceId()));
-					scheduleValue.setScheduleStructure(scheduleStructures.get(scheduleValue.getExportScheduleStructureId()));
+					scheduleValue.setScheduleInstance(this.reference(session, ScheduleInstance.class, scheduleInstances, scheduleValue.getExportScheduleInstanceId()));
+					scheduleValue.setScheduleStructure(this.reference(session, ScheduleStructure.class, scheduleStructures, scheduleValue.getExportScheduleStructureId()));
 					session.persist(scheduleValue);
+					persisted.run();
 				});
-			}
-
-			// Importando as tabelas
-			content = this.readFromFile(files, TableFields.class);
-			List<TableFields> tableFieldsList = this.gson.fromJson(content, new TypeToken<List<TableFields>>() {}.getType());
-			if (!GeneralUtils.isEmpty(tableFieldsList)) {
-				tableFieldsList.forEach((tableField) -> {
+	
+				// Importando as tabelas
+				this.forEachRecord(files, TableFields.class, (tableField) -> {
 					final Long oldId = tableField.getId();
 					tableField.setId(null);
 					if (tableField.isDocument()) {
-						tableField.setAttributeId(documentAttributes.get(tableField.getAttributeId()).getId());
+						tableField.setAttributeId(newId(documentAttributes, tableField.getAttributeId(), DocumentAttribute.class));
 					} else {
-						tableField.setAttributeId(attributes.get(tableField.getAttributeId()).getId());
+						tableField.setAttributeId(newId(attributes, tableField.getAttributeId(), Attribute.class));
 					}
 					session.persist(tableField);
-					tableFields.put(oldId, tableField);
+					tableFields.put(oldId, tableField.getId());
+					persisted.run();
 				});
-			}
-
-			// Importando as instâncias de tabelas
-			content = this.readFromFile(files, TableInstance.class);
-			List<TableInstance> tableInstancesList = this.gson.fromJson(content, new TypeToken<List<TableInstance>>() {}.getType());
-			if (!GeneralUtils.isEmpty(tableInstancesList)) {
-				tableInstancesList.forEach((tableInstance) -> {
+	
+				// Importando as instâncias de tabelas
+				this.forEachRecord(files, TableInstance.class, (tableInstance) -> {
 					final Long oldId = tableInstance.getId();
 					tableInstance.setId(null);
-					tableInstance.setTableFields(tableFields.get(tableInstance.getExportTableFieldsId()));
+					tableInstance.setTableFields(this.reference(session, TableFields.class, tableFields, tableInstance.getExportTableFieldsId()));
 					session.persist(tableInstance);
-					tableInstances.put(oldId, tableInstance);
+					tableInstances.put(oldId, tableInstance.getId());
+					persisted.run();
 				});
-			}
-
-			// Importando as estruturas de tabelas
-			content = this.readFromFile(files, TableStructure.class);
-			List<TableStructure> tableStructuresList = this.gson.fromJson(content, new TypeToken<List<TableStructure>>() {}.getType());
-			if (!GeneralUtils.isEmpty(tableStructuresList)) {
-				tableStructuresList.forEach((tableStructure) -> {
+	
+				// Importando as estruturas de tabelas
+				this.forEachRecord(files, TableStructure.class, (tableStructure) -> {
 					final Long oldId = tableStructure.getId();
 					tableStructure.setId(null);
-					tableStructure.setTableFields(tableFields.get(tableStructure.getExportTableFieldsId()));
+					tableStructure.setTableFields(this.reference(session, TableFields.class, tableFields, tableStructure.getExportTableFieldsId()));
 					session.persist(tableStructure);
-					tableStructures.put(oldId, tableStructure);
+					tableStructures.put(oldId, tableStructure.getId());
+					persisted.run();
 				});
-			}
-
-			// Importando os valores de tabelas
-			content = this.readFromFile(files, TableValues.class);
-			List<TableValues> tableValuesList = this.gson.fromJson(content, new TypeToken<List<TableValues>>() {}.getType());
-			if (!GeneralUtils.isEmpty(tableValuesList)) {
-				tableValuesList.forEach((tableValue) -> {
+	
+				// Importando os valores de tabelas
+				this.forEachRecord(files, TableValues.class, (tableValue) -> {
 					tableValue.setId(null);
-					tableValue.setTableInstance(tableInstances.get(tableValue.getExportTableInstanceId()));
-					tableValue.setTableStructure(tableStructures.get(tableValue.getExportTableStructureId()));
+					tableValue.setTableInstance(this.reference(session, TableInstance.class, tableInstances, tableValue.getExportTableInstanceId()));
+					tableValue.setTableStructure(this.reference(session, TableStructure.class, tableStructures, tableValue.getExportTableStructureId()));
 					session.persist(tableValue);
+					persisted.run();
 				});
+				session.flush();
+				session.clear();
+			});
+			quantity = quantityTotal;
+		} catch (RuntimeException | IOException ex) {
+			this.resetQuantity();
+			throw ex;
+		} finally {
+			for (File tmp : files.values()) {
+				if (!tmp.delete()) {
+					tmp.deleteOnExit();
+				}
 			}
+		}
+	}
 
+	/**
+	 * Lê os registros de uma entidade do backup um a um, sem carregar o
+	 * arquivo inteiro em memória, contabilizando o progresso da importação.
+	 * 
+	 * @param files    arquivos extraídos do backup
+	 * 
+	 * @param clazz    classe da entidade
+	 * 
+	 * @param consumer processa cada registro lido
+	 *
+	 */
+	private <T> void forEachRecord(Map<String, File> files, Class<T> clazz, Consumer<T> consumer) {
+		final File file = files.get(clazz.getSimpleName());
+		if (file == null) {
+			LOGGER.infof("Nenhum arquivo de dados para entidade: %s", clazz.getSimpleName());
+			return;
+		}
+		LOGGER.infof("Importing entity: %s", clazz.getSimpleName());
+		try (JsonReader reader = this.newJsonReader(file)) {
+			reader.beginArray();
+			while (reader.hasNext()) {
+				final T record = this.gson.fromJson(reader, clazz);
+				consumer.accept(record);
+				quantity++;
+			}
+			reader.endArray();
+		} catch (IOException e) {
+			throw new RestoreException(e);
+		}
+	}
+
+	/**
+	 * Lê os registros de uma entidade do backup e os insere em lotes JDBC,
+	 * sem passar pela sessão do Hibernate.
+	 * 
+	 * @param session sessão da transação de importação
+	 * 
+	 * @param files   arquivos extraídos do backup
+	 * 
+	 * @param clazz   classe da entidade
+	 * 
+	 * @param sql     comando de inserção
+	 * 
+	 * @param binder  preenche os parâmetros do comando para cada registro
+	 *
+	 */
+	private <T> void insertBatches(Session session, Map<String, File> files, Class<T> clazz, String sql,
+			RecordBinder<T> binder) {
+		final List<T> chunk = new ArrayList<>(RESTORE_BATCH_SIZE);
+		final Runnable insert = () -> {
+			session.doWork((connection) -> {
+				try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+					for (T record : chunk) {
+						binder.bind(stmt, record);
+						stmt.addBatch();
+					}
+					stmt.executeBatch();
+				}
+			});
+			chunk.clear();
+		};
+		this.forEachRecord(files, clazz, (record) -> {
+			chunk.add(record);
+			if (chunk.size() == RESTORE_BATCH_SIZE) {
+				insert.run();
+			}
 		});
+		if (!chunk.isEmpty()) {
+			insert.run();
+		}
+	}
+
+	/**
+	 * Conta os registros de cada entrada do backup, para o cálculo do
+	 * progresso da importação.
+	 */
+	private int countRecords(Map<String, File> files) throws IOException {
+		int count = 0;
+		for (File file : files.values()) {
+			try (JsonReader reader = this.newJsonReader(file)) {
+				if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+					continue;
+				}
+				reader.beginArray();
+				while (reader.hasNext()) {
+					reader.skipValue();
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private JsonReader newJsonReader(File file) throws IOException {
+		return new JsonReader(new InputStreamReader(new BufferedInputStream(new FileInputStream(file)),
+				StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Recupera uma referência para a entidade importada a partir do id antigo,
+	 * sem consultar o banco.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T reference(Session session, Class<T> clazz, LongLongMap ids, Long oldId) {
+		final Long newId = importedId(ids, oldId);
+		return newId == null ? null : (T) session.load(clazz, newId);
+	}
+
+	/**
+	 * Id novo de um registro já importado, ou null se o id antigo for nulo
+	 * ou o registro ainda não tiver sido importado.
+	 */
+	static Long importedId(LongLongMap ids, Long oldId) {
+		if (oldId == null || !ids.containsKey(oldId)) {
+			return null;
+		}
+		return ids.get(oldId, -1L);
+	}
+
+	/**
+	 * Id novo de um registro que precisa ter sido importado.
+	 * 
+	 * @throws RestoreException se o registro não foi importado
+	 */
+	static Long newId(LongLongMap ids, Long oldId, Class<?> clazz) {
+		final Long newId = importedId(ids, oldId);
+		if (newId == null) {
+			throw new RestoreException(new IllegalStateException(
+					String.format("%s não encontrado no backup: %s", clazz.getSimpleName(), oldId)));
+		}
+		return newId;
+	}
+
+	/**
+	 * Busca o id do usuário pelo e-mail, consultando cada e-mail uma única vez.
+	 */
+	private Long findUserId(Map<String, Long> users, String email) {
+		if (GeneralUtils.isEmpty(email)) {
+			return null;
+		}
+		if (!users.containsKey(email)) {
+			final User user = this.userBS.existsByEmail(email);
+			if (user == null) {
+				LOGGER.warnf("Usuário não encontrado: %s", email);
+			}
+			users.put(email, user == null ? null : user.getId());
+		}
+		return users.get(email);
+	}
+
+	private Timestamp timestamp(Date date) {
+		return date == null ? null : new Timestamp(date.getTime());
+	}
+
+	@FunctionalInterface
+	private interface RecordBinder<T> {
+		void bind(PreparedStatement stmt, T record) throws SQLException;
 	}
 
 	/**
@@ -916,41 +1123,124 @@ public class BackupAndRestoreHelper extends HibernateBusiness {
 		return files;
 	}
 	
-	private String readFromFile(Map<String, File> files, Class<?> clazz) {
-		final File file = files.get(clazz.getSimpleName());
-		if (file == null) {
-			LOGGER.infof("Nenhum arquivo de dados para entidade: %s", clazz.getSimpleName());
-			return "[]";
-		}
-		LOGGER.infof("Importing entity: %s", clazz.getSimpleName());
-		try {
-			final FileInputStream fis = new FileInputStream(file);
-			final String content = IOUtils.toString(fis, StandardCharsets.UTF_8);
-			fis.close();
-			return content;
-		} catch(IOException e) {
-			throw new RestoreException(e);
-		}
+	/**
+	 * Adiciona arquivo no zip, serializando o conteúdo diretamente na
+	 * entrada do zip
+	 * 
+	 * @param ZipOutputStream arquivo zip
+	 * 
+	 * @param clazz           classe das entidades exportadas
+	 * 
+	 * @param content         objeto ou lista a ser salvo
+	 * 
+	 * @throws IOException
+	 *
+	 */
+	private void zipAdd(ZipOutputStream zos, Class<?> clazz, Object content) throws IOException {
+		LOGGER.infof("Writing JSON for %s...", clazz.getSimpleName());
+		zos.putNextEntry(new ZipEntry(String.format("%s.json", clazz.getSimpleName())));
+		JsonWriter writer = this.newJsonWriter(zos);
+		this.gson.toJson(content, content.getClass(), writer);
+		writer.flush();
+		zos.closeEntry();
+		zos.flush();
 	}
-	
+
 	/**
-	 * Adiciona arquivo no zip
+	 * Adiciona ao zip as entidades de uma consulta, lendo-as em páginas
+	 * ordenadas pelo id e escrevendo cada página assim que é carregada.
+	 * A sessão só é limpa depois da página ser escrita, para que os
+	 * relacionamentos ainda possam ser lidos. Como a limpeza acontece antes
+	 * da próxima consulta, o desvínculo das entidades nunca é gravado, e o
+	 * cache da sessão não cresce.
 	 * 
 	 * @param ZipOutputStream arquivo zip
 	 * 
-	 * @param className       nome da classe
+	 * @param clazz           classe das entidades exportadas
 	 * 
-	 * @param content         json a ser salvo
+	 * @param query           cria a consulta, sem paginação, das entidades a serem exportadas
+	 * 
+	 * @param detach          prepara cada entidade para exportação
 	 * 
 	 * @throws IOException
 	 *
 	 */
-	private void zipAdd(ZipOutputStream zos, String className, String content) throws IOException {
-		LOGGER.infof("Writing JSON for %s...", className);
-		ZipEntry entry = new ZipEntry(String.format("%s.json", className));
-		zos.putNextEntry(entry);
-		zos.write(content.getBytes("UTF-8"));
+	private <T extends SimpleEntity> void zipAddPaged(ZipOutputStream zos, Class<T> clazz, Supplier<Criteria> query,
+			Consumer<T> detach) throws IOException {
+		LOGGER.infof("Writing JSON for %s...", clazz.getSimpleName());
+		zos.putNextEntry(new ZipEntry(String.format("%s.json", clazz.getSimpleName())));
+		JsonWriter writer = this.newJsonWriter(zos);
+		writer.beginArray();
+		int total = forEachPage((lastId) -> {
+			Criteria criteria = query.get()
+				.add(Restrictions.gt("id", lastId))
+				.addOrder(Order.asc("id"))
+				.setMaxResults(EXPORT_PAGE_SIZE);
+			return this.dao.findByCriteria(criteria, clazz);
+		}, EXPORT_PAGE_SIZE, (page) -> {
+			for (T entity : page) {
+				detach.accept(entity);
+				this.gson.toJson(entity, clazz, writer);
+			}
+			writer.flush();
+			this.clearSession();
+		});
+		writer.endArray();
+		writer.flush();
 		zos.closeEntry();
+		zos.flush();
+		LOGGER.infof("%d %s exported.", total, clazz.getSimpleName());
+	}
+
+	/**
+	 * Percorre as entidades em páginas ordenadas pelo id: cada página começa
+	 * depois do último id da anterior, e a leitura termina na primeira página
+	 * incompleta. O último id é lido antes da página ser escrita.
+	 * 
+	 * @param loader   carrega a página de entidades com id maior que o informado
+	 * 
+	 * @param pageSize tamanho da página
+	 * 
+	 * @param writer   escreve cada página carregada
+	 * 
+	 * @return int número de entidades percorridas
+	 * 
+	 * @throws IOException
+	 *
+	 */
+	static <T extends SimpleEntity> int forEachPage(Function<Long, List<T>> loader, int pageSize,
+			PageWriter<T> writer) throws IOException {
+		Long lastId = 0L;
+		int total = 0;
+		List<T> page;
+		do {
+			page = loader.apply(lastId);
+			if (!page.isEmpty()) {
+				lastId = page.get(page.size() - 1).getId();
+			}
+			writer.write(page);
+			total += page.size();
+		} while (page.size() == pageSize);
+		return total;
+	}
+
+	@FunctionalInterface
+	interface PageWriter<T> {
+		void write(List<T> page) throws IOException;
+	}
+
+	private JsonWriter newJsonWriter(ZipOutputStream zos) {
+		JsonWriter writer = new JsonWriter(new OutputStreamWriter(zos, StandardCharsets.UTF_8));
+		writer.setIndent("  ");
+		return writer;
+	}
+
+	/**
+	 * Desanexa da sessão todas as entidades carregadas, descartando
+	 * alterações não gravadas.
+	 */
+	private void clearSession() {
+		this.dao.execute(Session::clear);
 	}
 
 	
@@ -4,6 +4,10 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Table;
 
+import org.forpdi.system.CacheRegions;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import br.com.caelum.vraptor.boilerplate.SimpleLogicalDeletableEntity;
 
 /**
@@ -12,6 +16,7 @@ import br.com.caelum.vraptor.boilerplate.SimpleLogicalDeletableEntity;
  */
 @Entity(name = Company.TABLE)
 @Table(name = Company.TABLE)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.COMPANY)
 public class Company extends SimpleLogicalDeletableEntity {
 	public static final String TABLE = "fpdi_company";
 	private static final long serialVersionUID = 1L;
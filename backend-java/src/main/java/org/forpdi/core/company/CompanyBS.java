@@ -27,15 +27,14 @@ public class CompanyBS extends HibernateBusiness {
 	private static final int PAGESIZE = 12;
 
 	/**
-	 * Recupera a instância do objeto CompanyDomain que está ativo no momento
+	 * Recupera a instância do objeto CompanyDomain que está ativo no momento,
+	 * a partir do cache de domínios por host.
 	 * 
 	 * @return Domínio ativo no momento
 	 */
 	public CompanyDomain currentDomain() {
 		try {
-		Criteria criteria = this.dao.newCriteria(CompanyDomain.class)
-				.add(Restrictions.eq("host", this.request.getHeader("Host")));
-			return (CompanyDomain) criteria.uniqueResult();
+			return CompanyCache.domain(this.request.getHeader("Host"), this::retrieveByHost);
 		}catch(NullPointerException ex) {
 			return null;
 		}
@@ -50,6 +49,10 @@ public class CompanyBS extends HibernateBusiness {
 	 * @return Domínio que utiliza o host epecificado
 	 */
 	public CompanyDomain retrieveByHost(String host) {
+		if (host == null) {
+			return null;
+		}
+		// guardado por CompanyCache, que chama esta consulta só na primeira vez
 		Criteria criteria = this.dao.newCriteria(CompanyDomain.class).add(Restrictions.eq("host", host));
 		return (CompanyDomain) criteria.uniqueResult();
 	}
@@ -0,0 +1,227 @@
+package org.forpdi.core.company;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Cache em memória dos domínios por host e do script do /environment de cada
+ * domínio. É esvaziado depois do commit de toda transação que insere, altera
+ * ou remove uma companhia, um domínio ou uma mensagem de companhia pelo
+ * Hibernate, e cada entrada expira depois de {@link #TTL} milissegundos.
+ *
+ * Apenas hosts com domínio são guardados, de forma que hosts arbitrários
+ * enviados nas requisições não ocupam o cache. Os domínios guardados ficam
+ * desanexados da sessão e são compartilhados entre as requisições: não devem
+ * ser alterados.
+ */
+public final class CompanyCache implements PostInsertEventListener, PostUpdateEventListener,
+		PostDeleteEventListener {
+	private static final long serialVersionUID = 1L;
+
+	/** Chave do script do /environment quando não há domínio. */
+	private static final long NO_DOMAIN = 0L;
+
+	/** Número máximo de entradas de cada cache. */
+	private static final int MAX_ENTRIES = 1000;
+
+	/** Tempo de vida de uma entrada, em milissegundos. */
+	private static final long TTL = TimeUnit.MINUTES.toMillis(10);
+
+	private static final Map<String, Entry<CompanyDomain>> DOMAINS = lru();
+	private static final Map<Long, Entry<Environment>> ENVIRONMENTS = lru();
+
+	/**
+	 * Incrementada a cada limpeza, para descartar valores carregados antes de
+	 * uma alteração e guardados depois dela.
+	 */
+	private static final AtomicLong GENERATION = new AtomicLong();
+
+	/** Valor guardado, com o momento em que expira. */
+	private static final class Entry<T> {
+		private final T value;
+		private final long expires;
+
+		private Entry(T value) {
+			this.value = value;
+			this.expires = System.currentTimeMillis() + TTL;
+		}
+
+		private boolean expired() {
+			return System.currentTimeMillis() > this.expires;
+		}
+	}
+
+	/** Script do /environment de um domínio, com a ETag do conteúdo. */
+	public static final class Environment {
+		private final String body;
+		private final String etag;
+
+		private Environment(String body) {
+			this.body = body;
+			this.etag = "\"" + md5(body) + "\"";
+		}
+
+		public String getBody() {
+			return body;
+		}
+
+		public String getEtag() {
+			return etag;
+		}
+	}
+
+	private static <K, T> Map<K, Entry<T>> lru() {
+		return Collections.synchronizedMap(new LinkedHashMap<K, Entry<T>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Entry<T>> eldest) {
+				return this.size() > MAX_ENTRIES;
+			}
+		});
+	}
+
+	private static <K, T> T get(Map<K, Entry<T>> cache, K key) {
+		Entry<T> entry = cache.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.expired()) {
+			cache.remove(key);
+			return null;
+		}
+		return entry.value;
+	}
+
+	private static <K, T> void put(Map<K, Entry<T>> cache, K key, T value, long generation) {
+		synchronized (cache) {
+			if (GENERATION.get() == generation) {
+				cache.put(key, new Entry<>(value));
+			}
+		}
+	}
+
+	/**
+	 * Recupera o domínio de um host, consultando o banco apenas na primeira
+	 * vez. Hosts sem domínio não são guardados.
+	 *
+	 * @param host
+	 *            Host da requisição.
+	 * @param loader
+	 *            Consulta do domínio pelo host.
+	 * @return CompanyDomain Domínio do host, ou null se não houver.
+	 */
+	public static CompanyDomain domain(String host, Function<String, CompanyDomain> loader) {
+		if (host == null) {
+			return null;
+		}
+		String key = host.trim().toLowerCase(Locale.ROOT);
+		CompanyDomain domain = get(DOMAINS, key);
+		if (domain == null) {
+			long generation = GENERATION.get();
+			domain = loader.apply(host);
+			if (domain != null) {
+				put(DOMAINS, key, domain, generation);
+			}
+		}
+		return domain;
+	}
+
+	/**
+	 * Recupera o script do /environment de um domínio, montando-o apenas na
+	 * primeira vez.
+	 *
+	 * @param domain
+	 *            Domínio da requisição, ou null.
+	 * @param builder
+	 *            Monta o script do domínio.
+	 * @return Environment Script e ETag.
+	 */
+	public static Environment environment(CompanyDomain domain, Supplier<String> builder) {
+		Long key = domain == null ? NO_DOMAIN : domain.getId();
+		Environment environment = get(ENVIRONMENTS, key);
+		if (environment == null) {
+			long generation = GENERATION.get();
+			environment = new Environment(builder.get());
+			put(ENVIRONMENTS, key, environment, generation);
+		}
+		return environment;
+	}
+
+	/** Descarta os domínios e scripts guardados. */
+	public static void clear() {
+		synchronized (DOMAINS) {
+			synchronized (ENVIRONMENTS) {
+				GENERATION.incrementAndGet();
+				DOMAINS.clear();
+				ENVIRONMENTS.clear();
+			}
+		}
+	}
+
+	private static void clear(EventSource session, Object entity) {
+		if (entity instanceof Company || entity instanceof CompanyDomain || entity instanceof CompanyMessage) {
+			// descarta já, para que a alteração valha na própria transação, e
+			// de novo depois do commit, quando as outras transações a enxergam
+			clear();
+			session.getActionQueue().registerProcess(new AfterTransactionCompletionProcess() {
+				@Override
+				public void doAfterTransactionCompletion(boolean success, SessionImplementor session) {
+					clear();
+				}
+			});
+		}
+	}
+
+	private static String md5(String text) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(text.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	@Override
+	public void onPostInsert(PostInsertEvent event) {
+		clear(event.getSession(), event.getEntity());
+	}
+
+	@Override
+	public void onPostUpdate(PostUpdateEvent event) {
+		clear(event.getSession(), event.getEntity());
+	}
+
+	@Override
+	public void onPostDelete(PostDeleteEvent event) {
+		clear(event.getSession(), event.getEntity());
+	}
+
+	public boolean requiresPostCommitHanding(EntityPersister persister) {
+		return false;
+	}
+}
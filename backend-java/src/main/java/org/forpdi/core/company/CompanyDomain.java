@@ -10,6 +10,10 @@ import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
+import org.forpdi.system.CacheRegions;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import br.com.caelum.vraptor.boilerplate.SimpleEntity;
 
 /**
@@ -18,6 +22,7 @@ import br.com.caelum.vraptor.boilerplate.SimpleEntity;
  */
 @Entity(name = CompanyDomain.TABLE)
 @Table(name = CompanyDomain.TABLE)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.COMPANY)
 public class CompanyDomain extends SimpleEntity {
 	public static final String TABLE = "fpdi_company_domain";
 	private static final long serialVersionUID = 1L;
@@ -25,4 +25,12 @@ public class CurrentDomainProducer {
 		}
 		return domain;
 	}
+
+	/**
+	 * Define o domínio atual quando não há uma requisição HTTP, como na
+	 * geração de relatórios em segundo plano.
+	 */
+	public void setInstance(CompanyDomain domain) {
+		this.domain = domain;
+	}
 }
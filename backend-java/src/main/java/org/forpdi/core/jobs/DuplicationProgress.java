@@ -0,0 +1,163 @@
+package org.forpdi.core.jobs;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.UniqueConstraint;
+
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+
+import br.com.caelum.vraptor.boilerplate.HibernateDAO;
+import br.com.caelum.vraptor.boilerplate.SimpleEntity;
+
+/**
+ * Andamento gravado de uma duplicação feita em segundo plano. A fila das
+ * duplicações fica na memória, então uma duplicação gravada como não
+ * concluída e que não está mais na memória foi perdida em um reinício da
+ * aplicação, e é informada como falha.
+ */
+@Entity(name = DuplicationProgress.TABLE)
+@Table(name = DuplicationProgress.TABLE, uniqueConstraints = {
+	@UniqueConstraint(columnNames = { "type", "target" })
+})
+public class DuplicationProgress extends SimpleEntity {
+	public static final String TABLE = "fpdi_duplication_progress";
+	private static final long serialVersionUID = 1L;
+
+	/** Andamento de uma duplicação que falhou ou foi perdida. */
+	public static final int FAILED = -2;
+
+	/** Andamento de uma duplicação concluída. */
+	public static final int DONE = 100;
+
+	/** Tipos de duplicação. */
+	public static enum Type {
+		/** Plano macro, pelo id do plano macro criado. */
+		PLAN_MACRO,
+		/** Unidades de risco, pelo id do plano de risco de destino. */
+		UNITS;
+	}
+
+	private static final String UPSERT = "INSERT INTO " + TABLE + " (type, target, progress, updated)"
+			+ " VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE progress = VALUES(progress), updated = VALUES(updated)";
+	private static final String DELETE = "DELETE FROM " + TABLE + " WHERE type = ? AND target = ?";
+
+	@Enumerated(EnumType.STRING)
+	@Column(nullable = false, length = 20)
+	private Type type;
+
+	/** Id do registro que recebe a cópia. */
+	@Column(nullable = false)
+	private Long target;
+
+	/** Andamento, de 0 a {@link #DONE}, ou {@link #FAILED}. */
+	@Column(nullable = false)
+	private int progress;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(nullable = false)
+	private Date updated;
+
+	/**
+	 * Grava o andamento de uma duplicação.
+	 *
+	 * @param connection
+	 *            Conexão, na transação que deve gravar o andamento.
+	 */
+	public static void save(Connection connection, Type type, Long target, int progress) throws SQLException {
+		try (PreparedStatement stmt = connection.prepareStatement(UPSERT)) {
+			stmt.setString(1, type.name());
+			stmt.setLong(2, target);
+			stmt.setInt(3, progress);
+			stmt.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+			stmt.executeUpdate();
+		}
+	}
+
+	/**
+	 * Grava o andamento de uma duplicação, em uma transação própria.
+	 */
+	public static void save(HibernateDAO dao, Type type, Long target, int progress) {
+		dao.execute((session) -> {
+			session.doWork((connection) -> save(connection, type, target, progress));
+		});
+	}
+
+	/**
+	 * @return Integer Andamento gravado, ou null se não há duplicação
+	 *         gravada.
+	 */
+	public static Integer load(HibernateDAO dao, Type type, Long target) {
+		return (Integer) dao.newCriteria(DuplicationProgress.class)
+				.add(Restrictions.eq("type", type))
+				.add(Restrictions.eq("target", target))
+				.setProjection(Projections.property("progress"))
+				.uniqueResult();
+	}
+
+	/**
+	 * Remove o andamento gravado de uma duplicação.
+	 */
+	public static void delete(HibernateDAO dao, Type type, Long target) {
+		dao.execute((session) -> {
+			session.doWork((connection) -> {
+				try (PreparedStatement stmt = connection.prepareStatement(DELETE)) {
+					stmt.setString(1, type.name());
+					stmt.setLong(2, target);
+					stmt.executeUpdate();
+				}
+			});
+		});
+	}
+
+	/**
+	 * Se um andamento gravado é de uma duplicação que não terminou. Se ela
+	 * também não está na memória, foi perdida.
+	 */
+	public static boolean unfinished(Integer progress) {
+		return progress != null && progress >= 0 && progress < DONE;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public void setType(Type type) {
+		this.type = type;
+	}
+
+	public Long getTarget() {
+		return target;
+	}
+
+	public void setTarget(Long target) {
+		this.target = target;
+	}
+
+	public int getProgress() {
+		return progress;
+	}
+
+	public void setProgress(int progress) {
+		this.progress = progress;
+	}
+
+	public Date getUpdated() {
+		return updated;
+	}
+
+	public void setUpdated(Date updated) {
+		this.updated = updated;
+	}
+}
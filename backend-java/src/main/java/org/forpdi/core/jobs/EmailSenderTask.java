@@ -1,70 +1,375 @@
 package org.forpdi.core.jobs;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.spi.CDI;
 
-import org.apache.commons.mail.EmailException;
-import org.forpdi.system.EmailUtilsPlugin;
+import org.forpdi.core.properties.SystemConfigs;
+import org.forpdi.system.SmtpSender;
+import org.hibernate.Criteria;
+import org.hibernate.LockMode;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
 import org.jboss.logging.Logger;
 
+import br.com.caelum.vraptor.boilerplate.HibernateDAO;
+import br.com.caelum.vraptor.boilerplate.factory.SessionManager;
 import br.com.caelum.vraptor.tasks.Task;
 import br.com.caelum.vraptor.tasks.scheduler.Scheduled;
 
 /**
- * Tarefa que é executada a cada minuto, para verificar se existe algum e-mail
- * pendente para ser enviado.
- * 
+ * Tarefa que envia os e-mails da caixa de saída ({@link OutboxEmail}).
+ *
+ * Os e-mails são gravados no banco ao serem adicionados e, a cada execução,
+ * os pendentes são reservados e divididos entre algumas threads de envio.
+ * Cada thread mantém a sua conexão SMTP aberta durante a execução, e o total
+ * de envios por segundo é limitado. Envios com falha são repetidos com
+ * intervalos crescentes, até esgotar as tentativas.
+ *
+ * Configurações: email.workers (threads de envio), email.rate (e-mails por
+ * segundo), email.batch (e-mails por thread a cada execução) e
+ * email.attempts (tentativas por e-mail).
+ *
  * @author Pedro Mutter
  *
- * 
+ *
  */
 @ApplicationScoped
-@Scheduled(fixedRate = 60000)
+@Scheduled(fixedRate = 10000, concurrent = false)
 public class EmailSenderTask implements Task {
 
 	public static Logger LOG = Logger.getLogger(EmailSenderTask.class);
-	private Queue<NotificationEmail> queue;
 
-	public EmailSenderTask() {
-		this.queue = new LinkedList<>();
+	/** Tempo de reserva dos e-mails de uma execução, até serem enviados. */
+	private static final long LEASE = TimeUnit.MINUTES.toMillis(5);
+	/** Intervalo antes da primeira nova tentativa, dobrado a cada falha. */
+	static final long RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+	static final long MAX_RETRY_DELAY = TimeUnit.HOURS.toMillis(6);
+	static final int ERROR_LENGTH = 1000;
+
+	private final AtomicLong sentCount = new AtomicLong();
+	private final AtomicLong failureCount = new AtomicLong();
+	private final AtomicLong latencyTotal = new AtomicLong();
+	private final AtomicLong latencyMax = new AtomicLong();
+	private volatile long queueDepth;
+
+	private final Object rateLock = new Object();
+	private long nextSlot;
+
+	private ThreadPoolExecutor executor;
+	private int workers;
+	private int batch;
+	private int attempts;
+	private long interval;
+
+	@PostConstruct
+	public void initialize() {
+		this.configure(intConfig("email.workers", 2), intConfig("email.batch", 100), intConfig("email.attempts", 8),
+				intConfig("email.rate", 10));
 	}
 
 	/**
-	 * Retorna a fila de e-mails pendentes à ser enviados.
-	 * 
-	 * @return queue, fila de e-mails.
+	 * Configura o envio e cria as threads de envio.
+	 *
+	 * @param workers
+	 *            Threads de envio.
+	 * @param batch
+	 *            E-mails por thread a cada execução.
+	 * @param attempts
+	 *            Tentativas por e-mail.
+	 * @param rate
+	 *            E-mails por segundo.
 	 */
-	public Queue<NotificationEmail> getQueue() {
-		return queue;
+	void configure(int workers, int batch, int attempts, int rate) {
+		this.workers = workers;
+		this.batch = batch;
+		this.attempts = attempts;
+		this.interval = TimeUnit.SECONDS.toNanos(1) / rate;
+		final AtomicInteger count = new AtomicInteger();
+		final ThreadFactory factory = (runnable) -> {
+			Thread thread = new Thread(runnable, "forpdi-email-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		this.executor = new ThreadPoolExecutor(this.workers, this.workers, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(), factory);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		this.executor.shutdownNow();
 	}
 
 	/**
-	 * Adiciona um e-mail à fila, para ser enviado na próxima vez que a tarefa
-	 * for executada.
-	 * 
+	 * Adiciona um e-mail à caixa de saída, para ser enviado na próxima vez
+	 * que a tarefa for executada.
+	 *
 	 * @param email
 	 */
-	public synchronized void add(NotificationEmail email) {
-		queue.add(email);
+	public void add(NotificationEmail email) {
+		this.addAll(Collections.singletonList(email));
+	}
+
+	/**
+	 * Adiciona e-mails à caixa de saída em uma única transação.
+	 *
+	 * @param emails
+	 */
+	public void addAll(Collection<NotificationEmail> emails) {
+		if (emails.isEmpty()) {
+			return;
+		}
+		SessionManager mngr = this.sessionManager();
+		try {
+			new HibernateDAO(mngr).execute((session) -> {
+				for (NotificationEmail email : emails) {
+					session.save(new OutboxEmail(email));
+				}
+			});
+		} finally {
+			mngr.closeSession();
+		}
+	}
+
+	/** Número de e-mails pendentes na última execução. */
+	public long getQueueDepth() {
+		return queueDepth;
+	}
+
+	/** Número de e-mails enviados desde o início da aplicação. */
+	public long getSentCount() {
+		return sentCount.get();
+	}
+
+	/** Número de envios com falha desde o início da aplicação. */
+	public long getFailureCount() {
+		return failureCount.get();
+	}
+
+	/** Tempo médio de envio de um e-mail, em milissegundos. */
+	public long getAverageLatency() {
+		long sent = this.sentCount.get();
+		return sent == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(this.latencyTotal.get() / sent);
+	}
+
+	/** Maior tempo de envio de um e-mail, em milissegundos. */
+	public long getMaxLatency() {
+		return TimeUnit.NANOSECONDS.toMillis(this.latencyMax.get());
 	}
 
 	/**
-	 * Método que é executado a cada minuto, verificando se existe e-mail na
-	 * fila e os enviando.
+	 * Reserva os e-mails pendentes e os envia.
 	 */
 	@Override
 	public void execute() {
-		LOG.infof("Executando envio de %d emails...", this.queue.size());
-		while (!this.queue.isEmpty()) {
+		SessionManager mngr = this.sessionManager();
+		HibernateDAO dao = new HibernateDAO(mngr);
+		try {
+			List<OutboxEmail> claimed = this.claim(dao);
+			if (claimed.isEmpty()) {
+				return;
+			}
+			LOG.infof("Executando envio de %d de %d emails pendentes...", claimed.size(), this.queueDepth);
+
+			this.sendAll(claimed, SmtpSender::fromConfig);
+
+			dao.execute((session) -> {
+				for (OutboxEmail email : claimed) {
+					session.update(email);
+				}
+			});
+			LOG.infof("Envio concluído: %d enviados, %d falhas, %d ms em média por e-mail.", this.sentCount.get(),
+					this.failureCount.get(), this.getAverageLatency());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (Throwable ex) {
+			LOG.error("Falha ao enviar e-mails.", ex);
+		} finally {
+			mngr.closeSession();
+		}
+	}
+
+	/**
+	 * Reserva os e-mails pendentes, adiando a próxima tentativa de cada um
+	 * para que não sejam enviados também por outra instância da aplicação.
+	 */
+	private List<OutboxEmail> claim(HibernateDAO dao) {
+		final Date now = new Date();
+		final List<OutboxEmail> claimed = new ArrayList<>();
+		dao.execute((session) -> {
+			Criteria criteria = session.createCriteria(OutboxEmail.class)
+				.add(Restrictions.isNull("sent"))
+				.add(Restrictions.eq("failed", false))
+				.add(Restrictions.le("nextAttempt", now))
+				.addOrder(Order.asc("nextAttempt"))
+				.setMaxResults(this.batch * this.workers)
+				.setLockMode(LockMode.PESSIMISTIC_WRITE);
+			for (Object email : criteria.list()) {
+				claimed.add((OutboxEmail) email);
+			}
+			Date lease = new Date(now.getTime() + LEASE);
+			for (OutboxEmail email : claimed) {
+				email.setNextAttempt(lease);
+			}
+		});
+		Criteria count = dao.newCriteria(OutboxEmail.class)
+			.add(Restrictions.isNull("sent"))
+			.add(Restrictions.eq("failed", false))
+			.setProjection(Projections.rowCount());
+		this.queueDepth = (Long) count.uniqueResult();
+		return claimed;
+	}
+
+	/**
+	 * Divide os e-mails reservados entre as threads de envio e aguarda o fim
+	 * dos envios. O resultado de cada envio fica no próprio e-mail.
+	 *
+	 * @param claimed
+	 *            E-mails reservados.
+	 * @param senders
+	 *            Cria a conexão de cada thread.
+	 * @throws InterruptedException
+	 */
+	void sendAll(List<OutboxEmail> claimed, Supplier<SmtpSender> senders) throws InterruptedException {
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (List<OutboxEmail> part : partition(claimed, this.workers)) {
+			tasks.add(() -> {
+				try (SmtpSender sender = senders.get()) {
+					this.send(part, sender);
+				}
+				return null;
+			});
+		}
+		this.executor.invokeAll(tasks);
+	}
+
+	/**
+	 * Divide os e-mails entre as threads de envio, alternando entre elas.
+	 */
+	static List<List<OutboxEmail>> partition(List<OutboxEmail> emails, int workers) {
+		List<List<OutboxEmail>> parts = new ArrayList<>();
+		for (int w = 0; w < workers && w < emails.size(); w++) {
+			List<OutboxEmail> part = new ArrayList<>();
+			for (int i = w; i < emails.size(); i += workers) {
+				part.add(emails.get(i));
+			}
+			parts.add(part);
+		}
+		return parts;
+	}
+
+	/**
+	 * Envia uma parte dos e-mails reservados por uma mesma conexão.
+	 */
+	private void send(List<OutboxEmail> emails, SmtpSender sender) throws InterruptedException {
+		for (OutboxEmail email : emails) {
+			this.acquire();
+			long start = System.nanoTime();
 			try {
-				NotificationEmail email = this.queue.poll();
-				EmailUtilsPlugin.sendHtmlEmail(email.getEmail(), email.getName(), email.getSubject(), email.getBody(), email.getAttach());
-			} catch (EmailException e) {
-				LOG.error("Falha ao enviar e-mail.", e);
+				sender.send(email.getEmail(), email.getName(), email.getSubject(), email.getBody(),
+						email.getAttach());
+				long latency = System.nanoTime() - start;
+				this.latencyTotal.addAndGet(latency);
+				this.latencyMax.accumulateAndGet(latency, Math::max);
+				this.sentCount.incrementAndGet();
+				email.setSent(new Date());
+				email.setAttempts(email.getAttempts() + 1);
+				email.setLastError(null);
+			} catch (Exception ex) {
+				this.failureCount.incrementAndGet();
+				String error = String.valueOf(ex.getMessage());
+				if (failed(email, error, this.attempts, System.currentTimeMillis())) {
+					LOG.errorf(ex, "Falha ao enviar e-mail para %s, tentativas esgotadas.", email.getEmail());
+				} else {
+					LOG.warnf("Falha ao enviar e-mail para %s (tentativa %d): %s", email.getEmail(),
+							email.getAttempts(), error);
+				}
 			}
 		}
 	}
 
+	/**
+	 * Registra uma falha de envio: agenda a próxima tentativa ou, se as
+	 * tentativas se esgotaram, marca o e-mail como falho.
+	 *
+	 * @param email
+	 *            E-mail não enviado.
+	 * @param error
+	 *            Mensagem do erro.
+	 * @param attempts
+	 *            Número máximo de tentativas.
+	 * @param now
+	 *            Momento da falha, em milissegundos.
+	 * @return boolean Se as tentativas se esgotaram.
+	 */
+	static boolean failed(OutboxEmail email, String error, int attempts, long now) {
+		int attempt = email.getAttempts() + 1;
+		email.setAttempts(attempt);
+		email.setLastError(error.length() > ERROR_LENGTH ? error.substring(0, ERROR_LENGTH) : error);
+		if (attempt >= attempts) {
+			email.setFailed(true);
+			return true;
+		}
+		email.setNextAttempt(new Date(now + retryDelay(attempt)));
+		return false;
+	}
+
+	/**
+	 * Intervalo até a próxima tentativa depois de uma falha: dobra a cada
+	 * falha, a partir de {@link #RETRY_DELAY}, até {@link #MAX_RETRY_DELAY}.
+	 *
+	 * @param attempt
+	 *            Número de tentativas já feitas, a partir de 1.
+	 * @return long Intervalo, em milissegundos.
+	 */
+	static long retryDelay(int attempt) {
+		return Math.min(RETRY_DELAY << Math.min(attempt - 1, 20), MAX_RETRY_DELAY);
+	}
+
+	/**
+	 * Aguarda o próximo horário de envio permitido pelo limite de e-mails por
+	 * segundo, compartilhado pelas threads de envio.
+	 */
+	private void acquire() throws InterruptedException {
+		long wait;
+		synchronized (this.rateLock) {
+			long now = System.nanoTime();
+			long slot = Math.max(now, this.nextSlot);
+			this.nextSlot = slot + this.interval;
+			wait = slot - now;
+		}
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	private SessionManager sessionManager() {
+		SessionFactory factory = CDI.current().select(SessionFactory.class).get();
+		return new SessionManager(factory);
+	}
+
+	private static int intConfig(String key, int defaultValue) {
+		try {
+			return Math.max(1, Integer.parseInt(SystemConfigs.getConfig(key).trim()));
+		} catch (RuntimeException ex) {
+			return defaultValue;
+		}
+	}
 }
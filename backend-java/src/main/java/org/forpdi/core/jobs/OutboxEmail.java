@@ -0,0 +1,161 @@
+package org.forpdi.core.jobs;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import br.com.caelum.vraptor.boilerplate.SimpleEntity;
+
+/**
+ * E-mail na caixa de saída, aguardando envio por {@link EmailSenderTask}.
+ * Um e-mail está pendente enquanto não tiver data de envio nem tiver
+ * esgotado as tentativas.
+ */
+@Entity(name = OutboxEmail.TABLE)
+@Table(name = OutboxEmail.TABLE, indexes = {
+	@Index(columnList = "sent,failed,nextAttempt")
+})
+public class OutboxEmail extends SimpleEntity {
+	public static final String TABLE = "fpdi_email_outbox";
+	private static final long serialVersionUID = 1L;
+
+	@Column(nullable = false, length = 255)
+	private String email;
+
+	@Column(nullable = true, length = 255)
+	private String name;
+
+	@Column(nullable = false, length = 255)
+	private String subject;
+
+	@Column(nullable = true, columnDefinition = "longtext")
+	private String body;
+
+	@Column(nullable = true, length = 255)
+	private String attach;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(nullable = false)
+	private Date creation = new Date();
+
+	/** Data a partir da qual o e-mail pode ser enviado ou reenviado. */
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(nullable = false)
+	private Date nextAttempt = new Date();
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(nullable = true)
+	private Date sent;
+
+	private int attempts = 0;
+
+	/** Se as tentativas de envio se esgotaram. */
+	private boolean failed = false;
+
+	@Column(nullable = true, length = 1000)
+	private String lastError;
+
+	public OutboxEmail() {
+	}
+
+	public OutboxEmail(NotificationEmail email) {
+		this.email = email.getEmail();
+		this.name = email.getName();
+		this.subject = email.getSubject();
+		this.body = email.getBody();
+		this.attach = email.getAttach();
+	}
+
+	public String getEmail() {
+		return email;
+	}
+
+	public void setEmail(String email) {
+		this.email = email;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getSubject() {
+		return subject;
+	}
+
+	public void setSubject(String subject) {
+		this.subject = subject;
+	}
+
+	public String getBody() {
+		return body;
+	}
+
+	public void setBody(String body) {
+		this.body = body;
+	}
+
+	public String getAttach() {
+		return attach;
+	}
+
+	public void setAttach(String attach) {
+		this.attach = attach;
+	}
+
+	public Date getCreation() {
+		return creation;
+	}
+
+	public void setCreation(Date creation) {
+		this.creation = creation;
+	}
+
+	public Date getNextAttempt() {
+		return nextAttempt;
+	}
+
+	public void setNextAttempt(Date nextAttempt) {
+		this.nextAttempt = nextAttempt;
+	}
+
+	public Date getSent() {
+		return sent;
+	}
+
+	public void setSent(Date sent) {
+		this.sent = sent;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	public boolean isFailed() {
+		return failed;
+	}
+
+	public void setFailed(boolean failed) {
+		this.failed = failed;
+	}
+
+	public String getLastError() {
+		return lastError;
+	}
+
+	public void setLastError(String lastError) {
+		this.lastError = lastError;
+	}
+}
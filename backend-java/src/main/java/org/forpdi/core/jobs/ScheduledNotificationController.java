@@ -1,8 +1,12 @@
 package org.forpdi.core.jobs;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 
@@ -14,16 +18,15 @@ import org.forpdi.core.event.Current;
 import org.forpdi.core.notification.NotificationBS;
 import org.forpdi.core.notification.NotificationSetting;
 import org.forpdi.core.notification.NotificationType;
+import org.forpdi.core.notification.PendingNotification;
 import org.forpdi.core.user.User;
 import org.forpdi.core.user.UserBS;
-import org.forpdi.planning.attribute.AttributeInstance;
 import org.forpdi.planning.fields.FieldsBS;
 import org.forpdi.planning.fields.actionplan.ActionPlan;
 import org.forpdi.planning.plan.Plan;
 import org.forpdi.planning.plan.PlanBS;
 import org.forpdi.planning.plan.PlanMacro;
 import org.forpdi.planning.structure.StructureBS;
-import org.forpdi.planning.structure.StructureLevelInstance;
 import org.quartz.SchedulerException;
 
 import br.com.caelum.vraptor.Controller;
@@ -68,99 +71,54 @@ public class ScheduledNotificationController extends AbstractController {
 	@Scheduled(concurrent = false, cron = "0 0 13 * * ?")
 	public void inspectGoalsMaturity() throws SchedulerException {
 		try {
-			PaginatedList<StructureLevelInstance> goals = this.sbs.listGoals();
-			for (StructureLevelInstance goal : goals.getList()) {
-				if (goal.isClosed())
-					continue;
-				long idMacro = goal.getPlan().getParent().getId();
-				List<AttributeInstance> attrList = this.sbs.listAttributeInstanceByLevel(goal,false);
-				for (AttributeInstance attr : attrList) {
-					if (attr.getAttribute().isFinishDate()) {
-						Calendar calendar = Calendar.getInstance();
-						calendar.setTime(new Date());
-						calendar.add(Calendar.DAY_OF_MONTH, 5);
+			Date now = new Date();
+			Date dueStart = DateUtils.truncate(DateUtils.addDays(now, 5), Calendar.DAY_OF_MONTH);
+			Date dueEnd = DateUtils.addDays(dueStart, 1);
+			List<Object[]> goals = this.sbs.listGoalsForMaturityInspection(this.domain.getCompany(), dueStart,
+					dueEnd, now);
+			if (goals.isEmpty())
+				return;
 
-						String url = domain.getBaseUrl() + "/#/plan/" + idMacro + "/details/subplan/level/"
-								+ goal.getId();
-						if (DateUtils.isSameDay(calendar.getTime(), attr.getValueAsDate())) {
-							User responsible = this.ubs.retrieveResponsible(goal);
-							CompanyUser companyUser = this.ubs.retrieveCompanyUser(responsible,
-									this.domain.getCompany());
-							if (companyUser.getNotificationSetting() == NotificationSetting.DEFAULT.getSetting()
-									|| companyUser.getNotificationSetting() == NotificationSetting.RECEIVE_ALL_BY_EMAIL
-											.getSetting()) {
-								this.bs.sendNotification(NotificationType.GOAL_CLOSE_TO_MATURITY, goal.getName(), "",
-										responsible.getId(), url);
-								this.bs.sendNotificationEmail(NotificationType.GOAL_CLOSE_TO_MATURITY, goal.getName(),
-										"", responsible, url);
-							} else if (companyUser.getNotificationSetting() == NotificationSetting.DO_NOT_RECEIVE_EMAIL
-									.getSetting()) {
-								this.bs.sendNotification(NotificationType.GOAL_CLOSE_TO_MATURITY, goal.getName(), "",
-										responsible.getId(), url);
-							}
-							StructureLevelInstance parent = this.sbs.retrieveLevelInstance(goal.getParent());
-							User parentResp = this.ubs.retrieveResponsible(parent);
+			Set<Long> levelIds = new HashSet<>();
+			for (Object[] goal : goals) {
+				levelIds.add((Long) goal[0]);
+				if (goal[2] != null)
+					levelIds.add((Long) goal[2]);
+			}
+			Map<Long, User> responsibles = this.ubs.mapResponsiblesByLevelInstances(levelIds);
+			Set<Long> userIds = new HashSet<>();
+			for (User user : responsibles.values()) {
+				userIds.add(user.getId());
+			}
+			Map<Long, Integer> settings = this.ubs.mapNotificationSettings(userIds, this.domain.getCompany());
+			Set<Long> parentIds = new HashSet<>();
+			for (Object[] goal : goals) {
+				if (goal[2] != null)
+					parentIds.add((Long) goal[2]);
+			}
+			Map<Long, String> parentNames = this.sbs.mapLevelInstanceNames(parentIds);
 
-							if (responsible.getId() != parentResp.getId()) {
-								if (companyUser.getNotificationSetting() == NotificationSetting.DEFAULT.getSetting()
-										|| companyUser
-												.getNotificationSetting() == NotificationSetting.RECEIVE_ALL_BY_EMAIL
-														.getSetting()) {
-									this.bs.sendNotification(NotificationType.GOAL_CLOSE_TO_MATURITY, goal.getName(),
-											parent.getName(), parentResp.getId(), url);
-									this.bs.sendNotificationEmail(NotificationType.GOAL_CLOSE_TO_MATURITY,
-											goal.getName(), parent.getName(), parentResp, url);
-								} else if (companyUser
-										.getNotificationSetting() == NotificationSetting.DO_NOT_RECEIVE_EMAIL
-												.getSetting()) {
-									this.bs.sendNotification(NotificationType.GOAL_CLOSE_TO_MATURITY, goal.getName(),
-											parent.getName(), parentResp.getId(), url);
-								}
-							}
-						} else {
-							Date today = new Date();
-							if (today.after(attr.getValueAsDate())) {
-								User responsible = this.ubs.retrieveResponsible(goal);
-								CompanyUser companyUser = this.ubs.retrieveCompanyUser(responsible,
-										this.domain.getCompany());
-								if (companyUser.getNotificationSetting() == NotificationSetting.DEFAULT.getSetting()
-										|| companyUser
-												.getNotificationSetting() == NotificationSetting.RECEIVE_ALL_BY_EMAIL
-														.getSetting()) {
-									this.bs.sendNotification(NotificationType.LATE_GOAL, goal.getName(), "",
-											responsible.getId(), url);
-									this.bs.sendNotificationEmail(NotificationType.LATE_GOAL, goal.getName(), "",
-											responsible, url);
-								} else if (companyUser
-										.getNotificationSetting() == NotificationSetting.DO_NOT_RECEIVE_EMAIL
-												.getSetting()) {
-									this.bs.sendNotification(NotificationType.LATE_GOAL, goal.getName(), "",
-											responsible.getId(), url);
-								}
-								StructureLevelInstance parent = this.sbs.retrieveLevelInstance(goal.getParent());
-								User parentResp = this.ubs.retrieveResponsible(parent);
-								companyUser = this.ubs.retrieveCompanyUser(parentResp,this.domain.getCompany());
-								if (responsible.getId() != parentResp.getId()) {
-									if (companyUser.getNotificationSetting() == NotificationSetting.DEFAULT.getSetting()
-											|| companyUser
-													.getNotificationSetting() == NotificationSetting.RECEIVE_ALL_BY_EMAIL
-															.getSetting()) {
-										this.bs.sendNotification(NotificationType.LATE_GOAL, goal.getName(),
-												parent.getName(), parentResp.getId(), url);
-										this.bs.sendNotificationEmail(NotificationType.LATE_GOAL, goal.getName(),
-												parent.getName(), parentResp, url);
-									} else if (companyUser
-											.getNotificationSetting() == NotificationSetting.DO_NOT_RECEIVE_EMAIL
-													.getSetting()) {
-										this.bs.sendNotification(NotificationType.LATE_GOAL, goal.getName(),
-												parent.getName(), parentResp.getId(), url);
-									}
-								}
-							}
-						}
-					}
+			List<PendingNotification> closeToMaturity = new ArrayList<>();
+			List<PendingNotification> late = new ArrayList<>();
+			for (Object[] goal : goals) {
+				Long goalId = (Long) goal[0];
+				String goalName = (String) goal[1];
+				Long parentId = (Long) goal[2];
+				Date finish = (Date) goal[4];
+				List<PendingNotification> target = finish.before(now) ? late : closeToMaturity;
+				String url = domain.getBaseUrl() + "/#/plan/" + goal[3] + "/details/subplan/level/" + goalId;
+
+				User responsible = responsibles.get(goalId);
+				if (responsible != null) {
+					this.addPending(target, goalName, "", responsible, url, settings);
+				}
+				User parentResp = parentId == null ? null : responsibles.get(parentId);
+				if (parentResp != null && (responsible == null || !responsible.getId().equals(parentResp.getId()))) {
+					this.addPending(target, goalName, parentNames.get(parentId), parentResp, url, settings);
 				}
 			}
+			this.bs.sendNotificationBatch(NotificationType.GOAL_CLOSE_TO_MATURITY, closeToMaturity);
+			this.bs.sendNotificationBatch(NotificationType.LATE_GOAL, late);
 		} catch (Throwable ex) {
 			LOGGER.error("Unexpected runtime error", ex);
 		} finally {
@@ -168,6 +126,22 @@ public class ScheduledNotificationController extends AbstractController {
 		}
 	}
 
+	/**
+	 * Adiciona a notificação de uma meta para um usuário da instituição, com
+	 * envio por e-mail de acordo com a configuração de notificações dele.
+	 */
+	private void addPending(List<PendingNotification> target, String text, String aux, User user, String url,
+			Map<Long, Integer> settings) {
+		Integer setting = settings.get(user.getId());
+		if (setting == null)
+			return;
+		boolean email = setting == NotificationSetting.DEFAULT.getSetting()
+				|| setting == NotificationSetting.RECEIVE_ALL_BY_EMAIL.getSetting();
+		if (email || setting == NotificationSetting.DO_NOT_RECEIVE_EMAIL.getSetting()) {
+			target.add(new PendingNotification(text, aux, user, url, email));
+		}
+	}
+
 	/**
 	 * Tarefa que verifica se os planos de metas estão próximas a vencer, se
 	 * sim, uma notificação é enviado aos usuários pertencentes à instituição do
@@ -5,6 +5,7 @@ import java.util.Date;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
@@ -21,7 +22,9 @@ import br.com.caelum.vraptor.boilerplate.SimpleLogicalDeletableEntity;
 	 * 
 	 */
 	@Entity(name = Notification.TABLE)
-	@Table(name = Notification.TABLE)
+	@Table(name = Notification.TABLE, indexes = {
+		@Index(columnList = "user_id,company_id,vizualized")
+	})
 	public class Notification extends SimpleLogicalDeletableEntity {
 		public static final String TABLE = "fpdi_notification";
 		private static final long serialVersionUID = 1L;
@@ -1,5 +1,8 @@
 package org.forpdi.core.notification;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -39,6 +42,18 @@ import br.com.caelum.vraptor.boilerplate.bean.PaginatedList;
 @RequestScoped
 public class NotificationBS extends HibernateBusiness {
 
+	/** Quantidade de notificações inseridas por lote. */
+	private static final int BATCH_SIZE = 500;
+
+	private static final String INSERT_NOTIFICATION = "INSERT INTO " + Notification.TABLE
+			+ " (deleted, picture, description, creation, user_id, company_id, vizualized, onlyEmail, type, url)"
+			+ " VALUES (0, ?, ?, ?, ?, ?, 0, ?, ?, ?)";
+
+	private static final String INSERT_COMPANY_NOTIFICATION = "INSERT INTO " + Notification.TABLE
+			+ " (deleted, picture, description, creation, user_id, company_id, vizualized, onlyEmail, type, url)"
+			+ " SELECT 0, ?, ?, ?, cu.user_id, cu.company_id, 0, ?, ?, ?"
+			+ " FROM " + CompanyUser.TABLE + " cu WHERE cu.company_id = ? AND cu.blocked = 0";
+
 	@Inject
 	@Current
 	private CompanyDomain domain;
@@ -62,14 +77,6 @@ public class NotificationBS extends HibernateBusiness {
 	 *            Id do usuário para receber a notificação.
 	 */
 	public void sendNotification(NotificationType type, String text, String aux, Long userId, String url) {
-		PaginatedList<User> users = new PaginatedList<User>();
-		users.setList(new ArrayList<User>());
-		if (userId != null) {
-			User user = this.userBS.existsByUser(userId);
-			users.getList().add(user);
-		} else {
-			users = this.userBS.listUsersByCompany();
-		}
 		url = url.replaceAll("//#", "/#");
 		Notification notification = new Notification();
 		notification.setPicture(type.getImageUrl());
@@ -78,19 +85,41 @@ public class NotificationBS extends HibernateBusiness {
 		notification.setOnlyEmail(type.isOnlyEmail());
 		notification.setUrl(url);
 		this.setDescriptionForNotification(notification, type, text, aux);
-		for (User user : users.getList()) {
-			Notification not = new Notification();
-			not.setPicture(notification.getPicture());
-			not.setCompany(notification.getCompany());
-			not.setType(notification.getType());
-			not.setOnlyEmail(notification.isOnlyEmail());
-			not.setDescription(notification.getDescription());
-			not.setUrl(notification.getUrl());
-			not.setUser(user);
-			this.persist(not);
+		if (userId != null) {
+			notification.setUser(this.userBS.existsByUser(userId));
+			this.persist(notification);
+		} else {
+			this.sendCompanyNotification(notification);
 		}
 	}
 
+	/**
+	 * Envia uma notificação para todos os usuários não bloqueados da
+	 * instituição, com um único INSERT ... SELECT.
+	 * 
+	 * @param notification
+	 *            Notificação, sem usuário.
+	 */
+	private void sendCompanyNotification(Notification notification) {
+		final Long companyId = notification.getCompany().getId();
+		final Timestamp now = new Timestamp(System.currentTimeMillis());
+		this.dao.execute((session) -> {
+			session.doWork((connection) -> {
+				try (PreparedStatement stmt = connection.prepareStatement(INSERT_COMPANY_NOTIFICATION)) {
+					stmt.setString(1, notification.getPicture());
+					stmt.setString(2, notification.getDescription());
+					stmt.setTimestamp(3, now);
+					stmt.setBoolean(4, notification.isOnlyEmail());
+					stmt.setInt(5, notification.getType());
+					stmt.setString(6, notification.getUrl());
+					stmt.setLong(7, companyId);
+					stmt.executeUpdate();
+				}
+			});
+			NotificationCounter.evictAfterCommit(session, null, companyId);
+		});
+	}
+
 	/**
 	 * Enviar notificação do sistema para o email do usuário.
 	 * 
@@ -223,6 +252,74 @@ public class NotificationBS extends HibernateBusiness {
 				new NotificationEmail(user.getEmail(), user.getName(), builder.getSubject(), builder.getBody(), null));
 	}
 
+	/**
+	 * Salvar em lote notificações de um mesmo tipo para vários usuários. As
+	 * notificações são inseridas em lotes JDBC e os e-mails das que pedem
+	 * envio por e-mail são colocados na fila de envio.
+	 * 
+	 * @param type
+	 *            Tipo das notificações.
+	 * @param pending
+	 *            Notificações a serem enviadas.
+	 */
+	public void sendNotificationBatch(NotificationType type, List<PendingNotification> pending) {
+		if (pending.isEmpty()) {
+			return;
+		}
+		final Timestamp now = new Timestamp(System.currentTimeMillis());
+		final Long companyId = this.domain.getCompany().getId();
+		final List<NotificationEmail> emails = new ArrayList<>();
+		this.dao.execute((session) -> {
+			session.doWork((connection) -> {
+				try (PreparedStatement stmt = connection.prepareStatement(INSERT_NOTIFICATION)) {
+					int count = 0;
+					for (PendingNotification item : pending) {
+						String url = item.getUrl().replaceAll("//#", "/#");
+						Notification notification = new Notification();
+						this.setDescriptionForNotification(notification, type, item.getText(), item.getAux());
+						this.addNotification(stmt, type, notification.getDescription(), url, item.getUser(),
+								companyId, type.isOnlyEmail(), now);
+						count++;
+						if (item.isEmail()) {
+							this.addNotification(stmt, type, notification.getDescription(), url, item.getUser(),
+									companyId, true, now);
+							count++;
+							EmailBuilder builder = new EmailBuilder(type, notification.getDescription(), url);
+							emails.add(new NotificationEmail(item.getUser().getEmail(), item.getUser().getName(),
+									builder.getSubject(), builder.getBody(), null));
+						}
+						if (count >= BATCH_SIZE) {
+							stmt.executeBatch();
+							count = 0;
+						}
+					}
+					if (count > 0) {
+						stmt.executeBatch();
+					}
+				}
+			});
+			if (!type.isOnlyEmail()) {
+				for (PendingNotification item : pending) {
+					NotificationCounter.evictAfterCommit(session, item.getUser().getId(), companyId);
+				}
+			}
+		});
+		this.emailTask.addAll(emails);
+	}
+
+	private void addNotification(PreparedStatement stmt, NotificationType type, String description, String url,
+			User user, Long companyId, boolean onlyEmail, Timestamp creation) throws SQLException {
+		stmt.setString(1, type.getImageUrl());
+		stmt.setString(2, description);
+		stmt.setTimestamp(3, creation);
+		stmt.setLong(4, user.getId());
+		stmt.setLong(5, companyId);
+		stmt.setBoolean(6, onlyEmail);
+		stmt.setInt(7, type.getValue());
+		stmt.setString(8, url);
+		stmt.addBatch();
+	}
+
 	/**
 	 * Listar as permissões do usuário em uma instituição.
 	 * 
@@ -266,20 +363,26 @@ public class NotificationBS extends HibernateBusiness {
 	}
 
 	/**
-	 * Retornar o número de notificações do usuário.
+	 * Retornar o número de notificações não lidas do usuário, a partir do
+	 * contador em memória.
 	 * 
 	 * @param user
 	 *            Usuário para retornar o número de notificações.
 	 * @return Número de notificações do usuário.
 	 */
 	public Long countNotifications(User user) {
+		return NotificationCounter.unread(user.getId(), this.domain.getCompany().getId(),
+				() -> this.countUnread(user));
+	}
+
+	private Long countUnread(User user) {
 		Criteria criteria = this.dao.newCriteria(Notification.class);
 		criteria.add(Restrictions.eq("user", user));
 		criteria.add(Restrictions.eq("company", this.domain.getCompany()));
 		criteria.add(Restrictions.eq("deleted", false));
 		criteria.add(Restrictions.eq("onlyEmail", false));
 		criteria.add(Restrictions.eq("vizualized", false));
-		criteria.setProjection(Projections.countDistinct("id"));
+		criteria.setProjection(Projections.rowCount());
 		Long count = (Long) criteria.uniqueResult();
 		return count;
 	}
@@ -59,8 +59,7 @@ public class NotificationController extends AbstractController {
 					return;
 				}
 				else {
-					User existent = this.userBS.existsByUser(this.userSession.getUser().getId());
-					notifications = this.bs.countNotifications(existent);
+					notifications = this.bs.countNotifications(this.userSession.getUser());
 				}
 			}
 			this.success(notifications);
@@ -0,0 +1,184 @@
+package org.forpdi.core.notification;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.hibernate.Session;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Contadores em memória das notificações não lidas de cada usuário em cada
+ * instituição, consultados pela barra superior.
+ *
+ * Os contadores não são ajustados: qualquer notificação inserida, alterada
+ * (lida, excluída logicamente) ou removida pelo Hibernate descarta o contador
+ * do usuário depois do commit, e a próxima consulta conta as notificações no
+ * banco. As alterações feitas via JDBC devem chamar
+ * {@link #evictAfterCommit(Session, Long, Long)}. Cada contador é recarregado
+ * do banco depois de {@link #TTL}, o que corrige as alterações feitas por
+ * outras instâncias da aplicação.
+ */
+public final class NotificationCounter implements PostInsertEventListener, PostUpdateEventListener,
+		PostDeleteEventListener {
+	private static final long serialVersionUID = 1L;
+
+	/** Tempo de validade de um contador. */
+	public static final long TTL = TimeUnit.MINUTES.toMillis(2);
+
+	private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+	/**
+	 * Incrementada a cada descarte, para que uma contagem feita antes do
+	 * descarte não seja guardada.
+	 */
+	private static final AtomicLong GENERATION = new AtomicLong();
+
+	/** Contadores a descartar depois do commit de cada sessão. */
+	private static final Map<SessionImplementor, Set<String>> PENDING = Collections
+			.synchronizedMap(new IdentityHashMap<>());
+
+	private static class Counter {
+		private final long unread;
+		private final long expires;
+
+		private Counter(long unread) {
+			this.unread = unread;
+			this.expires = System.currentTimeMillis() + TTL;
+		}
+	}
+
+	private static String key(Long userId, Long companyId) {
+		return userId + ":" + companyId;
+	}
+
+	private static String companyKey(Long companyId) {
+		return "*:" + companyId;
+	}
+
+	/**
+	 * Número de notificações não lidas de um usuário em uma instituição.
+	 *
+	 * @param userId
+	 *            Id do usuário.
+	 * @param companyId
+	 *            Id da instituição.
+	 * @param loader
+	 *            Conta as notificações no banco, quando o contador não
+	 *            existe ou expirou.
+	 * @return Long Número de notificações não lidas.
+	 */
+	public static Long unread(Long userId, Long companyId, Supplier<Long> loader) {
+		String key = key(userId, companyId);
+		Counter counter = COUNTERS.get(key);
+		if (counter == null || counter.expires < System.currentTimeMillis()) {
+			long generation = GENERATION.get();
+			Long unread = loader.get();
+			counter = new Counter(unread == null ? 0L : unread);
+			if (generation == GENERATION.get()) {
+				COUNTERS.put(key, counter);
+			}
+		}
+		return counter.unread;
+	}
+
+	/** Descarta o contador de um usuário em uma instituição. */
+	public static void evict(Long userId, Long companyId) {
+		GENERATION.incrementAndGet();
+		COUNTERS.remove(key(userId, companyId));
+	}
+
+	/** Descarta os contadores dos usuários de uma instituição. */
+	public static void evictCompany(Long companyId) {
+		GENERATION.incrementAndGet();
+		String suffix = ":" + companyId;
+		COUNTERS.keySet().removeIf((key) -> key.endsWith(suffix));
+	}
+
+	/**
+	 * Descarta o contador agora e de novo depois do commit da sessão, para
+	 * que uma contagem feita antes do commit não fique guardada.
+	 *
+	 * @param session
+	 *            Sessão que alterou as notificações.
+	 * @param userId
+	 *            Id do usuário, ou null para todos os usuários da instituição.
+	 * @param companyId
+	 *            Id da instituição.
+	 */
+	public static void evictAfterCommit(Session session, Long userId, Long companyId) {
+		if (companyId == null) {
+			return;
+		}
+		String key = userId == null ? companyKey(companyId) : key(userId, companyId);
+		evict(key);
+		EventSource source = (EventSource) session;
+		Set<String> keys = PENDING.get(source);
+		if (keys == null) {
+			keys = new HashSet<>();
+			PENDING.put(source, keys);
+			source.getActionQueue().registerProcess(new AfterTransactionCompletionProcess() {
+				@Override
+				public void doAfterTransactionCompletion(boolean success, SessionImplementor session) {
+					Set<String> pending = PENDING.remove(session);
+					if (success && pending != null) {
+						pending.forEach(NotificationCounter::evict);
+					}
+				}
+			});
+		}
+		keys.add(key);
+	}
+
+	private static void evict(String key) {
+		if (key.startsWith("*:")) {
+			evictCompany(Long.valueOf(key.substring(2)));
+		} else {
+			GENERATION.incrementAndGet();
+			COUNTERS.remove(key);
+		}
+	}
+
+	private static void changed(EventSource session, Object entity) {
+		if (entity instanceof Notification) {
+			Notification notification = (Notification) entity;
+			if (notification.getUser() != null && notification.getCompany() != null) {
+				evictAfterCommit(session, notification.getUser().getId(), notification.getCompany().getId());
+			}
+		}
+	}
+
+	@Override
+	public void onPostInsert(PostInsertEvent event) {
+		changed(event.getSession(), event.getEntity());
+	}
+
+	@Override
+	public void onPostUpdate(PostUpdateEvent event) {
+		changed(event.getSession(), event.getEntity());
+	}
+
+	@Override
+	public void onPostDelete(PostDeleteEvent event) {
+		changed(event.getSession(), event.getEntity());
+	}
+
+	public boolean requiresPostCommitHanding(EntityPersister persister) {
+		return false;
+	}
+}
@@ -0,0 +1,44 @@
+package org.forpdi.core.notification;
+
+import org.forpdi.core.user.User;
+
+/**
+ * Notificação a ser enviada para um usuário em lote, por
+ * {@link NotificationBS#sendNotificationBatch(NotificationType, java.util.List)}.
+ */
+public class PendingNotification {
+	private final String text;
+	private final String aux;
+	private final User user;
+	private final String url;
+	private final boolean email;
+
+	public PendingNotification(String text, String aux, User user, String url, boolean email) {
+		this.text = text;
+		this.aux = aux;
+		this.user = user;
+		this.url = url;
+		this.email = email;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public String getAux() {
+		return aux;
+	}
+
+	public User getUser() {
+		return user;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	/** Se a notificação também deve ser enviada por e-mail. */
+	public boolean isEmail() {
+		return email;
+	}
+}
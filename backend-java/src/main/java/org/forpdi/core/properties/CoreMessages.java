@@ -154,7 +154,7 @@ public final class CoreMessages {
 				first = false;
 			String key = keys.nextElement();
 			String value = this.getMessage(key);
-			String escaped = value.replaceAll("\\'", "\\\\'");
+			String escaped = value.replace("'", "\\'");
 			builder.append("'").append(key).append("':'").append(escaped).append("'");
 		}
 		
@@ -1,8 +1,12 @@
 package org.forpdi.core.user;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 import javax.enterprise.context.RequestScoped;
@@ -22,9 +26,8 @@ import org.forpdi.core.user.authz.Permission;
 import org.forpdi.core.user.authz.PermissionFactory;
 import org.forpdi.core.user.authz.UserPermission;
 import org.forpdi.core.utils.Consts;
-import org.forpdi.planning.attribute.AttributeInstance;
-import org.forpdi.planning.attribute.types.ResponsibleField;
 import org.forpdi.planning.permissions.PermissionDTO;
+import org.forpdi.planning.structure.LevelInstanceResponsible;
 import org.forpdi.planning.structure.StructureLevelInstance;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Disjunction;
@@ -44,6 +47,9 @@ import br.com.caelum.vraptor.boilerplate.util.GeneralUtils;
 @RequestScoped
 public class UserBS extends HibernateBusiness {
 
+	/** Quantidade máxima de ids em cada cláusula IN. */
+	private static final int IN_CHUNK_SIZE = 1000;
+
 	@Inject
 	@Current
 	private CompanyDomain domain;
@@ -608,19 +614,94 @@ public class UserBS extends HibernateBusiness {
 	 * @return User Responsável pelo nível do Plano de Metas.
 	 */
 	public User retrieveResponsible(StructureLevelInstance levelInstance) {
-		Criteria criteria = this.dao.newCriteria(AttributeInstance.class);
-		criteria.createAlias("attribute", "attribute");
+		Criteria criteria = this.dao.newCriteria(LevelInstanceResponsible.class);
 		criteria.add(Restrictions.eq("levelInstance", levelInstance));
-		criteria.add(Restrictions.eq("attribute.type", ResponsibleField.class.getCanonicalName()));
+		criteria.add(Restrictions.eq("deleted", false));
+		criteria.setProjection(Projections.property("user"));
 
-		AttributeInstance instance = (AttributeInstance) criteria.uniqueResult();
-		User user;
-		if (instance != null) {
-			user = this.existsByUser(Long.valueOf(instance.getValue()));
-		} else {
-			user = null;
+		return (User) criteria.uniqueResult();
+	}
+
+	/**
+	 * Buscar os responsáveis de um conjunto de níveis do Plano de Metas.
+	 * 
+	 * @param levelInstanceIds
+	 *            Ids dos níveis do Plano de Metas.
+	 * @return Map<Long, User> Responsável de cada nível que possui um, pelo id
+	 *         do nível.
+	 */
+	public Map<Long, User> mapResponsiblesByLevelInstances(Collection<Long> levelInstanceIds) {
+		Map<Long, User> responsibles = new HashMap<>();
+		if (levelInstanceIds.isEmpty()) {
+			return responsibles;
 		}
-		return user;
+		Map<Long, Long> userIdByLevel = new HashMap<>();
+		for (List<Long> chunk : chunks(levelInstanceIds)) {
+			Criteria criteria = this.dao.newCriteria(LevelInstanceResponsible.class);
+			criteria.add(Restrictions.in("levelInstance.id", chunk));
+			criteria.add(Restrictions.eq("deleted", false));
+			criteria.setProjection(Projections.projectionList()
+					.add(Projections.property("levelInstance.id"))
+					.add(Projections.property("user.id")));
+			for (Object[] row : this.dao.findByCriteria(criteria, Object[].class)) {
+				userIdByLevel.put((Long) row[0], (Long) row[1]);
+			}
+		}
+		Map<Long, User> users = new HashMap<>();
+		for (List<Long> chunk : chunks(new HashSet<>(userIdByLevel.values()))) {
+			Criteria criteria = this.dao.newCriteria(User.class).add(Restrictions.in("id", chunk));
+			for (User user : this.dao.findByCriteria(criteria, User.class)) {
+				users.put(user.getId(), user);
+			}
+		}
+		for (Map.Entry<Long, Long> entry : userIdByLevel.entrySet()) {
+			responsibles.put(entry.getKey(), users.get(entry.getValue()));
+		}
+		return responsibles;
+	}
+
+	/**
+	 * Buscar a configuração de notificações de um conjunto de usuários em uma
+	 * instituição.
+	 * 
+	 * @param userIds
+	 *            Ids dos usuários.
+	 * @param company
+	 *            Instituição.
+	 * @return Map<Long, Integer> Configuração de notificação de cada usuário
+	 *         da instituição, pelo id do usuário.
+	 */
+	public Map<Long, Integer> mapNotificationSettings(Collection<Long> userIds, Company company) {
+		Map<Long, Integer> settings = new HashMap<>();
+		for (List<Long> chunk : chunks(userIds)) {
+			Criteria criteria = this.dao.newCriteria(CompanyUser.class);
+			criteria.add(Restrictions.eq("company", company));
+			criteria.add(Restrictions.in("user.id", chunk));
+			criteria.setProjection(Projections.projectionList()
+					.add(Projections.property("user.id"))
+					.add(Projections.property("notificationSetting")));
+			for (Object[] row : this.dao.findByCriteria(criteria, Object[].class)) {
+				settings.put((Long) row[0], (Integer) row[1]);
+			}
+		}
+		return settings;
+	}
+
+	/** Divide os ids em listas para as cláusulas IN das consultas. */
+	private static List<List<Long>> chunks(Collection<Long> ids) {
+		List<List<Long>> chunks = new ArrayList<>();
+		List<Long> chunk = new ArrayList<>(IN_CHUNK_SIZE);
+		for (Long id : ids) {
+			chunk.add(id);
+			if (chunk.size() == IN_CHUNK_SIZE) {
+				chunks.add(chunk);
+				chunk = new ArrayList<>(IN_CHUNK_SIZE);
+			}
+		}
+		if (!chunk.isEmpty()) {
+			chunks.add(chunk);
+		}
+		return chunks;
 	}
 
 	public  PaginatedList<User> listByPermissionLevel(AccessLevels accessLevel) {
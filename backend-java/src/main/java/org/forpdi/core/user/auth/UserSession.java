@@ -67,6 +67,17 @@ public class UserSession implements Serializable {
 		}
 	}
 	
+	/**
+	 * Restaura a autenticação de uma sessão já autenticada, sem disparar o
+	 * evento de login. Usado pelas tarefas em segundo plano que executam em
+	 * nome do usuário.
+	 */
+	public void restore(UserAccessToken token, List<String> permissions, int accessLevel) {
+		this.accessToken = token;
+		this.permissions = permissions == null ? new ArrayList<String>() : new ArrayList<String>(permissions);
+		this.accessLevel = accessLevel;
+	}
+	
 	public boolean isLogged() {
 		return (this.accessToken != null);
 	}
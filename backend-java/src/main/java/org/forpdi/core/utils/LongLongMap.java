@@ -0,0 +1,132 @@
+package org.forpdi.core.utils;
+
+import java.util.Arrays;
+
+/**
+ * Mapa de chaves long para valores long, com endereçamento aberto, sem
+ * criar objetos por entrada. Usado para mapear ids antigos para ids novos
+ * em processamentos com muitos registros.
+ *
+ * Não é thread-safe.
+ */
+public final class LongLongMap {
+
+	private static final long FREE = Long.MIN_VALUE;
+
+	private long[] keys;
+	private long[] values;
+	private int size;
+	private int mask;
+	private int threshold;
+
+	public LongLongMap() {
+		this(16);
+	}
+
+	public LongLongMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(expectedSize * 2, 16) - 1) << 1;
+		this.allocate(capacity);
+	}
+
+	/**
+	 * Associa o valor à chave, substituindo o valor anterior.
+	 *
+	 * @param key
+	 *            Chave, não pode ser Long.MIN_VALUE.
+	 * @param value
+	 *            Valor.
+	 */
+	public void put(long key, long value) {
+		if (key == FREE) {
+			throw new IllegalArgumentException("Invalid key: " + key);
+		}
+		int slot = this.slot(key);
+		if (this.keys[slot] == FREE) {
+			this.keys[slot] = key;
+			this.size++;
+		}
+		this.values[slot] = value;
+		if (this.size > this.threshold) {
+			this.rehash();
+		}
+	}
+
+	/**
+	 * Recupera o valor associado à chave.
+	 *
+	 * @param key
+	 *            Chave.
+	 * @param defaultValue
+	 *            Valor retornado quando a chave não existe.
+	 * @return Valor associado ou o valor padrão.
+	 */
+	public long get(long key, long defaultValue) {
+		if (key == FREE) {
+			return defaultValue;
+		}
+		int slot = this.slot(key);
+		return this.keys[slot] == FREE ? defaultValue : this.values[slot];
+	}
+
+	public boolean containsKey(long key) {
+		return key != FREE && this.keys[this.slot(key)] != FREE;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Percorre todas as entradas do mapa, sem ordem definida.
+	 */
+	public void forEach(EntryConsumer consumer) {
+		for (int i = 0; i < this.keys.length; i++) {
+			if (this.keys[i] != FREE) {
+				consumer.accept(this.keys[i], this.values[i]);
+			}
+		}
+	}
+
+	private int slot(long key) {
+		int slot = mix(key) & this.mask;
+		while (this.keys[slot] != FREE && this.keys[slot] != key) {
+			slot = (slot + 1) & this.mask;
+		}
+		return slot;
+	}
+
+	private void rehash() {
+		long[] oldKeys = this.keys;
+		long[] oldValues = this.values;
+		this.allocate(oldKeys.length << 1);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				int slot = this.slot(oldKeys[i]);
+				this.keys[slot] = oldKeys[i];
+				this.values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.values = new long[capacity];
+		Arrays.fill(this.keys, FREE);
+		this.mask = capacity - 1;
+		this.threshold = (int) (capacity * 0.6f);
+	}
+
+	private static int mix(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	@FunctionalInterface
+	public interface EntryConsumer {
+		void accept(long key, long value);
+	}
+}
@@ -7,6 +7,7 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -14,9 +15,10 @@ import java.util.Set;
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 
-import org.apache.commons.lang.time.DateUtils;
 import org.forpdi.core.jobs.EmailSenderTask;
 import org.forpdi.core.user.auth.UserSession;
+import org.forpdi.dashboard.admin.GoalStatus;
+import org.forpdi.dashboard.admin.GoalStatusUpdater;
 import org.forpdi.dashboard.admin.GoalsInfo;
 import org.forpdi.dashboard.admin.GoalsInfoTable;
 import org.forpdi.dashboard.manager.IndicatorHistory;
@@ -24,7 +26,6 @@ import org.forpdi.dashboard.manager.LevelInstanceHistory;
 import org.forpdi.planning.attribute.Attribute;
 import org.forpdi.planning.attribute.AttributeHelper;
 import org.forpdi.planning.attribute.AttributeInstance;
-import org.forpdi.planning.attribute.types.ResponsibleField;
 import org.forpdi.planning.attribute.types.enums.Periodicity;
 import org.forpdi.planning.fields.budget.Budget;
 import org.forpdi.planning.filters.PeformanceFilterType;
@@ -37,6 +38,7 @@ import org.forpdi.planning.structure.StructureLevelInstance;
 import org.forpdi.system.CriteriaCompanyFilter;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.sql.JoinType;
@@ -74,7 +76,8 @@ public class DashboardBS extends HibernateBusiness {
 	 * @return Informações gerais sobre as metas.
 	 */
 	public GoalsInfo retrieveAdminGoalsInfo(List<StructureLevelInstance> goals) {
-		GoalsInfo info = new GoalsInfo();
+		int[] progress = new int[GoalStatus.FINISHED + 1];
+		int[] performance = new int[GoalStatus.ABOVE_EXPECTED + 1];
 
 		if (goals.size() > 0) {
 			// seta os atributos
@@ -82,18 +85,11 @@ public class DashboardBS extends HibernateBusiness {
 			// cria um map para acessar a polaridade atraves do id do goal (meta)
 			Map<Long, AttributeInstance> polarityMap = this.attrHelper.generatePolarityMap(goals);
 			
-			int inDay = 0;
-			int late = 0;
-			int belowMin = 0;
-			int belowExp = 0;
-			int reached = 0;
-			int aboveExp = 0;
-			int notStarted = 0;
-			int finished = 0;
-			int closeToMat = 0;
+			Date today = new Date();
+			GoalStatus status = new GoalStatus();
 			// calcula goals info
 			for (StructureLevelInstance goal : goals) {
-				Date finish = new Date();
+				Date finish = today;
 				Double expected = null;
 				Double reach = null;
 				Double max = null;
@@ -120,61 +116,162 @@ public class DashboardBS extends HibernateBusiness {
 				// AttributeInstance polarity = this.attrHelper.retrievePolarityAttributeInstance(goal.getParent());
 				AttributeInstance polarity = polarityMap.get(goal.getId());
 				
-				Date today = new Date();
-				if (reach == null && ((min == null && expected == null && max == null) || finish.after(today))) {
-					notStarted++;
-				} else {
-					if (goal.isClosed()) {
-						finished++;
-					} else if (finish.before(today)) {
-						late++;
-					} else {
-						Calendar calendar = Calendar.getInstance();
-						calendar.setTime(today);
-						calendar.add(Calendar.DATE, 10);
-						if (calendar.getTime().after(finish) || DateUtils.isSameDay(calendar.getTime(), finish)) {
-							closeToMat++;
-						} else {
-							inDay++;
-						}
-					}
-					if (this.polarityComparison(polarity, min, reach) || (reach == null && finish.before(today))) {
-						belowMin++;
-					} else if (this.polarityComparison(polarity, expected, reach)) {
-						belowExp++;
-					} else if (this.polarityComparison(polarity, max, reach)
-							|| (reach != null && expected != null && (Double.compare(reach, expected) == 0))) {
-						reached++;
-					} else if (this.polarityComparison(polarity, reach, max)
-							|| (reach != null && max != null && (Double.compare(reach, max) == 0))) {
-						aboveExp++;
-					}
-				}
+				GoalStatusUpdater.classify(status, goal.isClosed(), finish, expected, reach, min, max,
+						polarity == null ? null : polarity.getValue(), today);
+				progress[status.getProgress()]++;
+				performance[status.getPerformance()]++;
 			}
-			
-			info.setInDay(inDay);
-			info.setInDayPercentage((double) inDay * 100 / goals.size());
-			info.setLate(late);
-			info.setLatePercentage((double) late * 100 / goals.size());
-			info.setBelowMininum(belowMin);
-			info.setBelowMinimumPercentage((double) belowMin * 100 / goals.size());
-			info.setBelowExpected(belowExp);
-			info.setBelowExpectedPercentage((double) belowExp * 100 / goals.size());
-			info.setReached(reached);
-			info.setReachedPercentage((double) reached * 100 / goals.size());
-			info.setAboveExpected(aboveExp);
-			info.setAboveExpectedPercentage((double) aboveExp * 100 / goals.size());
-			info.setNotStarted(notStarted);
-			info.setNotStartedPercentage((double) notStarted * 100 / goals.size());
-			info.setFinished(finished);
-			info.setFinishedPercentage((double) finished * 100 / goals.size());
-			info.setCloseToMaturity(closeToMat);
-			info.setCloseToMaturityPercentage((double) closeToMat * 100 / goals.size());
 		}
 
+		return this.goalsInfo(progress, performance, goals.size());
+	}
+
+	/**
+	 * Calcular informações gerais das metas de um plano de metas, ou de todos
+	 * os planos de um plano macro, contando a situação já calculada das metas
+	 * ({@link GoalStatus}). As metas que ainda não têm situação são calculadas
+	 * na hora, sem gravar.
+	 * 
+	 * @param macro
+	 *            Plano macro, usado se o plano de metas não for informado.
+	 * @param plan
+	 *            Plano de metas.
+	 * @param byResponsible
+	 *            Se devem ser contadas apenas as metas dos níveis pelos quais
+	 *            o usuário é responsável, como em
+	 *            {@link StructureBS#listGoalsByResponsible}.
+	 * @return Informações gerais sobre as metas.
+	 */
+	public GoalsInfo retrieveGoalsInfo(PlanMacro macro, Plan plan, boolean byResponsible) {
+		List<String> paths = null;
+		if (byResponsible) {
+			Criteria responsibles = this.sbs.filterByResponsibleCriteria()
+				.setProjection(Projections.property("levelInstance.path"));
+			paths = this.filter.filterAndList(responsibles, String.class, "macro.company");
+			if (paths.isEmpty()) {
+				return new GoalsInfo();
+			}
+			if (paths.contains(null)) {
+				// níveis ainda sem caminho, calcula sobre a lista de metas
+				return this.retrieveAdminGoalsInfo(this.sbs.listGoalsByResponsible(macro, plan).getList());
+			}
+		}
+
+		Criteria missing = this.dao.newCriteria(StructureLevelInstance.class)
+			.createAlias("level", "level", JoinType.INNER_JOIN)
+			.createAlias("plan", "plan", JoinType.INNER_JOIN)
+			.createAlias("plan.parent", "macro", JoinType.INNER_JOIN)
+			.add(Restrictions.eq("level.goal", true))
+			.add(GoalStatusUpdater.withoutStatus())
+			.setProjection(Projections.property("id"));
+		this.goalsScope(missing, "", macro, plan, paths);
+		List<Long> missingIds = this.filter.filterAndList(missing, Long.class, "macro.company");
+
+		Criteria counts = this.dao.newCriteria(GoalStatus.class)
+			.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
+			.createAlias("plan", "plan", JoinType.INNER_JOIN)
+			.createAlias("plan.parent", "macro", JoinType.INNER_JOIN)
+			.setProjection(Projections.projectionList()
+				.add(Projections.groupProperty("progress"))
+				.add(Projections.groupProperty("performance"))
+				.add(Projections.rowCount()));
+		this.goalsScope(counts, "levelInstance.", macro, plan, paths);
+		int[] progress = new int[GoalStatus.FINISHED + 1];
+		int[] performance = new int[GoalStatus.ABOVE_EXPECTED + 1];
+		int total = 0;
+		for (Object[] row : this.filter.filterAndList(counts, Object[].class, "macro.company")) {
+			int count = ((Long) row[2]).intValue();
+			progress[(Integer) row[0]] += count;
+			performance[(Integer) row[1]] += count;
+			total += count;
+		}
+		if (!missingIds.isEmpty()) {
+			// calculadas sem gravar; a tarefa diária grava a situação que falta
+			for (GoalStatus status : GoalStatusUpdater.calculate(this.dao, missingIds, new Date())) {
+				progress[status.getProgress()]++;
+				performance[status.getPerformance()]++;
+				total++;
+			}
+		}
+		return this.goalsInfo(progress, performance, total);
+	}
+
+	/**
+	 * Restringe uma consulta às metas não excluídas de um plano, ou plano
+	 * macro, e opcionalmente aos níveis com os caminhos informados.
+	 */
+	private void goalsScope(Criteria criteria, String levelInstance, PlanMacro macro, Plan plan, List<String> paths) {
+		criteria.add(Restrictions.eq(levelInstance + "deleted", false));
+		if (paths == null) {
+			criteria.add(Restrictions.eq("macro.archived", false));
+		} else {
+			Disjunction prefixes = Restrictions.disjunction();
+			for (String path : paths) {
+				prefixes.add(Restrictions.like(levelInstance + "path", path, MatchMode.START));
+			}
+			criteria.add(prefixes);
+		}
+		if (plan != null) {
+			criteria.add(Restrictions.eq("plan", plan));
+		} else if (macro != null) {
+			criteria.add(Restrictions.eq("plan.parent", macro));
+		}
+	}
+
+	private GoalsInfo goalsInfo(int[] progress, int[] performance, int total) {
+		GoalsInfo info = new GoalsInfo();
+		if (total > 0) {
+			info.setInDay(progress[GoalStatus.IN_DAY]);
+			info.setInDayPercentage((double) progress[GoalStatus.IN_DAY] * 100 / total);
+			info.setLate(progress[GoalStatus.LATE]);
+			info.setLatePercentage((double) progress[GoalStatus.LATE] * 100 / total);
+			info.setBelowMininum(performance[GoalStatus.BELOW_MINIMUM]);
+			info.setBelowMinimumPercentage((double) performance[GoalStatus.BELOW_MINIMUM] * 100 / total);
+			info.setBelowExpected(performance[GoalStatus.BELOW_EXPECTED]);
+			info.setBelowExpectedPercentage((double) performance[GoalStatus.BELOW_EXPECTED] * 100 / total);
+			info.setReached(performance[GoalStatus.REACHED]);
+			info.setReachedPercentage((double) performance[GoalStatus.REACHED] * 100 / total);
+			info.setAboveExpected(performance[GoalStatus.ABOVE_EXPECTED]);
+			info.setAboveExpectedPercentage((double) performance[GoalStatus.ABOVE_EXPECTED] * 100 / total);
+			info.setNotStarted(progress[GoalStatus.NOT_STARTED]);
+			info.setNotStartedPercentage((double) progress[GoalStatus.NOT_STARTED] * 100 / total);
+			info.setFinished(progress[GoalStatus.FINISHED]);
+			info.setFinishedPercentage((double) progress[GoalStatus.FINISHED] * 100 / total);
+			info.setCloseToMaturity(progress[GoalStatus.CLOSE_TO_MATURITY]);
+			info.setCloseToMaturityPercentage((double) progress[GoalStatus.CLOSE_TO_MATURITY] * 100 / total);
+		}
 		return info;
 	}
 
+	/**
+	 * Recalcular a situação de uma meta, ou das metas de um indicador, depois
+	 * de uma alteração nos seus valores.
+	 * 
+	 * @param levelInstance
+	 *            Meta ou indicador alterado.
+	 */
+	public void updateGoalStatus(StructureLevelInstance levelInstance) {
+		if (levelInstance.getLevel().isGoal()) {
+			GoalStatusUpdater.update(this.dao, Collections.singletonList(levelInstance.getId()), new Date());
+		} else if (levelInstance.getLevel().isIndicator()) {
+			Criteria criteria = this.dao.newCriteria(StructureLevelInstance.class)
+				.add(Restrictions.eq("parent", levelInstance.getId()))
+				.add(Restrictions.eq("deleted", false))
+				.setProjection(Projections.property("id"));
+			GoalStatusUpdater.update(this.dao, this.dao.findByCriteria(criteria, Long.class), new Date());
+		}
+	}
+
+	/**
+	 * Recalcular a situação das metas cujo andamento mudou com a data e gravar
+	 * a situação das metas que ainda não a têm.
+	 * 
+	 * @return int Número de metas atualizadas.
+	 */
+	public int updateGoalStatusRollover() {
+		return GoalStatusUpdater.rollover(this.dao, new Date());
+	}
+
 	/**
 	 * Comparar a polaridade do indicador.
 	 * 
@@ -259,56 +356,42 @@ public class DashboardBS extends HibernateBusiness {
 
 		List<Budget> budgets = this.filter.filterAndList(criteria, Budget.class, "macro.company");
 
-		if (this.userSession.getAccessLevel() < 50) {
+		if (this.userSession.getAccessLevel() < 50 && !budgets.isEmpty()) {
 			List<Budget> list2 = new ArrayList<Budget>();
+			Set<Long> responsibleIds = this.sbs.retrieveResponsibleLevelInstanceIds();
+
+			// filhos de todos os níveis com orçamento de uma vez
+			Set<Long> levelIds = new HashSet<>();
 			for (Budget bud : budgets) {
-				boolean lvlAdd = false;
-				List<StructureLevelInstance> stLvInstList = this.sbs
-						.retrieveLevelInstanceSons(bud.getLevelInstance().getId());
-				for (StructureLevelInstance stLvInst : stLvInstList) {
-					List<Attribute> attributeList = this.sbs.retrieveLevelAttributes(stLvInst.getLevel());
-					for (Attribute attr : attributeList) {
-						if (attr.getType().equals(ResponsibleField.class.getCanonicalName())) {
-							AttributeInstance attrInst = this.attrHelper.retrieveAttributeInstance(stLvInst, attr);
-							if (attrInst != null) {
-								if (!lvlAdd
-										&& Long.parseLong(attrInst.getValue()) == this.userSession.getUser().getId()) {
-									list2.add(bud);
-									lvlAdd = true;
-								}
-							}
-						}
-					}
+				levelIds.add(bud.getLevelInstance().getId());
+			}
+			Set<Long> parentsWithResponsibleSon = new HashSet<>();
+			Criteria sons = this.dao.newCriteria(StructureLevelInstance.class)
+				.add(Restrictions.in("parent", levelIds))
+				.add(Restrictions.eq("deleted", false))
+				.setProjection(Projections.projectionList()
+					.add(Projections.property("id"))
+					.add(Projections.property("parent")));
+			for (Object[] son : this.dao.findByCriteria(sons, Object[].class)) {
+				if (responsibleIds.contains((Long) son[0])) {
+					parentsWithResponsibleSon.add((Long) son[1]);
 				}
+			}
 
+			for (Budget bud : budgets) {
 				StructureLevelInstance lvlI = bud.getLevelInstance();
-				List<Attribute> attributeList = this.sbs.retrieveLevelAttributes(lvlI.getLevel());
-				for (Attribute attr : attributeList) {
-					if (attr.getType().equals(ResponsibleField.class.getCanonicalName())) {
-						AttributeInstance attrInst = this.attrHelper.retrieveAttributeInstance(lvlI, attr);
-						if (attrInst != null) {
-							if (!lvlAdd && Long.parseLong(attrInst.getValue()) == this.userSession.getUser().getId()) {
-								list2.add(bud);
-								lvlAdd = true;
-							}
+				boolean lvlAdd = responsibleIds.contains(lvlI.getId())
+						|| parentsWithResponsibleSon.contains(lvlI.getId());
+				if (!lvlAdd) {
+					for (Long ancestorId : this.sbs.listAncestorIds(lvlI)) {
+						if (responsibleIds.contains(ancestorId)) {
+							lvlAdd = true;
+							break;
 						}
 					}
 				}
-				while (lvlI.getParent() != null && !lvlAdd) {
-					lvlI = this.sbs.retrieveLevelInstance(lvlI.getParent());
-					attributeList = this.sbs.retrieveLevelAttributes(lvlI.getLevel());
-					for (Attribute attr : attributeList) {
-						if (attr.getType().equals(ResponsibleField.class.getCanonicalName())) {
-							AttributeInstance attrInst = this.attrHelper.retrieveAttributeInstance(lvlI, attr);
-							if (attrInst != null) {
-								if (!lvlAdd
-										&& Long.parseLong(attrInst.getValue()) == this.userSession.getUser().getId()) {
-									list2.add(bud);
-									lvlAdd = true;
-								}
-							}
-						}
-					}
+				if (lvlAdd) {
+					list2.add(bud);
 				}
 			}
 			budgets = list2;
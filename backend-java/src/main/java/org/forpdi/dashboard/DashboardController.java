@@ -11,6 +11,7 @@ import javax.inject.Inject;
 import org.forpdi.core.abstractions.AbstractController;
 import org.forpdi.core.user.authz.Permissioned;
 import org.forpdi.dashboard.admin.GeneralBudgets;
+import org.forpdi.dashboard.admin.GoalsInfo;
 import org.forpdi.dashboard.admin.GoalsInfoTable;
 import org.forpdi.dashboard.admin.PlanDetails;
 import org.forpdi.dashboard.manager.IndicatorHistory;
@@ -62,8 +63,7 @@ public class DashboardController extends AbstractController {
 		try {
 			PlanMacro planMacro = this.planBS.retrievePlanMacroById(macro);
 			Plan plano = this.planBS.retrieveById(plan);
-			PaginatedList<StructureLevelInstance> list = this.sbs.listGoalsByResponsible(planMacro, plano);
-			this.success(this.bs.retrieveAdminGoalsInfo(list.getList()));
+			this.success(this.bs.retrieveGoalsInfo(planMacro, plano, true));
 		} catch (Throwable ex) {
 			LOGGER.error("Unexpected runtime error", ex);
 			this.fail("Erro inesperado: " + ex.getMessage());
@@ -176,9 +176,9 @@ public class DashboardController extends AbstractController {
 			objectivesList = this.sbs.listObjective(planMacro, plan2);
 			budgetList = this.sbs.listBudgets(planMacro, plan2);
 			if (goalList.getTotal() > 0) {
-				Double goalsLatePercent = ((double) this.bs.getNumberOfGoalsLate(goalList.getList()) * 100)
-						/ goalList.getTotal();
-				planDetails.setGoalsDelayedPerCent(goalsLatePercent);
+				GoalsInfo goalsInfo = this.bs.retrieveGoalsInfo(this.planBS.retrievePlanMacroById(macro),
+						this.planBS.retrieveById(plan), true);
+				planDetails.setGoalsDelayedPerCent(goalsInfo.getLatePercentage());
 			} else {
 				planDetails.setGoalsDelayedPerCent(0.0);
 			}
@@ -552,9 +552,10 @@ public class DashboardController extends AbstractController {
 
 			budgetList = this.sbs.listBudgets(planMacro, plan2);
 			if (goalList.getTotal() > 0) {
-				Double goalsReachedPercent = ((double) this.bs.getNumberOfGoalsReached(goalList.getList()) * 100)
-						/ goalList.getTotal();
-				planDetails.setGoalsDelayedPerCent(goalsReachedPercent);
+				GoalsInfo goalsInfo = this.bs.retrieveGoalsInfo(this.planBS.retrievePlanMacroById(macro),
+						this.planBS.retrieveById(plan), false);
+				planDetails.setGoalsDelayedPerCent(
+						goalsInfo.getReachedPercentage() + goalsInfo.getAboveExpectedPercentage());
 			} else {
 				planDetails.setGoalsDelayedPerCent(0.0);
 			}
@@ -0,0 +1,135 @@
+package org.forpdi.dashboard.admin;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.forpdi.planning.plan.Plan;
+import org.forpdi.planning.structure.StructureLevelInstance;
+
+/**
+ * Situação calculada de uma meta, usada para contar as metas do painel de
+ * bordo sem carregar os atributos de cada uma. Mantida por
+ * {@link GoalStatusUpdater}.
+ */
+@Entity(name = GoalStatus.TABLE)
+@Table(name = GoalStatus.TABLE, indexes = {
+	@Index(columnList = "plan_id,progress,performance"),
+	@Index(columnList = "nextChange")
+})
+public class GoalStatus implements Serializable {
+	public static final String TABLE = "fpdi_goal_status";
+	private static final long serialVersionUID = 1L;
+
+	/** Andamento: não iniciada. */
+	public static final int NOT_STARTED = 0;
+	/** Andamento: em dia. */
+	public static final int IN_DAY = 1;
+	/** Andamento: próxima a vencer. */
+	public static final int CLOSE_TO_MATURITY = 2;
+	/** Andamento: atrasada. */
+	public static final int LATE = 3;
+	/** Andamento: concluída. */
+	public static final int FINISHED = 4;
+
+	/** Desempenho: não avaliado. */
+	public static final int NO_PERFORMANCE = 0;
+	/** Desempenho: abaixo do mínimo. */
+	public static final int BELOW_MINIMUM = 1;
+	/** Desempenho: abaixo do esperado. */
+	public static final int BELOW_EXPECTED = 2;
+	/** Desempenho: suficiente. */
+	public static final int REACHED = 3;
+	/** Desempenho: acima do máximo. */
+	public static final int ABOVE_EXPECTED = 4;
+
+	@Id
+	@ManyToOne(targetEntity = StructureLevelInstance.class, optional = false, fetch = FetchType.LAZY)
+	private StructureLevelInstance levelInstance;
+
+	@ManyToOne(targetEntity = Plan.class, optional = false, fetch = FetchType.LAZY)
+	private Plan plan;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date finish;
+
+	private int progress = NOT_STARTED;
+
+	private int performance = NO_PERFORMANCE;
+
+	/** Data em que a situação foi calculada. */
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date calculated;
+
+	/**
+	 * Data a partir da qual o andamento muda com a passagem do tempo, ou null
+	 * se não muda mais sem uma alteração na meta.
+	 */
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date nextChange;
+
+	public StructureLevelInstance getLevelInstance() {
+		return levelInstance;
+	}
+
+	public void setLevelInstance(StructureLevelInstance levelInstance) {
+		this.levelInstance = levelInstance;
+	}
+
+	public Plan getPlan() {
+		return plan;
+	}
+
+	public void setPlan(Plan plan) {
+		this.plan = plan;
+	}
+
+	public Date getFinish() {
+		return finish;
+	}
+
+	public void setFinish(Date finish) {
+		this.finish = finish;
+	}
+
+	public int getProgress() {
+		return progress;
+	}
+
+	public void setProgress(int progress) {
+		this.progress = progress;
+	}
+
+	public int getPerformance() {
+		return performance;
+	}
+
+	public void setPerformance(int performance) {
+		this.performance = performance;
+	}
+
+	public Date getCalculated() {
+		return calculated;
+	}
+
+	public void setCalculated(Date calculated) {
+		this.calculated = calculated;
+	}
+
+	public Date getNextChange() {
+		return nextChange;
+	}
+
+	public void setNextChange(Date nextChange) {
+		this.nextChange = nextChange;
+	}
+
+}
@@ -0,0 +1,373 @@
+package org.forpdi.dashboard.admin;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.time.DateUtils;
+import org.forpdi.planning.attribute.AttributeInstance;
+import org.forpdi.planning.structure.StructureLevelInstance;
+import org.hibernate.Criteria;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
+import org.hibernate.sql.JoinType;
+
+import br.com.caelum.vraptor.boilerplate.HibernateDAO;
+
+/**
+ * Calcula e grava a situação das metas ({@link GoalStatus}).
+ *
+ * A situação é recalculada quando os valores de uma meta mudam e, como o
+ * andamento depende da data em que é calculado, quando chega a data em que
+ * ele muda ({@link GoalStatus#getNextChange()}).
+ */
+public final class GoalStatusUpdater {
+
+	/** Dias antes do vencimento em que a meta passa a estar próxima a vencer. */
+	public static final int CLOSE_TO_MATURITY_DAYS = 10;
+
+	private static final int CHUNK_SIZE = 1000;
+
+	private GoalStatusUpdater() {
+	}
+
+	/** Valores de uma meta usados no cálculo da situação. */
+	private static class GoalValues {
+		private Date finish;
+		private Double expected;
+		private Double reach;
+		private Double min;
+		private Double max;
+	}
+
+	/**
+	 * Recalcula a situação de metas.
+	 *
+	 * @param dao
+	 *            DAO usado nas consultas e na gravação.
+	 * @param goalIds
+	 *            Ids das metas. Ids de outros níveis são ignorados.
+	 * @param today
+	 *            Data do cálculo.
+	 * @return int Número de situações gravadas.
+	 */
+	public static int update(HibernateDAO dao, Collection<Long> goalIds, Date today) {
+		List<Long> ids = new ArrayList<>(new HashSet<>(goalIds));
+		int updated = 0;
+		for (int i = 0; i < ids.size(); i += CHUNK_SIZE) {
+			updated += updateChunk(dao, ids.subList(i, Math.min(i + CHUNK_SIZE, ids.size())), today);
+		}
+		return updated;
+	}
+
+	/**
+	 * Calcula a situação de metas sem gravá-la, para as metas que ainda não
+	 * têm situação gravada.
+	 *
+	 * @param dao
+	 *            DAO usado nas consultas.
+	 * @param goalIds
+	 *            Ids das metas. Ids de outros níveis são ignorados.
+	 * @param today
+	 *            Data do cálculo.
+	 * @return List<GoalStatus> Situações calculadas, não persistidas.
+	 */
+	public static List<GoalStatus> calculate(HibernateDAO dao, Collection<Long> goalIds, Date today) {
+		List<Long> ids = new ArrayList<>(new HashSet<>(goalIds));
+		List<GoalStatus> statuses = new ArrayList<>(ids.size());
+		for (int i = 0; i < ids.size(); i += CHUNK_SIZE) {
+			statuses.addAll(calculateChunk(dao, ids.subList(i, Math.min(i + CHUNK_SIZE, ids.size())), today,
+					new HashMap<>()));
+		}
+		return statuses;
+	}
+
+	/**
+	 * Recalcula a situação das metas cujo andamento mudou desde o último
+	 * cálculo, incluindo as datas em que a tarefa não rodou, e grava a
+	 * situação das metas que ainda não a têm.
+	 *
+	 * @param dao
+	 *            DAO usado nas consultas e na gravação.
+	 * @param today
+	 *            Data do cálculo.
+	 * @return int Número de situações gravadas.
+	 */
+	public static int rollover(HibernateDAO dao, Date today) {
+		Criteria criteria = dao.newCriteria(GoalStatus.class)
+			.add(Restrictions.disjunction()
+				.add(Restrictions.le("nextChange", today))
+				.add(Restrictions.isNull("calculated")))
+			.setProjection(Projections.property("levelInstance.id"));
+		int updated = update(dao, dao.findByCriteria(criteria, Long.class), today);
+
+		Criteria missing = dao.newCriteria(StructureLevelInstance.class)
+			.createAlias("level", "level", JoinType.INNER_JOIN)
+			.add(Restrictions.eq("level.goal", true))
+			.add(Restrictions.eq("deleted", false))
+			.add(withoutStatus())
+			.setProjection(Projections.property("id"));
+		return updated + update(dao, dao.findByCriteria(missing, Long.class), today);
+	}
+
+	/**
+	 * Restrição às metas sem situação gravada, para uma consulta de
+	 * {@link StructureLevelInstance}. Consulta a situação pela chave de cada
+	 * meta, sem percorrer a tabela de situações.
+	 */
+	public static Criterion withoutStatus() {
+		DetachedCriteria status = DetachedCriteria.forClass(GoalStatus.class, "status")
+			.add(Restrictions.eqProperty("status.levelInstance.id", Criteria.ROOT_ALIAS + ".id"))
+			.setProjection(Projections.property("status.levelInstance.id"));
+		return Subqueries.notExists(status);
+	}
+
+	/**
+	 * Data a partir da qual o andamento de uma meta muda sem alteração nos
+	 * seus valores: o início do período próxima a vencer e o vencimento.
+	 *
+	 * @param finish
+	 *            Data de vencimento.
+	 * @param today
+	 *            Data do cálculo.
+	 * @return Date Próxima mudança, ou null se o andamento não muda mais.
+	 */
+	public static Date nextChange(Date finish, Date today) {
+		if (finish == null) {
+			return null;
+		}
+		Date closeToMaturity = DateUtils.truncate(DateUtils.addDays(finish, -CLOSE_TO_MATURITY_DAYS),
+				Calendar.DATE);
+		if (today.before(closeToMaturity)) {
+			return closeToMaturity;
+		}
+		if (!finish.before(today)) {
+			return finish;
+		}
+		return null;
+	}
+
+	private static int updateChunk(HibernateDAO dao, List<Long> ids, Date today) {
+		Map<Long, GoalStatus> existent = new HashMap<>();
+		Map<Long, GoalStatus> previous = new HashMap<>();
+		Criteria statusList = dao.newCriteria(GoalStatus.class)
+			.add(Restrictions.in("levelInstance.id", ids));
+		for (GoalStatus status : dao.findByCriteria(statusList, GoalStatus.class)) {
+			Long id = status.getLevelInstance().getId();
+			existent.put(id, status);
+			GoalStatus copy = new GoalStatus();
+			copy.setFinish(status.getFinish());
+			copy.setProgress(status.getProgress());
+			copy.setPerformance(status.getPerformance());
+			copy.setCalculated(status.getCalculated());
+			copy.setNextChange(status.getNextChange());
+			previous.put(id, copy);
+		}
+
+		List<GoalStatus> created = new ArrayList<>();
+		List<GoalStatus> changed = new ArrayList<>();
+		for (GoalStatus status : calculateChunk(dao, ids, today, existent)) {
+			GoalStatus before = previous.get(status.getLevelInstance().getId());
+			if (before == null) {
+				created.add(status);
+			} else if (before.getCalculated() == null || before.getProgress() != status.getProgress()
+					|| before.getPerformance() != status.getPerformance()
+					|| !sameDate(before.getFinish(), status.getFinish())
+					|| !sameDate(before.getNextChange(), status.getNextChange())) {
+				changed.add(status);
+			}
+		}
+		if (!created.isEmpty() || !changed.isEmpty()) {
+			dao.execute((session) -> {
+				for (GoalStatus status : created) {
+					session.save(status);
+				}
+				for (GoalStatus status : changed) {
+					session.update(status);
+				}
+			});
+		}
+		return created.size() + changed.size();
+	}
+
+	/**
+	 * Calcula a situação de um bloco de metas, atualizando as situações
+	 * existentes e criando as que faltam, sem gravar.
+	 */
+	private static List<GoalStatus> calculateChunk(HibernateDAO dao, List<Long> ids, Date today,
+			Map<Long, GoalStatus> existent) {
+		Criteria goalList = dao.newCriteria(StructureLevelInstance.class)
+			.createAlias("level", "level", JoinType.INNER_JOIN)
+			.add(Restrictions.in("id", ids))
+			.add(Restrictions.eq("level.goal", true));
+		List<StructureLevelInstance> goals = dao.findByCriteria(goalList, StructureLevelInstance.class);
+		if (goals.isEmpty()) {
+			return new ArrayList<>(0);
+		}
+
+		Map<Long, GoalValues> values = new HashMap<>();
+		Criteria attributeInstances = dao.newCriteria(AttributeInstance.class)
+			.createAlias("attribute", "attribute", JoinType.INNER_JOIN)
+			.add(Restrictions.in("levelInstance.id", ids))
+			.add(Restrictions.disjunction()
+				.add(Restrictions.eq("attribute.finishDate", true))
+				.add(Restrictions.eq("attribute.expectedField", true))
+				.add(Restrictions.eq("attribute.reachedField", true))
+				.add(Restrictions.eq("attribute.minimumField", true))
+				.add(Restrictions.eq("attribute.maximumField", true)))
+			.setProjection(Projections.projectionList()
+				.add(Projections.property("levelInstance.id"))
+				.add(Projections.property("attribute.finishDate"))
+				.add(Projections.property("attribute.expectedField"))
+				.add(Projections.property("attribute.reachedField"))
+				.add(Projections.property("attribute.minimumField"))
+				.add(Projections.property("valueAsDate"))
+				.add(Projections.property("valueAsNumber")));
+		for (Object[] row : dao.findByCriteria(attributeInstances, Object[].class)) {
+			GoalValues value = values.computeIfAbsent((Long) row[0], (key) -> new GoalValues());
+			if ((Boolean) row[1]) {
+				value.finish = (Date) row[5];
+			} else if ((Boolean) row[2]) {
+				value.expected = (Double) row[6];
+			} else if ((Boolean) row[3]) {
+				value.reach = (Double) row[6];
+			} else if ((Boolean) row[4]) {
+				value.min = (Double) row[6];
+			} else {
+				value.max = (Double) row[6];
+			}
+		}
+
+		// A polaridade fica no indicador, pai das metas.
+		Set<Long> parentIds = new HashSet<>();
+		for (StructureLevelInstance goal : goals) {
+			if (goal.getParent() != null) {
+				parentIds.add(goal.getParent());
+			}
+		}
+		Map<Long, String> polarities = new HashMap<>();
+		if (!parentIds.isEmpty()) {
+			Criteria polarityList = dao.newCriteria(AttributeInstance.class)
+				.createAlias("attribute", "attribute", JoinType.INNER_JOIN)
+				.add(Restrictions.in("levelInstance.id", parentIds))
+				.add(Restrictions.eq("attribute.polarityField", true))
+				.setProjection(Projections.projectionList()
+					.add(Projections.property("levelInstance.id"))
+					.add(Projections.property("value")));
+			for (Object[] row : dao.findByCriteria(polarityList, Object[].class)) {
+				polarities.put((Long) row[0], (String) row[1]);
+			}
+		}
+
+		List<GoalStatus> statuses = new ArrayList<>(goals.size());
+		for (StructureLevelInstance goal : goals) {
+			GoalValues value = values.get(goal.getId());
+			if (value == null) {
+				value = new GoalValues();
+			}
+			GoalStatus status = existent.get(goal.getId());
+			if (status == null) {
+				status = new GoalStatus();
+				status.setLevelInstance(goal);
+				status.setPlan(goal.getPlan());
+			}
+			status.setFinish(value.finish);
+			classify(status, goal.isClosed(), value.finish, value.expected, value.reach, value.min, value.max,
+					polarities.get(goal.getParent()), today);
+			status.setCalculated(today);
+			status.setNextChange(nextChange(value.finish, today));
+			statuses.add(status);
+		}
+		return statuses;
+	}
+
+	private static boolean sameDate(Date a, Date b) {
+		return a == null ? b == null : b != null && a.getTime() == b.getTime();
+	}
+
+	/**
+	 * Calcula o andamento e o desempenho de uma meta.
+	 *
+	 * @param status
+	 *            Situação a ser preenchida.
+	 * @param closed
+	 *            Se a meta foi concluída.
+	 * @param finish
+	 *            Data de vencimento, ou null para a data do cálculo.
+	 * @param expected
+	 *            Valor esperado.
+	 * @param reach
+	 *            Valor alcançado.
+	 * @param min
+	 *            Valor mínimo.
+	 * @param max
+	 *            Valor máximo.
+	 * @param polarity
+	 *            Polaridade do indicador da meta.
+	 * @param today
+	 *            Data do cálculo.
+	 */
+	public static void classify(GoalStatus status, boolean closed, Date finish, Double expected, Double reach,
+			Double min, Double max, String polarity, Date today) {
+		if (finish == null) {
+			finish = today;
+		}
+		int performance = GoalStatus.NO_PERFORMANCE;
+		if (reach == null && ((min == null && expected == null && max == null) || finish.after(today))) {
+			status.setProgress(GoalStatus.NOT_STARTED);
+		} else {
+			if (closed) {
+				status.setProgress(GoalStatus.FINISHED);
+			} else if (finish.before(today)) {
+				status.setProgress(GoalStatus.LATE);
+			} else {
+				Calendar calendar = Calendar.getInstance();
+				calendar.setTime(today);
+				calendar.add(Calendar.DATE, CLOSE_TO_MATURITY_DAYS);
+				if (calendar.getTime().after(finish) || DateUtils.isSameDay(calendar.getTime(), finish)) {
+					status.setProgress(GoalStatus.CLOSE_TO_MATURITY);
+				} else {
+					status.setProgress(GoalStatus.IN_DAY);
+				}
+			}
+			if (polarityComparison(polarity, min, reach) || (reach == null && finish.before(today))) {
+				performance = GoalStatus.BELOW_MINIMUM;
+			} else if (polarityComparison(polarity, expected, reach)) {
+				performance = GoalStatus.BELOW_EXPECTED;
+			} else if (polarityComparison(polarity, max, reach)
+					|| (reach != null && expected != null && (Double.compare(reach, expected) == 0))) {
+				performance = GoalStatus.REACHED;
+			} else if (polarityComparison(polarity, reach, max)
+					|| (reach != null && max != null && (Double.compare(reach, max) == 0))) {
+				performance = GoalStatus.ABOVE_EXPECTED;
+			}
+		}
+		status.setPerformance(performance);
+	}
+
+	/**
+	 * Compara dois valores de acordo com a polaridade do indicador.
+	 *
+	 * @return boolean Se x supera y segundo a polaridade; falso se algum valor
+	 *         for nulo.
+	 */
+	public static boolean polarityComparison(String polarity, Double x, Double y) {
+		if (x == null || y == null)
+			return false;
+		if (polarity == null || polarity.equals("Maior-melhor")) {
+			return x > y;
+		} else if (polarity.equals("Menor-melhor")) {
+			return x < y;
+		}
+		return false;
+	}
+}
@@ -16,6 +16,9 @@ import org.forpdi.planning.fields.budget.BudgetDTO;
 import org.forpdi.planning.fields.schedule.Schedule;
 import org.forpdi.planning.fields.table.TableFields;
 import org.forpdi.planning.structure.StructureLevel;
+import org.forpdi.system.CacheRegions;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import br.com.caelum.vraptor.boilerplate.SimpleLogicalDeletableEntity;
 import br.com.caelum.vraptor.serialization.SkipSerialization;
@@ -26,6 +29,7 @@ import br.com.caelum.vraptor.serialization.SkipSerialization;
  */
 @Entity(name = Attribute.TABLE)
 @Table(name = Attribute.TABLE)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.STRUCTURE)
 public class Attribute extends SimpleLogicalDeletableEntity {
 	public static final String TABLE = "fpdi_attribute";
 	private static final long serialVersionUID = 1L;
@@ -14,12 +14,11 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 
 import javax.enterprise.context.RequestScoped;
+import javax.enterprise.inject.spi.CDI;
 import javax.inject.Inject;
 
 import org.forpdi.core.company.CompanyDomain;
@@ -45,7 +44,6 @@ import org.forpdi.planning.attribute.types.StrategicObjective;
 import org.forpdi.planning.attribute.types.TableField;
 import org.forpdi.planning.attribute.types.enums.FormatValue;
 import org.forpdi.planning.fields.FieldsBS;
-import org.forpdi.planning.fields.OptionsField;
 import org.forpdi.planning.fields.actionplan.ActionPlan;
 import org.forpdi.planning.fields.budget.BudgetDTO;
 import org.forpdi.planning.fields.schedule.Schedule;
@@ -62,6 +60,7 @@ import org.forpdi.planning.plan.PlanMacro;
 import org.forpdi.planning.structure.StructureBS;
 import org.forpdi.planning.structure.StructureHelper;
 import org.forpdi.planning.structure.StructureLevelInstance;
+import org.forpdi.system.PDFgenerate;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
@@ -76,7 +75,6 @@ import com.itextpdf.text.PageSize;
 import com.itextpdf.text.Paragraph;
 import com.itextpdf.text.Phrase;
 import com.itextpdf.text.Rectangle;
-import com.itextpdf.text.pdf.BaseFont;
 import com.itextpdf.text.pdf.CMYKColor;
 import com.itextpdf.text.pdf.ColumnText;
 import com.itextpdf.text.pdf.PdfContentByte;
@@ -594,102 +592,6 @@ public class DocumentBS extends HibernateBusiness {
 		return document;
 	}
 
-	/**
-	 * Duplicar documento.
-	 * 
-	 * @param macro
-	 *            Plano macro do documento a ser duplicado.
-	 * @param macroCopy
-	 *            Plano macro do documento que receberá a cópia.
-	 * @param keepContent
-	 *            Recebe true para manter o conteúdo, caso contrário recebe
-	 *            false.
-	 * @return boolean Se o documento foi duplicado retorna true, caso contrário
-	 *         retorna false.
-	 */
-	public boolean duplicateDocument(PlanMacro macro, PlanMacro macroCopy, Boolean keepContent) {
-		try {
-			Document doc = this.retrieveByPlan(macro);
-			Document docCopy = new Document();
-			docCopy.setCreation(new Date());
-			docCopy.setDeleted(false);
-			docCopy.setDescription(doc.getDescription());
-			docCopy.setId(null);
-			docCopy.setPlan(macroCopy);
-			docCopy.setTitle("Documento - " + macroCopy.getName());
-			this.persist(docCopy);
-			List<DocumentSection> sections = this.listSectionsByDocument(doc);
-			Map<Long, DocumentSection> map = new HashMap<>();
-			for (DocumentSection section : sections) {
-				DocumentSection copy = new DocumentSection();
-				copy.setDocument(docCopy);
-				copy.setLeaf(section.isLeaf());
-				copy.setName(section.getName());
-				if (section.getParent() == null)
-					copy.setParent(null);
-				else
-					copy.setParent(map.get(section.getParent().getId()));
-				copy.setSequence(section.getSequence());
-				copy.setId(null);
-				this.persist(copy);
-				map.put(section.getId(), copy);
-				this.duplicateDocumentSectionAttribute(section, copy, keepContent);
-
-			}
-			return true;
-		} catch (Exception e) {
-			LOGGER.error("Unexpected runtime error", e);
-			return false;
-		}
-	}
-
-	/**
-	 * Duplicar uma seção.
-	 * 
-	 * @param section
-	 *            Seção a ser duplicada.
-	 * @param copy
-	 *            Seção que receberá a cópia.
-	 * @param keepContent
-	 *            Recebe true para manter o conteúdo, caso contrário recebe
-	 *            false.
-	 * @return boolean Se a seção foi duplicada retorna true, caso contrário
-	 *         retorna false.
-	 */
-	public boolean duplicateDocumentSectionAttribute(DocumentSection section, DocumentSection copy,
-			Boolean keepContent) {
-		try {
-			List<DocumentAttribute> attributes = this.listAttributesBySection(section, null);
-			for (DocumentAttribute attr : attributes) {
-				DocumentAttribute attrCopy = new DocumentAttribute();
-				attrCopy.setName(attr.getName());
-				attrCopy.setRequired(attr.isRequired());
-				attrCopy.setSchedule(attr.getSchedule());
-				attrCopy.setSection(copy);
-				attrCopy.setSelectPlans(attr.getSelectPlans());
-				attrCopy.setSequence(attr.getSequence());
-				attrCopy.setTableFields(attr.getTableFields());
-				attrCopy.setType(attr.getType());
-				if (keepContent) {
-					attrCopy.setValue(attr.getValue());
-					attrCopy.setValueAsDate(attr.getValueAsDate());
-					attrCopy.setValueAsNumber(attr.getValueAsNumber());
-				}
-				attrCopy.setId(null);
-				this.persist(attrCopy);
-				if (attr.getType().equals(TableField.class.getCanonicalName())) {
-					this.duplicateTableField(attr, attrCopy, keepContent);
-				} else if (attr.getType().equals(ScheduleField.class.getCanonicalName())) {
-					this.duplicateScheduleField(attr, attrCopy, keepContent);
-				}
-			}
-			return true;
-		} catch (Exception e) {
-			LOGGER.error("Unexpected runtime error", e);
-			return false;
-		}
-	}
-
 	/**
 	 * Lista as seções filhas de uma seção passada por parâmetro.
 	 * 
@@ -705,130 +607,6 @@ public class DocumentBS extends HibernateBusiness {
 		return this.dao.findByCriteria(criteria, DocumentSection.class);
 	}
 
-	/**
-	 * Duplicar atributo do tipo tabela.
-	 * 
-	 * @param attr
-	 *            Atributo a ser duplicado.
-	 * @param attrCopy
-	 *            Atributo que receberá a cópia.
-	 * @param keepContent
-	 *            Recebe true para manter o conteúdo, caso contrário recebe
-	 *            false.
-	 */
-	public void duplicateTableField(DocumentAttribute attr, DocumentAttribute attrCopy, Boolean keepContent) {
-		TableFields fields = this.fieldsBS.tableFieldsByAttribute(attr.getId(), true, false);
-		TableFields fieldsCopy = new TableFields();
-		fieldsCopy.setAttributeId(attrCopy.getId());
-		fieldsCopy.setDeleted(false);
-		fieldsCopy.setIsDocument(true);
-		this.persist(fieldsCopy);
-		List<TableStructure> structures = this.fieldsBS.listTableStructureByFields(fields);
-		Map<Long, TableStructure> structureMap = new HashMap<>();
-		for (TableStructure structure : structures) {
-			TableStructure structureCopy = new TableStructure();
-			structureCopy.setDeleted(false);
-			structureCopy.setInTotal(structure.isInTotal());
-			structureCopy.setLabel(structure.getLabel());
-			structureCopy.setTableFields(fieldsCopy);
-			structureCopy.setType(structure.getType());
-			this.persist(structureCopy);
-			if (structure.getType().equals(SelectField.class.getCanonicalName())) {
-				List<OptionsField> options = this.fieldsBS.getOptionsForColumn(attr.getId(), structure.getId(), true);
-				for (OptionsField option : options) {
-					OptionsField optionCopy = new OptionsField();
-					optionCopy.setAttributeId(attrCopy.getId());
-					optionCopy.setColumnId(structureCopy.getId());
-					optionCopy.setCreation(new Date());
-					optionCopy.setDeleted(false);
-					optionCopy.setDocument(true);
-					optionCopy.setLabel(option.getLabel());
-					this.persist(optionCopy);
-				}
-			}
-			structureMap.put(structure.getId(), structureCopy);
-		}
-		if (keepContent) {
-			List<TableInstance> instances = this.fieldsBS.listTableInstanceByFields(fields,false);
-			for (TableInstance instance : instances) {
-				TableInstance instanceCopy = new TableInstance();
-				instanceCopy.setCreation(new Date());
-				instanceCopy.setDeleted(false);
-				instanceCopy.setTableFields(fieldsCopy);
-				this.persist(instanceCopy);
-				List<TableValues> values = this.fieldsBS.listTableValuesByInstance(instance,false);
-				for (TableValues value : values) {
-					TableValues valueCopy = new TableValues();
-					valueCopy.setDeleted(false);
-					valueCopy.setTableInstance(instanceCopy);
-					valueCopy.setTableStructure(structureMap.get(value.getTableStructure().getId()));
-					valueCopy.setValue(value.getValue());
-					valueCopy.setValueAsDate(value.getValueAsDate());
-					valueCopy.setValueAsNumber(value.getValueAsNumber());
-					this.persist(valueCopy);
-				}
-			}
-		}
-	}
-
-	/**
-	 * Duplicar atributo do tipo cronograma.
-	 * 
-	 * @param attr
-	 *            Atributo a ser duplicado.
-	 * @param attrCopy
-	 *            Atributo que receberá a cópia.
-	 * @param keepContent
-	 *            Recebe true para manter o conteúdo, caso contrário recebe
-	 *            false.
-	 */
-	public void duplicateScheduleField(DocumentAttribute attr, DocumentAttribute attrCopy, Boolean keepContent) {
-		Schedule schedule = this.fieldsBS.scheduleByAttribute(attr.getId(), true);
-		Schedule scheduleCopy = new Schedule();
-		scheduleCopy.setAttributeId(attrCopy.getId());
-		scheduleCopy.setDeleted(false);
-		scheduleCopy.setIsDocument(true);
-		scheduleCopy.setPeriodicityEnable(schedule.isPeriodicityEnable());
-		this.persist(scheduleCopy);
-		List<ScheduleStructure> structures = this.fieldsBS.listScheduleStructure(schedule);
-		Map<Long, ScheduleStructure> structureMap = new HashMap<>();
-		for (ScheduleStructure structure : structures) {
-			ScheduleStructure structureCopy = new ScheduleStructure();
-			structureCopy.setDeleted(false);
-			structureCopy.setLabel(structure.getLabel());
-			structureCopy.setSchedule(scheduleCopy);
-			structureCopy.setType(structure.getType());
-			this.persist(structureCopy);
-			structureMap.put(structure.getId(), structureCopy);
-		}
-		if (keepContent) {
-			List<ScheduleInstance> instances = this.fieldsBS.listScheduleInstance(schedule);
-			for (ScheduleInstance instance : instances) {
-				ScheduleInstance instanceCopy = new ScheduleInstance();
-				instanceCopy.setBegin(instance.getBegin());
-				instanceCopy.setCreation(new Date());
-				instanceCopy.setDeleted(false);
-				instanceCopy.setDescription(instance.getDescription());
-				instanceCopy.setEnd(instance.getEnd());
-				instanceCopy.setNumber(instance.getNumber());
-				instanceCopy.setPeriodicity(instance.getPeriodicity());
-				instanceCopy.setSchedule(scheduleCopy);
-				this.persist(instanceCopy);
-				List<ScheduleValues> values = this.fieldsBS.lsitScheduleValues(instance);
-				for (ScheduleValues value : values) {
-					ScheduleValues valueCopy = new ScheduleValues();
-					valueCopy.setDeleted(false);
-					valueCopy.setScheduleInstance(instanceCopy);
-					valueCopy.setScheduleStructure(structureMap.get(value.getScheduleStructure().getId()));
-					valueCopy.setValue(value.getValue());
-					valueCopy.setValueAsDate(value.getValueAsDate());
-					valueCopy.setValueAsNumber(value.getValueAsNumber());
-					this.persist(valueCopy);
-				}
-			}
-		}
-	}
-
 	/**
 	 * Gera tabelas PDF do plano de meta passado por parâmetro.
 	 * 
@@ -837,517 +615,7 @@ public class DocumentBS extends HibernateBusiness {
 	 * @return List<PdfPTable> Lista de tabelas em PDF.
 	 */
 	public List<PdfPTable> generatePDFplanTable(Plan plan) {
-
-		CMYKColor eixoHeaderBgColor = new CMYKColor(0, 0, 0, 70);
-		// Cor cinza - cabeçalho objetivo do plano de metas
-		CMYKColor objetivoHeaderBgColor = new CMYKColor(0, 0, 0, 50);
-		// Cor cinza - conteudo objetivo do plano de metas
-		CMYKColor objetivoRowBgColor = new CMYKColor(0, 0, 0, 20);
-		// Cor branco - borda tabela plano de metas
-		CMYKColor borderPlanColor = new CMYKColor(0, 0, 0, 0);
-		// Cor roxo - cabeçalho indicador do plano de metas
-		CMYKColor indicadorHeaderBgColor = new CMYKColor(62, 30, 0, 18);
-		// Cor roxo - conteudo indicador do plano de metas
-		CMYKColor indicadorRowBgColor = new CMYKColor(28, 14, 0, 9);
-		Font texto = FontFactory.getFont(FontFactory.TIMES, 12.0f);
-		Font titulo = FontFactory.getFont(FontFactory.TIMES_BOLD, 12.0f);
-		float paragraphSpacing = 22.6772f;
-		PdfPTable table = new PdfPTable(5);
-		// Plan plan = planBS.retrieveById(planId);
-		List<StructureLevelInstance> list = structureBS.listRootLevelInstanceByPlan(plan);
-		// ArrayList<Long> attInstList = new ArrayList<Long>();
-		ArrayList<PdfPTable> tableList = new ArrayList<PdfPTable>();
-		for (StructureLevelInstance s : list) {
-
-			PaginatedList<StructureLevelInstance> structureLevelSons = new PaginatedList<>();
-			structureLevelSons.setList(structureBS.retrieveLevelInstanceSons(s.getId()));
-			s.setSons(structureLevelSons);
-
-			List<Attribute> attributeList = structureBS.retrieveLevelAttributes(s.getLevel());
-			attributeList = structureBS.setAttributesInstances(s, attributeList);
-
-			if (!s.getSons().getList().isEmpty()) {
-				for (StructureLevelInstance son : s.getSons().getList()) {
-					if (son.getLevel().isObjective()) {// Objetivo
-						String eixoLabel = s.getLevel().getName() + ": ";
-						String eixoName = s.getName();
-						table = new PdfPTable(5);
-						table.setSpacingBefore(paragraphSpacing);
-						table.setHorizontalAlignment(Element.ALIGN_CENTER);
-						table.setWidthPercentage(100.0f);
-
-						Phrase phraseEixoLabel = new Phrase(eixoLabel, titulo);
-						Phrase phraseEixoName = new Phrase(eixoName, texto);
-						phraseEixoLabel.add(phraseEixoName);
-
-						PdfPCell cell = new PdfPCell(phraseEixoLabel);
-
-						cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-
-						// centraliza verticalmente
-						Float fontSize = titulo.getSize();
-						Float capHeight = titulo.getBaseFont().getFontDescriptor(BaseFont.CAPHEIGHT, fontSize);
-						Float padding = 5f;
-						cell.setPadding(padding);
-						cell.setPaddingTop(capHeight - fontSize + padding);
-
-						cell.setBackgroundColor(eixoHeaderBgColor);
-						cell.setBorderColor(borderPlanColor);
-						cell.setColspan(5);
-						table.addCell(cell);
-
-						String objetivoLabel = son.getLevel().getName() + ": ";
-						String objetivoName = son.getName();
-						Phrase phraseObjetivoLabel = new Phrase(objetivoLabel, titulo);
-						Phrase phraseObjetivoName = new Phrase(objetivoName, texto);
-						phraseObjetivoLabel.add(phraseObjetivoName);
-
-						cell = new PdfPCell(phraseObjetivoLabel);
-
-						cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-
-						// centraliza verticalmente
-						cell.setPadding(padding);
-						cell.setPaddingTop(capHeight - fontSize + padding);
-
-						cell.setBackgroundColor(objetivoHeaderBgColor);
-						cell.setBorderColor(borderPlanColor);
-						cell.setColspan(5);
-						table.addCell(cell);
-
-						List<BudgetDTO> budgetList = new ArrayList<BudgetDTO>();
-						int budgetListSize = 0;
-
-						List<Attribute> sonAttributeList = structureBS.retrieveLevelAttributes(son.getLevel());
-						sonAttributeList = structureBS.setAttributesInstances(son, sonAttributeList);
-						if (!sonAttributeList.isEmpty()) {
-							String bsc = "-";
-							for (Attribute sonAttribute : sonAttributeList) {
-
-								if (sonAttribute.isBscField()) { // Perspectiva
-									AttributeInstance attInst = attrHelper.retrieveAttributeInstance(son, sonAttribute);
-									if (attInst != null) {
-										bsc = attInst.getValue();
-									} else {
-										bsc = "-";
-									}
-								}
-								if (sonAttribute.getBudgets() != null && !sonAttribute.getBudgets().isEmpty()) { // Orçamento
-									budgetList = sonAttribute.getBudgets();
-									budgetListSize = budgetList.size();
-								}
-							}
-							if (budgetListSize > 0) {
-								// Perspectiva BSC
-								cell = new PdfPCell(new Phrase("Perspectiva do BSC", titulo));
-								cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-								// centraliza verticalmente
-								cell.setPadding(padding);
-								cell.setPaddingTop(capHeight - fontSize + padding);
-								cell.setBackgroundColor(objetivoHeaderBgColor);
-								cell.setBorderColor(borderPlanColor);
-								cell.setColspan(1);
-								table.addCell(cell);
-
-								// Orçamento
-								cell = new PdfPCell(new Phrase("Orçamento", titulo));
-								cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-								// centraliza verticalmente
-								cell.setPadding(padding);
-								cell.setPaddingTop(capHeight - fontSize + padding);
-								cell.setBackgroundColor(objetivoHeaderBgColor);
-								cell.setBorderColor(borderPlanColor);
-								cell.setColspan(4);
-								table.addCell(cell);
-
-								// Perspectiva BSC - valor
-								cell = new PdfPCell(new Phrase(bsc, texto));
-								cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-								// centraliza verticalmente
-								cell.setPadding(padding);
-								cell.setPaddingTop(capHeight - fontSize + padding);
-								cell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-								cell.setBackgroundColor(objetivoRowBgColor);
-								cell.setBorderColor(borderPlanColor);
-								cell.setColspan(1);
-								cell.setRowspan(budgetListSize + 1);
-								table.addCell(cell);
-
-								// Subação
-								cell = new PdfPCell(new Phrase("Subação", titulo));
-								cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-								// centraliza verticalmente
-								cell.setPadding(padding);
-								cell.setPaddingTop(capHeight - fontSize + padding);
-								cell.setBackgroundColor(objetivoRowBgColor);
-								cell.setBorderColor(borderPlanColor);
-								cell.setColspan(1);
-								table.addCell(cell);
-
-								// Planejado
-								cell = new PdfPCell(new Phrase("Planejado", titulo));
-								cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-								// centraliza verticalmente
-								cell.setPadding(padding);
-								cell.setPaddingTop(capHeight - fontSize + padding);
-								cell.setBackgroundColor(objetivoRowBgColor);
-								cell.setBorderColor(borderPlanColor);
-								cell.setColspan(1);
-								table.addCell(cell);
-
-								// Empenhado
-								cell = new PdfPCell(new Phrase("Empenhado", titulo));
-								cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-								// centraliza verticalmente
-								cell.setPadding(padding);
-								cell.setPaddingTop(capHeight - fontSize + padding);
-								cell.setBackgroundColor(objetivoRowBgColor);
-								cell.setBorderColor(borderPlanColor);
-								cell.setColspan(1);
-								table.addCell(cell);
-
-								// Realizado
-								cell = new PdfPCell(new Phrase("Realizado", titulo));
-								cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-								// centraliza verticalmente
-								cell.setPadding(padding);
-								cell.setPaddingTop(capHeight - fontSize + padding);
-								cell.setBackgroundColor(objetivoRowBgColor);
-								cell.setBorderColor(borderPlanColor);
-								cell.setColspan(1);
-								table.addCell(cell);
-
-								for (BudgetDTO b : budgetList) {
-									// Subação - valor
-									cell = new PdfPCell(new Phrase(b.getBudget().getSubAction(), texto));
-									cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-									// centraliza verticalmente
-									cell.setPadding(padding);
-									cell.setPaddingTop(capHeight - fontSize + padding);
-									cell.setBackgroundColor(objetivoRowBgColor);
-									cell.setBorderColor(borderPlanColor);
-									cell.setColspan(1);
-									table.addCell(cell);
-
-									// Para formatar valores em R$
-									Locale ptBr = new Locale("pt", "BR"); // Locale
-																			// para
-																			// o
-																			// Brasil
-									NumberFormat moedaFormat = NumberFormat.getCurrencyInstance(ptBr);
-
-									// Planejado - valor
-									cell = new PdfPCell(new Phrase(moedaFormat.format(b.getBudgetLoa()), texto));
-									cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-									// centraliza verticalmente
-									cell.setPadding(padding);
-									cell.setPaddingTop(capHeight - fontSize + padding);
-									cell.setBackgroundColor(objetivoRowBgColor);
-									cell.setBorderColor(borderPlanColor);
-									cell.setColspan(1);
-									table.addCell(cell);
-
-									// Empenhado - valor
-									cell = new PdfPCell(
-											new Phrase(moedaFormat.format(b.getBudget().getCommitted()), texto));
-									cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-									// centraliza verticalmente
-									cell.setPadding(padding);
-									cell.setPaddingTop(capHeight - fontSize + padding);
-									cell.setBackgroundColor(objetivoRowBgColor);
-									cell.setBorderColor(borderPlanColor);
-									cell.setColspan(1);
-									table.addCell(cell);
-
-									// Realizado - valor
-									cell = new PdfPCell(
-											new Phrase(moedaFormat.format(b.getBudget().getRealized()), texto));
-									cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-									// centraliza verticalmente
-									cell.setPadding(padding);
-									cell.setPaddingTop(capHeight - fontSize + padding);
-									cell.setBackgroundColor(objetivoRowBgColor);
-									cell.setBorderColor(borderPlanColor);
-									cell.setColspan(1);
-									table.addCell(cell);
-								}
-							}
-						}
-
-						StructureLevelInstance sonAux = son;
-						PaginatedList<StructureLevelInstance> objSonsList = new PaginatedList<>();
-						objSonsList.setList(structureBS.retrieveLevelInstanceSons(sonAux.getId()));
-						sonAux.setSons(objSonsList);
-						objSonsList = sonAux.getSons();
-
-						if (objSonsList.getList().size() > 0) {
-							// Indicadores
-							cell = new PdfPCell(new Phrase("Indicadores", titulo));
-							cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-							// centraliza verticalmente
-							cell.setPadding(padding);
-							cell.setPaddingTop(capHeight - fontSize + padding);
-							cell.setBackgroundColor(indicadorHeaderBgColor);
-							cell.setBorderColor(borderPlanColor);
-							cell.setColspan(1);
-							table.addCell(cell);
-
-							// Metas
-							cell = new PdfPCell(new Phrase("Metas", titulo));
-							cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-							// centraliza verticalmente
-							cell.setPadding(padding);
-							cell.setPaddingTop(capHeight - fontSize + padding);
-							cell.setBackgroundColor(objetivoHeaderBgColor);
-							cell.setBorderColor(borderPlanColor);
-							cell.setColspan(2);
-							table.addCell(cell);
-
-							// Esperado
-							cell = new PdfPCell(new Phrase("Esperado", titulo));
-							cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-							// centraliza verticalmente
-							cell.setPadding(padding);
-							cell.setPaddingTop(capHeight - fontSize + padding);
-							cell.setBackgroundColor(objetivoHeaderBgColor);
-							cell.setBorderColor(borderPlanColor);
-							cell.setColspan(1);
-							table.addCell(cell);
-
-							// Alcançado
-							cell = new PdfPCell(new Phrase("Alcançado", titulo));
-							cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-							// centraliza verticalmente
-							cell.setPadding(padding);
-							cell.setPaddingTop(capHeight - fontSize + padding);
-							cell.setBackgroundColor(objetivoHeaderBgColor);
-							cell.setBorderColor(borderPlanColor);
-							cell.setColspan(1);
-							table.addCell(cell);
-
-							// String indicadorName = "";
-							String calculo = "";
-							Long responsavel = (long) -1;
-
-							for (StructureLevelInstance indicatorSon : objSonsList.getList()) { // Indicadores
-								if (indicatorSon.getLevel().isIndicator()) {
-									List<Attribute> indicatorSonAttributeList = structureBS
-											.retrieveLevelAttributes(indicatorSon.getLevel());
-									indicatorSonAttributeList = structureBS.setAttributesInstances(indicatorSon,
-											indicatorSonAttributeList);
-									indicatorSon.getLevel().setAttributes(indicatorSonAttributeList);
-									for (Attribute indicatorSonAttribute : indicatorSonAttributeList) {
-										if (indicatorSonAttribute.getId() == 14) { // Cálculo
-											AttributeInstance attInst = attrHelper.retrieveAttributeInstance(
-													indicatorSon, structureBS.retrieveAttribute((long) 14));
-											if (attInst != null) {
-												calculo = indicatorSonAttribute.getAttributeInstance().getValue();
-											} else {
-												calculo = "-";
-											}
-										}
-										if (indicatorSonAttribute.getId() == 7) { // responsável
-											AttributeInstance attInst = attrHelper.retrieveAttributeInstance(
-													indicatorSon, structureBS.retrieveAttribute((long) 7));
-											if (attInst != null) {
-												responsavel = Long.parseLong(
-														indicatorSonAttribute.getAttributeInstance().getValue());
-											} else {
-												responsavel = (long) -1;
-											}
-
-										}
-									}
-									// LOGGER.info(calculo);
-									// LOGGER.info(responsavel);
-									PaginatedList<StructureLevelInstance> levelInstances = new PaginatedList<>();
-									levelInstances
-											.setList(this.structureBS.retrieveLevelInstanceSons(indicatorSon.getId()));
-
-									// Indicador - valores
-
-									User responsible = userBS.existsByUser(responsavel);
-									// LOGGER.info(responsible.toString());
-									Phrase indicador = new Phrase(indicatorSon.getName(), texto);
-									indicador.add(new Phrase("\n\nCálculo: ", titulo));
-									indicador.add(new Phrase(calculo, texto));
-									indicador.add(new Phrase("\nResponsável: ", titulo));
-									if (responsible != null) {
-										indicador.add(new Phrase(responsible.getName(), texto));
-									} else {
-										indicador.add(new Phrase("-", texto));
-									}
-
-									cell = new PdfPCell(indicador);
-									cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-									// centraliza verticalmente
-									cell.setPadding(padding);
-									cell.setPaddingTop(capHeight - fontSize + padding);
-									cell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-									cell.setBackgroundColor(indicadorRowBgColor);
-									cell.setBorderColor(borderPlanColor);
-									cell.setColspan(1);
-									cell.setMinimumHeight(4 * fontSize);
-									if (levelInstances.getList().size() > 0) {
-										cell.setRowspan(levelInstances.getList().size());
-									}
-									table.addCell(cell);
-
-									for (int index = 0; index < levelInstances.getList().size(); index++) {
-
-										levelInstances.getList().get(index).getLevel().setAttributes(this.structureBS
-												.retrieveLevelSonsAttributes(levelInstances.getList().get(index)));
-									}
-
-									StructureLevelInstance levelInstanceAux = new StructureLevelInstance();
-									levelInstanceAux.setId(indicatorSon.getId());
-									levelInstanceAux.setSons(levelInstances);
-
-									// CABEÇALHO
-									// METAS
-									if (levelInstanceAux.getSons().getList().size() != 0) {
-										ArrayList<String> expected = new ArrayList<String>();
-										ArrayList<String> reached = new ArrayList<String>();
-
-										HashMap<Long, ArrayList<String>> meta = new HashMap<Long, ArrayList<String>>();
-										AttributeInstance formatAttr = this.attrHelper
-												.retrieveFormatAttributeInstance(levelInstanceAux);
-										FormatValue formatValue = FormatValue.forAttributeInstance(formatAttr);
-										for (int goalIndex = 0; goalIndex < levelInstanceAux.getSons().getList()
-												.size(); goalIndex++) {
-
-											ArrayList<String> values = new ArrayList<String>();
-											// LOGGER.info(levelInstanceAux.getSons().get(goalIndex).toString());
-
-											List<AttributeInstance> attInst = structureBS.listAttributeInstanceByLevel(
-													levelInstanceAux.getSons().getList().get(goalIndex),false);
-											List<Attribute> attList = structureBS.listAttributesPDF(
-													levelInstanceAux.getSons().getList().get(goalIndex).getLevel());
-
-											for (Attribute a : attList) {
-												if (a.isExpectedField()) { // esperado
-													for (AttributeInstance at : attInst) {
-														if (at.getAttribute().getId() == a.getId()) {
-															at.setFormattedValue(formatValue
-																	.format(at.getValue().replace(',', '.')));
-															expected.add(at.getFormattedValue());
-															values.add(at.getFormattedValue());
-														}
-													}
-												} else if (a.isReachedField()) { // realizado
-													for (AttributeInstance at : attInst) {
-														if (at.getAttribute().getId() == a.getId()) {
-															at.setFormattedValue(formatValue.format(at.getValue()));
-															reached.add(at.getFormattedValue());
-															values.add(at.getFormattedValue());
-														}
-													}
-												}
-											}
-
-											meta.put(levelInstanceAux.getSons().getList().get(goalIndex).getId(),
-													values);
-										}
-
-										List<Long> keys = new ArrayList<Long>(meta.keySet());
-										Collections.sort(keys);
-										// LOGGER.info(keys);
-										int i = 0;
-										for (Long x : keys) {
-											// LOGGER.info(meta.get(x));
-											cell = new PdfPCell(
-													new Phrase(levelInstances.getList().get(i).getName(), texto));
-											i++;
-											cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-											cell.setPadding(padding);
-											cell.setPaddingTop(capHeight - fontSize + padding);
-											cell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-											cell.setBackgroundColor(objetivoRowBgColor);
-											cell.setBorderColor(borderPlanColor);
-											cell.setColspan(2);
-											table.addCell(cell);
-
-											if (meta.get(x).size() > 1) {
-												cell = new PdfPCell(new Phrase(meta.get(x).get(1), texto));
-												cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-												cell.setPadding(padding);
-												cell.setPaddingTop(capHeight - fontSize + padding);
-												cell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-												cell.setBackgroundColor(objetivoRowBgColor);
-												cell.setBorderColor(borderPlanColor);
-												table.addCell(cell);
-
-												cell = new PdfPCell(new Phrase(meta.get(x).get(0), texto));
-												cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-												cell.setPadding(padding);
-												cell.setPaddingTop(capHeight - fontSize + padding);
-												cell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-												cell.setBackgroundColor(objetivoRowBgColor);
-												cell.setBorderColor(borderPlanColor);
-												table.addCell(cell);
-											} else if (meta.get(x).size() == 0) {
-												cell = new PdfPCell(new Phrase("-", texto));
-												cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-												cell.setPadding(padding);
-												cell.setPaddingTop(capHeight - fontSize + padding);
-												cell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-												cell.setBackgroundColor(objetivoRowBgColor);
-												cell.setBorderColor(borderPlanColor);
-												table.addCell(cell);
-
-												cell = new PdfPCell(new Phrase("-", texto));
-												cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-												cell.setPadding(padding);
-												cell.setPaddingTop(capHeight - fontSize + padding);
-												cell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-												cell.setBackgroundColor(objetivoRowBgColor);
-												cell.setBorderColor(borderPlanColor);
-												table.addCell(cell);
-
-											} else {
-												cell = new PdfPCell(new Phrase(meta.get(x).get(0), texto));
-												cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-												cell.setPadding(padding);
-												cell.setPaddingTop(capHeight - fontSize + padding);
-												cell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-												cell.setBackgroundColor(objetivoRowBgColor);
-												cell.setBorderColor(borderPlanColor);
-												table.addCell(cell);
-
-												cell = new PdfPCell(new Phrase("-", texto));
-												cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-												cell.setPadding(padding);
-												cell.setPaddingTop(capHeight - fontSize + padding);
-												cell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-												cell.setBackgroundColor(objetivoRowBgColor);
-												cell.setBorderColor(borderPlanColor);
-												table.addCell(cell);
-											}
-										}
-									} else {
-										cell = new PdfPCell(new Phrase("-", texto));
-										cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-										cell.setPadding(padding);
-										cell.setPaddingTop(capHeight - fontSize + padding);
-										cell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-										cell.setBackgroundColor(objetivoRowBgColor);
-										cell.setBorderColor(borderPlanColor);
-										cell.setColspan(2);
-										table.addCell(cell);
-										cell.setColspan(1);
-										table.addCell(cell);
-										table.addCell(cell);
-
-									}
-								}
-							}
-						}
-						tableList.add(table);
-					}
-				}
-			}
-		}
-		return tableList;
+		return CDI.current().select(PDFgenerate.class).get().generatePDFplanTable(plan);
 	}
 
 	/**
@@ -3,8 +3,12 @@ package org.forpdi.planning.fields;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.enterprise.context.RequestScoped;
@@ -37,6 +41,7 @@ import org.forpdi.planning.fields.table.TableInstance;
 import org.forpdi.planning.fields.table.TableStructure;
 import org.forpdi.planning.fields.table.TableValues;
 import org.forpdi.planning.structure.StructureLevelInstance;
+import org.forpdi.system.CacheRegions;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Disjunction;
 import org.hibernate.criterion.Order;
@@ -433,13 +438,28 @@ public class FieldsBS extends HibernateBusiness {
 	 * @return Lista de orçamentos.
 	 */
 	public List<BudgetDTO> getBudgets(StructureLevelInstance levelInstance) {
-		PaginatedList<Budget> budgetList = this.listBudgetsByInstance(levelInstance);
-		List<BudgetDTO> budgetItemlist = new ArrayList<BudgetDTO>();
-		BudgetElement data;
-		for (int i = 0; i < budgetList.getTotal(); i++) {
+		Criteria criteria = this.dao.newCriteria(Budget.class).add(Restrictions.eq("deleted", false))
+				.add(Restrictions.eq("levelInstance", levelInstance)).addOrder(Order.asc("id"));
+		List<Budget> budgets = this.dao.findByCriteria(criteria, Budget.class);
+		List<BudgetDTO> budgetItemlist = new ArrayList<BudgetDTO>(budgets.size());
+		if (budgets.isEmpty()) {
+			return budgetItemlist;
+		}
+		Set<String> subActions = new HashSet<>();
+		for (Budget budget : budgets) {
+			subActions.add(budget.getSubAction());
+		}
+		Map<String, BudgetElement> elements = new HashMap<>();
+		Criteria elementCriteria = this.dao.newCriteria(BudgetElement.class).add(Restrictions.eq("deleted", false))
+				.add(Restrictions.in("subAction", subActions))
+				.add(Restrictions.eq("company", this.domain.getCompany()));
+		for (BudgetElement element : this.dao.findByCriteria(elementCriteria, BudgetElement.class)) {
+			elements.put(element.getSubAction(), element);
+		}
+		for (Budget budget : budgets) {
 			BudgetDTO item = new BudgetDTO();
-			data = this.retrieveBudgetElement(budgetList.getList().get(i).getSubAction());
-			item.setBudget(budgetList.getList().get(i));
+			BudgetElement data = elements.get(budget.getSubAction());
+			item.setBudget(budget);
 			item.setBudgetLoa(data.getBudgetLoa());
 			item.setBalanceAvailable(data.getBalanceAvailable());
 			budgetItemlist.add(item);
@@ -542,7 +562,8 @@ public class FieldsBS extends HibernateBusiness {
 	public BudgetElement retrieveBudgetElement(String subAction) {
 		Criteria criteria = this.dao.newCriteria(BudgetElement.class).add(Restrictions.eq("deleted", false))
 				.add(Restrictions.eq("subAction", subAction))
-				.add(Restrictions.eq("company",this.domain.getCompany()));
+				.add(Restrictions.eq("company",this.domain.getCompany()))
+				.setCacheable(true).setCacheRegion(CacheRegions.BUDGET_QUERY);
 		return (BudgetElement) criteria.uniqueResult();
 	}
 
@@ -8,10 +8,15 @@ import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
+import org.forpdi.system.CacheRegions;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import br.com.caelum.vraptor.boilerplate.SimpleLogicalDeletableEntity;
 
 @Entity(name = OptionsField.TABLE)
 @Table(name = OptionsField.TABLE)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.STRUCTURE)
 public class OptionsField extends SimpleLogicalDeletableEntity {
 	public static final String TABLE = "fpdi_options_field";
 	private static final long serialVersionUID = 1L;
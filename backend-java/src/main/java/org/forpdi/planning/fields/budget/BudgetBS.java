@@ -7,6 +7,7 @@ import javax.enterprise.context.RequestScoped;
 
 import org.forpdi.core.company.Company;
 import org.forpdi.planning.structure.StructureLevelInstance;
+import org.forpdi.system.CacheRegions;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Restrictions;
 
@@ -81,7 +82,7 @@ public class BudgetBS extends HibernateBusiness {
 	public BudgetElement budgetElementExistsBySubActionAndCompany(String subAction, Company company) {
 		Criteria criteria = this.dao.newCriteria(BudgetElement.class).add(Restrictions.eq("deleted", false))
 				.add(Restrictions.eq("subAction", subAction).ignoreCase()).add(Restrictions.eq("company", company))
-				.setMaxResults(1);
+				.setMaxResults(1).setCacheable(true).setCacheRegion(CacheRegions.BUDGET_QUERY);
 
 		return (BudgetElement) criteria.uniqueResult();
 	}
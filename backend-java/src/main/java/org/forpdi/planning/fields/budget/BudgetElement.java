@@ -10,12 +10,16 @@ import javax.persistence.Table;
 import javax.persistence.Transient;
 
 import org.forpdi.core.company.Company;
+import org.forpdi.system.CacheRegions;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import br.com.caelum.vraptor.boilerplate.SimpleLogicalDeletableEntity;
 
 
 @Entity(name = BudgetElement.TABLE)
 @Table(name = BudgetElement.TABLE)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.BUDGET)
 public class BudgetElement extends SimpleLogicalDeletableEntity{	
 	public static final String TABLE = "fpdi_budget_element";
 	private static final long serialVersionUID = 1L;
@@ -1,11 +1,22 @@
 package org.forpdi.planning.jobs;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -14,7 +25,13 @@ import javax.enterprise.inject.spi.CDI;
 import org.forpdi.planning.attribute.Attribute;
 import org.forpdi.planning.attribute.AttributeInstance;
 import org.forpdi.planning.attribute.types.ResponsibleField;
+import org.forpdi.planning.structure.LevelInstancePath;
+import org.forpdi.planning.structure.LevelInstanceResponsibles;
 import org.forpdi.planning.structure.StructureLevelInstance;
+import org.forpdi.system.reports.ReportDataSource;
+import org.forpdi.system.reports.ReportDataVersion;
+import org.forpdi.system.search.SearchDocument;
+import org.forpdi.system.search.SearchIndex;
 import org.hibernate.SessionFactory;
 import org.jboss.logging.Logger;
 
@@ -27,6 +44,11 @@ import br.com.caelum.vraptor.tasks.scheduler.Scheduled;
  *
  * Tarefa para gerar metas em segundo plano.
  * 
+ * As datas de término de todos os períodos são calculadas antes da gravação,
+ * e as instâncias de nível e de atributo são inseridas em lotes JDBC, em uma
+ * única transação por configuração de meta. O andamento de cada geração pode
+ * ser consultado pelo id do indicador pai.
+ * 
  * @author Pedro Mutter
  * @author Renato Oliveira
  *
@@ -35,11 +57,27 @@ import br.com.caelum.vraptor.tasks.scheduler.Scheduled;
 @Scheduled(fixedRate=5000, concurrent=false)
 public class GoalsGenerationTask implements Task {
 
+	/** Andamento de uma geração que falhou. */
+	public static final int FAILED = -2;
+
+	/** Quantidade de metas inseridas por lote. */
+	private static final int BATCH_SIZE = 250;
+
+	private static final String INSERT_LEVEL_INSTANCE = "INSERT INTO " + StructureLevelInstance.TABLE
+			+ " (deleted, name, creation, modification, level_id, plan_id, parent, closed, aggregate)"
+			+ " VALUES (0, ?, ?, ?, ?, ?, ?, 0, 0)";
+	private static final String INSERT_ATTRIBUTE_INSTANCE = "INSERT INTO " + AttributeInstance.TABLE
+			+ " (deleted, value, valueAsNumber, valueAsDate, creation, attribute_id, levelInstance_id)"
+			+ " VALUES (0, ?, ?, ?, ?, ?, ?)";
+
 	private ConcurrentLinkedQueue<GoalDTO> queue;
+	/** Andamento (0 a 100) das gerações, indexado pelo id do indicador pai. */
+	private Map<Long, Integer> progress;
 	private static final Logger LOG = Logger.getLogger(GoalsGenerationTask.class);
 	
 	public GoalsGenerationTask() {
 		this.queue = new ConcurrentLinkedQueue<>();
+		this.progress = new ConcurrentHashMap<>();
 	}
 
 	/**
@@ -48,9 +86,34 @@ public class GoalsGenerationTask implements Task {
 	 * @param goal
 	 */
 	public void add(GoalDTO goal) {
+		this.progress.put(goal.getParent(), 0);
 		this.queue.add(goal);
 	}
 
+	/**
+	 * Andamento da geração de metas de um indicador.
+	 * 
+	 * @param indicatorId
+	 *            Id do indicador pai das metas geradas.
+	 * @return Porcentagem concluída, {@link #FAILED} se a geração falhou ou
+	 *         -1 se não há geração para o indicador.
+	 */
+	public int getProgress(Long indicatorId) {
+		Integer value = this.progress.get(indicatorId);
+		return value == null ? -1 : value;
+	}
+
+	/**
+	 * Descarta o andamento de uma geração já concluída ou que falhou.
+	 * 
+	 * @param indicatorId
+	 *            Id do indicador pai das metas geradas.
+	 */
+	public void resetProgress(Long indicatorId) {
+		this.progress.remove(indicatorId, 100);
+		this.progress.remove(indicatorId, FAILED);
+	}
+
 	/**
 	 * Execução da tarefa, que instancia os objetos nescessários e chama a
 	 * função para gerar metas.
@@ -78,108 +141,162 @@ public class GoalsGenerationTask implements Task {
 	}
 
 	/**
-	 * Método que verifica a fila, se houver configurações de metas, ele gera
-	 * metas de acordo com essa configuração.
+	 * Calcula as datas de término de cada período da meta, de acordo com a
+	 * periodicidade configurada.
+	 * 
+	 * @param goal
+	 *            Configuração da meta.
+	 * @return Lista com a data de término de cada meta a ser gerada.
+	 */
+	protected List<Date> computePeriodEnds(GoalDTO goal) {
+		List<Date> ends = new ArrayList<>();
+		int field;
+		int amount;
+		if (goal.getPeriodicity().equals("Diária")) {
+			field = Calendar.DAY_OF_MONTH;
+			amount = 1;
+		} else if (goal.getPeriodicity().equals("Semanal")) {
+			field = Calendar.WEEK_OF_YEAR;
+			amount = 1;
+		} else if (goal.getPeriodicity().equals("Quinzenal")) {
+			field = Calendar.DAY_OF_MONTH;
+			amount = 15;
+		} else if (goal.getPeriodicity().equals("Mensal")) {
+			field = Calendar.MONTH;
+			amount = 1;
+		} else if (goal.getPeriodicity().equals("Bimestral")) {
+			field = Calendar.MONTH;
+			amount = 2;
+		} else if (goal.getPeriodicity().equals("Trimestral")) {
+			field = Calendar.MONTH;
+			amount = 3;
+		} else if (goal.getPeriodicity().equals("Semestral")) {
+			field = Calendar.MONTH;
+			amount = 6;
+		} else if (goal.getPeriodicity().equals("Anual")) {
+			field = Calendar.YEAR;
+			amount = 1;
+		} else if (goal.getPeriodicity().equals("Bienal")) {
+			field = Calendar.YEAR;
+			amount = 2;
+		} else {
+			LOG.errorf("Unknown goal periodicity: %s", goal.getPeriodicity());
+			return ends;
+		}
+		GregorianCalendar gc = new GregorianCalendar();
+		Date begin = goal.getBeginDate();
+		while (begin.before(goal.getEndDate())) {
+			gc.setTime(begin);
+			gc.add(field, amount);
+			Date end = gc.getTime();
+			if (end.after(goal.getEndDate()))
+				end = goal.getEndDate();
+			ends.add(end);
+			begin = end;
+		}
+		return ends;
+	}
+
+	/**
+	 * Gera as metas de uma configuração, inserindo as instâncias de nível e
+	 * de atributo em lotes dentro de uma única transação.
 	 * 
 	 * @param dao
 	 */
 	private void generate(GoalDTO goal, HibernateDAO dao) {
+		final Long indicatorId = goal.getParent();
 		try {
-			Date begin = goal.getBeginDate();
-			Date end = goal.getBeginDate();
-			GregorianCalendar gc = new GregorianCalendar();
-			gc.setTime(begin);
-			begin = gc.getTime();
-			while (begin.before(goal.getEndDate())) {
-				if (goal.getPeriodicity().equals("Diária")) {
-					gc.setTime(begin);
-					gc.add(Calendar.DAY_OF_MONTH, 1);
-					end = gc.getTime();
-				} else if (goal.getPeriodicity().equals("Semanal")) {
-					gc.setTime(begin);
-					gc.add(Calendar.WEEK_OF_YEAR, 1);
-					end = gc.getTime();
-				} else if (goal.getPeriodicity().equals("Quinzenal")) {
-					gc.setTime(begin);
-					gc.add(Calendar.DAY_OF_MONTH, 15);
-					end = gc.getTime();
-				} else if (goal.getPeriodicity().equals("Mensal")) {
-					gc.setTime(begin);
-					gc.add(Calendar.MONTH, 1);
-					end = gc.getTime();
-				} else if (goal.getPeriodicity().equals("Bimestral")) {
-					gc.setTime(begin);
-					gc.add(Calendar.MONTH, 2);
-					end = gc.getTime();
-				} else if (goal.getPeriodicity().equals("Trimestral")) {
-					gc.setTime(begin);
-					gc.add(Calendar.MONTH, 3);
-					end = gc.getTime();
-				} else if (goal.getPeriodicity().equals("Semestral")) {
-					gc.setTime(begin);
-					gc.add(Calendar.MONTH, 6);
-					end = gc.getTime();
-				} else if (goal.getPeriodicity().equals("Anual")) {
-					gc.setTime(begin);
-					gc.add(Calendar.YEAR, 1);
-					end = gc.getTime();
-				} else if (goal.getPeriodicity().equals("Bienal")) {
-					gc.setTime(begin);
-					gc.add(Calendar.YEAR, 2);
-					end = gc.getTime();
+			final List<Date> ends = this.computePeriodEnds(goal);
+			LOG.infof("Generating %d goals for indicator %d...", ends.size(), indicatorId);
+			dao.execute((session) -> {
+				session.doWork((connection) -> {
+					for (int from = 0; from < ends.size(); from += BATCH_SIZE) {
+						List<Date> chunk = ends.subList(from, Math.min(from + BATCH_SIZE, ends.size()));
+						this.insertChunk(connection, goal, chunk);
+						// 100 apenas depois do commit
+						this.progress.put(indicatorId, Math.min(99, Math.floorDiv(100 * (from + chunk.size()), ends.size())));
+					}
+					LevelInstancePath.fillPlan(connection, goal.getPlan().getId());
+					LevelInstanceResponsibles.rebuildPlan(connection, goal.getPlan().getId());
+					SearchIndex.invalidate(connection, SearchDocument.LEVEL_INSTANCE, goal.getPlan().getParent().getId());
+					ReportDataVersion.touch(connection, ReportDataSource.PLAN_MACRO,
+						Collections.singletonList(goal.getPlan().getParent().getId()));
+				});
+			});
+			this.progress.put(indicatorId, 100);
+			LOG.infof("Finished generating %d goals for indicator %d.", ends.size(), indicatorId);
+		} catch (Exception e) {
+			this.progress.put(indicatorId, FAILED);
+			LOG.errorf(e, "Error generating goals for indicator %d.", indicatorId);
+		}
+	}
+
+	/**
+	 * Insere um lote de metas e suas instâncias de atributo.
+	 */
+	private void insertChunk(Connection connection, GoalDTO goal, List<Date> ends) throws SQLException {
+		DateFormat df = new SimpleDateFormat("dd/MM/yyyy");
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		long[] ids = new long[ends.size()];
+		try (PreparedStatement stmt = connection.prepareStatement(INSERT_LEVEL_INSTANCE, Statement.RETURN_GENERATED_KEYS)) {
+			for (Date end : ends) {
+				stmt.setString(1, goal.getName() + " - " + df.format(end));
+				stmt.setTimestamp(2, now);
+				stmt.setTimestamp(3, now);
+				stmt.setLong(4, goal.getLevel().getId());
+				stmt.setLong(5, goal.getPlan().getId());
+				stmt.setLong(6, goal.getParent());
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+			try (ResultSet keys = stmt.getGeneratedKeys()) {
+				for (int i = 0; i < ids.length && keys.next(); i++) {
+					ids[i] = keys.getLong(1);
 				}
-				if (end.after(goal.getEndDate()))
-					end = goal.getEndDate();
-				begin = end;
-
-				DateFormat df = new SimpleDateFormat("dd/MM/yyyy");
-				StructureLevelInstance levelInstance = new StructureLevelInstance();
-				levelInstance.setName(goal.getName() + " - " + df.format(end));
-				levelInstance.setParent(goal.getParent());
-				levelInstance.setLevel(goal.getLevel());
-				levelInstance.setPlan(goal.getPlan());
-				levelInstance.setCreation(new Date());
-				levelInstance.setModification(new Date());
-				dao.persist(levelInstance);
-				AttributeInstance attributeInstance = new AttributeInstance();
-				attributeInstance.setAttribute(goal.getLevel().getAttributes().get(1));
-				attributeInstance.setLevelInstance(levelInstance);
-				attributeInstance.setValue(goal.getDescription());
-				dao.persist(attributeInstance);
-				for (Attribute attribute : goal.getLevel().getAttributes()) {
-					attributeInstance = new AttributeInstance();
-					attributeInstance.setAttribute(attribute);
-					attributeInstance.setLevelInstance(levelInstance);
+			}
+		}
+
+		List<Attribute> attributes = goal.getLevel().getAttributes();
+		try (PreparedStatement stmt = connection.prepareStatement(INSERT_ATTRIBUTE_INSTANCE)) {
+			for (int i = 0; i < ids.length; i++) {
+				Date end = ends.get(i);
+				this.addAttributeInstance(stmt, attributes.get(1), ids[i], now, goal.getDescription(), null, null);
+				for (Attribute attribute : attributes) {
 					if (attribute.getType().equals(ResponsibleField.class.getCanonicalName())) {
-						attributeInstance.setValue(goal.getResponsible());
-						dao.persist(attributeInstance);
+						this.addAttributeInstance(stmt, attribute, ids[i], now, goal.getResponsible(), null, null);
 					} else if (attribute.isFinishDate()) {
-						attributeInstance.setValue(df.format(end));
-						attributeInstance.setValueAsDate(end);
-						dao.persist(attributeInstance);
+						this.addAttributeInstance(stmt, attribute, ids[i], now, df.format(end), null, end);
 					} else if (attribute.isExpectedField()) {
-						attributeInstance.setValueAsNumber(goal.getExpected());
-						attributeInstance.setValue(String.valueOf(goal.getExpected()));
-						dao.persist(attributeInstance);
+						this.addAttributeInstance(stmt, attribute, ids[i], now, String.valueOf(goal.getExpected()),
+								goal.getExpected(), null);
 					} else if (attribute.isMinimumField()) {
-						attributeInstance.setValueAsNumber(goal.getMinimum());
-						attributeInstance.setValue(String.valueOf(goal.getMinimum()));
-						dao.persist(attributeInstance);
+						this.addAttributeInstance(stmt, attribute, ids[i], now, String.valueOf(goal.getMinimum()),
+								goal.getMinimum(), null);
 					} else if (attribute.isMaximumField()) {
-						attributeInstance.setValueAsNumber(goal.getMaximum());
-						attributeInstance.setValue(String.valueOf(goal.getMaximum()));
-						dao.persist(attributeInstance);
-					} else {
-						attributeInstance = null;
+						this.addAttributeInstance(stmt, attribute, ids[i], now, String.valueOf(goal.getMaximum()),
+								goal.getMaximum(), null);
 					}
-					if (attribute.getAttributeInstances() == null)
-						attribute.setAttributeInstances(new ArrayList<AttributeInstance>());
-					attribute.getAttributeInstances().add(attributeInstance);
 				}
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
+			stmt.executeBatch();
 		}
 	}
 
+	private void addAttributeInstance(PreparedStatement stmt, Attribute attribute, long levelInstanceId,
+			Timestamp creation, String value, Double valueAsNumber, Date valueAsDate) throws SQLException {
+		stmt.setString(1, value);
+		if (valueAsNumber == null)
+			stmt.setNull(2, Types.DOUBLE);
+		else
+			stmt.setDouble(2, valueAsNumber);
+		if (valueAsDate == null)
+			stmt.setNull(3, Types.TIMESTAMP);
+		else
+			stmt.setTimestamp(3, new Timestamp(valueAsDate.getTime()));
+		stmt.setTimestamp(4, creation);
+		stmt.setLong(5, attribute.getId());
+		stmt.setLong(6, levelInstanceId);
+		stmt.addBatch();
+	}
+
 }
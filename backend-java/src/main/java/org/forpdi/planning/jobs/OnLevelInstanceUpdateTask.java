@@ -1,7 +1,15 @@
 package org.forpdi.planning.jobs;
 
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.spi.CDI;
@@ -12,10 +20,11 @@ import org.forpdi.planning.attribute.AttributeInstance;
 import org.forpdi.planning.bean.PerformanceBean;
 import org.forpdi.planning.plan.Plan;
 import org.forpdi.planning.plan.PlanDetailed;
+import org.forpdi.planning.structure.PlanTreeSnapshot;
 import org.forpdi.planning.structure.StructureHelper;
-import org.forpdi.planning.structure.StructureLevel;
 import org.forpdi.planning.structure.StructureLevelInstance;
 import org.forpdi.planning.structure.StructureLevelInstanceDetailed;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.jboss.logging.Logger;
 
@@ -29,6 +38,13 @@ import br.com.caelum.vraptor.tasks.scheduler.Scheduled;
  * Realiza cálculos e atualizações necessárias quando uma
  * instância de nível tem algum atributo atualizado.
  * 
+ * As instâncias enfileiradas são agrupadas por id, de forma que cada
+ * instância é recalculada no máximo uma vez por execução. O processamento
+ * é feito por profundidade na árvore (sequência do nível na estrutura),
+ * das folhas para a raiz, e cada pai é recalculado uma única vez após
+ * todos os seus filhos sujos. As médias são calculadas sobre uma
+ * fotografia em memória da árvore de cada plano.
+ * 
  * @author Renato R. R. de Oliveira
  *
  */
@@ -36,23 +52,29 @@ import br.com.caelum.vraptor.tasks.scheduler.Scheduled;
 @Scheduled(fixedRate = 60000, concurrent=false)
 public class OnLevelInstanceUpdateTask implements Task {
 
-	private ConcurrentLinkedQueue<StructureLevelInstance> queue;
+	private ConcurrentHashMap<Long, StructureLevelInstance> pending;
 	private static final Logger LOG = Logger.getLogger(OnLevelInstanceUpdateTask.class);
 
 	public OnLevelInstanceUpdateTask() {
-		queue = new ConcurrentLinkedQueue<>();
+		pending = new ConcurrentHashMap<>();
 	}
 
 	/**
 	 * Adiciona uma instância de nível para ser processada pela task.
+	 * Instâncias já enfileiradas não são duplicadas.
 	 * 
-	 * @param goal
+	 * @param level
 	 */
 	public void add(StructureLevelInstance level) {
-		queue.add(level);
+		if (level == null || level.getId() == null) {
+			return;
+		}
+		pending.put(level.getId(), level);
 	}
 	public void add(List<StructureLevelInstance> levels) {
-		queue.addAll(levels);
+		for (StructureLevelInstance level : levels) {
+			this.add(level);
+		}
 	}
 	
 	/**
@@ -60,56 +82,244 @@ public class OnLevelInstanceUpdateTask implements Task {
 	 */
 	@Override
 	public synchronized void execute() {
-		if (this.queue.isEmpty()) {
+		if (this.pending.isEmpty()) {
 			return;
 		}
-		LOG.infof("Processing level instance queue with %d level instances...", this.queue.size());
+		Map<Long, StructureLevelInstance> dirty = new LinkedHashMap<>();
+		Iterator<Long> ids = this.pending.keySet().iterator();
+		while (ids.hasNext()) {
+			Long id = ids.next();
+			StructureLevelInstance levelInstance = this.pending.remove(id);
+			if (levelInstance != null)
+				dirty.put(id, levelInstance);
+		}
+		LOG.infof("Processing level instance queue with %d level instances...", dirty.size());
 		
 		SessionFactory factory = CDI.current().select(SessionFactory.class).get();
 		SessionManager mngr = new SessionManager(factory);
 		HibernateDAO dao = new HibernateDAO(mngr);
 		
-		int count = 0;
+		RecalculationCycle cycle = new RecalculationCycle(dao);
 		try {
-			while (!this.queue.isEmpty()) {
-				this.updateLevelInstanceValues(this.queue.poll(), dao);
-				count++;
+			for (StructureLevelInstance levelInstance : dirty.values()) {
+				cycle.enqueue(levelInstance, null);
 			}
+			cycle.run();
 		} catch (Throwable ex) {
 			LOG.errorf(ex, "Exceção ao executar a task.");
 		} finally {
 			mngr.closeSession();
 		}
-		LOG.infof("Finished updating %d level instances.", count);
+		LOG.infof("Finished updating %d level instances and %d plans.", cycle.processed.size(), cycle.plans.size());
+	}
+	
+	/** Codifica um mês/ano como uma chave de período para os valores detalhados. */
+	private static int periodKey(int month, int year) {
+		return year * 100 + month;
+	}
+	
+	/** Instância marcada para recálculo no ciclo corrente. */
+	private static class DirtyNode {
+		private final Long id;
+		private final Long planId;
+		private final Set<Integer> periods = new LinkedHashSet<>();
+		
+		private DirtyNode(Long id, Long planId) {
+			this.id = id;
+			this.planId = planId;
+		}
+	}
+	
+	/** Instâncias sujas de uma mesma profundidade na árvore. As instâncias
+	 * agregadoras são processadas depois das demais pois dependem dos
+	 * valores dos indicadores que agregam. */
+	private static class LevelBucket {
+		private final LinkedHashMap<Long, DirtyNode> regular = new LinkedHashMap<>();
+		private final LinkedHashMap<Long, DirtyNode> aggregates = new LinkedHashMap<>();
+		
+		private void add(Long id, Long planId, boolean aggregate, Set<Integer> periods) {
+			LinkedHashMap<Long, DirtyNode> target = aggregate ? aggregates : regular;
+			DirtyNode node = target.get(id);
+			if (node == null) {
+				node = new DirtyNode(id, planId);
+				target.put(id, node);
+			}
+			if (periods != null)
+				node.periods.addAll(periods);
+		}
+		
+		private boolean isEmpty() {
+			return regular.isEmpty() && aggregates.isEmpty();
+		}
+		
+		private boolean hasRegular() {
+			return !regular.isEmpty();
+		}
+		
+		private DirtyNode poll() {
+			LinkedHashMap<Long, DirtyNode> source = regular.isEmpty() ? aggregates : regular;
+			Iterator<DirtyNode> it = source.values().iterator();
+			DirtyNode node = it.next();
+			it.remove();
+			return node;
+		}
 	}
 	
-	/** Realiza cálculos e atualizações para a instância de nível atual e
-	 * enfileira a instância de nível pai para ser atualizada por esta própria
-	 * task, a grosso modo, chama "recursivamente" para os pais. */
-	private void updateLevelInstanceValues(StructureLevelInstance levelInstance, HibernateDAO dao) {
-		StructureHelper structHelper = new StructureHelper(dao);
-		AttributeHelper attrHelper = new AttributeHelper(dao);
+	/**
+	 * Um ciclo de recálculo: mantém as instâncias sujas agrupadas por
+	 * profundidade e os planos cujas médias precisam ser recalculadas
+	 * ao final do ciclo.
+	 * 
+	 * As médias são calculadas sobre uma fotografia em memória da árvore de
+	 * cada plano envolvido ({@link PlanTreeSnapshot}), e os valores alterados
+	 * são gravados em lote. Metas e indicadores agregadores continuam sendo
+	 * calculados a partir das entidades, pois dependem dos atributos da meta
+	 * e de indicadores de outros planos, respectivamente.
+	 */
+	private class RecalculationCycle {
+		private final HibernateDAO dao;
+		private final StructureHelper structHelper;
+		private final AttributeHelper attrHelper;
+		private final Date now = new Date();
+		/** Baldes indexados pela sequência do nível, processados da maior (folhas) para a menor (raiz). */
+		private final TreeMap<Integer, LevelBucket> levels = new TreeMap<>();
+		private final Set<Long> processed = new LinkedHashSet<>();
+		private final Map<Long, PlanTreeSnapshot> snapshots = new HashMap<>();
+		private final Map<Long, Set<Integer>> plans = new LinkedHashMap<>();
+		private Integer currentDepth = null;
+		
+		private RecalculationCycle(HibernateDAO dao) {
+			this.dao = dao;
+			this.structHelper = new StructureHelper(dao);
+			this.attrHelper = new AttributeHelper(dao);
+		}
+		
+		/** Marca uma instância como suja neste ciclo. */
+		private void enqueue(StructureLevelInstance levelInstance, Set<Integer> periods) {
+			this.enqueue(levelInstance.getId(), levelInstance.getPlan().getId(), levelInstance.getLevel().getSequence(),
+					levelInstance.isAggregate(), periods);
+		}
+		
+		/** Marca uma instância como suja neste ciclo. Se ela já foi recalculada
+		 * neste ciclo, é reenfileirada para a próxima execução da task. */
+		private void enqueue(Long id, Long planId, int depth, boolean aggregate, Set<Integer> periods) {
+			if (processed.contains(id) || (currentDepth != null && depth > currentDepth)) {
+				StructureLevelInstance levelInstance = dao.exists(id, StructureLevelInstance.class);
+				if (levelInstance != null)
+					OnLevelInstanceUpdateTask.this.add(levelInstance);
+				return;
+			}
+			LevelBucket bucket = levels.get(depth);
+			if (bucket == null) {
+				bucket = new LevelBucket();
+				levels.put(depth, bucket);
+			}
+			bucket.add(id, planId, aggregate, periods);
+		}
+		
+		private PlanTreeSnapshot snapshot(Long planId) {
+			PlanTreeSnapshot snapshot = snapshots.get(planId);
+			if (snapshot == null) {
+				snapshot = PlanTreeSnapshot.load(dao, dao.exists(planId, Plan.class));
+				snapshots.put(planId, snapshot);
+			}
+			return snapshot;
+		}
 		
-		levelInstance = structHelper.retrieveLevelInstance(levelInstance.getId());
-		StructureLevel level = levelInstance.getLevel();
+		/** Grava em lote os valores recalculados e limpa a sessão, para que as
+		 * entidades lidas em seguida reflitam os valores gravados. */
+		private void flushSnapshots() {
+			boolean flushed = false;
+			for (PlanTreeSnapshot snapshot : snapshots.values()) {
+				if (snapshot.hasChanges()) {
+					snapshot.flush(dao);
+					flushed = true;
+				}
+			}
+			if (flushed)
+				dao.execute(Session::clear);
+		}
 		
-		if (!level.isGoal()) {
-			if (level.isIndicator() && levelInstance.isAggregate()) {
-				structHelper.updateAggregatedLevelValue(levelInstance);
-			} else if (level.isIndicator()) {
-				PerformanceBean performance = structHelper.calculateIndicatorLevelValue(levelInstance);
-				levelInstance.setLevelValue(performance.getPerformance());
-				levelInstance.setLevelMinimum(performance.getMinimumAverage());
-				levelInstance.setLevelMaximum(performance.getMaximumAverage());
-				dao.persist(levelInstance);
+		private void run() {
+			while (!levels.isEmpty()) {
+				currentDepth = levels.lastKey();
+				LevelBucket bucket = levels.get(currentDepth);
+				while (!bucket.isEmpty()) {
+					if (!bucket.hasRegular())
+						this.flushSnapshots();
+					DirtyNode node = bucket.poll();
+					if (processed.add(node.id)) {
+						this.updateLevelInstanceValues(node);
+					}
+				}
+				levels.remove(currentDepth);
+			}
+			this.flushSnapshots();
+			for (Map.Entry<Long, Set<Integer>> entry : plans.entrySet()) {
+				this.updatePlanValues(entry.getKey(), entry.getValue());
+			}
+		}
+		
+		/** Realiza cálculos e atualizações para a instância de nível atual e
+		 * marca a instância de nível pai para ser atualizada neste mesmo ciclo. */
+		private void updateLevelInstanceValues(DirtyNode node) {
+			PlanTreeSnapshot snapshot = this.snapshot(node.planId);
+			int i = snapshot.indexOf(node.id);
+			if (i < 0) {
+				LOG.errorf("Level instance with id %d no longer exists.", node.id);
+				return;
+			}
+			Set<Integer> parentPeriods = new LinkedHashSet<>(node.periods);
+			
+			if (snapshot.isGoal(i)) {
+				StructureLevelInstance levelInstance = structHelper.retrieveLevelInstance(node.id);
+				this.updateGoalValues(levelInstance, parentPeriods);
+				snapshot.refresh(i, levelInstance.getLevelValue(), levelInstance.getLevelMinimum(),
+						levelInstance.getLevelMaximum());
+			} else {
+				if (snapshot.isIndicator(i) && snapshot.isAggregate(i)) {
+					StructureLevelInstance levelInstance = structHelper.retrieveLevelInstance(node.id);
+					structHelper.updateAggregatedLevelValue(levelInstance);
+					snapshot.refresh(i, levelInstance.getLevelValue(), levelInstance.getLevelMinimum(),
+							levelInstance.getLevelMaximum());
+				} else if (snapshot.isIndicator(i)) {
+					snapshot.update(i, snapshot.calculateIndicatorLevelValue(i, now));
+				} else {
+					snapshot.update(i, snapshot.calculateLevelValue(i));
+				}
+				for (Integer period : node.periods) {
+					PlanTreeSnapshot.Period detailed = snapshot.getPeriod(dao, period % 100, period / 100);
+					detailed.update(i, detailed.calculateLevelValue(i));
+				}
+			}
+			
+			int parent = snapshot.getParent(i);
+			if (parent >= 0) {
+				this.enqueue(snapshot.getId(parent), node.planId, snapshot.getSequence(parent),
+						snapshot.isAggregate(parent), parentPeriods);
 			} else {
-				PerformanceBean performance = structHelper.calculateLevelValue(levelInstance);
-				levelInstance.setLevelValue(performance.getPerformance());
-				levelInstance.setLevelMinimum(performance.getMinimumAverage());
-				levelInstance.setLevelMaximum(performance.getMaximumAverage());
-				dao.persist(levelInstance);
+				Set<Integer> existent = plans.get(node.planId);
+				if (existent == null) {
+					existent = new LinkedHashSet<>();
+					plans.put(node.planId, existent);
+				}
+				existent.addAll(parentPeriods);
+			}
+			
+			if (snapshot.isIndicator(i)) {
+				List<AggregateIndicator> indicators = structHelper.getAggregatedToIndicators(node.id);
+				if (!GeneralUtils.isEmpty(indicators)) {
+					for (AggregateIndicator indicator : indicators) {
+						this.enqueue(indicator.getIndicator(), null);
+					}
+				}
 			}
-		} else {
+		}
+		
+		/** Calcula o desempenho de uma meta e registra o período da data de
+		 * término para que os valores detalhados dos níveis acima sejam
+		 * recalculados. */
+		private void updateGoalValues(StructureLevelInstance levelInstance, Set<Integer> parentPeriods) {
 			AttributeInstance reachedAttribute = attrHelper.retrieveReachedFieldAttribute(levelInstance);
 			Double reached = null;
 			Double expected = null;
@@ -149,28 +359,14 @@ public class OnLevelInstanceUpdateTask implements Task {
 				}
 				
 				AttributeInstance finishDate = attrHelper.retrieveFinishDateFieldAttribute(levelInstance);
-				if (finishDate != null) {
+				if (finishDate != null && finishDate.getValueAsDate() != null) {
 					StructureLevelInstanceDetailed levelInstanceDetailed = structHelper.getLevelInstanceDetailed(levelInstance, finishDate);
 					dao.persist(levelInstanceDetailed);
-					
-					StructureLevelInstance parentLevelInstance = levelInstance;
-					while (parentLevelInstance.getParent() != null) {
-						parentLevelInstance = structHelper.retrieveLevelInstance(parentLevelInstance.getParent());
-						PerformanceBean performance = structHelper.calculateLevelValueDetailed(parentLevelInstance, finishDate);
-						parentLevelInstance.setLevelValue(performance.getPerformance());
-						parentLevelInstance.setLevelMinimum(performance.getMinimumAverage());
-						parentLevelInstance.setLevelMaximum(performance.getMaximumAverage());
-						levelInstanceDetailed = structHelper.getLevelInstanceDetailed(parentLevelInstance, finishDate);
-						dao.persist(levelInstanceDetailed);
-					}
-					
-					Plan plan = levelInstance.getPlan();
-					PerformanceBean performance = structHelper.calculatePlanPerformanceDetailed(plan, finishDate);
-					plan.setPerformance(performance.getPerformance());
-					plan.setMinimumAverage(performance.getMinimumAverage());
-					plan.setMaximumAverage(performance.getMaximumAverage());
-					PlanDetailed planDetailed = structHelper.getPlanDetailed(plan, finishDate);
-					dao.persist(planDetailed);
+					PlanTreeSnapshot snapshot = this.snapshot(levelInstance.getPlan().getId());
+					snapshot.getPeriod(dao, levelInstanceDetailed.getMonth(), levelInstanceDetailed.getYear())
+						.refresh(snapshot.indexOf(levelInstance.getId()), levelInstanceDetailed.getLevelValue(),
+							levelInstanceDetailed.getLevelMinimum(), levelInstanceDetailed.getLevelMaximum());
+					parentPeriods.add(periodKey(levelInstanceDetailed.getMonth(), levelInstanceDetailed.getYear()));
 				}
 			} else {
 				levelInstance.setLevelValue(null);
@@ -178,105 +374,26 @@ public class OnLevelInstanceUpdateTask implements Task {
 			dao.persist(levelInstance);
 		}
 		
-		if (levelInstance.getParent() != null) {
-			StructureLevelInstance parent = dao.exists(levelInstance.getParent(), StructureLevelInstance.class);
-			if (parent != null)
-				this.add(parent);
-			else
-				LOG.errorf("An inconsistency on level instance with id %d, it refers to an unexistent parent id %d",
-						levelInstance.getId(), levelInstance.getParent());
-		} else {
-			Plan plan = levelInstance.getPlan();
-			PerformanceBean performance = structHelper.calculatePlanPerformance(plan);
+		/** Recalcula a média do plano e os valores detalhados dos períodos afetados. */
+		private void updatePlanValues(Long planId, Set<Integer> periods) {
+			PlanTreeSnapshot snapshot = this.snapshot(planId);
+			Plan plan = dao.exists(planId, Plan.class);
+			PerformanceBean performance = snapshot.calculatePlanPerformance();
 			plan.setPerformance(performance.getPerformance());
 			plan.setMinimumAverage(performance.getMinimumAverage());
 			plan.setMaximumAverage(performance.getMaximumAverage());
 			dao.persist(plan);
-		}
-		
-		if (level.isIndicator()) {
-			List<AggregateIndicator> indicators = structHelper.getAggregatedToIndicators(levelInstance);
-			if (!GeneralUtils.isEmpty(indicators)) {
-				for (AggregateIndicator indicator : indicators) {
-					this.add(indicator.getIndicator());
-				}
+			for (Integer period : periods) {
+				int month = period % 100;
+				int year = period / 100;
+				PerformanceBean detailed = snapshot.getPeriod(dao, month, year).calculatePlanPerformance();
+				PlanDetailed planDetailed = structHelper.getPlanDetailed(plan, month, year);
+				planDetailed.setPerformance(detailed.getPerformance());
+				planDetailed.setMinimumAverage(detailed.getMinimumAverage());
+				planDetailed.setMaximumAverage(detailed.getMaximumAverage());
+				dao.persist(planDetailed);
 			}
 		}
-		
-		/*
-		StructureLevelInstance indicatorLevelInstance = null;
-		if (levelInstance.getParent() != null) {
-			boolean haveParent = true;
-			while (haveParent) {
-				levelInstance = this.retrieveLevelInstance(levelInstance.getParent());
-				if (levelInstance.getParent() == null)
-					haveParent = false;
-				List<StructureLevelInstance> structureLevelInstances = this
-						.retrieveLevelInstanceSons(levelInstance.getId());
-				if (structureLevelInstances != null) {
-					Double total = 0.0;
-					for (StructureLevelInstance structureLevelInstance : structureLevelInstances) {
-						if (structureLevelInstance.getLevelValue() != null)
-							total += structureLevelInstance.getLevelValue();
-					}
-					if (structureLevelInstances.size() > 0) {
-						int size = structureLevelInstances.size();
-						if (levelInstance.getLevel().isIndicator()) {
-							for (StructureLevelInstance structureLevelInstance : structureLevelInstances) {
-								structureLevelInstance.getLevel()
-										.setAttributes(this.retrieveLevelAttributes(structureLevelInstance.getLevel()));
-								for (Attribute attribute : structureLevelInstance.getLevel().getAttributes()) {
-									if (attribute.isFinishDate()) {
-										AttributeInstance attributeInstance = this
-												.retrieveAttributeInstance(structureLevelInstance, attribute);
-										if (structureLevelInstance.getLevelValue() == null && (attributeInstance == null
-												|| attributeInstance.getValueAsDate().after(new Date())))
-											size--;
-									}
-								}
-							}
-							if (size != 0)
-								levelInstance.setLevelValue(total / size);
-						} else {
-							for (StructureLevelInstance structureLevelInstance : structureLevelInstances) {
-								if (structureLevelInstance.getLevelValue() == null)
-									size--;
-								else
-									levelInstance.setLevelValue(null);
-							}
-							if (size != 0)
-								levelInstance.setLevelValue(total / size);
-							else
-								levelInstance.setLevelValue(null);
-						}
-					} else {
-						levelInstance.setLevelValue(null);
-					}
-					this.persist(levelInstance);
-				}
-
-				if (levelInstance.isAggregate()) {
-					List<BigInteger> indicators = this.listAggregateIndicatorsByAggregate(levelInstance);
-					for (BigInteger indicatorId : indicators) {
-						StructureLevelInstance indicator = this.retrieveLevelInstance(indicatorId.longValue());
-						this.setAggregateIndicatorValue(indicator);
-					}
-				}
-				
-				if (levelInstance.getLevel().isIndicator() && !levelInstance.isAggregate()) {
-					indicatorLevelInstance = levelInstance;
-				}
-			}
-			
-			if (indicatorLevelInstance != null) {
-				List<BigInteger> listAggregatesIndicatorsId = this.listAggregateIndicatorsByAggregate(indicatorLevelInstance);
-				if (listAggregatesIndicatorsId.size() > 0) {
-					for (BigInteger indAggId : listAggregatesIndicatorsId) {
-						this.setAggregateIndicatorValue(this.retrieveLevelInstance(indAggId.longValue()));
-					}
-				}
-			}
-		}*/
 	}
 	
 }
@@ -0,0 +1,547 @@
+package org.forpdi.planning.jobs;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.spi.CDI;
+
+import org.forpdi.core.jobs.DuplicationProgress;
+import org.forpdi.planning.attribute.AggregateIndicator;
+import org.forpdi.planning.attribute.AttributeInstance;
+import org.forpdi.planning.attribute.types.ScheduleField;
+import org.forpdi.planning.attribute.types.TableField;
+import org.forpdi.planning.document.Document;
+import org.forpdi.planning.document.DocumentAttribute;
+import org.forpdi.planning.document.DocumentSection;
+import org.forpdi.planning.fields.OptionsField;
+import org.forpdi.planning.fields.actionplan.ActionPlan;
+import org.forpdi.planning.fields.budget.Budget;
+import org.forpdi.planning.fields.schedule.Schedule;
+import org.forpdi.planning.fields.schedule.ScheduleInstance;
+import org.forpdi.planning.fields.schedule.ScheduleStructure;
+import org.forpdi.planning.fields.schedule.ScheduleValues;
+import org.forpdi.planning.fields.table.TableFields;
+import org.forpdi.planning.fields.table.TableInstance;
+import org.forpdi.planning.fields.table.TableStructure;
+import org.forpdi.planning.fields.table.TableValues;
+import org.forpdi.planning.plan.Plan;
+import org.forpdi.planning.plan.PlanMacro;
+import org.forpdi.planning.structure.LevelInstancePath;
+import org.forpdi.planning.structure.LevelInstanceResponsibles;
+import org.forpdi.planning.structure.StructureLevelInstance;
+import org.forpdi.system.JdbcCopy;
+import org.forpdi.system.reports.ReportDataSource;
+import org.forpdi.system.reports.ReportDataVersion;
+import org.forpdi.system.search.SearchDocument;
+import org.forpdi.system.search.SearchIndex;
+import org.hibernate.SessionFactory;
+import org.jboss.logging.Logger;
+
+import br.com.caelum.vraptor.boilerplate.HibernateDAO;
+import br.com.caelum.vraptor.boilerplate.factory.SessionManager;
+import br.com.caelum.vraptor.tasks.Task;
+import br.com.caelum.vraptor.tasks.scheduler.Scheduled;
+
+/**
+ * Tarefa para duplicar planos macro em segundo plano.
+ *
+ * Cada tabela é copiada de uma vez para todo o plano macro: as linhas de
+ * origem são lidas em uma única consulta e as cópias inseridas em lotes por
+ * {@link JdbcCopy}, que guarda a correspondência entre os ids antigos e novos
+ * em tabelas temporárias. As tabelas sem dependentes (valores de atributos, orçamentos,
+ * planos de ação, valores de tabelas e cronogramas) são copiadas com um único
+ * INSERT ... SELECT sobre essas correspondências. Toda a duplicação é feita
+ * em uma transação, e o andamento pode ser consultado pelo id do plano macro
+ * criado. O andamento também é gravado em {@link DuplicationProgress}: uma
+ * duplicação perdida em um reinício da aplicação é informada como falha. Se a
+ * duplicação falhar, o plano macro criado é excluído.
+ */
+@ApplicationScoped
+@Scheduled(fixedRate=5000, concurrent=false)
+public class PlanMacroDuplicationTask implements Task {
+
+	/** Andamento de uma duplicação que falhou. */
+	public static final int FAILED = DuplicationProgress.FAILED;
+
+	private static final Logger LOG = Logger.getLogger(PlanMacroDuplicationTask.class);
+
+	/** Tabelas cujas cópias têm dependentes, e por isso têm os ids mapeados. */
+	private static enum Kind {
+		PLAN, LEVEL_INSTANCE, DOCUMENT, SECTION, DOCUMENT_ATTRIBUTE, TABLE_FIELDS, TABLE_STRUCTURE,
+		TABLE_INSTANCE, SCHEDULE, SCHEDULE_STRUCTURE, SCHEDULE_INSTANCE;
+
+		String table() {
+			return "tmp_copy_" + this.name().toLowerCase();
+		}
+	}
+
+	private static final String SELECT_PLANS = "SELECT p.id, ?, p.name, p.description, p.begin, p.end,"
+			+ " p.structure_id, ?"
+			+ " FROM " + Plan.TABLE + " p WHERE p.parent_id = ? AND p.deleted = 0 AND p.archived = 0";
+	private static final String INSERT_PLAN = "INSERT INTO " + Plan.TABLE
+			+ " (deleted, archived, creation, name, description, begin, end, structure_id, parent_id)"
+			+ " VALUES (0, 0, ?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String SELECT_LEVEL_INSTANCES = "SELECT li.id, li.name, ?, ?, li.level_id, m.new_id,"
+			+ " li.parent, li.aggregate, li.calculation, IF(?, li.levelValue, NULL)"
+			+ " FROM " + StructureLevelInstance.TABLE + " li"
+			+ " JOIN " + Kind.PLAN.table() + " m ON m.old_id = li.plan_id"
+			+ " WHERE li.deleted = 0";
+	private static final String INSERT_LEVEL_INSTANCE = "INSERT INTO " + StructureLevelInstance.TABLE
+			+ " (deleted, closed, name, creation, modification, level_id, plan_id, parent, aggregate, calculation,"
+			+ " levelValue) VALUES (0, 0, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	private static final String UPDATE_LEVEL_INSTANCE_PARENTS = "UPDATE " + StructureLevelInstance.TABLE + " li"
+			+ " JOIN " + Kind.LEVEL_INSTANCE.table() + " m ON m.old_id = li.parent"
+			+ " SET li.parent = m.new_id WHERE li.plan_id = ?";
+
+	private static final String SELECT_AGGREGATE_INDICATORS = "SELECT m.new_id, ai.aggregate_id, ai.percentage"
+			+ " FROM " + AggregateIndicator.TABLE + " ai"
+			+ " JOIN " + Kind.LEVEL_INSTANCE.table() + " m ON m.old_id = ai.indicator_id"
+			+ " JOIN " + StructureLevelInstance.TABLE + " ind ON ind.id = ai.indicator_id"
+			+ " JOIN " + StructureLevelInstance.TABLE + " agg ON agg.id = ai.aggregate_id"
+			+ " WHERE ai.deleted = 0 AND ind.aggregate = 1 AND agg.deleted = 0";
+	private static final String INSERT_AGGREGATE_INDICATOR = "INSERT INTO " + AggregateIndicator.TABLE
+			+ " (deleted, indicator_id, aggregate_id, percentage) VALUES (0, ?, ?, ?)";
+
+	private static final String COPY_ATTRIBUTE_INSTANCES = "INSERT INTO " + AttributeInstance.TABLE
+			+ " (deleted, value, valueAsNumber, valueAsDate, creation, attribute_id, levelInstance_id)"
+			+ " SELECT 0, ai.value, ai.valueAsNumber, ai.valueAsDate, ?, ai.attribute_id, m.new_id"
+			+ " FROM " + AttributeInstance.TABLE + " ai"
+			+ " JOIN " + Kind.LEVEL_INSTANCE.table() + " m ON m.old_id = ai.levelInstance_id"
+			+ " WHERE ai.deleted = 0";
+	private static final String COPY_BUDGETS = "INSERT INTO " + Budget.TABLE
+			+ " (deleted, subAction, name, committed, realized, creation, budgetElement_id, levelInstance_id)"
+			+ " SELECT 0, b.subAction, b.name, b.committed, b.realized, ?, b.budgetElement_id, m.new_id"
+			+ " FROM " + Budget.TABLE + " b"
+			+ " JOIN " + Kind.LEVEL_INSTANCE.table() + " m ON m.old_id = b.levelInstance_id"
+			+ " WHERE b.deleted = 0";
+	private static final String COPY_ACTION_PLANS = "INSERT INTO " + ActionPlan.TABLE
+			+ " (deleted, checked, description, responsible, begin, end, creation, levelInstance_id)"
+			+ " SELECT 0, a.checked, a.description, a.responsible, a.begin, a.end, ?, m.new_id"
+			+ " FROM " + ActionPlan.TABLE + " a"
+			+ " JOIN " + Kind.LEVEL_INSTANCE.table() + " m ON m.old_id = a.levelInstance_id"
+			+ " WHERE a.deleted = 0";
+
+	private static final String SELECT_DOCUMENT = "SELECT d.id, ?, ?, d.description, ?"
+			+ " FROM " + Document.TABLE + " d WHERE d.plan_id = ? AND d.deleted = 0";
+	private static final String INSERT_DOCUMENT = "INSERT INTO " + Document.TABLE
+			+ " (deleted, creation, title, description, plan_id) VALUES (0, ?, ?, ?, ?)";
+
+	private static final String SELECT_SECTIONS = "SELECT s.id, m.new_id, s.name, s.leaf, s.sequence,"
+			+ " s.preTextSection, s.parent_id"
+			+ " FROM " + DocumentSection.TABLE + " s"
+			+ " JOIN " + Kind.DOCUMENT.table() + " m ON m.old_id = s.document_id"
+			+ " WHERE s.deleted = 0";
+	private static final String INSERT_SECTION = "INSERT INTO " + DocumentSection.TABLE
+			+ " (deleted, document_id, name, leaf, sequence, preTextSection, parent_id)"
+			+ " VALUES (0, ?, ?, ?, ?, ?, ?)";
+	private static final String UPDATE_SECTION_PARENTS = "UPDATE " + DocumentSection.TABLE + " s"
+			+ " JOIN " + Kind.SECTION.table() + " m ON m.old_id = s.parent_id"
+			+ " SET s.parent_id = m.new_id WHERE s.document_id = ?";
+
+	private static final String SELECT_DOCUMENT_ATTRIBUTES = "SELECT a.id, m.new_id, a.name, a.type,"
+			+ " IF(?, a.value, NULL), IF(?, a.valueAsNumber, NULL), IF(?, a.valueAsDate, NULL),"
+			+ " a.sequence, a.required"
+			+ " FROM " + DocumentAttribute.TABLE + " a"
+			+ " JOIN " + Kind.SECTION.table() + " m ON m.old_id = a.section_id"
+			+ " WHERE a.deleted = 0";
+	private static final String INSERT_DOCUMENT_ATTRIBUTE = "INSERT INTO " + DocumentAttribute.TABLE
+			+ " (deleted, section_id, name, type, value, valueAsNumber, valueAsDate, sequence, required)"
+			+ " VALUES (0, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String SELECT_TABLE_FIELDS = "SELECT tf.id, m.new_id"
+			+ " FROM " + TableFields.TABLE + " tf"
+			+ " JOIN " + Kind.DOCUMENT_ATTRIBUTE.table() + " m ON m.old_id = tf.attributeId"
+			+ " JOIN " + DocumentAttribute.TABLE + " a ON a.id = tf.attributeId"
+			+ " WHERE tf.deleted = 0 AND tf.isDocument = 1 AND a.type = ?";
+	private static final String INSERT_TABLE_FIELDS = "INSERT INTO " + TableFields.TABLE
+			+ " (deleted, isDocument, attributeId) VALUES (0, 1, ?)";
+
+	private static final String SELECT_TABLE_STRUCTURES = "SELECT ts.id, m.new_id, ts.label, ts.type, ts.isInTotal"
+			+ " FROM " + TableStructure.TABLE + " ts"
+			+ " JOIN " + Kind.TABLE_FIELDS.table() + " m ON m.old_id = ts.tableFields_id"
+			+ " WHERE ts.deleted = 0";
+	private static final String INSERT_TABLE_STRUCTURE = "INSERT INTO " + TableStructure.TABLE
+			+ " (deleted, tableFields_id, label, type, isInTotal) VALUES (0, ?, ?, ?, ?)";
+
+	private static final String COPY_OPTIONS = "INSERT INTO " + OptionsField.TABLE
+			+ " (deleted, label, attributeId, columnId, isDocument, creation)"
+			+ " SELECT 0, o.label, ma.new_id, mc.new_id, 1, ?"
+			+ " FROM " + OptionsField.TABLE + " o"
+			+ " JOIN " + Kind.DOCUMENT_ATTRIBUTE.table() + " ma ON ma.old_id = o.attributeId"
+			+ " JOIN " + Kind.TABLE_STRUCTURE.table() + " mc ON mc.old_id = o.columnId"
+			+ " WHERE o.deleted = 0 AND o.isDocument = 1";
+
+	private static final String SELECT_TABLE_INSTANCES = "SELECT ti.id, ?, m.new_id"
+			+ " FROM " + TableInstance.TABLE + " ti"
+			+ " JOIN " + Kind.TABLE_FIELDS.table() + " m ON m.old_id = ti.tableFields_id"
+			+ " WHERE ti.deleted = 0";
+	private static final String INSERT_TABLE_INSTANCE = "INSERT INTO " + TableInstance.TABLE
+			+ " (deleted, creation, tableFields_id) VALUES (0, ?, ?)";
+
+	private static final String COPY_TABLE_VALUES = "INSERT INTO " + TableValues.TABLE
+			+ " (deleted, value, valueAsNumber, valueAsDate, tableInstance_id, tableStructure_id)"
+			+ " SELECT 0, v.value, v.valueAsNumber, v.valueAsDate, mi.new_id, ms.new_id"
+			+ " FROM " + TableValues.TABLE + " v"
+			+ " JOIN " + Kind.TABLE_INSTANCE.table() + " mi ON mi.old_id = v.tableInstance_id"
+			+ " JOIN " + Kind.TABLE_STRUCTURE.table() + " ms ON ms.old_id = v.tableStructure_id"
+			+ " WHERE v.deleted = 0";
+
+	private static final String SELECT_SCHEDULES = "SELECT s.id, m.new_id, s.periodicityEnable"
+			+ " FROM " + Schedule.TABLE + " s"
+			+ " JOIN " + Kind.DOCUMENT_ATTRIBUTE.table() + " m ON m.old_id = s.attributeId"
+			+ " JOIN " + DocumentAttribute.TABLE + " a ON a.id = s.attributeId"
+			+ " WHERE s.deleted = 0 AND s.isDocument = 1 AND a.type = ?";
+	private static final String INSERT_SCHEDULE = "INSERT INTO " + Schedule.TABLE
+			+ " (deleted, isDocument, attributeId, periodicityEnable) VALUES (0, 1, ?, ?)";
+
+	private static final String SELECT_SCHEDULE_STRUCTURES = "SELECT ss.id, m.new_id, ss.label, ss.type"
+			+ " FROM " + ScheduleStructure.TABLE + " ss"
+			+ " JOIN " + Kind.SCHEDULE.table() + " m ON m.old_id = ss.schedule_id"
+			+ " WHERE ss.deleted = 0";
+	private static final String INSERT_SCHEDULE_STRUCTURE = "INSERT INTO " + ScheduleStructure.TABLE
+			+ " (deleted, schedule_id, label, type) VALUES (0, ?, ?, ?)";
+
+	private static final String SELECT_SCHEDULE_INSTANCES = "SELECT si.id, m.new_id, si.number, si.description,"
+			+ " si.begin, si.end, ?, si.periodicity"
+			+ " FROM " + ScheduleInstance.TABLE + " si"
+			+ " JOIN " + Kind.SCHEDULE.table() + " m ON m.old_id = si.schedule_id"
+			+ " WHERE si.deleted = 0";
+	private static final String INSERT_SCHEDULE_INSTANCE = "INSERT INTO " + ScheduleInstance.TABLE
+			+ " (deleted, schedule_id, number, description, begin, end, creation, periodicity)"
+			+ " VALUES (0, ?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String COPY_SCHEDULE_VALUES = "INSERT INTO " + ScheduleValues.TABLE
+			+ " (deleted, value, valueAsNumber, valueAsDate, scheduleInstance_id, scheduleStructure_id)"
+			+ " SELECT 0, v.value, v.valueAsNumber, v.valueAsDate, mi.new_id, ms.new_id"
+			+ " FROM " + ScheduleValues.TABLE + " v"
+			+ " JOIN " + Kind.SCHEDULE_INSTANCE.table() + " mi ON mi.old_id = v.scheduleInstance_id"
+			+ " JOIN " + Kind.SCHEDULE_STRUCTURE.table() + " ms ON ms.old_id = v.scheduleStructure_id"
+			+ " WHERE v.deleted = 0";
+
+	private static final String DELETE_MACRO = "UPDATE " + PlanMacro.TABLE + " SET deleted = 1 WHERE id = ?";
+
+	/**
+	 * Duplicação pendente de um plano macro.
+	 */
+	private static final class Duplication {
+		private final Long macroId;
+		private final Long copyId;
+		private final String copyName;
+		private final boolean keepPlanLevel;
+		private final boolean keepPlanContent;
+		private final boolean keepDocSection;
+		private final boolean keepDocContent;
+
+		private Duplication(Long macroId, Long copyId, String copyName, boolean keepPlanLevel,
+				boolean keepPlanContent, boolean keepDocSection, boolean keepDocContent) {
+			this.macroId = macroId;
+			this.copyId = copyId;
+			this.copyName = copyName;
+			this.keepPlanLevel = keepPlanLevel;
+			this.keepPlanContent = keepPlanContent;
+			this.keepDocSection = keepDocSection;
+			this.keepDocContent = keepDocContent;
+		}
+
+		private int steps() {
+			int steps = 1;
+			if (this.keepPlanLevel)
+				steps += this.keepPlanContent ? 6 : 3;
+			if (this.keepDocSection)
+				steps += this.keepDocContent ? 10 : 7;
+			return steps;
+		}
+	}
+
+	private ConcurrentLinkedQueue<Duplication> queue;
+	/** Andamento (0 a 100) das duplicações, indexado pelo id do plano macro criado. */
+	private Map<Long, Integer> progress;
+
+	public PlanMacroDuplicationTask() {
+		this.queue = new ConcurrentLinkedQueue<>();
+		this.progress = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Adiciona uma duplicação à fila.
+	 *
+	 * @param dao
+	 *            DAO da requisição, para gravar o andamento.
+	 * @param macroId
+	 *            Id do plano macro duplicado.
+	 * @param copyId
+	 *            Id do plano macro, já gravado, que recebe a cópia.
+	 * @param copyName
+	 *            Nome do plano macro que recebe a cópia.
+	 * @param keepPlanLevel
+	 *            Se os planos de metas e seus níveis são copiados.
+	 * @param keepPlanContent
+	 *            Se o conteúdo dos níveis é copiado.
+	 * @param keepDocSection
+	 *            Se as seções do documento são copiadas.
+	 * @param keepDocContent
+	 *            Se o conteúdo das seções do documento é copiado.
+	 */
+	public void add(HibernateDAO dao, Long macroId, Long copyId, String copyName, boolean keepPlanLevel,
+			boolean keepPlanContent, boolean keepDocSection, boolean keepDocContent) {
+		this.progress.put(copyId, 0);
+		try {
+			DuplicationProgress.save(dao, DuplicationProgress.Type.PLAN_MACRO, copyId, 0);
+		} catch (RuntimeException ex) {
+			this.progress.remove(copyId);
+			throw ex;
+		}
+		this.queue.add(new Duplication(macroId, copyId, copyName, keepPlanLevel, keepPlanContent, keepDocSection,
+				keepDocContent));
+	}
+
+	/**
+	 * Andamento da duplicação de um plano macro. Sem andamento na memória, é
+	 * usado o andamento gravado; se ele é de uma duplicação que não terminou,
+	 * ela foi perdida em um reinício da aplicação, e o plano macro criado é
+	 * excluído.
+	 *
+	 * @param dao
+	 *            DAO da requisição, para ler o andamento gravado.
+	 * @param copyId
+	 *            Id do plano macro criado pela duplicação.
+	 * @return Porcentagem concluída, {@link #FAILED} se a duplicação falhou ou
+	 *         foi perdida, ou -1 se não há duplicação para o plano.
+	 */
+	public int getProgress(HibernateDAO dao, Long copyId) {
+		Integer value = this.progress.get(copyId);
+		if (value == null) {
+			value = DuplicationProgress.load(dao, DuplicationProgress.Type.PLAN_MACRO, copyId);
+			if (DuplicationProgress.unfinished(value) && !this.progress.containsKey(copyId)) {
+				LOG.warnf("Duplication into plan macro %d was lost on a restart.", copyId);
+				this.discard(copyId, dao);
+				DuplicationProgress.save(dao, DuplicationProgress.Type.PLAN_MACRO, copyId, FAILED);
+				value = FAILED;
+			}
+		}
+		return value == null ? -1 : value;
+	}
+
+	/**
+	 * Descarta o andamento de uma duplicação já concluída ou que falhou.
+	 *
+	 * @param dao
+	 *            DAO da requisição, para remover o andamento gravado.
+	 * @param copyId
+	 *            Id do plano macro criado pela duplicação.
+	 */
+	public void resetProgress(HibernateDAO dao, Long copyId) {
+		Integer value = this.progress.get(copyId);
+		if (value == null || value == DuplicationProgress.DONE || value == FAILED) {
+			DuplicationProgress.delete(dao, DuplicationProgress.Type.PLAN_MACRO, copyId);
+			this.progress.remove(copyId, DuplicationProgress.DONE);
+			this.progress.remove(copyId, FAILED);
+		}
+	}
+
+	/**
+	 * Execução da tarefa, que duplica os planos macro da fila.
+	 */
+	@Override
+	public synchronized void execute() {
+		if (this.queue.isEmpty()) {
+			return;
+		}
+		SessionFactory factory = CDI.current().select(SessionFactory.class).get();
+		SessionManager mngr = new SessionManager(factory);
+		HibernateDAO dao = new HibernateDAO(mngr);
+		try {
+			while (!this.queue.isEmpty()) {
+				this.duplicate(this.queue.poll(), dao);
+			}
+		} catch (Throwable ex) {
+			LOG.error("Unexpected error at plan macro duplication task.", ex);
+		} finally {
+			mngr.closeSession();
+		}
+	}
+
+	/**
+	 * Duplica um plano macro em uma única transação.
+	 */
+	private void duplicate(Duplication dup, HibernateDAO dao) {
+		try {
+			LOG.infof("Duplicating plan macro %d into %d...", dup.macroId, dup.copyId);
+			final long start = System.currentTimeMillis();
+			dao.execute((session) -> {
+				session.doWork((connection) -> {
+					new Copy(connection, dup).run();
+				});
+			});
+			this.progress.put(dup.copyId, DuplicationProgress.DONE);
+			LOG.infof("Plan macro %d duplicated into %d in %d ms.", dup.macroId, dup.copyId,
+					System.currentTimeMillis() - start);
+		} catch (Exception e) {
+			this.progress.put(dup.copyId, FAILED);
+			LOG.errorf(e, "Error duplicating plan macro %d into %d.", dup.macroId, dup.copyId);
+			this.discard(dup.copyId, dao);
+			try {
+				DuplicationProgress.save(dao, DuplicationProgress.Type.PLAN_MACRO, dup.copyId, FAILED);
+			} catch (Exception ex) {
+				LOG.errorf(ex, "Error saving the failure of plan macro duplication %d.", dup.copyId);
+			}
+		}
+	}
+
+	/**
+	 * Exclui o plano macro criado para uma duplicação que falhou, já que a
+	 * transação da cópia foi desfeita e ele ficaria vazio.
+	 */
+	private void discard(Long copyId, HibernateDAO dao) {
+		try {
+			dao.execute((session) -> {
+				session.doWork((connection) -> {
+					try (PreparedStatement stmt = connection.prepareStatement(DELETE_MACRO)) {
+						stmt.setLong(1, copyId);
+						stmt.executeUpdate();
+					}
+				});
+			});
+		} catch (Exception e) {
+			LOG.errorf(e, "Error deleting plan macro %d after a failed duplication.", copyId);
+		}
+	}
+
+	/**
+	 * Cópia de um plano macro, na conexão da transação da duplicação.
+	 */
+	private final class Copy {
+		private final JdbcCopy jdbc;
+		private final Duplication dup;
+		private final Timestamp now = new Timestamp(System.currentTimeMillis());
+		private final Map<Kind, Map<Long, Long>> ids = new EnumMap<>(Kind.class);
+		private final int steps;
+		private int step = 0;
+
+		private Copy(Connection connection, Duplication dup) {
+			this.jdbc = new JdbcCopy(connection);
+			this.dup = dup;
+			this.steps = dup.steps();
+		}
+
+		private void run() throws SQLException {
+			try {
+				if (this.dup.keepPlanLevel) {
+					this.copyPlans();
+				}
+				if (this.dup.keepDocSection) {
+					this.copyDocument();
+				}
+				SearchIndex.invalidate(this.jdbc.getConnection(), SearchDocument.LEVEL_INSTANCE, this.dup.copyId);
+				ReportDataVersion.touch(this.jdbc.getConnection(), ReportDataSource.PLAN_MACRO,
+					Collections.singletonList(this.dup.copyId));
+				DuplicationProgress.save(this.jdbc.getConnection(), DuplicationProgress.Type.PLAN_MACRO,
+					this.dup.copyId, DuplicationProgress.DONE);
+				this.done();
+			} finally {
+				this.jdbc.close();
+			}
+		}
+
+		private void copyPlans() throws SQLException {
+			Map<Long, Long> plans = this.copy(Kind.PLAN, SELECT_PLANS, INSERT_PLAN,
+					this.now, this.dup.copyId, this.dup.macroId);
+			this.done();
+			this.copy(Kind.LEVEL_INSTANCE, SELECT_LEVEL_INSTANCES, INSERT_LEVEL_INSTANCE,
+					this.now, this.now, this.dup.keepPlanContent);
+			for (Long planId : plans.values()) {
+				this.jdbc.update(UPDATE_LEVEL_INSTANCE_PARENTS, planId);
+			}
+			LevelInstancePath.fillMacro(this.jdbc.getConnection(), this.dup.copyId);
+			this.done();
+			this.copyAggregateIndicators();
+			this.done();
+			if (this.dup.keepPlanContent) {
+				this.jdbc.update(COPY_ATTRIBUTE_INSTANCES, this.now);
+				for (Long planId : plans.values()) {
+					LevelInstanceResponsibles.rebuildPlan(this.jdbc.getConnection(), planId);
+				}
+				this.done();
+				this.jdbc.update(COPY_BUDGETS, this.now);
+				this.done();
+				this.jdbc.update(COPY_ACTION_PLANS, this.now);
+				this.done();
+			}
+		}
+
+		/**
+		 * Copia os indicadores agregados. Os indicadores agregados que também
+		 * foram copiados são trocados pelas suas cópias.
+		 */
+		private void copyAggregateIndicators() throws SQLException {
+			Map<Long, Long> levels = this.ids.get(Kind.LEVEL_INSTANCE);
+			List<Object[]> rows = this.jdbc.select(SELECT_AGGREGATE_INDICATORS);
+			for (Object[] row : rows) {
+				Long aggregate = ((Number) row[1]).longValue();
+				row[1] = levels.getOrDefault(aggregate, aggregate);
+			}
+			this.jdbc.insert(INSERT_AGGREGATE_INDICATOR, rows);
+		}
+
+		private void copyDocument() throws SQLException {
+			Map<Long, Long> documents = this.copy(Kind.DOCUMENT, SELECT_DOCUMENT, INSERT_DOCUMENT,
+					this.now, "Documento - " + this.dup.copyName, this.dup.copyId, this.dup.macroId);
+			this.done();
+			this.copy(Kind.SECTION, SELECT_SECTIONS, INSERT_SECTION);
+			for (Long documentId : documents.values()) {
+				this.jdbc.update(UPDATE_SECTION_PARENTS, documentId);
+			}
+			this.done();
+			this.copy(Kind.DOCUMENT_ATTRIBUTE, SELECT_DOCUMENT_ATTRIBUTES, INSERT_DOCUMENT_ATTRIBUTE,
+					this.dup.keepDocContent, this.dup.keepDocContent, this.dup.keepDocContent);
+			this.done();
+			this.copy(Kind.TABLE_FIELDS, SELECT_TABLE_FIELDS, INSERT_TABLE_FIELDS,
+					TableField.class.getCanonicalName());
+			this.copy(Kind.TABLE_STRUCTURE, SELECT_TABLE_STRUCTURES, INSERT_TABLE_STRUCTURE);
+			this.done();
+			this.jdbc.update(COPY_OPTIONS, this.now);
+			this.done();
+			this.copy(Kind.SCHEDULE, SELECT_SCHEDULES, INSERT_SCHEDULE, ScheduleField.class.getCanonicalName());
+			this.copy(Kind.SCHEDULE_STRUCTURE, SELECT_SCHEDULE_STRUCTURES, INSERT_SCHEDULE_STRUCTURE);
+			this.done();
+			if (this.dup.keepDocContent) {
+				this.copy(Kind.TABLE_INSTANCE, SELECT_TABLE_INSTANCES, INSERT_TABLE_INSTANCE, this.now);
+				this.jdbc.update(COPY_TABLE_VALUES);
+				this.done();
+				this.copy(Kind.SCHEDULE_INSTANCE, SELECT_SCHEDULE_INSTANCES, INSERT_SCHEDULE_INSTANCE, this.now);
+				this.done();
+				this.jdbc.update(COPY_SCHEDULE_VALUES);
+				this.done();
+			}
+			this.done();
+		}
+
+		/**
+		 * Copia as linhas de um tipo, guardando a correspondência entre os
+		 * ids na tabela temporária do tipo.
+		 *
+		 * @return Map<Long, Long> Ids das cópias, indexados pelos ids de origem.
+		 */
+		private Map<Long, Long> copy(Kind kind, String select, String insert, Object... params)
+				throws SQLException {
+			Map<Long, Long> copies = this.jdbc.copy(kind.table(), select, insert, params);
+			this.ids.put(kind, copies);
+			return copies;
+		}
+
+		private void done() {
+			this.step++;
+			progress.put(this.dup.copyId, Math.min(99, Math.floorDiv(100 * this.step, this.steps)));
+		}
+	}
+}
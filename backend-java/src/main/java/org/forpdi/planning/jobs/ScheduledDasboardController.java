@@ -73,4 +73,22 @@ public class ScheduledDasboardController extends AbstractController {
 		}
 	}
 
+	/**
+	 * Tarefa para recalcular a situação das metas cujo andamento mudou com a
+	 * data, executada todo dia às 00:05
+	 * 
+	 * @throws SchedulerException
+	 */
+	@Post(BASEPATH + "/dashboard/jobs/goalStatus")
+	@Scheduled(concurrent = false, cron = "0 5 0 * * ?")
+	public void updateGoalStatus() throws SchedulerException {
+		try {
+			LOGGER.info("Situação de " + this.bs.updateGoalStatusRollover() + " metas atualizada.");
+		} catch (Throwable ex) {
+			LOGGER.error("Unexpected runtime error", ex);
+		} finally {
+			this.result.nothing();
+		}
+	}
+
 }
@@ -10,8 +10,7 @@ import javax.inject.Inject;
 import org.forpdi.core.company.Company;
 import org.forpdi.planning.document.bootstrap.ForpladHelper;
 import org.forpdi.planning.jobs.OnLevelInstanceUpdateTask;
-import org.forpdi.planning.structure.Structure;
-import org.forpdi.planning.structure.StructureBS;
+import org.forpdi.planning.jobs.PlanMacroDuplicationTask;
 import org.forpdi.planning.structure.StructureLevelInstance;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Disjunction;
@@ -35,6 +34,7 @@ public class PlanBS extends HibernateBusiness {
 	private static final int PAGESIZE = 50;
 	
 	@Inject private OnLevelInstanceUpdateTask levelInstanceUpdateTask;
+	@Inject private PlanMacroDuplicationTask duplicationTask;
 
 	/**
 	 * Cria plano macro.
@@ -223,50 +223,42 @@ public class PlanBS extends HibernateBusiness {
 	}
 	
 	/**
-	 * Duplicar level do plano.
+	 * Agenda a duplicação dos planos de metas e do documento de um plano
+	 * macro, feita em segundo plano.
 	 * @param macro
 	 * 			Plano macro existente a ser duplicado.
 	 * @param copy
-	 * 			Plano macro que receberá a cópia.
-	 * @param sbs
-	 * 			Level a ser duplicado.
-	 * @param keepContent
-	 * 			Flag para determinar se o conteúdo será duplicado também.
-	 * @return boolean
-	 * 			Retorna true se o level foi duplicado com sucesso, caso contrário retorna false.
+	 * 			Plano macro, já gravado, que receberá a cópia.
+	 * @param keepPlanLevel
+	 * 			Flag para duplicar os planos de metas e seus níveis.
+	 * @param keepPlanContent
+	 * 			Flag para duplicar o conteúdo dos níveis.
+	 * @param keepDocSection
+	 * 			Flag para duplicar as seções do documento.
+	 * @param keepDocContent
+	 * 			Flag para duplicar o conteúdo das seções do documento.
 	 */
-	public boolean duplicatePlanLevel(PlanMacro macro, PlanMacro copy, StructureBS sbs, Boolean keepContent) {
-		try {
-			PaginatedList<Plan> list = this.listPlans(macro, false, 0, null, null, 1);
-			for (Plan plan : list.getList()) {
-				Plan clone = new Plan();
-				clone.setBegin(plan.getBegin());
-				clone.setDescription(plan.getDescription());
-				clone.setEnd(plan.getEnd());
-				clone.setName(plan.getName());
-				Structure structure = this.exists(plan.getStructure().getId(), Structure.class);
-				structure.setLevels(sbs.listStructureLevels(structure));
-				clone.setStructure(structure);
-				clone.setParent(copy);
-				clone.setId(null);
-				clone.setDeleted(false);
-				clone.setUpdated(plan.isUpdated());
-				clone.setArchived(false);
-				clone.setUpdated(plan.isUpdated());
-				clone.setAuxValue(plan.getAuxValue());
-				this.persist(clone);
+	public void scheduleDuplication(PlanMacro macro, PlanMacro copy, boolean keepPlanLevel, boolean keepPlanContent,
+			boolean keepDocSection, boolean keepDocContent) {
+		this.duplicationTask.add(this.dao, macro.getId(), copy.getId(), copy.getName(), keepPlanLevel,
+				keepPlanContent, keepDocSection, keepDocContent);
+	}
 
-				if(sbs.duplicatePlanLevelInstance(plan, clone, keepContent)){
-					LOGGER.info("Plano "+plan.getName()+" duplicado com sucesso");
-				} else {
-					LOGGER.info("Não foi possível duplicar o plano "+plan.getName());
-				}
-			}
-			return true;
-		} catch (Exception e) {
-			LOGGER.error("Unexpected runtime error", e);
-			return false;
+	/**
+	 * Andamento da duplicação de um plano macro. Uma duplicação concluída
+	 * ou que falhou é descartada após ser consultada.
+	 * @param macroId
+	 * 			Id do plano macro criado pela duplicação.
+	 * @return int
+	 * 			Porcentagem concluída, -2 se a duplicação falhou ou foi
+	 * 			perdida em um reinício, ou -1 se não há duplicação para o plano.
+	 */
+	public int duplicationProgress(Long macroId) {
+		int progress = this.duplicationTask.getProgress(this.dao, macroId);
+		if (progress == 100 || progress == PlanMacroDuplicationTask.FAILED) {
+			this.duplicationTask.resetProgress(this.dao, macroId);
 		}
+		return progress;
 	}
 	
 	/**
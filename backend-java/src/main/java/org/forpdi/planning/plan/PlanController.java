@@ -18,7 +18,6 @@ import org.forpdi.core.user.User;
 import org.forpdi.core.user.UserBS;
 import org.forpdi.core.user.authz.AccessLevels;
 import org.forpdi.core.user.authz.Permissioned;
-import org.forpdi.planning.attribute.AttributeInstance;
 import org.forpdi.planning.document.Document;
 import org.forpdi.planning.document.DocumentBS;
 import org.forpdi.planning.permissions.ManagePlanMacroPermission;
@@ -515,66 +514,28 @@ public class PlanController extends AbstractController {
 			List<StructureLevelInstance> listLevelInstancesByResponsible = this.sbs
 					.listLevelInstancesByResponsible(users.getList());
 
-			List<StructureLevelInstance> levelInstanceList = this.sbs.listLevelsInstanceTerms(macro, terms,
-					subPlansSelect, levelsSelect, ordResult);
-
-			List<AttributeInstance> attributeInstanceList = this.sbs.listAttributesTerms(macro, terms, subPlansSelect,
-					levelsSelect, ordResult);
-			
-			int firstResult = 0;
-			int maxResult = 0;
-			int count = 0;
-			int add = 0;
+			Integer firstResult = null;
+			Integer maxResult = null;
 			if (limit != null) {
-				firstResult = (int) ((page - 1) * limit);
+				firstResult = (int) Math.max(0, (page - 1) * limit);
 				maxResult = limit.intValue();
 			}
-			
-			for (AttributeInstance attributeInstance : attributeInstanceList) {
-				boolean exist = false;
-				for (StructureLevelInstance levelInstance : levelInstanceList) {
-					if (attributeInstance.getLevelInstance().getId() == levelInstance.getId()) {
-						exist = true;
-						break;
-					}
-				}
-				if (!exist) {
-					levelInstanceList.add(this.sbs.retrieveLevelInstance(attributeInstance.getLevelInstance().getId()));
-				}
-			}
-			
-			PaginatedList<StructureLevelInstance> levelInstances = new PaginatedList<StructureLevelInstance>();
-			levelInstances.setList(new ArrayList<StructureLevelInstance>());
-			for (StructureLevelInstance levelInstance : levelInstanceList) {
-				if (limit != null) {
-					if (count >= firstResult && add < maxResult) {
-						levelInstances.getList().add(levelInstance);
-						count++;
-						add++;
-					} else {
-						count++;
-					}
-				} else {
-					levelInstances.getList().add(levelInstance);
-				}
-			}
 
+			PaginatedList<StructureLevelInstance> levelInstances = this.sbs.listLevelsInstanceTerms(macro, terms,
+					subPlansSelect, levelsSelect, ordResult, firstResult, maxResult);
+			long termTotal = levelInstances.getTotal();
+
+			// os níveis dos responsáveis vêm depois dos encontrados pelos termos
+			int skip = firstResult == null ? 0 : (int) Math.max(0, firstResult - termTotal);
 			for (StructureLevelInstance levelInstance : listLevelInstancesByResponsible) {
-				if (limit != null) {
-					if (count >= firstResult && add < maxResult) {
-						levelInstances.getList().add(levelInstance);
-						count++;
-						add++;
-					} else {
-						count++;
-					}
-				} else {
+				if (skip > 0) {
+					skip--;
+				} else if (maxResult == null || levelInstances.getList().size() < maxResult) {
 					levelInstances.getList().add(levelInstance);
 				}
 			}
 
-			
-			levelInstances.setTotal((long) count);
+			levelInstances.setTotal(termTotal + listLevelInstancesByResponsible.size());
 			this.success(levelInstances);
 		} catch (Throwable ex) {
 			LOGGER.error("Unexpected runtime error", ex);
@@ -630,7 +591,9 @@ public class PlanController extends AbstractController {
 	 *            Flag para manter seções do documento.
 	 * @param keepDocContent
 	 *            Flag para manter conteúdo das seções do documento.
-	 * @return PlanMacro Retorna o plano macro duplicado.
+	 * @return PlanMacro Retorna o plano macro criado. Os planos de metas e o
+	 *         documento são copiados em segundo plano, e o andamento é
+	 *         consultado em /planmacro/duplicate/state.
 	 */
 	@Post(BASEPATH + "/planmacro/duplicate")
 	@Consumes
@@ -650,25 +613,13 @@ public class PlanController extends AbstractController {
 				macro.setDocumented(existent.isDocumented());
 				macro = this.bs.duplicatePlanMacro(macro);
 				
-				if (macro != null) {
-					
-					if (keepPlanLevel) {
-						if (this.bs.duplicatePlanLevel(existent, macro, sbs, keepPlanContent)) {
-							LOGGER.info("Níveis do plano duplicados com sucesso.");
-						} else {
-							this.fail("Não foi possível duplicar os níveis do plano.");
-						}
-					}
-					if (keepDocSection) {
-						if (this.dbs.duplicateDocument(existent, macro, keepDocContent)) {
-							LOGGER.info("Seções do documento duplicados com sucesso.");
-						} else {
-							this.fail("Não foi possível duplicar as seções do documento.");
-						}
-					}
-				} else {
+				if (macro == null) {
 					this.fail("Não foi possível duplicar o plano.");
+					return;
 				}
+				this.bs.scheduleDuplication(existent, macro, Boolean.TRUE.equals(keepPlanLevel),
+						Boolean.TRUE.equals(keepPlanContent), Boolean.TRUE.equals(keepDocSection),
+						Boolean.TRUE.equals(keepDocContent));
 
 				/*
 				 * CompanyUser companyUser =
@@ -695,6 +646,26 @@ public class PlanController extends AbstractController {
 		}
 	}
 
+	/**
+	 * Andamento da duplicação de um plano macro.
+	 * 
+	 * @param macroId
+	 *            Id do plano macro criado pela duplicação.
+	 * @return Porcentagem concluída, -2 se a duplicação falhou ou -1 se não há
+	 *         duplicação para o plano.
+	 */
+	@Get(BASEPATH + "/planmacro/duplicate/state")
+	@NoCache
+	@Permissioned
+	public void duplicateState(Long macroId) {
+		try {
+			this.success(String.valueOf(this.bs.duplicationProgress(macroId)));
+		} catch (Throwable e) {
+			LOGGER.error("Unexpected runtime error", e);
+			this.fail("Ocorreu um erro inesperado: " + e.getMessage());
+		}
+	}
+
 	/**
 	 * Arquiva plano macro.
 	 * 
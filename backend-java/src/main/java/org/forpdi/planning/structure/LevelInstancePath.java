@@ -0,0 +1,128 @@
+package org.forpdi.planning.structure;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forpdi.planning.plan.Plan;
+import org.forpdi.planning.plan.PlanMacro;
+
+/**
+ * Caminho materializado das instâncias de nível: os ids da raiz até a
+ * instância, separados por barras ("/1/5/9/"). Com ele os ancestrais de uma
+ * instância são lidos do próprio caminho e os descendentes são buscados com
+ * um prefixo, em uma consulta indexada, em qualquer profundidade.
+ */
+public final class LevelInstancePath {
+
+	private static final String FILL_ROOTS = "UPDATE " + StructureLevelInstance.TABLE
+			+ " SET path = CONCAT('/', id, '/') WHERE parent IS NULL AND path IS NULL";
+	private static final String FILL_CHILDREN = "UPDATE " + StructureLevelInstance.TABLE + " child JOIN "
+			+ StructureLevelInstance.TABLE + " parent ON parent.id = child.parent"
+			+ " SET child.path = CONCAT(parent.path, child.id, '/')"
+			+ " WHERE child.path IS NULL AND parent.path IS NOT NULL";
+	private static final String BY_PLAN = " AND %splan_id = ?";
+	private static final String BY_MACRO = " AND %splan_id IN (SELECT id FROM " + Plan.TABLE
+			+ " WHERE parent_id = ?)";
+	private static final String BY_COMPANY = " AND %splan_id IN (SELECT p.id FROM " + Plan.TABLE + " p JOIN "
+			+ PlanMacro.TABLE + " m ON m.id = p.parent_id WHERE m.company_id = ?)";
+
+	private LevelInstancePath() {
+	}
+
+	/**
+	 * Caminho de uma instância a partir do caminho do pai.
+	 * 
+	 * @param parentPath
+	 *            Caminho do pai, ou null se a instância for uma raiz.
+	 * @param id
+	 *            Id da instância.
+	 * @return String Caminho da instância.
+	 */
+	public static String of(String parentPath, Long id) {
+		return (parentPath == null ? "/" : parentPath) + id + "/";
+	}
+
+	/**
+	 * Ids dos ancestrais contidos em um caminho, da raiz até o pai.
+	 * 
+	 * @param path
+	 *            Caminho de uma instância.
+	 * @return List<Long> Ids dos ancestrais.
+	 */
+	public static List<Long> ancestors(String path) {
+		List<Long> ids = new ArrayList<>();
+		String[] parts = path.split("/");
+		// A primeira parte é vazia e a última é a própria instância.
+		for (int i = 1; i < parts.length - 1; i++) {
+			ids.add(Long.valueOf(parts[i]));
+		}
+		return ids;
+	}
+
+	/**
+	 * Preenche o caminho das instâncias de um plano que ainda não o possuem.
+	 * 
+	 * @param connection
+	 *            Conexão da transação atual.
+	 * @param planId
+	 *            Id do plano.
+	 * @return int Quantidade de instâncias preenchidas.
+	 */
+	public static int fillPlan(Connection connection, long planId) throws SQLException {
+		return fill(connection, BY_PLAN, planId);
+	}
+
+	/**
+	 * Preenche o caminho das instâncias dos planos de um plano macro que
+	 * ainda não o possuem.
+	 */
+	public static int fillMacro(Connection connection, long macroId) throws SQLException {
+		return fill(connection, BY_MACRO, macroId);
+	}
+
+	/**
+	 * Preenche o caminho das instâncias dos planos de uma instituição que
+	 * ainda não o possuem.
+	 */
+	public static int fillCompany(Connection connection, long companyId) throws SQLException {
+		return fill(connection, BY_COMPANY, companyId);
+	}
+
+	/**
+	 * Preenche o caminho de todas as instâncias que ainda não o possuem,
+	 * criadas antes da coluna existir. Usado apenas na inicialização.
+	 */
+	public static int fillAll(Connection connection) throws SQLException {
+		return fill(connection, null, null);
+	}
+
+	/**
+	 * Preenche o caminho das instâncias que ainda não o possuem, um nível da
+	 * árvore por vez, até não restar instância com pai já preenchido.
+	 */
+	private static int fill(Connection connection, String restriction, Long param) throws SQLException {
+		String roots = FILL_ROOTS;
+		String children = FILL_CHILDREN;
+		if (restriction != null) {
+			roots += String.format(restriction, "");
+			children += String.format(restriction, "child.");
+		}
+		try (PreparedStatement rootsStmt = connection.prepareStatement(roots);
+				PreparedStatement childrenStmt = connection.prepareStatement(children)) {
+			if (param != null) {
+				rootsStmt.setLong(1, param);
+				childrenStmt.setLong(1, param);
+			}
+			int total = rootsStmt.executeUpdate();
+			int updated;
+			do {
+				updated = childrenStmt.executeUpdate();
+				total += updated;
+			} while (updated > 0);
+			return total;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package org.forpdi.planning.structure;
+
+import java.io.Serializable;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+import org.forpdi.core.company.Company;
+import org.forpdi.core.user.User;
+
+/**
+ * Responsável por uma instância de nível, espelhando o valor do atributo
+ * {@code ResponsibleField} com o id do usuário tipado e indexado. Mantido por
+ * {@link LevelInstanceResponsibles}.
+ */
+@Entity(name = LevelInstanceResponsible.TABLE)
+@Table(name = LevelInstanceResponsible.TABLE, indexes = {
+	@Index(columnList = "user_id,company_id")
+})
+public class LevelInstanceResponsible implements Serializable {
+	public static final String TABLE = "fpdi_level_instance_responsible";
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@ManyToOne(targetEntity = StructureLevelInstance.class, optional = false, fetch = FetchType.LAZY)
+	private StructureLevelInstance levelInstance;
+
+	@ManyToOne(targetEntity = User.class, optional = false, fetch = FetchType.LAZY)
+	private User user;
+
+	@ManyToOne(targetEntity = Company.class, optional = false, fetch = FetchType.LAZY)
+	private Company company;
+
+	private boolean deleted = false;
+
+	public StructureLevelInstance getLevelInstance() {
+		return levelInstance;
+	}
+
+	public void setLevelInstance(StructureLevelInstance levelInstance) {
+		this.levelInstance = levelInstance;
+	}
+
+	public User getUser() {
+		return user;
+	}
+
+	public void setUser(User user) {
+		this.user = user;
+	}
+
+	public Company getCompany() {
+		return company;
+	}
+
+	public void setCompany(Company company) {
+		this.company = company;
+	}
+
+	public boolean isDeleted() {
+		return deleted;
+	}
+
+	public void setDeleted(boolean deleted) {
+		this.deleted = deleted;
+	}
+
+}
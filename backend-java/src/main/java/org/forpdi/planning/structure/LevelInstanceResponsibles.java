@@ -0,0 +1,106 @@
+package org.forpdi.planning.structure;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.forpdi.core.user.User;
+import org.forpdi.planning.attribute.Attribute;
+import org.forpdi.planning.attribute.AttributeInstance;
+import org.forpdi.planning.attribute.types.ResponsibleField;
+import org.forpdi.planning.plan.Plan;
+import org.forpdi.planning.plan.PlanMacro;
+
+/**
+ * Reconstrói em lote o índice de responsáveis ({@link LevelInstanceResponsible})
+ * a partir das instâncias dos atributos {@link ResponsibleField}, para os
+ * pontos que gravam essas instâncias diretamente via JDBC.
+ */
+public final class LevelInstanceResponsibles {
+
+	private static final String SELECT_RESPONSIBLES = "SELECT 0, ai.levelInstance_id, u.id, pm.company_id"
+			+ " FROM " + AttributeInstance.TABLE + " ai"
+			+ " JOIN " + Attribute.TABLE + " a ON a.id = ai.attribute_id"
+			+ " JOIN " + StructureLevelInstance.TABLE + " li ON li.id = ai.levelInstance_id"
+			+ " JOIN " + Plan.TABLE + " p ON p.id = li.plan_id"
+			+ " JOIN " + PlanMacro.TABLE + " pm ON pm.id = p.parent_id"
+			+ " JOIN " + User.TABLE + " u ON u.id = CAST(ai.value AS UNSIGNED)"
+			+ " WHERE a.type = ? AND ai.deleted = 0 AND ai.value REGEXP '^[0-9]+$'";
+	private static final String INSERT_RESPONSIBLES = "INSERT INTO " + LevelInstanceResponsible.TABLE
+			+ " (deleted, levelInstance_id, user_id, company_id) ";
+	private static final String ON_DUPLICATE = " ON DUPLICATE KEY UPDATE deleted = 0, user_id = VALUES(user_id),"
+			+ " company_id = VALUES(company_id)";
+
+	private static final String ANY_RESPONSIBLE = "SELECT 1 FROM " + LevelInstanceResponsible.TABLE + " LIMIT 1";
+	private static final String DELETE_BY_PLAN = "DELETE r FROM " + LevelInstanceResponsible.TABLE + " r"
+			+ " JOIN " + StructureLevelInstance.TABLE + " li ON li.id = r.levelInstance_id WHERE li.plan_id = ?";
+	private static final String DELETE_BY_COMPANY = "DELETE FROM " + LevelInstanceResponsible.TABLE
+			+ " WHERE company_id = ?";
+
+	private LevelInstanceResponsibles() {
+	}
+
+	/**
+	 * Preenche o índice de todas as instituições, apenas se ele ainda estiver
+	 * vazio. Depois do preenchimento inicial, o índice é mantido pelos pontos
+	 * que gravam os responsáveis.
+	 * 
+	 * @param connection
+	 *            Conexão da transação atual.
+	 * @return int Quantidade de responsáveis indexados.
+	 */
+	public static int fillIfEmpty(Connection connection) throws SQLException {
+		try (PreparedStatement stmt = connection.prepareStatement(ANY_RESPONSIBLE);
+				ResultSet rs = stmt.executeQuery()) {
+			if (rs.next()) {
+				return 0;
+			}
+		}
+		return rebuild(connection, null, "", null);
+	}
+
+	/**
+	 * Reconstrói o índice dos níveis de um plano de metas.
+	 * 
+	 * @param connection
+	 *            Conexão da transação atual.
+	 * @param planId
+	 *            Id do plano de metas.
+	 * @return int Quantidade de responsáveis indexados.
+	 */
+	public static int rebuildPlan(Connection connection, Long planId) throws SQLException {
+		return rebuild(connection, DELETE_BY_PLAN, " AND li.plan_id = ?", planId);
+	}
+
+	/**
+	 * Reconstrói o índice dos níveis de uma instituição.
+	 * 
+	 * @param connection
+	 *            Conexão da transação atual.
+	 * @param companyId
+	 *            Id da instituição.
+	 * @return int Quantidade de responsáveis indexados.
+	 */
+	public static int rebuildCompany(Connection connection, Long companyId) throws SQLException {
+		return rebuild(connection, DELETE_BY_COMPANY, " AND pm.company_id = ?", companyId);
+	}
+
+	private static int rebuild(Connection connection, String delete, String filter, Long scopeId)
+			throws SQLException {
+		if (delete != null) {
+			try (PreparedStatement stmt = connection.prepareStatement(delete)) {
+				stmt.setLong(1, scopeId);
+				stmt.executeUpdate();
+			}
+		}
+		try (PreparedStatement stmt = connection
+				.prepareStatement(INSERT_RESPONSIBLES + SELECT_RESPONSIBLES + filter + ON_DUPLICATE)) {
+			stmt.setString(1, ResponsibleField.class.getCanonicalName());
+			if (scopeId != null) {
+				stmt.setLong(2, scopeId);
+			}
+			return stmt.executeUpdate();
+		}
+	}
+}
@@ -0,0 +1,468 @@
+package org.forpdi.planning.structure;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.forpdi.planning.attribute.AttributeInstance;
+import org.forpdi.planning.bean.PerformanceBean;
+import org.forpdi.planning.plan.Plan;
+import org.forpdi.system.reports.ReportDataSource;
+import org.forpdi.system.reports.ReportDataVersion;
+import org.hibernate.Criteria;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.sql.JoinType;
+
+import br.com.caelum.vraptor.boilerplate.HibernateDAO;
+
+/**
+ * Fotografia em memória da árvore de instâncias de nível de um plano de metas,
+ * utilizada para calcular as médias de desempenho sem uma consulta por nó.
+ *
+ * A árvore é carregada com uma única consulta de projeção e armazenada em
+ * vetores primitivos indexados pela posição da instância: ids, índice do pai,
+ * sequência do nível e valores alcançado, mínimo e máximo (NaN representa
+ * valor nulo). Os valores recalculados são marcados como alterados e
+ * gravados no banco em um único lote JDBC por {@link #flush(HibernateDAO)}.
+ */
+public class PlanTreeSnapshot {
+
+	private static final String UPDATE_LEVEL_INSTANCE = "UPDATE " + StructureLevelInstance.TABLE
+			+ " SET levelValue=?, levelMinimum=?, levelMaximum=? WHERE id=?";
+	private static final String UPDATE_LEVEL_INSTANCE_DETAILED = "UPDATE " + StructureLevelInstanceDetailed.TABLE
+			+ " SET levelValue=?, levelMinimum=?, levelMaximum=? WHERE id=?";
+	private static final long NO_DATE = Long.MIN_VALUE;
+
+	private final Long planId;
+	private final int size;
+	private final long[] ids;
+	private final int[] parents;
+	private final int[] sequences;
+	private final boolean[] goals;
+	private final boolean[] indicators;
+	private final boolean[] aggregates;
+	private final long[] finishDates;
+	/** Filhos de cada nó em formato compacto: os filhos do nó i estão em
+	 * children[childStart[i]] até children[childStart[i+1]-1]. */
+	private final int[] childStart;
+	private final int[] children;
+	private final int[] roots;
+	private final Map<Long, Integer> index;
+	private final Values values;
+	private final Map<Integer, Period> periods = new HashMap<>();
+
+	private PlanTreeSnapshot(Long planId, List<Object[]> rows) {
+		this.planId = planId;
+		this.size = rows.size();
+		this.ids = new long[size];
+		this.parents = new int[size];
+		this.sequences = new int[size];
+		this.goals = new boolean[size];
+		this.indicators = new boolean[size];
+		this.aggregates = new boolean[size];
+		this.finishDates = new long[size];
+		this.index = new HashMap<>(size * 2);
+		this.values = new Values(size);
+
+		long[] parentIds = new long[size];
+		for (int i = 0; i < size; i++) {
+			Object[] row = rows.get(i);
+			ids[i] = (Long) row[0];
+			parentIds[i] = row[1] == null ? 0L : (Long) row[1];
+			values.set(i, (Double) row[2], (Double) row[3], (Double) row[4]);
+			sequences[i] = (Integer) row[5];
+			goals[i] = (Boolean) row[6];
+			indicators[i] = (Boolean) row[7];
+			aggregates[i] = (Boolean) row[8];
+			finishDates[i] = NO_DATE;
+			index.put(ids[i], i);
+		}
+
+		int[] childCount = new int[size + 1];
+		int rootCount = 0;
+		for (int i = 0; i < size; i++) {
+			Integer parent = parentIds[i] == 0L ? null : index.get(parentIds[i]);
+			parents[i] = parent == null ? -1 : parent;
+			if (parents[i] < 0) {
+				if (parentIds[i] == 0L)
+					rootCount++;
+			} else {
+				childCount[parents[i]]++;
+			}
+		}
+		this.childStart = new int[size + 1];
+		for (int i = 0; i < size; i++) {
+			childStart[i + 1] = childStart[i] + childCount[i];
+		}
+		this.children = new int[childStart[size]];
+		this.roots = new int[rootCount];
+		int[] fill = new int[size];
+		int r = 0;
+		for (int i = 0; i < size; i++) {
+			if (parents[i] >= 0) {
+				children[childStart[parents[i]] + fill[parents[i]]++] = i;
+			} else if (parentIds[i] == 0L) {
+				roots[r++] = i;
+			}
+		}
+	}
+
+	/**
+	 * Carrega a árvore de um plano de metas: uma consulta de projeção para as
+	 * instâncias de nível e outra para as datas de término das metas.
+	 */
+	public static PlanTreeSnapshot load(HibernateDAO dao, Plan plan) {
+		Criteria criteria = dao.newCriteria(StructureLevelInstance.class)
+			.createAlias("level", "level", JoinType.INNER_JOIN)
+			.add(Restrictions.eq("deleted", false))
+			.add(Restrictions.eq("plan", plan))
+			.setProjection(Projections.projectionList()
+				.add(Projections.property("id"))
+				.add(Projections.property("parent"))
+				.add(Projections.property("levelValue"))
+				.add(Projections.property("levelMinimum"))
+				.add(Projections.property("levelMaximum"))
+				.add(Projections.property("level.sequence"))
+				.add(Projections.property("level.goal"))
+				.add(Projections.property("level.indicator"))
+				.add(Projections.property("aggregate"))
+			)
+		;
+		PlanTreeSnapshot snapshot = new PlanTreeSnapshot(plan.getId(), dao.findByCriteria(criteria, Object[].class));
+
+		Criteria dates = dao.newCriteria(AttributeInstance.class)
+			.createAlias("attribute", "attribute", JoinType.INNER_JOIN)
+			.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
+			.add(Restrictions.eq("attribute.finishDate", true))
+			.add(Restrictions.isNotNull("valueAsDate"))
+			.add(Restrictions.eq("levelInstance.deleted", false))
+			.add(Restrictions.eq("levelInstance.plan", plan))
+			.setProjection(Projections.projectionList()
+				.add(Projections.property("levelInstance.id"))
+				.add(Projections.property("valueAsDate"))
+			)
+		;
+		for (Object[] row : dao.findByCriteria(dates, Object[].class)) {
+			Integer i = snapshot.index.get((Long) row[0]);
+			if (i != null)
+				snapshot.finishDates[i] = ((Date) row[1]).getTime();
+		}
+		return snapshot;
+	}
+
+	public Long getPlanId() {
+		return planId;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** Posição da instância de nível na fotografia, ou -1 se não pertence ao plano. */
+	public int indexOf(Long levelInstanceId) {
+		Integer i = levelInstanceId == null ? null : index.get(levelInstanceId);
+		return i == null ? -1 : i;
+	}
+
+	public long getId(int i) {
+		return ids[i];
+	}
+
+	/** Posição do pai, ou -1 para as instâncias do primeiro nível. */
+	public int getParent(int i) {
+		return parents[i];
+	}
+
+	public int getSequence(int i) {
+		return sequences[i];
+	}
+
+	public boolean isGoal(int i) {
+		return goals[i];
+	}
+
+	public boolean isIndicator(int i) {
+		return indicators[i];
+	}
+
+	public boolean isAggregate(int i) {
+		return aggregates[i];
+	}
+
+	/**
+	 * Atualiza os valores de uma instância que já foram gravados por outro
+	 * caminho (ex.: metas), sem marcá-la para gravação.
+	 */
+	public void refresh(int i, Double value, Double minimum, Double maximum) {
+		values.set(i, value, minimum, maximum);
+	}
+
+	/** Define os valores recalculados de uma instância, marcando-a para gravação se mudaram. */
+	public void update(int i, PerformanceBean performance) {
+		values.update(i, performance);
+	}
+
+	/** Média dos filhos com valor, equivalente a {@link StructureHelper#calculateLevelValue}. */
+	public PerformanceBean calculateLevelValue(int i) {
+		return values.average(children, childStart[i], childStart[i + 1]);
+	}
+
+	/** Média dos filhos de um indicador com data de término vencida ou com
+	 * valor, equivalente a {@link StructureHelper#calculateIndicatorLevelValue}. */
+	public PerformanceBean calculateIndicatorLevelValue(int i, Date now) {
+		long limit = now.getTime();
+		double performance = 0.0, minimum = 0.0, maximum = 0.0;
+		int count = 0;
+		for (int c = childStart[i]; c < childStart[i + 1]; c++) {
+			int child = children[c];
+			if (finishDates[child] == NO_DATE)
+				continue;
+			if (finishDates[child] > limit && Double.isNaN(values.value[child]))
+				continue;
+			count++;
+			if (!Double.isNaN(values.value[child]))
+				performance += values.value[child];
+			if (!Double.isNaN(values.minimum[child]))
+				minimum += values.minimum[child];
+			if (!Double.isNaN(values.maximum[child]))
+				maximum += values.maximum[child];
+		}
+		PerformanceBean bean = new PerformanceBean();
+		if (count > 0) {
+			bean.setPerformance(performance / count);
+			bean.setMinimumAverage(minimum / count);
+			bean.setMaximumAverage(maximum / count);
+		}
+		return bean;
+	}
+
+	/** Média das instâncias do primeiro nível, equivalente a {@link StructureHelper#calculatePlanPerformance}. */
+	public PerformanceBean calculatePlanPerformance() {
+		return values.average(roots, 0, roots.length);
+	}
+
+	/**
+	 * Valores detalhados de um mês/ano, carregados com uma única consulta na
+	 * primeira vez em que o período é utilizado.
+	 */
+	public Period getPeriod(HibernateDAO dao, int month, int year) {
+		int key = year * 100 + month;
+		Period period = periods.get(key);
+		if (period == null) {
+			period = new Period(month, year);
+			Criteria criteria = dao.newCriteria(StructureLevelInstanceDetailed.class)
+				.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
+				.add(Restrictions.eq("deleted", false))
+				.add(Restrictions.eq("month", month))
+				.add(Restrictions.eq("year", year))
+				.add(Restrictions.eq("levelInstance.deleted", false))
+				.add(Restrictions.eq("levelInstance.plan.id", planId))
+				.setProjection(Projections.projectionList()
+					.add(Projections.property("levelInstance.id"))
+					.add(Projections.property("id"))
+					.add(Projections.property("levelValue"))
+					.add(Projections.property("levelMinimum"))
+					.add(Projections.property("levelMaximum"))
+				)
+			;
+			for (Object[] row : dao.findByCriteria(criteria, Object[].class)) {
+				Integer i = index.get((Long) row[0]);
+				if (i != null) {
+					period.detailedIds[i] = (Long) row[1];
+					period.values.set(i, (Double) row[2], (Double) row[3], (Double) row[4]);
+				}
+			}
+			periods.put(key, period);
+		}
+		return period;
+	}
+
+	/** Indica se há valores recalculados ainda não gravados. */
+	public boolean hasChanges() {
+		if (!values.changed.isEmpty())
+			return true;
+		for (Period period : periods.values()) {
+			if (!period.values.changed.isEmpty())
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Grava em lote os valores alterados desde a última gravação, em uma
+	 * única transação.
+	 */
+	public void flush(HibernateDAO dao) {
+		if (!this.hasChanges())
+			return;
+		dao.execute((session) -> {
+			session.doWork((connection) -> {
+				try (PreparedStatement stmt = connection.prepareStatement(UPDATE_LEVEL_INSTANCE)) {
+					values.bindChanges(stmt, ids);
+				}
+				try (PreparedStatement stmt = connection.prepareStatement(UPDATE_LEVEL_INSTANCE_DETAILED)) {
+					for (Period period : periods.values()) {
+						period.values.bindChanges(stmt, period.detailedIds);
+					}
+				}
+				// A chave das instâncias de nível é o id do plano.
+				ReportDataVersion.touch(connection, ReportDataSource.LEVEL_INSTANCE, Collections.singletonList(planId));
+			});
+			for (Period period : periods.values()) {
+				for (int i = period.values.changed.nextSetBit(0); i >= 0; i = period.values.changed.nextSetBit(i + 1)) {
+					StructureLevelInstanceDetailed detailed = new StructureLevelInstanceDetailed();
+					detailed.setLevelInstance((StructureLevelInstance) session.load(StructureLevelInstance.class, ids[i]));
+					detailed.setMonth(period.month);
+					detailed.setYear(period.year);
+					detailed.setLevelValue(period.values.get(period.values.value, i));
+					detailed.setLevelMinimum(period.values.get(period.values.minimum, i));
+					detailed.setLevelMaximum(period.values.get(period.values.maximum, i));
+					session.save(detailed);
+					period.detailedIds[i] = detailed.getId();
+				}
+				period.values.changed.clear();
+			}
+		});
+	}
+
+	/** Valores detalhados da árvore em um mês/ano. */
+	public class Period {
+		private final int month;
+		private final int year;
+		private final long[] detailedIds = new long[size];
+		private final Values values = new Values(size);
+
+		private Period(int month, int year) {
+			this.month = month;
+			this.year = year;
+		}
+
+		public int getMonth() {
+			return month;
+		}
+
+		public int getYear() {
+			return year;
+		}
+
+		public void refresh(int i, Double value, Double minimum, Double maximum) {
+			values.set(i, value, minimum, maximum);
+		}
+
+		public void update(int i, PerformanceBean performance) {
+			values.update(i, performance);
+		}
+
+		/** Equivalente a {@link StructureHelper#calculateLevelValueDetailed}. */
+		public PerformanceBean calculateLevelValue(int i) {
+			return values.average(children, childStart[i], childStart[i + 1]);
+		}
+
+		/** Equivalente a {@link StructureHelper#calculatePlanPerformanceDetailed}. */
+		public PerformanceBean calculatePlanPerformance() {
+			return values.average(roots, 0, roots.length);
+		}
+	}
+
+	/** Vetores de valor, mínimo e máximo com o controle das posições alteradas. */
+	private static class Values {
+		private final double[] value;
+		private final double[] minimum;
+		private final double[] maximum;
+		private final BitSet changed = new BitSet();
+
+		private Values(int size) {
+			value = new double[size];
+			minimum = new double[size];
+			maximum = new double[size];
+			Arrays.fill(value, Double.NaN);
+			Arrays.fill(minimum, Double.NaN);
+			Arrays.fill(maximum, Double.NaN);
+		}
+
+		private void set(int i, Double v, Double min, Double max) {
+			value[i] = v == null ? Double.NaN : v;
+			minimum[i] = min == null ? Double.NaN : min;
+			maximum[i] = max == null ? Double.NaN : max;
+		}
+
+		private Double get(double[] array, int i) {
+			return Double.isNaN(array[i]) ? null : array[i];
+		}
+
+		private void update(int i, PerformanceBean performance) {
+			double v = performance.getPerformance() == null ? Double.NaN : performance.getPerformance();
+			double min = performance.getMinimumAverage() == null ? Double.NaN : performance.getMinimumAverage();
+			double max = performance.getMaximumAverage() == null ? Double.NaN : performance.getMaximumAverage();
+			if (Double.compare(v, value[i]) != 0 || Double.compare(min, minimum[i]) != 0
+					|| Double.compare(max, maximum[i]) != 0) {
+				value[i] = v;
+				minimum[i] = min;
+				maximum[i] = max;
+				changed.set(i);
+			}
+		}
+
+		/** Média no estilo SQL AVG: considera somente os nós com valor, e
+		 * cada coluna ignora seus próprios nulos. */
+		private PerformanceBean average(int[] nodes, int from, int to) {
+			double v = 0.0, min = 0.0, max = 0.0;
+			int count = 0, minCount = 0, maxCount = 0;
+			for (int n = from; n < to; n++) {
+				int i = nodes[n];
+				if (Double.isNaN(value[i]))
+					continue;
+				v += value[i];
+				count++;
+				if (!Double.isNaN(minimum[i])) {
+					min += minimum[i];
+					minCount++;
+				}
+				if (!Double.isNaN(maximum[i])) {
+					max += maximum[i];
+					maxCount++;
+				}
+			}
+			PerformanceBean bean = new PerformanceBean();
+			bean.setPerformance(count == 0 ? null : v / count);
+			bean.setMinimumAverage(minCount == 0 ? null : min / minCount);
+			bean.setMaximumAverage(maxCount == 0 ? null : max / maxCount);
+			return bean;
+		}
+
+		/** Adiciona ao lote as posições alteradas que já existem no banco
+		 * (id diferente de zero) e as desmarca. */
+		private void bindChanges(PreparedStatement stmt, long[] rowIds) throws SQLException {
+			int pending = 0;
+			for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+				if (rowIds[i] == 0L)
+					continue;
+				bind(stmt, 1, value[i]);
+				bind(stmt, 2, minimum[i]);
+				bind(stmt, 3, maximum[i]);
+				stmt.setLong(4, rowIds[i]);
+				stmt.addBatch();
+				changed.clear(i);
+				if (++pending % 500 == 0)
+					stmt.executeBatch();
+			}
+			if (pending % 500 != 0)
+				stmt.executeBatch();
+		}
+
+		private static void bind(PreparedStatement stmt, int param, double v) throws SQLException {
+			if (Double.isNaN(v))
+				stmt.setNull(param, Types.DOUBLE);
+			else
+				stmt.setDouble(param, v);
+		}
+	}
+}
@@ -10,6 +10,9 @@ import javax.persistence.Table;
 import javax.persistence.Transient;
 
 import org.forpdi.core.company.Company;
+import org.forpdi.system.CacheRegions;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import br.com.caelum.vraptor.boilerplate.SimpleLogicalDeletableEntity;
 import br.com.caelum.vraptor.serialization.SkipSerialization;
@@ -20,6 +23,7 @@ import br.com.caelum.vraptor.serialization.SkipSerialization;
  */
 @Entity(name = Structure.TABLE)
 @Table(name = Structure.TABLE)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.STRUCTURE)
 public class Structure extends SimpleLogicalDeletableEntity {
 	public static final String TABLE = "fpdi_structure";
 	private static final long serialVersionUID = 1L;
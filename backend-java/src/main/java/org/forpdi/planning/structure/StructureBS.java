@@ -14,6 +14,7 @@ import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -47,6 +48,7 @@ import org.forpdi.planning.attribute.types.BudgetField;
 import org.forpdi.planning.attribute.types.ResponsibleField;
 import org.forpdi.planning.attribute.types.SelectField;
 import org.forpdi.planning.attribute.types.TableField;
+import org.forpdi.planning.attribute.types.enums.FormatValue;
 import org.forpdi.planning.attribute.types.enums.Periodicity;
 import org.forpdi.planning.fields.FieldsBS;
 import org.forpdi.planning.fields.OptionsField;
@@ -54,7 +56,6 @@ import org.forpdi.planning.fields.actionplan.ActionPlan;
 import org.forpdi.planning.fields.attachment.Attachment;
 import org.forpdi.planning.fields.budget.Budget;
 import org.forpdi.planning.fields.budget.BudgetDTO;
-import org.forpdi.planning.fields.schedule.Schedule;
 import org.forpdi.planning.fields.table.TableFields;
 import org.forpdi.planning.jobs.GoalDTO;
 import org.forpdi.planning.jobs.GoalsGenerationTask;
@@ -62,10 +63,15 @@ import org.forpdi.planning.jobs.OnLevelInstanceUpdateTask;
 import org.forpdi.planning.plan.Plan;
 import org.forpdi.planning.plan.PlanMacro;
 import org.forpdi.planning.structure.xml.StructureImporter;
+import org.forpdi.system.CacheRegions;
 import org.forpdi.system.CriteriaCompanyFilter;
+import org.forpdi.system.search.SearchBS;
+import org.forpdi.system.search.SearchDocument;
 import org.hibernate.Criteria;
 import org.hibernate.SQLQuery;
+import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
@@ -96,6 +102,8 @@ public class StructureBS extends HibernateBusiness {
 	@Inject
 	private UserBS userBS;
 	@Inject
+	private SearchBS searchBS;
+	@Inject
 	StructureHelper helper;
 	@Inject
 	AttributeHelper attrHelper;
@@ -196,7 +204,8 @@ public class StructureBS extends HibernateBusiness {
 	 */
 	public List<StructureLevel> listStructureLevels(Structure structure) {
 		Criteria criteria = this.dao.newCriteria(StructureLevel.class).add(Restrictions.eq("deleted", false))
-				.add(Restrictions.eq("structure", structure)).addOrder(Order.asc("sequence"));
+				.add(Restrictions.eq("structure", structure)).addOrder(Order.asc("sequence"))
+				.setCacheable(true).setCacheRegion(CacheRegions.STRUCTURE_QUERY);
 
 		return this.dao.findByCriteria(criteria, StructureLevel.class);
 	}
@@ -311,7 +320,8 @@ public class StructureBS extends HibernateBusiness {
 	}
 
 	/**
-	 * Listar as instâncias dos leveis pelo termo da busca.
+	 * Listar as instâncias dos leveis pelo termo da busca, no nome ou nos
+	 * valores dos atributos, em ordem de relevância.
 	 * 
 	 * @param macro
 	 *            Plano macro.
@@ -322,96 +332,29 @@ public class StructureBS extends HibernateBusiness {
 	 * @param levelsSelect
 	 *            Lista de leveis.
 	 * @param ordResult
-	 *            Ordem.
+	 *            Ordem entre instâncias de mesma relevância.
+	 * @param first
+	 *            Primeiro resultado, ou null para o início.
+	 * @param max
+	 *            Número máximo de resultados, ou null para todos.
 	 * @return results Lista de instâncias dos leveis.
 	 */
-	public List<StructureLevelInstance> listLevelsInstanceTerms(PlanMacro macro, String terms, Long subPlansSelect[],
-			Long levelsSelect[], int ordResult) {
-		List<StructureLevelInstance> results = new ArrayList<StructureLevelInstance>();
-		Criteria criteria = this.dao.newCriteria(StructureLevelInstance.class)
-				.createAlias("plan", "plan", JoinType.INNER_JOIN).add(Restrictions.eq("deleted", false))
-				.add(Restrictions.eq("plan.parent", macro));
-		
-		if (terms != null && !terms.isEmpty()) {
-			criteria.add(Restrictions.like("name", "%" + terms + "%").ignoreCase());
-		}
-		
-		if (subPlansSelect != null) {
-			Disjunction or = Restrictions.disjunction();
-			for (int i = 0; i < subPlansSelect.length; i++) {
-				or.add(Restrictions.eq("plan.id", subPlansSelect[i]));
-			}
-			criteria.add(or);
-		}
-		if (levelsSelect != null) {
-			criteria.createAlias("level", "level", JoinType.INNER_JOIN);
-			Disjunction or = Restrictions.disjunction();
-			for (int i = 0; i < levelsSelect.length; i++) {
-				or.add(Restrictions.eq("level.id", levelsSelect[i]));
-			}
-			criteria.add(or);
-		}
-		if (ordResult == 1) {
-			criteria.addOrder(Order.asc("creation"));
-		} else if (ordResult == 2) {
-			criteria.addOrder(Order.desc("creation"));
-		}
-		results = this.dao.findByCriteria(criteria, StructureLevelInstance.class);
-		return results;
-	}
-
-	/**
-	 * Listar as instâncias dos atributos pelo termo da busca.
-	 * 
-	 * @param macro
-	 *            Plano macro.
-	 * @param terms
-	 *            Termmo da busca.
-	 * @param subPlansSelect
-	 *            Lista de planos de metas.
-	 * @param levelsSelect
-	 *            Lista de leveis.
-	 * @param ordResult
-	 *            Ordem.
-	 * @return results Lista de instâncias dos atributos.
-	 */
-	public List<AttributeInstance> listAttributesTerms(PlanMacro macro, String terms, Long subPlansSelect[],
-			Long levelsSelect[], int ordResult) {
-		List<AttributeInstance> results = new ArrayList<AttributeInstance>();
-		Criteria criteria = this.dao.newCriteria(AttributeInstance.class)
-				.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
-				.createAlias("levelInstance.plan", "plan", JoinType.INNER_JOIN).add(Restrictions.eq("deleted", false))
-				.add(Restrictions.eq("plan.parent", macro))
-				.add(Restrictions.eq("levelInstance.deleted", false));
-		
-		if (terms != null && !terms.isEmpty()) {
-			criteria.add(Restrictions.like("value", "%" + terms + "%").ignoreCase());
-		}
-		
+	public PaginatedList<StructureLevelInstance> listLevelsInstanceTerms(PlanMacro macro, String terms,
+			Long subPlansSelect[], Long levelsSelect[], int ordResult, Integer first, Integer max) {
+		DetachedCriteria documents = DetachedCriteria.forClass(StructureLevelInstance.class)
+				.add(Restrictions.eq("deleted", false));
 		if (subPlansSelect != null) {
-			Disjunction or = Restrictions.disjunction();
-			for (int i = 0; i < subPlansSelect.length; i++) {
-				or.add(Restrictions.eq("plan.id", subPlansSelect[i]));
-			}
-			criteria.add(or);
+			documents.add(Restrictions.in("plan.id", (Object[]) subPlansSelect));
 		}
 		if (levelsSelect != null) {
-			criteria.createAlias("levelInstance.level", "level", JoinType.INNER_JOIN);
-			Disjunction or = Restrictions.disjunction();
-			for (int i = 0; i < levelsSelect.length; i++) {
-				or.add(Restrictions.eq("level.id", levelsSelect[i]));
-			}
-			criteria.add(or);
-		}
-		if (ordResult == 1) {
-			criteria.addOrder(Order.asc("levelInstance.creation"));
-		} else if (ordResult == 2) {
-			criteria.addOrder(Order.desc("levelInstance.creation"));
+			documents.add(Restrictions.in("level.id", (Object[]) levelsSelect));
 		}
+		documents.setProjection(Projections.property("id"));
 
-		results = this.dao.findByCriteria(criteria, AttributeInstance.class);
-
-		return results;
+		PaginatedList<Long> ids = this.searchBS.search(SearchDocument.LEVEL_INSTANCE, macro.getId(), terms, documents,
+				ordResult, first, max);
+		return new PaginatedList<>(this.searchBS.listByIds(StructureLevelInstance.class, ids.getList()),
+				ids.getTotal());
 	}
 
 	/**
@@ -424,31 +367,13 @@ public class StructureBS extends HibernateBusiness {
 	public List<StructureLevelInstance> listLevelInstancesByResponsible(List<User> users) {
 		List<StructureLevelInstance> results = new ArrayList<StructureLevelInstance>();
 		if (users.size() > 0) {
-			Criteria criteria = this.dao.newCriteria(AttributeInstance.class);
-			criteria.createAlias("attribute", "attribute", JoinType.INNER_JOIN);
-
-			Disjunction or = Restrictions.disjunction();
-			for (User user : users) {
-				or.add(Restrictions.eq("value", String.valueOf(user.getId())));
-			}
-			criteria.add(or);
-
-			criteria.add(Restrictions.eq("deleted", false));
-			criteria.add(Restrictions.eq("attribute.deleted", false));
-			criteria.add(Restrictions.eq("attribute.type", ResponsibleField.class.getCanonicalName()))
-			.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
-			.add(Restrictions.eq("levelInstance.deleted", false));
-			List<AttributeInstance> attrInsts = this.dao.findByCriteria(criteria, AttributeInstance.class);
-
-			for (AttributeInstance attrInst : attrInsts) {
-				boolean exists = false;
-				for (StructureLevelInstance levelInst : results) {
-					if (levelInst.getId() == attrInst.getLevelInstance().getId())
-						exists = true;
-				}
-				if (!exists)
-					results.add(attrInst.getLevelInstance());
-			}
+			Criteria criteria = this.dao.newCriteria(LevelInstanceResponsible.class)
+				.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
+				.add(Restrictions.in("user", users))
+				.add(Restrictions.eq("deleted", false))
+				.add(Restrictions.eq("levelInstance.deleted", false))
+				.setProjection(Projections.property("levelInstance"));
+			results.addAll(this.dao.findByCriteria(criteria, StructureLevelInstance.class));
 		}
 
 		return results;
@@ -504,6 +429,7 @@ public class StructureBS extends HibernateBusiness {
 	public List<Attribute> retrieveLevelAttributes(StructureLevel level) {
 		Criteria criteria = this.dao.newCriteria(Attribute.class);
 		criteria.add(Restrictions.eq("level", level));
+		criteria.setCacheable(true).setCacheRegion(CacheRegions.STRUCTURE_QUERY);
 		List<Attribute> attributes = this.dao.findByCriteria(criteria, Attribute.class);
 		return attributes;
 	}
@@ -670,6 +596,73 @@ public class StructureBS extends HibernateBusiness {
 		return attributes;
 	}
 
+	/**
+	 * Carrega tudo o que a tela de atributos de uma instância de level exibe:
+	 * atributos e seus valores, polaridade, ancestrais, favoritos e
+	 * indicadores agregados. As consultas são feitas em conjunto, em número
+	 * fixo, independente da quantidade de atributos do level.
+	 * 
+	 * @param levelInstance
+	 *            Instância de um level.
+	 * @return levelInstance Instância com os dados da tela preenchidos.
+	 */
+	public StructureLevelInstance loadLevelAttributes(StructureLevelInstance levelInstance) {
+		List<Attribute> attributes = this.retrieveLevelAttributes(levelInstance.getLevel());
+		List<AttributeInstance> instances = this.listAttributeInstancesForScreen(levelInstance);
+		levelInstance.getLevel().setAttributes(this.setAttributesInstances(levelInstance, attributes, instances));
+
+		Long polaritySource = levelInstance.getLevel().isIndicator() ? levelInstance.getId() : levelInstance.getParent();
+		for (AttributeInstance instance : instances) {
+			if (instance.getAttribute().isPolarityField() && instance.getLevelInstance().getId().equals(polaritySource)) {
+				levelInstance.setPolarity(instance.getValue());
+				break;
+			}
+		}
+
+		levelInstance.setParents(this.setParents(levelInstance));
+
+		Criteria criteria = this.dao.newCriteria(FavoriteLevelInstance.class)
+			.createAlias("levelInstance", "levelInstance")
+			.createAlias("levelInstance.plan", "plan")
+			.createAlias("companyUser", "companyUser")
+			.add(Restrictions.eq("plan.parent", levelInstance.getPlan().getParent()))
+			.add(Restrictions.eq("companyUser.user", this.userSession.getUser()))
+			.add(Restrictions.eq("companyUser.company", this.domain.getCompany()))
+			.add(Restrictions.eq("deleted", false))
+			.setProjection(Projections.property("levelInstance.id"));
+		List<Long> favorites = this.dao.findByCriteria(criteria, Long.class);
+		levelInstance.setFavoriteExistent(favorites.contains(levelInstance.getId()));
+		levelInstance.setFavoriteTotal(favorites.size());
+
+		levelInstance.setIndicatorList(this.listAggregateIndicatorsByAggregate(levelInstance));
+		return levelInstance;
+	}
+
+	/**
+	 * Instâncias dos atributos de uma instância de level, junto com as
+	 * instâncias de formatação e polaridade do level pai, em uma consulta.
+	 */
+	private List<AttributeInstance> listAttributeInstancesForScreen(StructureLevelInstance levelInstance) {
+		Criteria criteria = this.dao.newCriteria(AttributeInstance.class)
+			.createAlias("attribute", "attribute", JoinType.INNER_JOIN)
+			.addOrder(Order.asc("id"));
+		if (levelInstance.getParent() == null) {
+			criteria.add(Restrictions.eq("levelInstance.id", levelInstance.getId()));
+		} else {
+			criteria.add(Restrictions.or(
+				Restrictions.eq("levelInstance.id", levelInstance.getId()),
+				Restrictions.and(
+					Restrictions.eq("levelInstance.id", levelInstance.getParent()),
+					Restrictions.or(
+						Restrictions.eq("attribute.formatField", true),
+						Restrictions.eq("attribute.polarityField", true)
+					)
+				)
+			));
+		}
+		return this.dao.findByCriteria(criteria, AttributeInstance.class);
+	}
+
 	/**
 	 * Setar as instâncias dos atributos na instância de um level.
 	 * 
@@ -680,29 +673,95 @@ public class StructureBS extends HibernateBusiness {
 	 * @return attributes Lista de atributos.
 	 */
 	public List<Attribute> setAttributesInstances(StructureLevelInstance levelInstance, List<Attribute> attributes) {
+		return this.setAttributesInstances(levelInstance, attributes, this.listAttributeInstancesForScreen(levelInstance));
+	}
+
+	/**
+	 * Setar as instâncias dos atributos, buscando de uma vez os dados de cada
+	 * tipo de campo presente na lista.
+	 * 
+	 * @param instances
+	 *            Instâncias dos atributos da instância de level e as de
+	 *            formatação do level pai.
+	 */
+	private List<Attribute> setAttributesInstances(StructureLevelInstance levelInstance, List<Attribute> attributes,
+			List<AttributeInstance> instances) {
+		List<Long> selects = new ArrayList<>();
+		List<Long> tables = new ArrayList<>();
+		boolean responsible = false, budget = false, actionPlan = false;
 		for (Attribute attribute : attributes) {
-			if (attribute.getType().equals(SelectField.class.getCanonicalName())) {
-				PaginatedList<OptionsField> options = this.fieldsBS.getOptionsField(attribute.getId(),false);
-				attribute.setOptionLabels(options.getList());
-			} else if (attribute.getType().equals(ResponsibleField.class.getCanonicalName())) {
-				PaginatedList<User> users = this.userBS.listUsersByCompany();
-				attribute.setUsers(users.getList());
+			String type = attribute.getType();
+			if (type.equals(SelectField.class.getCanonicalName()))
+				selects.add(attribute.getId());
+			else if (type.equals(ResponsibleField.class.getCanonicalName()))
+				responsible = true;
+			else if (type.equals(BudgetField.class.getCanonicalName()))
+				budget = true;
+			else if (type.equals(ActionPlanField.class.getCanonicalName()))
+				actionPlan = true;
+			else if (type.equals(TableField.class.getCanonicalName()))
+				tables.add(attribute.getId());
+		}
+
+		Map<Long, List<OptionsField>> options = new HashMap<>();
+		if (!selects.isEmpty()) {
+			Criteria criteria = this.dao.newCriteria(OptionsField.class)
+				.add(Restrictions.eq("deleted", false))
+				.add(Restrictions.eq("isDocument", false))
+				.add(Restrictions.in("attributeId", selects))
+				.addOrder(Order.asc("id"));
+			for (OptionsField option : this.dao.findByCriteria(criteria, OptionsField.class)) {
+				options.computeIfAbsent(option.getAttributeId(), (id) -> new ArrayList<>()).add(option);
 			}
-			if (attribute.getType().equals(BudgetField.class.getCanonicalName())) {
-				List<BudgetDTO> budgetList = this.fieldsBS.getBudgets(levelInstance);
-				attribute.setBudgets(budgetList);
-			} else if (attribute.getType().equals(ActionPlanField.class.getCanonicalName())) {
-				PaginatedList<ActionPlan> actionPlans = this.fieldsBS.listActionPlansByInstance(levelInstance);
-				attribute.setActionPlans(actionPlans.getList());
-			} else if (attribute.getType().equals(Schedule.class.getCanonicalName())) {
-				Schedule schedule = this.fieldsBS.scheduleByAttribute(attribute.getId(), false);
-				attribute.setSchedule(schedule);
-			} else if (attribute.getType().equals(TableField.class.getCanonicalName())) {
-				TableFields tableFields = this.fieldsBS.tableFieldsByAttribute(attribute.getId(), false, false);
-				attribute.setTableFields(tableFields);
+		}
+		Map<Long, TableFields> tableFields = new HashMap<>();
+		if (!tables.isEmpty()) {
+			Criteria criteria = this.dao.newCriteria(TableFields.class)
+				.add(Restrictions.eq("deleted", false))
+				.add(Restrictions.eq("isDocument", false))
+				.add(Restrictions.in("attributeId", tables))
+				.addOrder(Order.asc("id"));
+			for (TableFields fields : this.dao.findByCriteria(criteria, TableFields.class)) {
+				tableFields.putIfAbsent(fields.getAttributeId(), fields);
+			}
+		}
+		List<User> users = responsible ? this.userBS.listUsersByCompany().getList() : null;
+		List<BudgetDTO> budgets = budget ? this.fieldsBS.getBudgets(levelInstance) : null;
+		List<ActionPlan> actionPlans = actionPlan ? this.fieldsBS.listActionPlansByInstance(levelInstance).getList() : null;
+
+		Map<Long, AttributeInstance> byAttribute = new HashMap<>();
+		AttributeInstance format = null;
+		for (AttributeInstance instance : instances) {
+			if (instance.getLevelInstance().getId().equals(levelInstance.getId())) {
+				byAttribute.putIfAbsent(instance.getAttribute().getId(), instance);
+			} else if (format == null && instance.getAttribute().isFormatField()) {
+				format = instance;
+			}
+		}
+
+		for (Attribute attribute : attributes) {
+			String type = attribute.getType();
+			if (type.equals(SelectField.class.getCanonicalName())) {
+				attribute.setOptionLabels(options.getOrDefault(attribute.getId(), new ArrayList<>()));
+			} else if (type.equals(ResponsibleField.class.getCanonicalName())) {
+				attribute.setUsers(users);
+			}
+			if (type.equals(BudgetField.class.getCanonicalName())) {
+				attribute.setBudgets(budgets);
+			} else if (type.equals(ActionPlanField.class.getCanonicalName())) {
+				attribute.setActionPlans(actionPlans);
+			} else if (type.equals(TableField.class.getCanonicalName())) {
+				attribute.setTableFields(tableFields.get(attribute.getId()));
 			} else {
-				AttributeInstance attributeInstance = attrHelper.retrieveAttributeInstance(levelInstance, attribute);
+				AttributeInstance attributeInstance = byAttribute.get(attribute.getId());
 				if (attributeInstance != null) {
+					if (attribute.isExpectedField() || attribute.isMaximumField() || attribute.isMinimumField()
+							|| attribute.isReachedField()) {
+						FormatValue formatValue = FormatValue.forAttributeInstance(format);
+						attributeInstance.setFormattedValue(attributeInstance.getValueAsNumber() != null
+								? formatValue.format(attributeInstance.getValueAsNumber().toString())
+								: "");
+					}
 					AttributeTypeWrapper attributeTypeWrapper = AttributeTypeFactory.getInstance()
 							.get(attribute.getType()).getWrapper();
 					if (attributeInstance.getValueAsDate() != null)
@@ -1108,153 +1167,6 @@ public class StructureBS extends HibernateBusiness {
 		return result;
 	}
 
-	/**
-	 * Duplicar plano de metas.
-	 * 
-	 * @param plan
-	 *            Plano de metas.
-	 * @param clone
-	 *            Copia do plano de metas.
-	 * @param keepContent
-	 *            Indicação se é para manter o conteúdo do plano.
-	 * @return boolean Retorna verdadeiro se for duplicado.
-	 */
-	public boolean duplicatePlanLevelInstance(Plan plan, Plan clone, Boolean keepContent) {
-		try {
-			List<StructureLevelInstance> levels = this.listLevelInstanceByPlan(plan);
-			Map<Long, Long> map = new HashMap<>(); // map para referenciar qual
-													// level original o
-													// duplicado representa
-			for (StructureLevelInstance instance : levels) {
-				StructureLevelInstance instanceClone = new StructureLevelInstance();
-				instanceClone.setLevel(instance.getLevel());
-				instanceClone.setName(instance.getName());
-				instanceClone.setCreation(new Date());
-				instanceClone.setParent(map.get(instance.getParent()));
-				instanceClone.setPlan(clone);
-				instanceClone.setSons(instance.getSons());
-				instanceClone.setId(null);
-				instanceClone.setAggregate(instance.isAggregate());
-				instanceClone.setCalculation(instance.getCalculation());
-				
-				if (keepContent) // para não duplicar o levelValue caso não ative a opção manter conteúdo
-					instanceClone.setLevelValue(instance.getLevelValue());
-				
-				this.persist(instanceClone);
-				map.put(instance.getId(), instanceClone.getId());
-				if (keepContent) {
-					if (this.duplicateAttributeInstance(instance, instanceClone)) {
-						//LOGGER.info("Conteúdo do nível " + instance.getName() + " duplicado com sucesso");
-					} else {
-						LOGGER.info("Não foi possivel duplicar o conteúdo do nível " + instance.getName());
-					}
-				}
-				if (instanceClone.isAggregate()) {
-					if (this.duplicateAggregateIndicator(instance, instanceClone)) {
-						//LOGGER.info("Nível agregado " + instance.getName() + " duplicado com sucesso");
-					} else {
-						LOGGER.info("Não foi possível duplicar nível agregado " + instance.getName());
-					}
-				}
-			}
-			return true;
-		} catch (Exception e) {
-			LOGGER.error("Unexpected runtime error", e);
-			return false;
-		}
-	}
-
-	/**
-	 * Duplicar o indicador agregado.
-	 * 
-	 * @param instance
-	 *            Instância de um level indicador.
-	 * @param clone
-	 *            Copia da instância do level indicador.
-	 * @return boolean Retorna verdadeiro se o indicador agregado foi duplicado.
-	 */
-	public boolean duplicateAggregateIndicator(StructureLevelInstance instance, StructureLevelInstance clone) {
-		try {
-			List<AggregateIndicator> indicators = this.helper.listIndicators(instance);
-			for (AggregateIndicator indicator : indicators) {
-				AggregateIndicator indicatorCopy = new AggregateIndicator();
-				indicatorCopy.setIndicator(clone);
-				indicatorCopy.setDeleted(false);
-				indicatorCopy.setPercentage(indicator.getPercentage());
-				indicatorCopy.setAggregate(indicator.getAggregate());
-				this.persist(indicatorCopy);
-			}
-			return true;
-		} catch (Exception e) {
-			LOGGER.error("Unexpected runtime error", e);
-			return false;
-		}
-	}
-
-	/**
-	 * Duplicar as instâncias dos atributos.
-	 * 
-	 * @param instance
-	 *            Instância de um level.
-	 * @param instanceClone
-	 *            Copia da instância do level.
-	 * @return boolean Retorna verdadeiro se as instâncias dos atributos foram
-	 *         duplicadas.
-	 */
-	public boolean duplicateAttributeInstance(StructureLevelInstance instance, StructureLevelInstance instanceClone) {
-		try {
-			List<AttributeInstance> attrList = this.listAttributeInstanceByLevel(instance,false);
-			for (AttributeInstance attr : attrList) {
-				AttributeInstance attrCopy = new AttributeInstance();
-				attrCopy.setAttribute(attr.getAttribute());
-				attrCopy.setCreation(new Date());
-				attrCopy.setDeleted(false);
-				attrCopy.setId(null);
-				attrCopy.setLevelInstance(instanceClone);
-				attrCopy.setValue(attr.getValue());
-				attrCopy.setValueAsDate(attr.getValueAsDate());
-				attrCopy.setValueAsNumber(attr.getValueAsNumber());
-				this.persist(attrCopy);
-			}
-			PaginatedList<Attribute> attributes = this.listAttributes(instance.getLevel());
-			for (Attribute attribute : attributes.getList()) {
-				if (attribute.getType().equals(BudgetField.class.getCanonicalName())) {
-					PaginatedList<Budget> budgets = this.fieldsBS.listBudgetsByInstance(instance);
-					for (Budget budget : budgets.getList()) {
-						Budget budgetCopy = new Budget();
-						budgetCopy.setCreation(new Date());
-						budgetCopy.setDeleted(false);
-						budgetCopy.setLevelInstance(instanceClone);
-						budgetCopy.setName(budget.getName());
-						budgetCopy.setSubAction(budget.getSubAction());
-						budgetCopy.setBudgetElement(budget.getBudgetElement());
-						budgetCopy.setCommitted(budget.getCommitted());
-						budgetCopy.setRealized(budget.getRealized());
-						this.persist(budgetCopy);
-					}
-				} else if (attribute.getType().equals(ActionPlanField.class.getCanonicalName())) {
-					PaginatedList<ActionPlan> list = this.fieldsBS.listActionPlansByInstance(instance);
-					for (ActionPlan actionPlan : list.getList()) {
-						ActionPlan actionPlanCopy = new ActionPlan();
-						actionPlanCopy.setBegin(actionPlan.getBegin());
-						actionPlanCopy.setChecked(actionPlan.isChecked());
-						actionPlanCopy.setCreation(new Date());
-						actionPlanCopy.setDeleted(false);
-						actionPlanCopy.setDescription(actionPlan.getDescription());
-						actionPlanCopy.setEnd(actionPlan.getEnd());
-						actionPlanCopy.setLevelInstance(instanceClone);
-						actionPlanCopy.setResponsible(actionPlan.getResponsible());
-						this.persist(actionPlanCopy);
-					}
-				}
-			}
-			return true;
-		} catch (Exception e) {
-			LOGGER.error("Unexpected runtime error", e);
-			return false;
-		}
-	}
-
 	/**
 	 * Buscar o id da estrutura pelo level.
 	 * 
@@ -1323,6 +1235,23 @@ public class StructureBS extends HibernateBusiness {
 		goalTask.add(dto);
 	}
 
+	/**
+	 * Andamento da geração de metas de um indicador. Uma geração concluída
+	 * ou que falhou é descartada após ser consultada.
+	 * 
+	 * @param indicatorId
+	 *            Id do indicador pai das metas geradas.
+	 * @return Porcentagem concluída, -2 se a geração falhou ou -1 se não há
+	 *         geração para o indicador.
+	 */
+	public int goalsGenerationProgress(Long indicatorId) {
+		int progress = goalTask.getProgress(indicatorId);
+		if (progress == 100 || progress == GoalsGenerationTask.FAILED) {
+			goalTask.resetProgress(indicatorId);
+		}
+		return progress;
+	}
+
 	/**
 	 * Enfileira a instância de nível para atualização das médias e agregações.
 	 */
@@ -1473,6 +1402,71 @@ public class StructureBS extends HibernateBusiness {
 		return result;
 	}
 
+	/**
+	 * Listar as metas abertas de uma instituição cuja data de término está no
+	 * intervalo informado ou já passou, em uma única consulta sobre as
+	 * instâncias do atributo de data de término.
+	 * 
+	 * @param company
+	 *            Instituição das metas.
+	 * @param dueStart
+	 *            Início do intervalo de vencimento próximo.
+	 * @param dueEnd
+	 *            Fim (exclusivo) do intervalo de vencimento próximo.
+	 * @param now
+	 *            Data atual, metas com término anterior estão vencidas.
+	 * @return List<Object[]> Linhas com id da meta, nome, id do nível pai, id
+	 *         do plano macro e data de término.
+	 */
+	public List<Object[]> listGoalsForMaturityInspection(Company company, Date dueStart, Date dueEnd, Date now) {
+		Criteria criteria = this.dao.newCriteria(AttributeInstance.class);
+		criteria.createAlias("attribute", "attribute", JoinType.INNER_JOIN);
+		criteria.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN);
+		criteria.createAlias("levelInstance.level", "level", JoinType.INNER_JOIN);
+		criteria.createAlias("levelInstance.plan", "plan", JoinType.INNER_JOIN);
+		criteria.createAlias("plan.parent", "macro", JoinType.INNER_JOIN);
+		criteria.add(Restrictions.eq("attribute.finishDate", true));
+		criteria.add(Restrictions.eq("deleted", false));
+		criteria.add(Restrictions.eq("levelInstance.deleted", false));
+		criteria.add(Restrictions.eq("levelInstance.closed", false));
+		criteria.add(Restrictions.eq("level.goal", true));
+		criteria.add(Restrictions.eq("macro.company", company));
+		criteria.add(Restrictions.or(
+				Restrictions.and(Restrictions.ge("valueAsDate", dueStart), Restrictions.lt("valueAsDate", dueEnd)),
+				Restrictions.lt("valueAsDate", now)));
+		criteria.addOrder(Order.asc("levelInstance.id"));
+		criteria.setProjection(Projections.projectionList()
+				.add(Projections.property("levelInstance.id"))
+				.add(Projections.property("levelInstance.name"))
+				.add(Projections.property("levelInstance.parent"))
+				.add(Projections.property("macro.id"))
+				.add(Projections.property("valueAsDate")));
+		return this.dao.findByCriteria(criteria, Object[].class);
+	}
+
+	/**
+	 * Buscar os nomes de um conjunto de instâncias de nível.
+	 * 
+	 * @param ids
+	 *            Ids das instâncias de nível.
+	 * @return Map<Long, String> Nome de cada instância encontrada, pelo id.
+	 */
+	public Map<Long, String> mapLevelInstanceNames(Collection<Long> ids) {
+		Map<Long, String> names = new HashMap<>();
+		if (ids.isEmpty()) {
+			return names;
+		}
+		Criteria criteria = this.dao.newCriteria(StructureLevelInstance.class);
+		criteria.add(Restrictions.in("id", ids));
+		criteria.setProjection(Projections.projectionList()
+				.add(Projections.property("id"))
+				.add(Projections.property("name")));
+		for (Object[] row : this.dao.findByCriteria(criteria, Object[].class)) {
+			names.put((Long) row[0], (String) row[1]);
+		}
+		return names;
+	}
+
 	/**
 	 * Listar metas, de acordo a um plano macro, plano, pagina e tamanho de
 	 * pagina
@@ -1568,16 +1562,15 @@ public class StructureBS extends HibernateBusiness {
 	 * @return criteria
 	 */
 	public Criteria filterByResponsibleCriteria() {
-		Criteria criteria = this.dao.newCriteria(AttributeInstance.class);
-		criteria.createAlias("levelInstance", "levelInstance", JoinType.RIGHT_OUTER_JOIN);
-		criteria.createAlias("attribute", "attribute", JoinType.INNER_JOIN);
+		Criteria criteria = this.dao.newCriteria(LevelInstanceResponsible.class);
+		criteria.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN);
 		criteria.createAlias("levelInstance.level", "level", JoinType.INNER_JOIN);
 		criteria.createAlias("levelInstance.plan", "plan", JoinType.INNER_JOIN);
 		criteria.createAlias("plan.parent", "macro", JoinType.INNER_JOIN);
 		criteria.add(Restrictions.eq("macro.archived", false));
+		criteria.add(Restrictions.eq("deleted", false));
 		criteria.add(Restrictions.eq("levelInstance.deleted", false));
-		criteria.add(Restrictions.eq("attribute.type", ResponsibleField.class.getCanonicalName()));
-		criteria.add(Restrictions.eq("value", this.userSession.getUser().getId().toString()));
+		criteria.add(Restrictions.eq("user.id", this.userSession.getUser().getId()));
 
 		return criteria;
 	}
@@ -1591,42 +1584,134 @@ public class StructureBS extends HibernateBusiness {
 		Set<Long> allIds = new HashSet<>();
 
 		Criteria criteriaLvl1 = this.filterByResponsibleCriteria();
-
-		criteriaLvl1.setProjection(Projections.property("levelInstance.id"));
-		List<Long> idsLevel1 = this.filter.filterAndList(criteriaLvl1, Long.class, "macro.company");
-		if (idsLevel1.isEmpty()) {
+		criteriaLvl1.setProjection(Projections.projectionList()
+				.add(Projections.property("levelInstance.id"))
+				.add(Projections.property("levelInstance.path")));
+		List<Object[]> responsibles = this.filter.filterAndList(criteriaLvl1, Object[].class, "macro.company");
+		if (responsibles.isEmpty()) {
 			return allIds;
 		}
-		allIds.addAll(idsLevel1);
 
-		Criteria criteriaLvl2 = this.dao.newCriteria(StructureLevelInstance.class);
-		criteriaLvl2.add(Restrictions.in("parent", idsLevel1))
-			.add(Restrictions.eq("deleted", false))
-			.setProjection(Projections.property("id"));
-		List<Long> idsLevel2 = this.dao.findByCriteria(criteriaLvl2, Long.class);
-		if (idsLevel2.isEmpty()) {
-			return allIds;
+		// Descendentes pelo prefixo do caminho, em uma consulta para qualquer
+		// profundidade. Níveis ainda sem caminho são percorridos pelo pai.
+		Disjunction prefixes = Restrictions.disjunction();
+		List<Long> withoutPath = new ArrayList<>();
+		for (Object[] row : responsibles) {
+			allIds.add((Long) row[0]);
+			if (row[1] != null) {
+				prefixes.add(Restrictions.like("path", (String) row[1], MatchMode.START));
+			} else {
+				withoutPath.add((Long) row[0]);
+			}
+		}
+		if (withoutPath.size() < responsibles.size()) {
+			Criteria criteria = this.dao.newCriteria(StructureLevelInstance.class)
+				.add(prefixes)
+				.add(Restrictions.eq("deleted", false))
+				.setProjection(Projections.property("id"));
+			allIds.addAll(this.dao.findByCriteria(criteria, Long.class));
+		}
+		while (!withoutPath.isEmpty()) {
+			Criteria criteria = this.dao.newCriteria(StructureLevelInstance.class)
+				.add(Restrictions.in("parent", withoutPath))
+				.add(Restrictions.eq("deleted", false))
+				.setProjection(Projections.property("id"));
+			withoutPath = new ArrayList<>();
+			for (Long id : this.dao.findByCriteria(criteria, Long.class)) {
+				if (allIds.add(id)) {
+					withoutPath.add(id);
+				}
+			}
 		}
-		allIds.addAll(idsLevel2);
+		return allIds;
+	}
 
-		Criteria criteriaLvl3 = this.dao.newCriteria(StructureLevelInstance.class);
-		criteriaLvl3.add(Restrictions.in("parent", idsLevel2))
+	/**
+	 * Retorna os IDs dos níveis nos quais o usuário logado é responsável.
+	 * 
+	 * @return Set<Long> IDs dos níveis.
+	 */
+	public Set<Long> retrieveResponsibleLevelInstanceIds() {
+		Criteria criteria = this.dao.newCriteria(LevelInstanceResponsible.class)
+			.add(Restrictions.eq("user.id", this.userSession.getUser().getId()))
 			.add(Restrictions.eq("deleted", false))
-			.setProjection(Projections.property("id"));
-		List<Long> idsLevel3 = this.dao.findByCriteria(criteriaLvl3, Long.class);
-		if (idsLevel3.isEmpty()) {
-			return allIds;
+			.setProjection(Projections.property("levelInstance.id"));
+		return new HashSet<>(this.dao.findByCriteria(criteria, Long.class));
+	}
+
+	/**
+	 * Retorna os IDs dos ancestrais de uma instância de um level, da raiz até o
+	 * pai. Usa o caminho da instância e, se ele ainda não foi preenchido, sobe
+	 * pelos pais.
+	 * 
+	 * @param levelInstance
+	 *            Instância de um level.
+	 * @return List<Long> IDs dos ancestrais.
+	 */
+	public List<Long> listAncestorIds(StructureLevelInstance levelInstance) {
+		if (levelInstance.getPath() != null) {
+			return LevelInstancePath.ancestors(levelInstance.getPath());
+		}
+		List<Long> ids = new ArrayList<>();
+		while (levelInstance != null && levelInstance.getParent() != null) {
+			ids.add(levelInstance.getParent());
+			levelInstance = this.retrieveLevelInstance(levelInstance.getParent());
 		}
-		allIds.addAll(idsLevel3);
+		return Lists.reverse(ids);
+	}
 
-		Criteria criteriaLvl4 = this.dao.newCriteria(StructureLevelInstance.class);
-		criteriaLvl4.add(Restrictions.in("parent", idsLevel3))
-			.add(Restrictions.eq("deleted", false))
-			.setProjection(Projections.property("id"));
-		List<Long> idsLevel4 = this.dao.findByCriteria(criteriaLvl4, Long.class);
-		allIds.addAll(idsLevel4);
+	/**
+	 * Atualiza o caminho de uma instância de um level recém criada, a partir do
+	 * caminho do pai.
+	 * 
+	 * @param levelInstance
+	 *            Instância de um level já salva.
+	 */
+	public void updateLevelInstancePath(StructureLevelInstance levelInstance) {
+		String parentPath = null;
+		if (levelInstance.getParent() != null) {
+			StructureLevelInstance parent = this.retrieveLevelInstance(levelInstance.getParent());
+			if (parent == null || parent.getPath() == null) {
+				return;
+			}
+			parentPath = parent.getPath();
+		}
+		levelInstance.setPath(LevelInstancePath.of(parentPath, levelInstance.getId()));
+		this.persist(levelInstance);
+	}
 
-		return allIds;
+	/**
+	 * Atualiza o responsável indexado de uma instância de um level, depois de
+	 * salvar o valor do atributo responsável.
+	 * 
+	 * @param levelInstance
+	 *            Instância de um level.
+	 * @param value
+	 *            Valor do atributo responsável, o id do usuário.
+	 */
+	public void updateResponsible(StructureLevelInstance levelInstance, String value) {
+		Criteria criteria = this.dao.newCriteria(LevelInstanceResponsible.class)
+			.add(Restrictions.eq("levelInstance", levelInstance));
+		LevelInstanceResponsible responsible = (LevelInstanceResponsible) criteria.uniqueResult();
+		User user = null;
+		if (value != null && value.matches("[0-9]+")) {
+			user = this.exists(Long.valueOf(value), User.class);
+		}
+		if (user == null) {
+			if (responsible != null && !responsible.isDeleted()) {
+				responsible.setDeleted(true);
+				this.persist(responsible);
+			}
+			return;
+		}
+		if (responsible == null) {
+			responsible = new LevelInstanceResponsible();
+			responsible.setLevelInstance(levelInstance);
+		}
+		responsible.setUser(user);
+		responsible.setCompany(levelInstance.getPlan().getParent().getCompany());
+		responsible.setDeleted(false);
+		this.persist(responsible);
 	}
 
 	/**
@@ -2128,6 +2213,22 @@ public class StructureBS extends HibernateBusiness {
 	 */
 	public List<StructureLevelInstance> setParents(StructureLevelInstance levelInstance) {
 		List<StructureLevelInstance> parents = new ArrayList<StructureLevelInstance>();
+		if (levelInstance.getPath() != null) {
+			List<Long> ids = LevelInstancePath.ancestors(levelInstance.getPath());
+			if (ids.isEmpty()) {
+				return parents;
+			}
+			Map<Long, StructureLevelInstance> byId = new HashMap<>();
+			Criteria criteria = this.dao.newCriteria(StructureLevelInstance.class).add(Restrictions.in("id", ids));
+			for (StructureLevelInstance parent : this.dao.findByCriteria(criteria, StructureLevelInstance.class)) {
+				byId.put(parent.getId(), parent);
+			}
+			for (Long id : ids) {
+				if (byId.containsKey(id))
+					parents.add(byId.get(id));
+			}
+			return parents;
+		}
 		boolean haveParent = false;
 		if (levelInstance.getParent() != null) {
 			haveParent = true;
@@ -2210,45 +2311,51 @@ public class StructureBS extends HibernateBusiness {
 			.add(Restrictions.eq("deleted", false));
 			List<StructureLevelInstance> sonList = this.dao.findByCriteria(criteria, StructureLevelInstance.class);
 			
-			//pegar todos os attributeInstance de uma vez para evitar muitos acessos ao banco
-			criteria = this.dao.newCriteria(AttributeInstance.class)
-			.createAlias("attribute", "attribute", JoinType.INNER_JOIN)
-			.add(Restrictions.eq("attribute.type", ResponsibleField.class.getCanonicalName()))
-			.add(Restrictions.eq("value",String.valueOf(this.userSession.getUser().getId())))
-			.addOrder(Order.asc("levelInstance.id"));
-			List<AttributeInstance> attrList = this.dao.findByCriteria(criteria, AttributeInstance.class);
-
-			Map<Long, AttributeInstance> attrMap = new HashMap<>();
-			for (AttributeInstance attr : attrList) {
-				attrMap.put(attr.getLevelInstance().getId(), attr);
-			}
-			
+			//pegar todos os níveis dos quais o usuário é responsável de uma vez para evitar muitos acessos ao banco
+			Set<Long> responsibleIds = this.retrieveResponsibleLevelInstanceIds();
+
+			//o próprio nível, um filho ou o ancestral responsável mais próximo, pelo caminho dos níveis
+			List<Long> matchIds = new ArrayList<>();
+			Map<Long, StructureLevelInstance> matchMap = new HashMap<>();
 			for (StructureLevelInstance levelInst : levelInstances) {
-				boolean lvlAdd = false;
-				StructureLevelInstance lvlI = levelInst;
-				
-				if(attrMap.get(levelInst.getId()) !=null) {
-					list2.add(levelInst);
-					lvlAdd = true;
+				if (responsibleIds.contains(levelInst.getId())) {
+					matchIds.add(levelInst.getId());
+					matchMap.put(levelInst.getId(), levelInst);
 					continue;
 				}
 
+				boolean lvlAdd = false;
 				for (StructureLevelInstance stLvInst : sonList) {
-					if(attrMap.get(stLvInst.getId()) !=null) {
-						list2.add(stLvInst);
+					if (responsibleIds.contains(stLvInst.getId())) {
+						matchIds.add(stLvInst.getId());
+						matchMap.put(stLvInst.getId(), stLvInst);
 						lvlAdd = true;
 						break;
-					}	
+					}
 				}
 
-				while (!lvlAdd && lvlI.getParent() != null) {
-					lvlI = this.retrieveLevelInstance(lvlI.getParent());
-					if(attrMap.get(lvlI.getId()) !=null) {
-						list2.add(lvlI);
-						lvlAdd=true;	
-					}		
+				List<Long> ancestors = lvlAdd ? Collections.emptyList() : this.listAncestorIds(levelInst);
+				for (int i = ancestors.size() - 1; i >= 0; i--) {
+					if (responsibleIds.contains(ancestors.get(i))) {
+						matchIds.add(ancestors.get(i));
+						break;
+					}
+				}
+			}
+
+			Set<Long> missing = new HashSet<>(matchIds);
+			missing.removeAll(matchMap.keySet());
+			if (!missing.isEmpty()) {
+				criteria = this.dao.newCriteria(StructureLevelInstance.class)
+				.add(Restrictions.in("id", missing));
+				for (StructureLevelInstance ancestor : this.dao.findByCriteria(criteria, StructureLevelInstance.class)) {
+					matchMap.put(ancestor.getId(), ancestor);
 				}
 			}
+			for (Long id : matchIds) {
+				if (matchMap.containsKey(id))
+					list2.add(matchMap.get(id));
+			}
 			levelInstances = list2;
 		}
 		return levelInstances;
@@ -2265,18 +2372,14 @@ public class StructureBS extends HibernateBusiness {
 	 *         level.
 	 */
 	public boolean isUserResponsibleForSomeLevel(Long id, Company company) {
-		Criteria criteria = this.dao.newCriteria(AttributeInstance.class);
-		criteria.createAlias("attribute", "attribute", JoinType.INNER_JOIN);
-		criteria.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN);
-		criteria.createAlias("levelInstance.plan", "plan", JoinType.INNER_JOIN);
-		criteria.createAlias("plan.parent", "planMacro", JoinType.INNER_JOIN);
-		criteria.add(Restrictions.eq("planMacro.company", company));
-		criteria.add(Restrictions.eq("attribute.type", ResponsibleField.class.getCanonicalName()));
-		criteria.add(Restrictions.eq("value", String.valueOf(id)));
-
-		List<AttributeInstance> attributes = this.dao.findByCriteria(criteria, AttributeInstance.class);
+		Criteria criteria = this.dao.newCriteria(LevelInstanceResponsible.class);
+		criteria.add(Restrictions.eq("user.id", id));
+		criteria.add(Restrictions.eq("company", company));
+		criteria.add(Restrictions.eq("deleted", false));
+		criteria.setProjection(Projections.property("user.id"));
+		criteria.setMaxResults(1);
 
-		return attributes.isEmpty() ? false : true;
+		return criteria.uniqueResult() != null;
 	}
 
 	/**
@@ -26,6 +26,7 @@ import org.forpdi.core.user.User;
 import org.forpdi.core.user.UserBS;
 import org.forpdi.core.user.authz.AccessLevels;
 import org.forpdi.core.user.authz.Permissioned;
+import org.forpdi.dashboard.DashboardBS;
 import org.forpdi.planning.attribute.AggregateIndicator;
 import org.forpdi.planning.attribute.Attribute;
 import org.forpdi.planning.attribute.AttributeHelper;
@@ -81,6 +82,8 @@ public class StructureController extends AbstractController {
 	private BudgetBS budgetBS;
 	@Inject
 	private FieldsBS fieldBs;
+	@Inject
+	private DashboardBS dashboardBS;
 
 	/**
 	 * Listar os tipos de atributos existentes.
@@ -399,6 +402,7 @@ public class StructureController extends AbstractController {
 				levelInstance.setCreation(new Date());
 				levelInstance.setParent(parentId);
 				this.bs.persist(levelInstance);
+				this.bs.updateLevelInstancePath(levelInstance);
 				this.bs.updateLevelValues(levelInstance);
 				AttributeInstance attrInst = this.attrHelper
 						.retrievePolarityAttributeInstance(levelInstance.getParent());
@@ -451,31 +455,7 @@ public class StructureController extends AbstractController {
 			if (levelInstance == null) {
 				this.fail("Estrutura incorreta!");
 			} else {
-				List<Attribute> attributeList = this.bs.retrieveLevelAttributes(levelInstance.getLevel());
-				attributeList = this.bs.setAttributesInstances(levelInstance, attributeList);
-				levelInstance.getLevel().setAttributes(attributeList);
-
-				AttributeInstance attributeInstance = null;
-				if (levelInstance.getLevel().isIndicator())
-					attributeInstance = this.attrHelper.retrievePolarityAttributeInstance(levelInstance);
-				else
-					attributeInstance = this.attrHelper.retrievePolarityAttributeInstance(levelInstance.getParent());
-				if (attributeInstance != null)
-					levelInstance.setPolarity(attributeInstance.getValue());
-
-				levelInstance.setParents(this.bs.setParents(levelInstance));
-
-				PaginatedList<FavoriteLevelInstance> favorites = this.bs
-						.listFavoriteLevelInstances(levelInstance.getPlan().getParent());
-				boolean favoriteExistent = false;
-				for (int i = 0; i < favorites.getList().size(); i++) {
-					if (favorites.getList().get(i).getLevelInstance().getId() == levelInstance.getId())
-						favoriteExistent = true;
-				}
-				levelInstance.setFavoriteExistent(favoriteExistent);
-				levelInstance.setFavoriteTotal(favorites.getList().size());
-				levelInstance.setIndicatorList(this.bs.listAggregateIndicatorsByAggregate(levelInstance));
-
+				this.bs.loadLevelAttributes(levelInstance);
 				this.success(levelInstance);
 			}
 		} catch (Throwable e) {
@@ -556,6 +536,9 @@ public class StructureController extends AbstractController {
 						attributeInstance.setValueAsNumber(attInst.getValueAsNumber());
 						attributeInstance.setValueAsDate(attInst.getValueAsDate());
 						this.bs.persist(attributeInstance);
+						if (attribute.getType().equals(ResponsibleField.class.getCanonicalName())) {
+							this.bs.updateResponsible(existentLevelInstance, attributeInstance.getValue());
+						}
 						attribute.setAttributeInstance(attributeInstance);
 						attributes.add(attribute);
 					}
@@ -578,6 +561,7 @@ public class StructureController extends AbstractController {
 				}
 				existentLevelInstance = this.bs.retrieveLevelInstance(existentLevelInstance.getId());
 				this.bs.updateLevelValues(existentLevelInstance);
+				this.dashboardBS.updateGoalStatus(existentLevelInstance);
 				existentLevelInstance.setParents(this.bs.setParents(existentLevelInstance));
 				StructureLevel nextLevel = this.bs.retrieveNextLevel(existentLevelInstance.getLevel().getStructure(),
 						existentLevelInstance.getLevel().getSequence() + 1);
@@ -763,6 +747,7 @@ public class StructureController extends AbstractController {
 			levelInstance.setClosed(openCloseGoal);
 			levelInstance.setClosedDate(new Date());
 			this.bs.persist(levelInstance);
+			this.dashboardBS.updateGoalStatus(levelInstance);
 
 			if (openCloseGoal) {
 				StructureLevelInstance levelInstanceParent = this.bs.retrieveLevelInstance(levelInstance.getParent());
@@ -1133,6 +1118,26 @@ public class StructureController extends AbstractController {
 		}
 	}
 
+	/**
+	 * Andamento da geração de metas de um indicador.
+	 * 
+	 * @param indicatorId
+	 *            Id do indicador pai das metas geradas.
+	 * @return Porcentagem concluída, -2 se a geração falhou ou -1 se não há
+	 *         geração para o indicador.
+	 */
+	@Get(BASEPATH + "/structure/levelinstance/goalsgenerate/state")
+	@NoCache
+	@Permissioned
+	public void goalsGenerateState(Long indicatorId) {
+		try {
+			this.success(String.valueOf(this.bs.goalsGenerationProgress(indicatorId)));
+		} catch (Throwable e) {
+			LOGGER.error("Unexpected runtime error", e);
+			this.fail("Ocorreu um erro inesperado: " + e.getMessage());
+		}
+	}
+
 	/**
 	 * Listar instâncias de um level indicador pelo plano macro e/ou plano de
 	 * metas.
@@ -65,6 +65,13 @@ public class StructureHelper {
 	public StructureLevelInstanceDetailed getLevelInstanceDetailed(StructureLevelInstance levelInstance, AttributeInstance finishDate) {
 		int month = finishDate.getValueAsDate().getMonth()+1;
 		int year = finishDate.getValueAsDate().getYear()+1900;
+		return this.getLevelInstanceDetailed(levelInstance, month, year);
+	}
+	
+	/**
+	 * Busca detalhada de uma instância de um level em um mês/ano.
+	 */
+	public StructureLevelInstanceDetailed getLevelInstanceDetailed(StructureLevelInstance levelInstance, int month, int year) {
 		Criteria criteria = this.dao.newCriteria(StructureLevelInstanceDetailed.class);
 		criteria.add(Restrictions.eq("deleted", false));
 		criteria.add(Restrictions.eq("levelInstance", levelInstance));
@@ -89,6 +96,13 @@ public class StructureHelper {
 	public PlanDetailed getPlanDetailed(Plan plan, AttributeInstance finishDate) {
 		int month = finishDate.getValueAsDate().getMonth()+1;
 		int year = finishDate.getValueAsDate().getYear()+1900;
+		return this.getPlanDetailed(plan, month, year);
+	}
+	
+	/**
+	 * Busca detalhada de um plano em um mês/ano.
+	 */
+	public PlanDetailed getPlanDetailed(Plan plan, int month, int year) {
 		Criteria criteria = this.dao.newCriteria(PlanDetailed.class);
 		criteria.add(Restrictions.eq("deleted", false));
 		criteria.add(Restrictions.eq("plan", plan));
@@ -164,6 +178,11 @@ public class StructureHelper {
 	public PerformanceBean calculateLevelValueDetailed(StructureLevelInstance levelInstance, AttributeInstance finishDate) {
 		int month = finishDate.getValueAsDate().getMonth()+1;
 		int year = finishDate.getValueAsDate().getYear()+1900;
+		return this.calculateLevelValueDetailed(levelInstance, month, year);
+	}
+	
+	/** Calcula a média do valor no nível abaixo em um mês/ano. */
+	public PerformanceBean calculateLevelValueDetailed(StructureLevelInstance levelInstance, int month, int year) {
 		Criteria criteria =
 			this.dao.newCriteria(StructureLevelInstanceDetailed.class)
 			.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
@@ -207,6 +226,11 @@ public class StructureHelper {
 	public PerformanceBean calculatePlanPerformanceDetailed(Plan plan, AttributeInstance finishDate) {
 		int month = finishDate.getValueAsDate().getMonth()+1;
 		int year = finishDate.getValueAsDate().getYear()+1900;
+		return this.calculatePlanPerformanceDetailed(plan, month, year);
+	}
+	
+	/** Calcula a média do valor do primeiro nível do plano em um mês/ano. */
+	public PerformanceBean calculatePlanPerformanceDetailed(Plan plan, int month, int year) {
 		Criteria criteria =
 			this.dao.newCriteria(StructureLevelInstanceDetailed.class)
 			.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
@@ -257,6 +281,16 @@ public class StructureHelper {
 
 		return this.dao.findByCriteria(criteria, AggregateIndicator.class);
 	}
+
+	public List<AggregateIndicator> getAggregatedToIndicators(Long aggregatedId) {
+		Criteria criteria = this.dao.newCriteria(AggregateIndicator.class);
+		criteria.createAlias("indicator", "indicator", JoinType.INNER_JOIN);
+		criteria.add(Restrictions.eq("aggregate.id", aggregatedId));
+		criteria.add(Restrictions.eq("indicator.deleted", false));
+		criteria.add(Restrictions.eq("deleted", false));
+
+		return this.dao.findByCriteria(criteria, AggregateIndicator.class);
+	}
 	
 	/** Realiza o cálculo e atualiza o valor de nível (valor agregado)
 	 * de acordo com o tipo de cálculo definido para o nível. */
@@ -12,6 +12,9 @@ import javax.persistence.Transient;
 import javax.persistence.UniqueConstraint;
 
 import org.forpdi.planning.attribute.Attribute;
+import org.forpdi.system.CacheRegions;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import br.com.caelum.vraptor.boilerplate.SimpleLogicalDeletableEntity;
 import br.com.caelum.vraptor.serialization.SkipSerialization;
@@ -29,6 +32,7 @@ import br.com.caelum.vraptor.serialization.SkipSerialization;
 		@Index(columnList="structure_id,sequence")
 	}
 )
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.STRUCTURE)
 public class StructureLevel extends SimpleLogicalDeletableEntity {
 	public static final String TABLE = "fpdi_structure_level";
 	private static final long serialVersionUID = 1L;
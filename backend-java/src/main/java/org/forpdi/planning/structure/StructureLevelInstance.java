@@ -22,6 +22,7 @@ import org.forpdi.planning.plan.Plan;
 
 import br.com.caelum.vraptor.boilerplate.SimpleLogicalDeletableEntity;
 import br.com.caelum.vraptor.boilerplate.bean.PaginatedList;
+import br.com.caelum.vraptor.serialization.SkipSerialization;
 
 /**
  * @author Rodrigo de Freitas Santos
@@ -29,7 +30,7 @@ import br.com.caelum.vraptor.boilerplate.bean.PaginatedList;
  */
 @Entity(name = StructureLevelInstance.TABLE)
 @Table(name = StructureLevelInstance.TABLE, uniqueConstraints = @UniqueConstraint(columnNames = { "id" }), indexes = {
-		@Index(columnList = "level_id,plan_id") })
+		@Index(columnList = "level_id,plan_id"), @Index(columnList = "path") })
 public class StructureLevelInstance extends SimpleLogicalDeletableEntity {
 	public static final String TABLE = "fpdi_structure_level_instance";
 	private static final long serialVersionUID = 1L;
@@ -54,6 +55,14 @@ public class StructureLevelInstance extends SimpleLogicalDeletableEntity {
 	@Column(nullable = true)
 	private Long parent;
 
+	/**
+	 * Caminho de ids da raiz até esta instância, no formato "/1/5/9/". Mantido
+	 * por {@link LevelInstancePath}.
+	 */
+	@SkipSerialization
+	@Column(nullable = true, length = 255)
+	private String path;
+
 	@Column(nullable = false)
 	private boolean closed = false;
 
@@ -245,6 +254,14 @@ public class StructureLevelInstance extends SimpleLogicalDeletableEntity {
 		this.parent = parent;
 	}
 
+	public String getPath() {
+		return path;
+	}
+
+	public void setPath(String path) {
+		this.path = path;
+	}
+
 	public boolean isClosed() {
 		return closed;
 	}
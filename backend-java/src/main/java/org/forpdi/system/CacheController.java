@@ -0,0 +1,56 @@
+package org.forpdi.system;
+
+import javax.inject.Inject;
+
+import org.forpdi.core.abstractions.AbstractController;
+import org.forpdi.core.user.authz.AccessLevels;
+import org.forpdi.core.user.authz.Permissioned;
+import org.hibernate.SessionFactory;
+
+import br.com.caelum.vraptor.Controller;
+import br.com.caelum.vraptor.Delete;
+import br.com.caelum.vraptor.Get;
+import br.com.caelum.vraptor.boilerplate.NoCache;
+
+/**
+ * Consulta e esvazia o cache de segundo nível das entidades de referência.
+ */
+@Controller
+public class CacheController extends AbstractController {
+
+	@Inject
+	private SessionFactory factory;
+
+	/**
+	 * Acertos e falhas de cada região do cache.
+	 *
+	 * @return List<CacheRegionBean> Estatísticas por região.
+	 */
+	@Get(BASEPATH + "/system/cache")
+	@NoCache
+	@Permissioned(AccessLevels.SYSTEM_ADMIN)
+	public void statistics() {
+		try {
+			this.success(CacheRegions.statistics(this.factory));
+		} catch (Throwable e) {
+			LOGGER.error("Unexpected runtime error", e);
+			this.fail("Ocorreu um erro inesperado: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Esvazia o cache, depois de alterações feitas direto no banco.
+	 */
+	@Delete(BASEPATH + "/system/cache")
+	@NoCache
+	@Permissioned(AccessLevels.SYSTEM_ADMIN)
+	public void evict() {
+		try {
+			CacheRegions.evictAll(this.factory);
+			this.success("Cache esvaziado.");
+		} catch (Throwable e) {
+			LOGGER.error("Unexpected runtime error", e);
+			this.fail("Ocorreu um erro inesperado: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package org.forpdi.system;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.forpdi.core.bean.CacheRegionBean;
+import org.forpdi.core.company.CompanyCache;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+
+/**
+ * Regiões do cache de segundo nível do Hibernate, configuradas no
+ * ehcache.xml com o prefixo {@link #PREFIX}.
+ *
+ * As entidades de referência (estruturas, níveis, atributos, opções, políticas
+ * e graus de risco, companhias e domínios e ações orçamentárias) são pouco
+ * alteradas e ficam em memória. As alterações feitas pelo Hibernate atualizam
+ * o cache e descartam as consultas guardadas das tabelas alteradas; apenas
+ * alterações feitas fora do Hibernate, direto no banco, exigem que as regiões
+ * sejam esvaziadas com {@link #evictAll(SessionFactory)}.
+ */
+public final class CacheRegions {
+
+	/** Prefixo das regiões, conforme hibernate.cache.region_prefix. */
+	public static final String PREFIX = "hibernate.ehcacheregion";
+
+	/** Estruturas, níveis, atributos e opções de atributos. */
+	public static final String STRUCTURE = "structure";
+	/** Consultas de níveis de uma estrutura e de atributos de um nível. */
+	public static final String STRUCTURE_QUERY = "structure.query";
+	/** Políticas e graus de risco. */
+	public static final String POLICY = "policy";
+	/** Companhias e domínios. */
+	public static final String COMPANY = "company";
+	/** Ações orçamentárias. */
+	public static final String BUDGET = "budget";
+	/** Consultas de ações orçamentárias por nome. */
+	public static final String BUDGET_QUERY = "budget.query";
+
+	private static final List<String> ENTITY_REGIONS = Arrays.asList(STRUCTURE, POLICY, COMPANY, BUDGET);
+	private static final List<String> QUERY_REGIONS = Arrays.asList(STRUCTURE_QUERY, BUDGET_QUERY);
+
+	private CacheRegions() {
+	}
+
+	/**
+	 * Esvazia as regiões do cache de segundo nível e o cache de domínios,
+	 * depois de alterações feitas direto no banco.
+	 *
+	 * @param factory
+	 *            Fábrica de sessões da aplicação.
+	 */
+	public static void evictAll(SessionFactory factory) {
+		Cache cache = factory.getCache();
+		cache.evictEntityRegions();
+		cache.evictCollectionRegions();
+		cache.evictNaturalIdRegions();
+		cache.evictDefaultQueryRegion();
+		cache.evictQueryRegions();
+		CompanyCache.clear();
+	}
+
+	/**
+	 * Estatísticas de acertos e falhas das regiões do cache de segundo nível
+	 * e das regiões de consultas.
+	 *
+	 * @param factory
+	 *            Fábrica de sessões da aplicação.
+	 * @return List<CacheRegionBean> Estatísticas por região, vazia se a
+	 *         coleta de estatísticas estiver desligada
+	 *         (hibernate.statistics no arquivo de propriedades).
+	 */
+	public static List<CacheRegionBean> statistics(SessionFactory factory) {
+		List<CacheRegionBean> regions = new ArrayList<>();
+		Statistics stats = factory.getStatistics();
+		if (!stats.isStatisticsEnabled()) {
+			return regions;
+		}
+		List<String> names = new ArrayList<>(ENTITY_REGIONS);
+		names.addAll(QUERY_REGIONS);
+		for (String name : names) {
+			SecondLevelCacheStatistics region = stats.getSecondLevelCacheStatistics(PREFIX + "." + name);
+			if (region != null) {
+				regions.add(new CacheRegionBean(name, region.getHitCount(), region.getMissCount(),
+						region.getPutCount(), region.getElementCountInMemory()));
+			}
+		}
+		regions.add(new CacheRegionBean("query", stats.getQueryCacheHitCount(), stats.getQueryCacheMissCount(),
+				stats.getQueryCachePutCount(), -1L));
+		return regions;
+	}
+}
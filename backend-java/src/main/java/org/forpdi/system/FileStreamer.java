@@ -0,0 +1,250 @@
+package org.forpdi.system;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Envia arquivos locais na resposta HTTP sem carregá-los na memória. O
+ * conteúdo é copiado em blocos do arquivo para o stream da resposta, via
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)} sobre
+ * {@link Channels#newChannel(OutputStream)}; como o destino não é um socket,
+ * a cópia passa por um buffer e não é zero-copy.
+ *
+ * Suporta requisições condicionais (If-None-Match, If-Modified-Since), que
+ * respondem 304 se o arquivo não mudou, e requisições de um único intervalo
+ * de bytes (Range, If-Range), que respondem 206. O ETag, formado pelo tamanho
+ * e pela data de modificação, é forte: os arquivos são gravados por
+ * {@link #store(InputStream, File)}, que troca o arquivo de uma só vez.
+ */
+public final class FileStreamer {
+
+	private static final String DEFAULT_TYPE = "application/octet-stream";
+
+	private FileStreamer() {
+	}
+
+	/**
+	 * Envia um arquivo na resposta.
+	 *
+	 * @param request
+	 *            Requisição, de onde são lidos os cabeçalhos condicionais e
+	 *            de intervalo.
+	 * @param response
+	 *            Resposta onde o arquivo é escrito.
+	 * @param file
+	 *            Arquivo a ser enviado.
+	 * @param contentType
+	 *            Tipo do conteúdo, ou null para deduzir pelo nome do arquivo.
+	 * @param disposition
+	 *            Valor do cabeçalho Content-Disposition, ou null para omiti-lo.
+	 * @throws IOException
+	 *             Se a leitura do arquivo ou a escrita na resposta falhar.
+	 */
+	public static void serve(HttpServletRequest request, HttpServletResponse response, File file,
+			String contentType, String disposition) throws IOException {
+		final long length = file.length();
+		final long lastModified = file.lastModified() / 1000L * 1000L;
+		final String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+		response.reset();
+		response.setHeader("Accept-Ranges", "bytes");
+		response.setHeader("ETag", etag);
+		response.setDateHeader("Last-Modified", lastModified);
+		response.setHeader("Cache-Control", "private, no-cache");
+
+		if (notModified(request, etag, lastModified)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		response.setContentType(contentType != null ? contentType : contentType(file));
+		if (disposition != null) {
+			response.setHeader("Content-Disposition", disposition);
+		}
+
+		long start = 0;
+		long count = length;
+		String range = request.getHeader("Range");
+		// vários intervalos não são suportados: o arquivo é enviado inteiro
+		if (range != null && range.indexOf(',') < 0 && rangeApplies(request.getHeader("If-Range"),
+				dateHeader(request, "If-Range"), etag, lastModified)) {
+			long[] bounds = parseRange(range, length);
+			if (bounds == null) {
+				response.setHeader("Content-Range", "bytes */" + length);
+				response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+			start = bounds[0];
+			count = bounds[1] - bounds[0] + 1;
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setHeader("Content-Range", "bytes " + bounds[0] + "-" + bounds[1] + "/" + length);
+		}
+		response.setHeader("Content-Length", String.valueOf(count));
+
+		if ("HEAD".equalsIgnoreCase(request.getMethod())) {
+			return;
+		}
+		try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			OutputStream out = response.getOutputStream();
+			WritableByteChannel channel = Channels.newChannel(out);
+			long position = start;
+			long end = start + count;
+			while (position < end) {
+				long sent = in.transferTo(position, end - position, channel);
+				if (sent <= 0) {
+					break;
+				}
+				position += sent;
+			}
+			out.flush();
+		}
+	}
+
+	/**
+	 * Grava um arquivo enviado pelo usuário sem carregá-lo na memória. O
+	 * conteúdo é escrito em um arquivo temporário no mesmo diretório e movido
+	 * para o destino ao final, para que downloads simultâneos não leiam um
+	 * arquivo incompleto.
+	 *
+	 * @param in
+	 *            Conteúdo do arquivo.
+	 * @param target
+	 *            Arquivo de destino.
+	 * @throws IOException
+	 *             Se a gravação falhar.
+	 */
+	public static void store(InputStream in, File target) throws IOException {
+		Path dest = target.toPath();
+		Path dir = dest.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path tmp = Files.createTempFile(dir, ".upload-", ".tmp");
+		try {
+			Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+			try {
+				Files.move(tmp, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException ex) {
+				Files.move(tmp, dest, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static String contentType(File file) {
+		String type = URLConnection.guessContentTypeFromName(file.getName());
+		if (type == null) {
+			try {
+				type = Files.probeContentType(file.toPath());
+			} catch (IOException ex) {
+				type = null;
+			}
+		}
+		return type == null ? DEFAULT_TYPE : type;
+	}
+
+	private static boolean notModified(HttpServletRequest request, String etag, long lastModified) {
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			return matches(ifNoneMatch, etag);
+		}
+		long ifModifiedSince = dateHeader(request, "If-Modified-Since");
+		return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+	}
+
+	/**
+	 * Se o Range deve ser atendido, conforme o If-Range da requisição. A
+	 * comparação é forte: um ETag fraco nunca satisfaz o If-Range, e uma data
+	 * só o satisfaz se for exatamente a data de modificação do arquivo.
+	 *
+	 * @param ifRange
+	 *            Valor do cabeçalho If-Range, ou null.
+	 * @param ifRangeDate
+	 *            Valor do cabeçalho If-Range interpretado como data, ou -1.
+	 * @param etag
+	 *            ETag do arquivo.
+	 * @param lastModified
+	 *            Data de modificação do arquivo, em segundos inteiros.
+	 */
+	static boolean rangeApplies(String ifRange, long ifRangeDate, String etag, long lastModified) {
+		if (ifRange == null) {
+			return true;
+		}
+		ifRange = ifRange.trim();
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			return !ifRange.startsWith("W/") && !etag.startsWith("W/") && ifRange.equals(etag);
+		}
+		return ifRangeDate >= 0 && lastModified == ifRangeDate;
+	}
+
+	/** Comparação fraca do If-None-Match, que ignora o prefixo W/. */
+	static boolean matches(String header, String etag) {
+		for (String tag : header.split(",")) {
+			tag = tag.trim();
+			if ("*".equals(tag) || tag.replaceFirst("^W/", "").equals(etag.replaceFirst("^W/", ""))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static long dateHeader(HttpServletRequest request, String name) {
+		try {
+			return request.getDateHeader(name);
+		} catch (IllegalArgumentException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Interpreta um cabeçalho Range de um único intervalo.
+	 *
+	 * @return Primeiro e último byte do intervalo, ou null se ele não puder
+	 *         ser atendido.
+	 */
+	static long[] parseRange(String header, long length) {
+		header = header.trim();
+		if (!header.startsWith("bytes=") || length == 0) {
+			return null;
+		}
+		String spec = header.substring(6).trim();
+		int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return null;
+		}
+		try {
+			String first = spec.substring(0, dash).trim();
+			String last = spec.substring(dash + 1).trim();
+			long start, end;
+			if (first.isEmpty()) {
+				long suffix = Long.parseLong(last);
+				if (suffix <= 0) {
+					return null;
+				}
+				start = Math.max(0, length - suffix);
+				end = length - 1;
+			} else {
+				start = Long.parseLong(first);
+				end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+			}
+			if (start < 0 || start >= length || end < start) {
+				return null;
+			}
+			return new long[] { start, end };
+		} catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+}
@@ -4,9 +4,11 @@ import java.io.IOException;
 import java.util.Map;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
 
 import org.forpdi.core.abstractions.AbstractController;
 import org.forpdi.core.company.CompanyBS;
+import org.forpdi.core.company.CompanyCache;
 import org.forpdi.core.company.CompanyDomain;
 import org.forpdi.core.company.CompanyThemeFactory;
 import org.forpdi.core.properties.CoreMessages;
@@ -39,8 +41,30 @@ public class IndexController extends AbstractController {
 	
 	@Get("/environment")
 	public void envInfo() {
-		StringBuilder body = new StringBuilder();
 		CompanyDomain domain = this.companyBS.currentDomain();
+		CompanyCache.Environment environment = CompanyCache.environment(domain, () -> this.buildEnvInfo(domain));
+		try {
+			this.response.setCharacterEncoding("UTF-8");
+			this.response.addHeader("Content-Type", "text/javascript"); 
+			this.response.setHeader("Cache-Control", "no-cache");
+			this.response.setHeader("ETag", environment.getEtag());
+			if (environment.getEtag().equals(this.request.getHeader("If-None-Match"))) {
+				this.response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			} else {
+				this.response.getWriter().print(environment.getBody());
+			}
+		} catch (IOException ex) {
+			LOGGER.error("Unexpected runtime error", ex);
+		}
+		this.result.nothing();
+	}
+
+	/**
+	 * Monta o script com as configurações, o tema e as mensagens de um
+	 * domínio. O resultado fica em {@link CompanyCache}.
+	 */
+	private String buildEnvInfo(CompanyDomain domain) {
+		StringBuilder body = new StringBuilder();
 		Gson gson = this.gsonBuilder.create();
 		CoreMessages msg = new CoreMessages(CoreMessages.DEFAULT_LOCALE);
 		
@@ -62,13 +86,6 @@ public class IndexController extends AbstractController {
 		}
 		body.append(",'messages':").append(msg.getJSONMessages());
 		body.append("};");
-		try {
-			this.response.setCharacterEncoding("UTF-8");
-			this.response.addHeader("Content-Type", "text/javascript"); 
-			this.response.getWriter().print(body.toString());
-		} catch (IOException ex) {
-			LOGGER.error("Unexpected runtime error", ex);
-		}
-		this.result.nothing();
+		return body.toString();
 	}
 }
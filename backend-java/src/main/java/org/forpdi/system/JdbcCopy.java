@@ -0,0 +1,187 @@
+package org.forpdi.system;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cópia de linhas em lotes JDBC, usada pelas duplicações feitas em segundo
+ * plano.
+ *
+ * As linhas de origem são lidas em uma única consulta e as cópias inseridas
+ * em lotes. A correspondência entre os ids antigos e novos é gravada em uma
+ * tabela temporária (old_id, new_id), para que as cópias dos dependentes
+ * sejam feitas com um único INSERT ... SELECT sobre ela. As tabelas
+ * temporárias são removidas em {@link #close()}.
+ */
+public final class JdbcCopy implements AutoCloseable {
+
+	/** Quantidade de linhas inseridas por lote. */
+	public static final int BATCH_SIZE = 500;
+
+	private final Connection connection;
+	private final int batchSize;
+	private final Set<String> mappings = new LinkedHashSet<>();
+
+	/**
+	 * @param connection
+	 *            Conexão, na transação da duplicação.
+	 */
+	public JdbcCopy(Connection connection) {
+		this(connection, BATCH_SIZE);
+	}
+
+	JdbcCopy(Connection connection, int batchSize) {
+		this.connection = connection;
+		this.batchSize = batchSize;
+	}
+
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Lê as linhas retornadas por uma consulta.
+	 *
+	 * @return List<Object[]> Valores de todas as colunas de cada linha.
+	 */
+	public List<Object[]> select(String sql, Object... params) throws SQLException {
+		List<Object[]> rows = new ArrayList<>();
+		try (PreparedStatement stmt = this.connection.prepareStatement(sql)) {
+			bind(stmt, params, 0);
+			try (ResultSet rs = stmt.executeQuery()) {
+				int columns = rs.getMetaData().getColumnCount();
+				while (rs.next()) {
+					Object[] row = new Object[columns];
+					for (int c = 1; c <= columns; c++) {
+						row[c - 1] = rs.getObject(c);
+					}
+					rows.add(row);
+				}
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Copia as linhas retornadas por uma consulta. A primeira coluna da
+	 * consulta é o id da linha de origem, e as demais são os parâmetros do
+	 * INSERT, na mesma ordem.
+	 *
+	 * @see #copy(String, List, String)
+	 */
+	public Map<Long, Long> copy(String mapping, String select, String insert, Object... params)
+			throws SQLException {
+		return this.copy(mapping, this.select(select, params), insert);
+	}
+
+	/**
+	 * Insere as cópias das linhas em lotes e acrescenta a correspondência
+	 * entre os ids à tabela temporária informada, criada na primeira cópia.
+	 *
+	 * @param mapping
+	 *            Nome da tabela temporária de correspondência.
+	 * @param rows
+	 *            Linhas de origem: o id seguido dos parâmetros do INSERT.
+	 * @param insert
+	 *            INSERT de uma cópia, com a chave gerada pelo banco.
+	 * @return Map<Long, Long> Ids das cópias, indexados pelos ids de origem.
+	 */
+	public Map<Long, Long> copy(String mapping, List<Object[]> rows, String insert) throws SQLException {
+		Map<Long, Long> copies = new HashMap<>(Math.max(16, 2 * rows.size()));
+		try (PreparedStatement stmt = this.connection.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS)) {
+			for (int from = 0; from < rows.size(); from += this.batchSize) {
+				int to = Math.min(from + this.batchSize, rows.size());
+				for (Object[] row : rows.subList(from, to)) {
+					bind(stmt, row, 1);
+					stmt.addBatch();
+				}
+				stmt.executeBatch();
+				try (ResultSet keys = stmt.getGeneratedKeys()) {
+					for (int i = from; i < to && keys.next(); i++) {
+						copies.put(((Number) rows.get(i)[0]).longValue(), keys.getLong(1));
+					}
+				}
+			}
+		}
+		if (copies.size() != rows.size()) {
+			throw new SQLException("Missing generated keys copying into " + mapping + ": " + copies.size()
+					+ " of " + rows.size());
+		}
+		this.storeMapping(mapping, copies);
+		return copies;
+	}
+
+	/**
+	 * Insere linhas em lotes, sem guardar as chaves geradas.
+	 *
+	 * @param rows
+	 *            Parâmetros do INSERT de cada linha.
+	 */
+	public void insert(String insert, List<Object[]> rows) throws SQLException {
+		try (PreparedStatement stmt = this.connection.prepareStatement(insert)) {
+			for (int from = 0; from < rows.size(); from += this.batchSize) {
+				for (Object[] row : rows.subList(from, Math.min(from + this.batchSize, rows.size()))) {
+					bind(stmt, row, 0);
+					stmt.addBatch();
+				}
+				stmt.executeBatch();
+			}
+		}
+	}
+
+	/**
+	 * Executa uma alteração, em geral um INSERT ... SELECT sobre as tabelas
+	 * de correspondência.
+	 *
+	 * @return int Número de linhas alteradas.
+	 */
+	public int update(String sql, Object... params) throws SQLException {
+		try (PreparedStatement stmt = this.connection.prepareStatement(sql)) {
+			bind(stmt, params, 0);
+			return stmt.executeUpdate();
+		}
+	}
+
+	private void storeMapping(String mapping, Map<Long, Long> copies) throws SQLException {
+		if (this.mappings.add(mapping)) {
+			try (Statement stmt = this.connection.createStatement()) {
+				stmt.executeUpdate("DROP TEMPORARY TABLE IF EXISTS " + mapping);
+				stmt.executeUpdate("CREATE TEMPORARY TABLE " + mapping
+						+ " (old_id BIGINT NOT NULL PRIMARY KEY, new_id BIGINT NOT NULL, KEY (new_id))");
+			}
+		}
+		List<Object[]> rows = new ArrayList<>(copies.size());
+		for (Map.Entry<Long, Long> entry : copies.entrySet()) {
+			rows.add(new Object[] { entry.getKey(), entry.getValue() });
+		}
+		this.insert("INSERT INTO " + mapping + " (old_id, new_id) VALUES (?, ?)", rows);
+	}
+
+	/**
+	 * Remove as tabelas temporárias de correspondência.
+	 */
+	@Override
+	public void close() throws SQLException {
+		try (Statement stmt = this.connection.createStatement()) {
+			for (String mapping : this.mappings) {
+				stmt.executeUpdate("DROP TEMPORARY TABLE IF EXISTS " + mapping);
+			}
+		}
+		this.mappings.clear();
+	}
+
+	private static void bind(PreparedStatement stmt, Object[] values, int from) throws SQLException {
+		for (int i = from; i < values.length; i++) {
+			stmt.setObject(i - from + 1, values[i]);
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package org.forpdi.system;
 
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
@@ -10,6 +11,7 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.UnknownHostException;
@@ -71,6 +73,7 @@ import org.forpdi.planning.plan.PlanBS;
 import org.forpdi.planning.structure.StructureBS;
 import org.forpdi.planning.structure.StructureHelper;
 import org.forpdi.planning.structure.StructureLevelInstance;
+import org.forpdi.system.reports.PlanReportData;
 import org.forrisco.core.item.FieldItem;
 import org.forrisco.core.item.FieldSubItem;
 import org.forrisco.core.item.Item;
@@ -123,10 +126,12 @@ import com.itextpdf.text.pdf.PdfPTable;
 import com.itextpdf.text.pdf.PdfPageEventHelper;
 import com.itextpdf.text.pdf.PdfReader;
 import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfTemplate;
 import com.itextpdf.text.pdf.PdfWriter;
 import com.itextpdf.text.pdf.codec.Base64;
 import com.itextpdf.text.pdf.draw.DottedLineSeparator;
 
+import br.com.caelum.vraptor.boilerplate.HibernateDAO;
 import br.com.caelum.vraptor.boilerplate.bean.PaginatedList;
 import br.com.caelum.vraptor.boilerplate.util.GeneralUtils;
 import org.jboss.logging.Logger;
@@ -167,11 +172,24 @@ public class PDFgenerate {
 	private ProcessBS processBS;
 	@Inject
 	private PlanRiskItemBS planRiskItemBS;
+	@Inject
+	private HibernateDAO dao;
 	
 	
 
 	protected final Logger LOGGER = Logger.getLogger(this.getClass());
 
+	// Posição do número de página: canto inferior direito, com as margens
+	// padrão de um documento A4.
+	private static final float PAGE_NUMBER_RIGHT = PageSize.A4.getRight() - 36;
+	private static final float PAGE_NUMBER_BOTTOM = 36;
+	private static final float PAGE_NUMBER_WIDTH = 60;
+	private static final float PAGE_NUMBER_HEIGHT = 20;
+
+	// Atributos dos indicadores exibidos nas tabelas do plano de metas.
+	private static final Long CALCULATION_ATTRIBUTE_ID = 14L;
+	private static final Long RESPONSIBLE_ATTRIBUTE_ID = 7L;
+
 
 	
 /**
@@ -183,7 +201,8 @@ public class PDFgenerate {
  *            Título do documento.
  * @param lista
  *            Lista de seções a serem exportadas.
- * @return InputStream Fluxo de entrada do arquivo PDF.
+ * @return InputStream Fluxo de entrada do arquivo PDF, que é removido ao
+ *         fechar o fluxo.
  * @throws IOException
  * @throws DocumentException
  * @throws SQLException
@@ -221,15 +240,42 @@ public InputStream exportDocument(String author, String title, String lista)
 
 	}
 
+	/*
+	 * Numera as páginas do conteúdo enquanto são escritas. O número final
+	 * só é conhecido no fim, quando se sabe quantas páginas têm as seções
+	 * pré-textuais e o sumário, por isso cada página recebe um template que
+	 * é preenchido antes de fechar o documento.
+	 */
+	class PageNumberEvent extends PdfPageEventHelper {
+
+		protected boolean numbering = false;
+		protected List<SimpleEntry<PdfTemplate, Integer>> pages = new ArrayList<>();
+
+		@Override
+		public void onEndPage(PdfWriter writer, com.itextpdf.text.Document document) {
+			if (numbering) {
+				PdfTemplate template = writer.getDirectContent().createTemplate(PAGE_NUMBER_WIDTH, PAGE_NUMBER_HEIGHT);
+				writer.getDirectContent().addTemplate(template, PAGE_NUMBER_RIGHT - PAGE_NUMBER_WIDTH,
+						PAGE_NUMBER_BOTTOM);
+				pages.add(new SimpleEntry<PdfTemplate, Integer>(template, writer.getPageNumber()));
+			}
+		}
+
+		public void fill(Font font, int offset) {
+			for (SimpleEntry<PdfTemplate, Integer> page : pages) {
+				ColumnText.showTextAligned(page.getKey(), Element.ALIGN_RIGHT,
+						new Phrase(String.valueOf(page.getValue() + offset), font), PAGE_NUMBER_WIDTH, 0, 0);
+			}
+		}
+
+	}
+
 	com.itextpdf.text.Document document = new com.itextpdf.text.Document();
-	com.itextpdf.text.Document coverDocument = new com.itextpdf.text.Document();
-	com.itextpdf.text.Document preTextDocument = new com.itextpdf.text.Document();
-	com.itextpdf.text.Document summaryDocument = new com.itextpdf.text.Document();
 
 	File outputDir;
 	final String storagePath = SystemConfigs.getConfig("store.pdfs");
 	if (storagePath == null || storagePath.equals("") || storagePath.equals("${store.pdfs}")) {
-		outputDir = File.createTempFile("fpdi-document-export", ".pdf").getParentFile();
+		outputDir = null;
 	} else {
 		outputDir = new File(storagePath);
 		if (!outputDir.exists()) {
@@ -241,23 +287,16 @@ public InputStream exportDocument(String author, String title, String lista)
 		}
 	}
 
-	final String prefix = String.format("fpdi-doc-export-%d", System.currentTimeMillis());
-
-	File coverPdfFile = new File(outputDir, String.format("%s-cover.pdf", prefix));
-	File preTextPdfFile = new File(outputDir, String.format("%s-pre-text.pdf", prefix));
-	File summaryPdfFile = new File(outputDir, String.format("%s-summary.pdf", prefix));
-	File finalSummaryPdfFile = new File(outputDir, String.format("%s-final-summary.pdf", prefix));
-	File contentFile = new File(outputDir, String.format("%s-content.pdf", prefix));
-	File destinationFile = new File(outputDir, String.format("%s-mounted.pdf", prefix));
-	File finalPdfFile = new File(outputDir, String.format("%s-final.pdf", prefix));
-
-	PdfWriter writer = PdfWriter.getInstance(document, new FileOutputStream(contentFile));
-	PdfWriter coverWriter = PdfWriter.getInstance(coverDocument, new FileOutputStream(coverPdfFile));
-	PdfWriter.getInstance(preTextDocument, new FileOutputStream(preTextPdfFile));
-	PdfWriter.getInstance(summaryDocument, new FileOutputStream(summaryPdfFile));
+	// Único arquivo do documento: capa, conteúdo, pré-textuais e sumário
+	// são escritos nele e reordenados no final.
+	final File finalPdfFile = File.createTempFile("fpdi-doc-export-", ".pdf", outputDir);
+	PdfWriter writer = PdfWriter.getInstance(document, new BufferedOutputStream(new FileOutputStream(finalPdfFile)));
+	writer.setLinearPageMode();
 
 	TOCEvent event = new TOCEvent();
 	writer.setPageEvent(event);
+	PageNumberEvent numberEvent = new PageNumberEvent();
+	writer.setPageEvent(numberEvent);
 
 	// DEFINIÇÕES DE FONTE, MARGENS, ESPAÇAMENTO E CORES
 	Font texto = FontFactory.getFont(FontFactory.TIMES, 12.0f);
@@ -274,11 +313,11 @@ public InputStream exportDocument(String author, String title, String lista)
 	// 1,5 entrelinhas
 	float interLineSpacing = texto.getCalculatedLeading(1.5f);
 	// Formato A4 do documento
-	coverDocument.setPageSize(PageSize.A4);
+	document.setPageSize(PageSize.A4);
 	// Margens Superior e esquerda: 3 cm Inferior e direita: 2 cm
-	coverDocument.setMargins(85.0394f, 56.6929f, 85.0394f, 56.6929f);
+	document.setMargins(85.0394f, 56.6929f, 85.0394f, 56.6929f);
 
-	coverDocument.open();
+	document.open();
 
 	// CABEÇALHO
 	String imageUrl = domain.getCompany().getLogo();
@@ -286,11 +325,11 @@ public InputStream exportDocument(String author, String title, String lista)
 	if (!imageUrl.trim().isEmpty()) {
 		Image image = Image.getInstance(new URL(imageUrl));
 		// image.scaleAbsolute(150f, 150f);
-		float scaler = ((coverDocument.getPageSize().getWidth() - coverDocument.leftMargin()
-				- coverDocument.rightMargin()) / image.getWidth()) * 100;
+		float scaler = ((document.getPageSize().getWidth() - document.leftMargin()
+				- document.rightMargin()) / image.getWidth()) * 100;
 		image.scalePercent(scaler * 0.4f);
 		image.setAlignment(Element.ALIGN_CENTER);
-		coverDocument.add(image);
+		document.add(image);
 	}
 
 	Paragraph TITULO = new Paragraph(title, tituloCapa);
@@ -300,25 +339,25 @@ public InputStream exportDocument(String author, String title, String lista)
 
 	// AUTHOR.setAlignment(Element.ALIGN_CENTER);
 
-	coverDocument.add(TITULO);
+	document.add(TITULO);
 	// document.add(AUTHOR);
 	// document.add(YEAR);
 	Phrase localizationPhrase = new Phrase(this.domain.getCompany().getLocalization(), titulo);
 	// Phrase footer = new Phrase(String.valueOf(cal.get(Calendar.YEAR)),
 	// titulo);
-	PdfContentByte cb = coverWriter.getDirectContent();
+	PdfContentByte cb = writer.getDirectContent();
 	ColumnText.showTextAligned(cb, Element.ALIGN_CENTER, localizationPhrase,
-			(coverDocument.right() - coverDocument.left()) / 2 + coverDocument.leftMargin(),
-			coverDocument.bottom() + 30, 0);
-	coverDocument.newPage();
+			(document.right() - document.left()) / 2 + document.leftMargin(),
+			document.bottom() + 30, 0);
+	document.newPage();
 
 	// FOLHA DE ROSTO
 	Paragraph COMPANY = new Paragraph(domain.getCompany().getName(), tituloCapa);
 	COMPANY.setAlignment(Element.ALIGN_CENTER);
 	COMPANY.setSpacingBefore(paragraphSpacing);
-	coverDocument.add(COMPANY);
+	document.add(COMPANY);
 
-	coverDocument.add(TITULO);
+	document.add(TITULO);
 
 	Calendar cal = Calendar.getInstance();
 
@@ -327,29 +366,22 @@ public InputStream exportDocument(String author, String title, String lista)
 	// footerRosto.add(periodPhrase);
 	// footerRosto.add(footer);
 	ColumnText.showTextAligned(cb, Element.ALIGN_CENTER, periodPhrase,
-			(coverDocument.right() - coverDocument.left()) / 2 + coverDocument.leftMargin(),
-			coverDocument.bottom() + 15, 0);
+			(document.right() - document.left()) / 2 + document.leftMargin(),
+			document.bottom() + 15, 0);
 	ColumnText.showTextAligned(cb, Element.ALIGN_CENTER, localizationPhrase,
-			(coverDocument.right() - coverDocument.left()) / 2 + coverDocument.leftMargin(),
-			coverDocument.bottom() + 30, 0);
-	coverDocument.newPage();
-	coverDocument.close();
+			(document.right() - document.left()) / 2 + document.leftMargin(),
+			document.bottom() + 30, 0);
+	document.newPage();
+	final int coverPages = writer.getPageNumber() - 1;
 
 	String[] sections = lista != null ? lista.split(",") : new String[0];
 	int secIndex = 0, subSecIndex = 0;
 
 	boolean lastAttWasPlan = false;
 
-	document.setPageSize(PageSize.A4);
-	// Margens Superior e esquerda: 3 cm Inferior e direita: 2 cm
-	document.setMargins(85.0394f, 56.6929f, 85.0394f, 56.6929f);
-	document.open();
-	document.add(new Chunk(""));
-	
-	preTextDocument.setPageSize(PageSize.A4);
-	// Margens Superior e esquerda: 3 cm Inferior e direita: 2 cm
-	preTextDocument.setMargins(85.0394f, 56.6929f, 85.0394f, 56.6929f);
-	preTextDocument.open();
+	// As seções pré-textuais são escritas depois do conteúdo
+	List<List<Element>> preTextPages = new ArrayList<>();
+	numberEvent.numbering = true;
 
 	boolean havePreText = false;
 	boolean haveContent = false;
@@ -373,15 +405,13 @@ public InputStream exportDocument(String author, String title, String lista)
 						// String attName = a.getName();
 						// if (!attName.equals(secName)) {
 
-						Chunk c = new Chunk(secName, titulo);
-						c.setGenericTag(secName);
-
-						Paragraph attTitle = new Paragraph(c);
+						List<Element> preTextPage = new ArrayList<>();
+						Paragraph attTitle = new Paragraph(new Chunk(secName, titulo));
 						attTitle.setAlignment(Element.ALIGN_CENTER);
 						attTitle.setLeading(interLineSpacing);
 						attTitle.setSpacingAfter(paragraphSpacing);
 						attTitle.setSpacingBefore(paragraphSpacing);
-						preTextDocument.add(attTitle);
+						preTextPage.add(attTitle);
 						// }
 						PdfPTable table;
 						if (tabStructList
@@ -397,8 +427,8 @@ public InputStream exportDocument(String author, String title, String lista)
 							table = returnPdfPTable(tabStructList, tabInstList, false, false);
 						else
 							table = returnPdfPTable(tabStructList, tabInstList, true, true);
-						preTextDocument.add(table);
-						preTextDocument.newPage();
+						preTextPage.add(table);
+						preTextPages.add(preTextPage);
 						lastAttWasPlan = false;
 					}
 				}
@@ -518,15 +548,7 @@ public InputStream exportDocument(String author, String title, String lista)
 						}
 						str += value + "</p></body></html>";
 
-						File htmlFile = new File(outputDir, String.format("%s-1.html", prefix));
-						FileWriter fw = new FileWriter(htmlFile, true);
-						BufferedWriter conexao = new BufferedWriter(fw);
-						conexao.write(str);
-						conexao.newLine();
-						conexao.close();
-						// LOGGER.info(htmlFile.getPath());
-
-						List<Element> p = HTMLWorker.parseToList(new FileReader(htmlFile.getPath()), styles);
+						List<Element> p = HTMLWorker.parseToList(new StringReader(str), styles);
 						for (int k = 0; k < p.size(); ++k) {
 							if (p.get(k) instanceof Paragraph) {
 								Paragraph att = (Paragraph) p.get(k);
@@ -556,7 +578,6 @@ public InputStream exportDocument(String author, String title, String lista)
 							}
 						}
 						lastAttWasPlan = false;
-						htmlFile.delete();
 					}
 				} else if (a.getType().equals(TableField.class.getCanonicalName())) {
 
@@ -757,15 +778,7 @@ public InputStream exportDocument(String author, String title, String lista)
 								}
 								str += value + "</p></body></html>";
 
-								File htmlFile = new File(outputDir, String.format("%s-2.html", prefix));
-								FileWriter fw = new FileWriter(htmlFile, true);
-								BufferedWriter conexao = new BufferedWriter(fw);
-								conexao.write(str);
-								conexao.newLine();
-								conexao.close();
-
-								List<Element> p = HTMLWorker.parseToList(new FileReader(htmlFile.getPath()),
-										styles);
+								List<Element> p = HTMLWorker.parseToList(new StringReader(str), styles);
 
 								for (int k = 0; k < p.size(); ++k) {
 									if (p.get(k) instanceof Paragraph) {
@@ -797,7 +810,6 @@ public InputStream exportDocument(String author, String title, String lista)
 									}
 								}
 								lastAttWasPlan = false;
-								htmlFile.delete();
 							}
 						} else if (a.getType().equals(TableField.class.getCanonicalName())) {
 
@@ -925,127 +937,109 @@ public InputStream exportDocument(String author, String title, String lista)
 			}
 		}
 	}
-	if (havePreText)
-		preTextDocument.close();
+	// Fim do conteúdo: as próximas páginas não são numeradas
+	document.setPageSize(PageSize.A4);
+	document.newPage();
+	numberEvent.numbering = false;
+	final int contentPages = writer.getPageNumber() - 1 - coverPages;
 
-	document.close();
-	
-	summaryDocument.setPageSize(PageSize.A4);
-	// Margens Superior e esquerda: 3 cm Inferior e direita: 2 cm
-	summaryDocument.setMargins(85.0394f, 56.6929f, 85.0394f, 56.6929f);
-	summaryDocument.open();
+	// SEÇÕES PRÉ TEXTUAIS
+	int firstPage = writer.getPageNumber();
+	if (havePreText) {
+		for (List<Element> preTextPage : preTextPages) {
+			for (Element element : preTextPage) {
+				document.add(element);
+			}
+			document.newPage();
+		}
+	}
+	final int preTextPagesCount = writer.getPageNumber() - firstPage;
 
-	Paragraph summaryTitle = new Paragraph("Sumário", titulo);
-	summaryTitle.setLeading(interLineSpacing);
-	summaryTitle.setSpacingAfter(paragraphSpacing);
-	summaryTitle.setSpacingBefore(paragraphSpacing);
-	summaryDocument.add(summaryTitle);
+	// SUMÁRIO
+	int summaryPages = 0;
+	if (haveContent) {
+		Paragraph summaryTitle = new Paragraph("Sumário", titulo);
+		summaryTitle.setLeading(interLineSpacing);
+		summaryTitle.setSpacingAfter(paragraphSpacing);
+		summaryTitle.setSpacingBefore(paragraphSpacing);
+		List<SimpleEntry<String, SimpleEntry<String, Integer>>> entries = event.getTOC();
 
-	Chunk dottedLine = new Chunk(new DottedLineSeparator());
-	List<SimpleEntry<String, SimpleEntry<String, Integer>>> entries = event.getTOC();
-	Paragraph p;
-	int summaryCountPages = 0;
-	for (SimpleEntry<String, SimpleEntry<String, Integer>> entry : entries) {
-		// LOGGER.info(entry.getKey());
-		Chunk chunk = new Chunk(entry.getKey(), titulo);
-		SimpleEntry<String, Integer> value = entry.getValue();
-		chunk.setAction(PdfAction.gotoLocalPage(value.getKey(), false));
-		p = new Paragraph(chunk);
-		p.add(dottedLine);
-		chunk = new Chunk(String.valueOf(value.getValue()), titulo);
-		chunk.setAction(PdfAction.gotoLocalPage(value.getKey(), false));
-		p.add(chunk);
-		summaryDocument.add(p);
-	}
-	summaryDocument.close();
-	PdfReader summaryAux = new PdfReader(summaryPdfFile.getPath());
-	PdfReader cover = new PdfReader(coverPdfFile.getPath());
-	summaryCountPages = summaryAux.getNumberOfPages() + cover.getNumberOfPages();
-	PdfReader preText;
-	if (havePreText) {
-		preText = new PdfReader(preTextPdfFile.getPath());
-		summaryCountPages += preText.getNumberOfPages();
+		// O sumário é montado antes em memória só para contar suas páginas
+		com.itextpdf.text.Document summaryDocument = new com.itextpdf.text.Document();
+		PdfWriter summaryWriter = PdfWriter.getInstance(summaryDocument, new ByteArrayOutputStream());
+		summaryDocument.setPageSize(PageSize.A4);
+		// Margens Superior e esquerda: 3 cm Inferior e direita: 2 cm
+		summaryDocument.setMargins(85.0394f, 56.6929f, 85.0394f, 56.6929f);
+		summaryDocument.open();
+		this.addSummary(summaryDocument, summaryTitle, entries, titulo, 0);
+		summaryDocument.newPage();
+		int summaryCountPages = summaryWriter.getPageNumber() - 1;
+		summaryDocument.close();
+
+		// Páginas do conteúdo no documento final: depois da capa, das
+		// seções pré-textuais e do sumário.
+		firstPage = writer.getPageNumber();
+		this.addSummary(document, summaryTitle, entries, titulo,
+				preTextPagesCount + summaryCountPages);
+		document.newPage();
+		summaryPages = writer.getPageNumber() - firstPage;
 	}
 
-	com.itextpdf.text.Document finalSummaryDocument = new com.itextpdf.text.Document();
-	PdfWriter.getInstance(finalSummaryDocument, new FileOutputStream(finalSummaryPdfFile));
-	// Formato A4 do documento
-	finalSummaryDocument.setPageSize(PageSize.A4);
-	// Margens Superior e esquerda: 3 cm Inferior e direita: 2 cm
-	finalSummaryDocument.setMargins(85.0394f, 56.6929f, 85.0394f, 56.6929f);
-	finalSummaryDocument.open();
+	numberEvent.fill(FontFactory.getFont(FontFactory.TIMES, 10.0f), preTextPagesCount + summaryPages);
+
+	// Ordem final: capa, seções pré-textuais, sumário e conteúdo
+	int total = writer.reorderPages(null);
+	int[] order = new int[total];
+	int k = 0;
+	for (int i = 1; i <= coverPages; i++)
+		order[k++] = i;
+	for (int i = 1; i <= preTextPagesCount + summaryPages; i++)
+		order[k++] = coverPages + contentPages + i;
+	for (int i = 1; i <= contentPages; i++)
+		order[k++] = coverPages + i;
+	writer.reorderPages(order);
+	document.close();
 
-	finalSummaryDocument.add(summaryTitle);
+	return new FileInputStream(finalPdfFile) {
+		@Override
+		public void close() throws IOException {
+			super.close();
+			finalPdfFile.delete();
+		}
+	};
+}
+
+/**
+ * Adiciona as entradas do sumário ao documento.
+ *
+ * @param document
+ *            Documento onde o sumário é escrito.
+ * @param summaryTitle
+ *            Título do sumário.
+ * @param entries
+ *            Títulos das seções e página onde foram escritos.
+ * @param font
+ *            Fonte das entradas.
+ * @param offset
+ *            Deslocamento somado às páginas das entradas.
+ * @throws DocumentException
+ */
+private void addSummary(com.itextpdf.text.Document document, Paragraph summaryTitle,
+		List<SimpleEntry<String, SimpleEntry<String, Integer>>> entries, Font font, int offset)
+		throws DocumentException {
+	document.add(summaryTitle);
+	Chunk dottedLine = new Chunk(new DottedLineSeparator());
 	for (SimpleEntry<String, SimpleEntry<String, Integer>> entry : entries) {
-		// LOGGER.info(entry.getKey());
-		Chunk chunk = new Chunk(entry.getKey(), titulo);
+		Chunk chunk = new Chunk(entry.getKey(), font);
 		SimpleEntry<String, Integer> value = entry.getValue();
 		chunk.setAction(PdfAction.gotoLocalPage(value.getKey(), false));
-		p = new Paragraph(chunk);
+		Paragraph p = new Paragraph(chunk);
 		p.add(dottedLine);
-		chunk = new Chunk(String.valueOf(value.getValue() + summaryCountPages), titulo);
+		chunk = new Chunk(String.valueOf(value.getValue() + offset), font);
 		chunk.setAction(PdfAction.gotoLocalPage(value.getKey(), false));
 		p.add(chunk);
-		finalSummaryDocument.add(p);
-	}
-	finalSummaryDocument.close();
-
-	com.itextpdf.text.Document newDocument = new com.itextpdf.text.Document();
-
-	PdfImportedPage page;
-	int n;
-	PdfCopy copy = new PdfCopy(newDocument, new FileOutputStream(destinationFile.getPath()));
-	newDocument.open();
-
-	PdfReader summary = new PdfReader(finalSummaryPdfFile.getPath());
-	PdfReader content;
-	// int unnumberedPgsCount = summaryCountPages;
-	// CAPA
-	n = cover.getNumberOfPages();
-	// unnumberedPgsCount += n;
-	for (int i = 0; i < n;) {
-		page = copy.getImportedPage(cover, ++i);
-		copy.addPage(page);
-	}
-	if (havePreText) {
-		preText = new PdfReader(preTextPdfFile.getPath());
-		// SEÇÕES PRE TEXTUAIS
-		n = preText.getNumberOfPages();
-		// unnumberedPgsCount += n;
-		for (int i = 0; i < n;) {
-			page = copy.getImportedPage(preText, ++i);
-			copy.addPage(page);
-		}
-	}
-	if (haveContent) {
-		// SUMÁRIO
-		n = summary.getNumberOfPages();
-		for (int i = 0; i < n;) {
-			page = copy.getImportedPage(summary, ++i);
-			copy.addPage(page);
-		}
-		content = new PdfReader(contentFile.getPath());
-		// CONTEÚDO
-		n = content.getNumberOfPages();
-		for (int i = 0; i < n;) {
-			page = copy.getImportedPage(content, ++i);
-			copy.addPage(page);
-		}
+		document.add(p);
 	}
-
-	newDocument.close();
-
-	manipulatePdf(destinationFile.getPath(), finalPdfFile.getPath(), newDocument, summaryCountPages);
-	InputStream inpStr = new FileInputStream(finalPdfFile);
-	
-	for (File f : outputDir.listFiles()) {
-	    if (f.getName().startsWith("fpdi-") 
-	    		&& (f.getName().endsWith(".pdf") || f.getName().endsWith(".html"))) {
-	        f.delete();
-	    }
-	}	
-	
-	return inpStr;
 }
 
 /**
@@ -1073,20 +1067,14 @@ public List<PdfPTable> generatePDFplanTable(Plan plan) {
 	float paragraphSpacing = 22.6772f;
 	PdfPTable table = new PdfPTable(5);
 	// Plan plan = planBS.retrieveById(planId);
-	List<StructureLevelInstance> list = structureBS.listRootLevelInstanceByPlan(plan);
+	PlanReportData data = PlanReportData.load(this.dao, plan, this.domain.getCompany(), RESPONSIBLE_ATTRIBUTE_ID);
+	List<StructureLevelInstance> list = data.getRoots();
 	// ArrayList<Long> attInstList = new ArrayList<Long>();
 	ArrayList<PdfPTable> tableList = new ArrayList<PdfPTable>();
 	for (StructureLevelInstance s : list) {
 
-		PaginatedList<StructureLevelInstance> structureLevelSons = new PaginatedList<>();
-		structureLevelSons.setList(structureBS.retrieveLevelInstanceSons(s.getId()));
-		s.setSons(structureLevelSons);
-
-		List<Attribute> attributeList = structureBS.retrieveLevelAttributes(s.getLevel());
-		attributeList = structureBS.setAttributesInstances(s, attributeList);
-
-		if (!s.getSons().getList().isEmpty()) {
-			for (StructureLevelInstance son : s.getSons().getList()) {
+		if (!data.getSons(s).isEmpty()) {
+			for (StructureLevelInstance son : data.getSons(s)) {
 				if (son.getLevel().isObjective()) {// Objetivo
 					String eixoLabel = s.getLevel().getName() + ": ";
 					String eixoName = s.getName();
@@ -1137,22 +1125,22 @@ public List<PdfPTable> generatePDFplanTable(Plan plan) {
 					List<BudgetDTO> budgetList = new ArrayList<BudgetDTO>();
 					int budgetListSize = 0;
 
-					List<Attribute> sonAttributeList = structureBS.retrieveLevelAttributes(son.getLevel());
-					sonAttributeList = structureBS.setAttributesInstances(son, sonAttributeList);
+					List<Attribute> sonAttributeList = data.getAttributes(son);
 					if (!sonAttributeList.isEmpty()) {
 						String bsc = "-";
 						for (Attribute sonAttribute : sonAttributeList) {
 
 							if (sonAttribute.isBscField()) { // Perspectiva
-								AttributeInstance attInst = attrHelper.retrieveAttributeInstance(son, sonAttribute);
+								AttributeInstance attInst = data.getInstance(son, sonAttribute.getId());
 								if (attInst != null) {
-									bsc = attInst.getValue();
+									bsc = data.getDisplayValue(sonAttribute, attInst);
 								} else {
 									bsc = "-";
 								}
 							}
-							if (sonAttribute.getBudgets() != null && !sonAttribute.getBudgets().isEmpty()) { // Orçamento
-								budgetList = sonAttribute.getBudgets();
+							if (sonAttribute.getType().equals(BudgetField.class.getCanonicalName())
+									&& !data.getBudgets(son).isEmpty()) { // Orçamento
+								budgetList = data.getBudgets(son);
 								budgetListSize = budgetList.size();
 							}
 						}
@@ -1293,13 +1281,9 @@ public List<PdfPTable> generatePDFplanTable(Plan plan) {
 						}
 					}
 
-					StructureLevelInstance sonAux = son;
-					PaginatedList<StructureLevelInstance> objSonsList = new PaginatedList<>();
-					objSonsList.setList(structureBS.retrieveLevelInstanceSons(sonAux.getId()));
-					sonAux.setSons(objSonsList);
-					objSonsList = sonAux.getSons();
+					List<StructureLevelInstance> objSonsList = data.getSons(son);
 
-					if (objSonsList.getList().size() > 0) {
+					if (objSonsList.size() > 0) {
 						// Indicadores
 						cell = new PdfPCell(new Phrase("Indicadores", titulo));
 						cell.setHorizontalAlignment(Element.ALIGN_CENTER);
@@ -1348,29 +1332,22 @@ public List<PdfPTable> generatePDFplanTable(Plan plan) {
 						String calculo = "";
 						Long responsavel = (long) -1;
 
-						for (StructureLevelInstance indicatorSon : objSonsList.getList()) { // Indicadores
+						for (StructureLevelInstance indicatorSon : objSonsList) { // Indicadores
 							if (indicatorSon.getLevel().isIndicator()) {
-								List<Attribute> indicatorSonAttributeList = structureBS
-										.retrieveLevelAttributes(indicatorSon.getLevel());
-								indicatorSonAttributeList = structureBS.setAttributesInstances(indicatorSon,
-										indicatorSonAttributeList);
-								indicatorSon.getLevel().setAttributes(indicatorSonAttributeList);
+								List<Attribute> indicatorSonAttributeList = data.getAttributes(indicatorSon);
 								for (Attribute indicatorSonAttribute : indicatorSonAttributeList) {
-									if (indicatorSonAttribute.getId() == 14) { // Cálculo
-										AttributeInstance attInst = attrHelper.retrieveAttributeInstance(
-												indicatorSon, structureBS.retrieveAttribute((long) 14));
+									if (CALCULATION_ATTRIBUTE_ID.equals(indicatorSonAttribute.getId())) { // Cálculo
+										AttributeInstance attInst = data.getInstance(indicatorSon, CALCULATION_ATTRIBUTE_ID);
 										if (attInst != null) {
-											calculo = indicatorSonAttribute.getAttributeInstance().getValue();
+											calculo = data.getDisplayValue(indicatorSonAttribute, attInst);
 										} else {
 											calculo = "-";
 										}
 									}
-									if (indicatorSonAttribute.getId() == 7) { // responsável
-										AttributeInstance attInst = attrHelper.retrieveAttributeInstance(
-												indicatorSon, structureBS.retrieveAttribute((long) 7));
+									if (RESPONSIBLE_ATTRIBUTE_ID.equals(indicatorSonAttribute.getId())) { // responsável
+										AttributeInstance attInst = data.getInstance(indicatorSon, RESPONSIBLE_ATTRIBUTE_ID);
 										if (attInst != null) {
-											responsavel = Long.parseLong(
-													indicatorSonAttribute.getAttributeInstance().getValue());
+											responsavel = Long.parseLong(data.getDisplayValue(indicatorSonAttribute, attInst));
 										} else {
 											responsavel = (long) -1;
 										}
@@ -1379,13 +1356,11 @@ public List<PdfPTable> generatePDFplanTable(Plan plan) {
 								}
 								// LOGGER.info(calculo);
 								// LOGGER.info(responsavel);
-								PaginatedList<StructureLevelInstance> levelInstances = new PaginatedList<>();
-								levelInstances
-										.setList(this.structureBS.retrieveLevelInstanceSons(indicatorSon.getId()));
+								List<StructureLevelInstance> levelInstances = data.getSons(indicatorSon);
 
 								// Indicador - valores
 
-								User responsible = userBS.existsByUser(responsavel);
+								User responsible = data.getUser(responsavel);
 								// LOGGER.info(responsible.toString());
 								Phrase indicador = new Phrase(indicatorSon.getName(), texto);
 								indicador.add(new Phrase("\n\nCálculo: ", titulo));
@@ -1407,65 +1382,44 @@ public List<PdfPTable> generatePDFplanTable(Plan plan) {
 								cell.setBorderColor(borderPlanColor);
 								cell.setColspan(1);
 								cell.setMinimumHeight(4 * fontSize);
-								if (levelInstances.getList().size() > 0) {
-									cell.setRowspan(levelInstances.getList().size());
+								if (levelInstances.size() > 0) {
+									cell.setRowspan(levelInstances.size());
 								}
 								table.addCell(cell);
 
-								for (int index = 0; index < levelInstances.getList().size(); index++) {
-
-									levelInstances.getList().get(index).getLevel().setAttributes(this.structureBS
-											.retrieveLevelSonsAttributes(levelInstances.getList().get(index)));
-								}
-
-								StructureLevelInstance levelInstanceAux = new StructureLevelInstance();
-								levelInstanceAux.setId(indicatorSon.getId());
-								levelInstanceAux.setSons(levelInstances);
-
 								// CABEÇALHO
 								// METAS
-								if (levelInstanceAux.getSons().getList().size() != 0) {
+								if (levelInstances.size() != 0) {
 									ArrayList<String> expected = new ArrayList<String>();
 									ArrayList<String> reached = new ArrayList<String>();
 
 									HashMap<Long, ArrayList<String>> meta = new HashMap<Long, ArrayList<String>>();
-									AttributeInstance formatAttr = this.attrHelper
-											.retrieveFormatAttributeInstance(levelInstanceAux);
+									AttributeInstance formatAttr = data.getFormatInstance(indicatorSon);
 									FormatValue formatValue = FormatValue.forAttributeInstance(formatAttr);
-									for (int goalIndex = 0; goalIndex < levelInstanceAux.getSons().getList()
-											.size(); goalIndex++) {
+									for (int goalIndex = 0; goalIndex < levelInstances.size(); goalIndex++) {
 
 										ArrayList<String> values = new ArrayList<String>();
 										// LOGGER.info(levelInstanceAux.getSons().get(goalIndex).toString());
 
-										List<AttributeInstance> attInst = structureBS.listAttributeInstanceByLevel(
-												levelInstanceAux.getSons().getList().get(goalIndex), false);
-										List<Attribute> attList = structureBS.listAttributesPDF(
-												levelInstanceAux.getSons().getList().get(goalIndex).getLevel());
+										StructureLevelInstance goal = levelInstances.get(goalIndex);
 
-										for (Attribute a : attList) {
+										for (Attribute a : data.getAttributes(goal)) {
+											AttributeInstance at = a.isDeleted() ? null : data.getInstance(goal, a.getId());
+											if (at == null || at.isDeleted()) {
+												continue;
+											}
 											if (a.isExpectedField()) { // esperado
-												for (AttributeInstance at : attInst) {
-													if (at.getAttribute().getId() == a.getId()) {
-														at.setFormattedValue(formatValue
-																.format(at.getValue().replace(',', '.')));
-														expected.add(at.getFormattedValue());
-														values.add(at.getFormattedValue());
-													}
-												}
+												String formatted = formatValue.format(at.getValue().replace(',', '.'));
+												expected.add(formatted);
+												values.add(formatted);
 											} else if (a.isReachedField()) { // realizado
-												for (AttributeInstance at : attInst) {
-													if (at.getAttribute().getId() == a.getId()) {
-														at.setFormattedValue(formatValue.format(at.getValue()));
-														reached.add(at.getFormattedValue());
-														values.add(at.getFormattedValue());
-													}
-												}
+												String formatted = formatValue.format(at.getValue());
+												reached.add(formatted);
+												values.add(formatted);
 											}
 										}
 
-										meta.put(levelInstanceAux.getSons().getList().get(goalIndex).getId(),
-												values);
+										meta.put(goal.getId(), values);
 									}
 
 									List<Long> keys = new ArrayList<Long>(meta.keySet());
@@ -1475,7 +1429,7 @@ public List<PdfPTable> generatePDFplanTable(Plan plan) {
 									for (Long x : keys) {
 										// LOGGER.info(meta.get(x));
 										cell = new PdfPCell(
-												new Phrase(levelInstances.getList().get(i).getName(), texto));
+												new Phrase(levelInstances.get(i).getName(), texto));
 										i++;
 										cell.setHorizontalAlignment(Element.ALIGN_CENTER);
 										cell.setPadding(padding);
@@ -2438,7 +2392,7 @@ public void manipulatePdf(String src, String dest, com.itextpdf.text.Document do
 
 		outputDir=tempFile();
 
-		final String prefix = String.format("frisco-report-export-%d", System.currentTimeMillis());
+		final String prefix = String.format("frisco-report-export-%d-%d", System.currentTimeMillis(), Thread.currentThread().getId());
 		File summaryPdfFile = new File(outputDir, String.format("%s-summary.pdf", prefix));
 		
 		com.itextpdf.text.Document summaryDocument = new com.itextpdf.text.Document();
@@ -2509,7 +2463,7 @@ public void manipulatePdf(String src, String dest, com.itextpdf.text.Document do
 	
 	private File tempFile() throws IOException {
 		File outputDir = File.createTempFile("frisco-document-export", ".pdf").getParentFile();
-		//final String prefix = String.format("frisco-report-export-%d", System.currentTimeMillis());
+		//final String prefix = String.format("frisco-report-export-%d-%d", System.currentTimeMillis(), Thread.currentThread().getId());
 		return outputDir;
 	}
 	
@@ -2614,7 +2568,7 @@ public void manipulatePdf(String src, String dest, com.itextpdf.text.Document do
 
 		outputDir = contentFile.getParentFile();
 
-		final String prefix = String.format("frisco-report-export-%d", System.currentTimeMillis());
+		final String prefix = String.format("frisco-report-export-%d-%d", System.currentTimeMillis(), Thread.currentThread().getId());
 		
 		
 		String[] sections = null;
@@ -3157,7 +3111,7 @@ public void manipulatePdf(String src, String dest, com.itextpdf.text.Document do
 		File outputDir;
 		outputDir=tempFile();
 
-		final String prefix = String.format("frisco-report-export-%d", System.currentTimeMillis());
+		final String prefix = String.format("frisco-report-export-%d-%d", System.currentTimeMillis(), Thread.currentThread().getId());
 		
 		
 		String[] sections = null;
@@ -3441,7 +3395,7 @@ public void manipulatePdf(String src, String dest, com.itextpdf.text.Document do
 
 		outputDir = contentFile.getParentFile();
 
-		final String prefix = String.format("frisco-report-export-%d", System.currentTimeMillis());
+		final String prefix = String.format("frisco-report-export-%d-%d", System.currentTimeMillis(), Thread.currentThread().getId());
 		
 		
 		String[] sections = null;
@@ -3810,7 +3764,7 @@ public void manipulatePdf(String src, String dest, com.itextpdf.text.Document do
 
 		outputDir = contentFile.getParentFile();
 
-		final String prefix = String.format("frisco-report-export-%d", System.currentTimeMillis());
+		final String prefix = String.format("frisco-report-export-%d-%d", System.currentTimeMillis(), Thread.currentThread().getId());
 		
 		
 		String[] sections = {};
@@ -4242,7 +4196,7 @@ public void manipulatePdf(String src, String dest, com.itextpdf.text.Document do
 
 		File outputDir=tempFile();
 
-		final String prefix = String.format("frisco-report-export-%d", System.currentTimeMillis());
+		final String prefix = String.format("frisco-report-export-%d-%d", System.currentTimeMillis(), Thread.currentThread().getId());
 
 		File finalSummaryPdfFile = new File(outputDir, String.format("%s-final-summary.pdf", prefix));
 		File destinationFile = new File(outputDir, String.format("%s-mounted.pdf", prefix));
@@ -4307,7 +4261,7 @@ public void manipulatePdf(String src, String dest, com.itextpdf.text.Document do
 		outputDir.delete();*/
 		
 		for (File f : outputDir.listFiles()) {
-		    if (f.getName().startsWith("frisco-") 
+		    if (f.getName().startsWith(prefix) && !f.equals(finalPdfFile) 
 		    		&& (f.getName().endsWith(".pdf") || f.getName().endsWith(".html"))) {
 		        f.delete();
 		    }
@@ -4320,7 +4274,7 @@ public void manipulatePdf(String src, String dest, com.itextpdf.text.Document do
 		
 		File outputDir=tempFile();
 		
-		final String prefix = String.format("frisco-report-export-%d", System.currentTimeMillis());
+		final String prefix = String.format("frisco-report-export-%d-%d", System.currentTimeMillis(), Thread.currentThread().getId());
 
 		File finalSummaryPdfFile = new File(outputDir, String.format("%s-final-summary.pdf", prefix));
 		File destinationFile = new File(outputDir, String.format("%s-mounted.pdf", prefix));
@@ -4387,7 +4341,7 @@ public void manipulatePdf(String src, String dest, com.itextpdf.text.Document do
 		outputDir.delete();
 		
 		for (File f : outputDir.listFiles()) {
-		    if (f.getName().startsWith("frisco-") 
+		    if (f.getName().startsWith(prefix) && !f.equals(finalPdfFile) 
 		    		&& (f.getName().endsWith(".pdf") || f.getName().endsWith(".html"))) {
 		        f.delete();
 		    }
@@ -4400,7 +4354,7 @@ public void manipulatePdf(String src, String dest, com.itextpdf.text.Document do
 		
 	File outputDir=tempFile();
 		
-		final String prefix = String.format("frisco-report-export-%d", System.currentTimeMillis());
+		final String prefix = String.format("frisco-report-export-%d-%d", System.currentTimeMillis(), Thread.currentThread().getId());
 
 		File finalSummaryPdfFile = new File(outputDir, String.format("%s-final-summary.pdf", prefix));
 		File destinationFile = new File(outputDir, String.format("%s-mounted.pdf", prefix));
@@ -4467,7 +4421,7 @@ public void manipulatePdf(String src, String dest, com.itextpdf.text.Document do
 		outputDir.delete();
 		 */
 		for (File f : outputDir.listFiles()) {
-		    if (f.getName().startsWith("frisco-") 
+		    if (f.getName().startsWith(prefix) && !f.equals(finalPdfFile) 
 		    		&& (f.getName().endsWith(".pdf") || f.getName().endsWith(".html"))) {
 		        f.delete();
 		    }
@@ -4479,7 +4433,7 @@ public void manipulatePdf(String src, String dest, com.itextpdf.text.Document do
 
 		File outputDir=tempFile();
 		
-		final String prefix = String.format("frisco-report-export-%d", System.currentTimeMillis());
+		final String prefix = String.format("frisco-report-export-%d-%d", System.currentTimeMillis(), Thread.currentThread().getId());
 
 		File finalSummaryPdfFile = new File(outputDir, String.format("%s-final-summary.pdf", prefix));
 		File destinationFile = new File(outputDir, String.format("%s-mounted.pdf", prefix));
@@ -4547,7 +4501,7 @@ public void manipulatePdf(String src, String dest, com.itextpdf.text.Document do
 		outputDir.delete();
 		 */		
 		for (File f : outputDir.listFiles()) {
-			if (f.getName().startsWith("frisco-") 
+			if (f.getName().startsWith(prefix) && !f.equals(finalPdfFile) 
 	    		&& (f.getName().endsWith(".pdf") || f.getName().endsWith(".html"))) {
 	        f.delete();
 	    }
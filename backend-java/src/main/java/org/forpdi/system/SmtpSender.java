@@ -0,0 +1,170 @@
+package org.forpdi.system;
+
+import java.util.Properties;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.mail.EmailAttachment;
+import org.apache.commons.mail.EmailException;
+import org.apache.commons.mail.MultiPartEmail;
+import org.forpdi.core.properties.SystemConfigs;
+
+import br.com.caelum.vraptor.boilerplate.util.EmailUtils;
+
+/**
+ * Envia e-mails HTML mantendo uma mesma conexão SMTP aberta entre os envios.
+ * Não é thread-safe: cada thread de envio usa o seu.
+ *
+ * Pode ser criado com as configurações do sistema ({@link #fromConfig()}) ou
+ * apontado para um servidor SMTP local, sem autenticação.
+ */
+public class SmtpSender implements AutoCloseable {
+
+	private static final String TIMEOUT = "60000";
+
+	private final String host;
+	private final int port;
+	private final String user;
+	private final String password;
+	private final String fromEmail;
+	private final String fromName;
+	private final String filesDir;
+	private final Session session;
+	private Transport transport;
+
+	/**
+	 * @param host
+	 *            Servidor SMTP.
+	 * @param port
+	 *            Porta do servidor.
+	 * @param user
+	 *            Usuário, ou null para enviar sem autenticação.
+	 * @param password
+	 *            Senha do usuário.
+	 * @param ssl
+	 *            Se a conexão é feita com SSL.
+	 * @param tls
+	 *            Se a conexão usa STARTTLS.
+	 * @param fromEmail
+	 *            E-mail do remetente.
+	 * @param fromName
+	 *            Nome do remetente.
+	 * @param filesDir
+	 *            Diretório dos arquivos anexados.
+	 */
+	public SmtpSender(String host, int port, String user, String password, boolean ssl, boolean tls,
+			String fromEmail, String fromName, String filesDir) {
+		this.host = host;
+		this.port = port;
+		this.user = user == null || user.isEmpty() ? null : user;
+		this.password = password;
+		this.fromEmail = fromEmail;
+		this.fromName = fromName;
+		this.filesDir = filesDir;
+
+		Properties props = new Properties();
+		props.setProperty("mail.transport.protocol", "smtp");
+		props.setProperty("mail.smtp.host", host);
+		props.setProperty("mail.smtp.port", String.valueOf(port));
+		props.setProperty("mail.smtp.auth", String.valueOf(this.user != null));
+		props.setProperty("mail.smtp.ssl.enable", String.valueOf(ssl));
+		props.setProperty("mail.smtp.starttls.enable", String.valueOf(tls));
+		props.setProperty("mail.smtp.connectiontimeout", TIMEOUT);
+		props.setProperty("mail.smtp.timeout", TIMEOUT);
+		this.session = Session.getInstance(props);
+	}
+
+	/**
+	 * Cria um sender com as configurações smtp.* do sistema.
+	 */
+	public static SmtpSender fromConfig() {
+		return new SmtpSender(
+			SystemConfigs.getConfig("smtp.host"),
+			Integer.parseInt(SystemConfigs.getConfig("smtp.port")),
+			SystemConfigs.getConfig("smtp.user"),
+			SystemConfigs.getConfig("smtp.password"),
+			"true".equals(SystemConfigs.getConfig("smtp.ssl")),
+			"true".equals(SystemConfigs.getConfig("smtp.tls")),
+			SystemConfigs.getConfig("smtp.from.email"),
+			SystemConfigs.getConfig("smtp.from.name"),
+			SystemConfigs.getConfig("store.files")
+		);
+	}
+
+	/**
+	 * Envia um e-mail HTML, abrindo a conexão se necessário. Se a conexão
+	 * aberta tiver caído, reconecta e tenta mais uma vez.
+	 *
+	 * @param toEmail
+	 *            E-mail do destinatário.
+	 * @param toName
+	 *            Nome do destinatário.
+	 * @param subject
+	 *            Assunto.
+	 * @param msg
+	 *            Corpo HTML.
+	 * @param attach
+	 *            Nome do arquivo anexado, relativo a store.files, ou null.
+	 * @throws EmailException
+	 *             Se a mensagem não puder ser montada.
+	 * @throws MessagingException
+	 *             Se o envio falhar.
+	 */
+	public void send(String toEmail, String toName, String subject, String msg, String attach)
+			throws EmailException, MessagingException {
+		MultiPartEmail email = EmailUtils.getHtmlEmail();
+		email.setMailSession(this.session);
+		email.setFrom(this.fromEmail, this.fromName);
+		email.addTo(toEmail, toName);
+		email.setSubject(subject);
+		email.setMsg(msg);
+		if (attach != null) {
+			EmailAttachment attachment = new EmailAttachment();
+			attachment.setPath(this.filesDir + attach);
+			attachment.setDisposition(EmailAttachment.ATTACHMENT);
+			attachment.setDescription(attach);
+			attachment.setName(attach);
+			email.attach(attachment);
+		}
+		email.buildMimeMessage();
+		MimeMessage message = email.getMimeMessage();
+
+		boolean reused = this.transport != null && this.transport.isConnected();
+		if (!reused) {
+			this.connect();
+		}
+		try {
+			this.transport.sendMessage(message, message.getAllRecipients());
+		} catch (MessagingException ex) {
+			if (!reused || this.transport.isConnected()) {
+				throw ex;
+			}
+			this.connect();
+			this.transport.sendMessage(message, message.getAllRecipients());
+		}
+	}
+
+	private void connect() throws MessagingException {
+		this.close();
+		this.transport = this.session.getTransport();
+		this.transport.connect(this.host, this.port, this.user, this.password);
+	}
+
+	/**
+	 * Fecha a conexão SMTP, se estiver aberta.
+	 */
+	@Override
+	public void close() {
+		if (this.transport != null) {
+			try {
+				this.transport.close();
+			} catch (MessagingException ex) {
+				// a conexão já estava fechada
+			}
+			this.transport = null;
+		}
+	}
+}
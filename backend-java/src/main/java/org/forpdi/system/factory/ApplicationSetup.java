@@ -21,6 +21,8 @@ import org.forpdi.core.properties.SystemConfigs;
 import org.forpdi.core.user.User;
 import org.forpdi.core.user.authz.AccessLevels;
 import org.forpdi.planning.fields.budget.BudgetElement;
+import org.forpdi.planning.structure.LevelInstancePath;
+import org.forpdi.planning.structure.LevelInstanceResponsibles;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Restrictions;
 import org.jboss.logging.Logger;
@@ -156,6 +158,34 @@ public class ApplicationSetup {
 			e.printStackTrace();
 		}
 
+		try {
+			final int[] filled = new int[1];
+			dao.execute((session) -> {
+				session.doWork((connection) -> {
+					filled[0] = LevelInstancePath.fillAll(connection);
+				});
+			});
+			if (filled[0] > 0) {
+				LOG.infof("Filled the path of %d structure level instances.", filled[0]);
+			}
+		} catch (Exception e) {
+			LOG.error("Error filling the path of structure level instances.", e);
+		}
+
+		try {
+			final int[] indexed = new int[1];
+			dao.execute((session) -> {
+				session.doWork((connection) -> {
+					indexed[0] = LevelInstanceResponsibles.fillIfEmpty(connection);
+				});
+			});
+			if (indexed[0] > 0) {
+				LOG.infof("Indexed %d level instance responsibles.", indexed[0]);
+			}
+		} catch (Exception e) {
+			LOG.error("Error indexing the level instance responsibles.", e);
+		}
+
 		LOG.info("Application setup completed.");
 		mngr.closeSession();
 	}
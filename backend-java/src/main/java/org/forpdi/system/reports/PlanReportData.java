@@ -0,0 +1,226 @@
+package org.forpdi.system.reports;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.forpdi.core.company.Company;
+import org.forpdi.core.user.User;
+import org.forpdi.planning.attribute.Attribute;
+import org.forpdi.planning.attribute.AttributeInstance;
+import org.forpdi.planning.attribute.AttributeTypeFactory;
+import org.forpdi.planning.attribute.AttributeTypeWrapper;
+import org.forpdi.planning.fields.budget.Budget;
+import org.forpdi.planning.fields.budget.BudgetDTO;
+import org.forpdi.planning.fields.budget.BudgetElement;
+import org.forpdi.planning.plan.Plan;
+import org.forpdi.planning.structure.StructureLevelInstance;
+import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.sql.JoinType;
+
+import br.com.caelum.vraptor.boilerplate.HibernateDAO;
+
+/**
+ * Dados de um plano de metas usados nas tabelas dos relatórios PDF,
+ * carregados de uma vez: instâncias de nível, atributos dos níveis,
+ * instâncias de atributos, orçamentos e responsáveis.
+ *
+ * Cada tipo de dado é buscado com uma consulta para o plano inteiro, assim a
+ * geração das tabelas não faz consultas por instância de nível ou atributo.
+ */
+public class PlanReportData {
+
+	private final List<StructureLevelInstance> roots = new ArrayList<>();
+	private final Map<Long, List<StructureLevelInstance>> sons = new HashMap<>();
+	private final Map<Long, List<Attribute>> attributes = new HashMap<>();
+	private final Map<Long, Map<Long, AttributeInstance>> instances = new HashMap<>();
+	private final Map<Long, List<BudgetDTO>> budgets = new HashMap<>();
+	private final Map<Long, User> users = new HashMap<>();
+
+	private PlanReportData() {
+	}
+
+	/**
+	 * Carrega os dados do plano de metas.
+	 *
+	 * @param dao
+	 *            DAO da requisição.
+	 * @param plan
+	 *            Plano de metas.
+	 * @param company
+	 *            Instituição do plano, dona das ações orçamentárias.
+	 * @param responsibleAttributeId
+	 *            Id do atributo que guarda o responsável pelos indicadores.
+	 * @return PlanReportData Dados do plano.
+	 */
+	public static PlanReportData load(HibernateDAO dao, Plan plan, Company company, Long responsibleAttributeId) {
+		PlanReportData data = new PlanReportData();
+
+		Criteria levelInstances = dao.newCriteria(StructureLevelInstance.class)
+			.setFetchMode("level", FetchMode.JOIN)
+			.add(Restrictions.eq("plan", plan))
+			.add(Restrictions.eq("deleted", false))
+			.addOrder(Order.asc("id"));
+		for (StructureLevelInstance levelInstance : dao.findByCriteria(levelInstances, StructureLevelInstance.class)) {
+			if (levelInstance.getParent() == null) {
+				data.roots.add(levelInstance);
+			} else {
+				data.sons.computeIfAbsent(levelInstance.getParent(), (key) -> new ArrayList<>()).add(levelInstance);
+			}
+		}
+
+		Criteria attributes = dao.newCriteria(Attribute.class)
+			.createAlias("level", "level", JoinType.INNER_JOIN)
+			.add(Restrictions.eq("level.structure", plan.getStructure()))
+			.addOrder(Order.asc("label"))
+			.addOrder(Order.asc("id"));
+		for (Attribute attribute : dao.findByCriteria(attributes, Attribute.class)) {
+			data.attributes.computeIfAbsent(attribute.getLevel().getId(), (key) -> new ArrayList<>()).add(attribute);
+		}
+
+		// Projeção para não carregar as entidades relacionadas; as instâncias
+		// são montadas apenas com os valores.
+		Criteria attributeInstances = dao.newCriteria(AttributeInstance.class)
+			.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
+			.add(Restrictions.eq("levelInstance.plan", plan))
+			.add(Restrictions.eq("levelInstance.deleted", false))
+			.addOrder(Order.asc("id"))
+			.setProjection(Projections.projectionList()
+				.add(Projections.property("levelInstance.id"))
+				.add(Projections.property("attribute.id"))
+				.add(Projections.property("id"))
+				.add(Projections.property("value"))
+				.add(Projections.property("valueAsNumber"))
+				.add(Projections.property("valueAsDate"))
+				.add(Projections.property("deleted"))
+			);
+		for (Object[] row : dao.findByCriteria(attributeInstances, Object[].class)) {
+			AttributeInstance instance = new AttributeInstance();
+			instance.setId((Long) row[2]);
+			instance.setValue((String) row[3]);
+			instance.setValueAsNumber((Double) row[4]);
+			instance.setValueAsDate((Date) row[5]);
+			instance.setDeleted((Boolean) row[6]);
+			Map<Long, AttributeInstance> byAttribute = data.instances.computeIfAbsent((Long) row[0],
+					(key) -> new HashMap<>());
+			// Mesma escolha da consulta por atributo: a primeira instância
+			// encontrada, dando preferência às não excluídas.
+			AttributeInstance current = byAttribute.get((Long) row[1]);
+			if (current == null || (current.isDeleted() && !instance.isDeleted())) {
+				byAttribute.put((Long) row[1], instance);
+			}
+		}
+
+		Map<String, BudgetElement> elements = new HashMap<>();
+		Criteria budgetElements = dao.newCriteria(BudgetElement.class)
+			.add(Restrictions.eq("deleted", false))
+			.add(Restrictions.eq("company", company));
+		for (BudgetElement element : dao.findByCriteria(budgetElements, BudgetElement.class)) {
+			elements.put(element.getSubAction(), element);
+		}
+		Criteria budgetList = dao.newCriteria(Budget.class)
+			.createAlias("levelInstance", "levelInstance", JoinType.INNER_JOIN)
+			.add(Restrictions.eq("deleted", false))
+			.add(Restrictions.eq("levelInstance.plan", plan))
+			.add(Restrictions.eq("levelInstance.deleted", false))
+			.addOrder(Order.asc("id"));
+		for (Budget budget : dao.findByCriteria(budgetList, Budget.class)) {
+			BudgetDTO item = new BudgetDTO();
+			BudgetElement element = elements.get(budget.getSubAction());
+			item.setBudget(budget);
+			if (element != null) {
+				item.setBudgetLoa(element.getBudgetLoa());
+				item.setBalanceAvailable(element.getBalanceAvailable());
+			}
+			data.budgets.computeIfAbsent(budget.getLevelInstance().getId(), (key) -> new ArrayList<>()).add(item);
+		}
+
+		Set<Long> userIds = new HashSet<>();
+		for (Map<Long, AttributeInstance> byAttribute : data.instances.values()) {
+			AttributeInstance responsible = byAttribute.get(responsibleAttributeId);
+			if (responsible != null && responsible.getValue() != null) {
+				try {
+					userIds.add(Long.parseLong(responsible.getValue()));
+				} catch (NumberFormatException ex) {
+					// Valor inválido, o indicador fica sem responsável.
+				}
+			}
+		}
+		if (!userIds.isEmpty()) {
+			Criteria userList = dao.newCriteria(User.class).add(Restrictions.in("id", userIds));
+			for (User user : dao.findByCriteria(userList, User.class)) {
+				data.users.put(user.getId(), user);
+			}
+		}
+		return data;
+	}
+
+	/** Instâncias do primeiro nível do plano. */
+	public List<StructureLevelInstance> getRoots() {
+		return roots;
+	}
+
+	/** Filhos não excluídos de uma instância de nível, em ordem de id. */
+	public List<StructureLevelInstance> getSons(StructureLevelInstance levelInstance) {
+		List<StructureLevelInstance> list = sons.get(levelInstance.getId());
+		return list == null ? Collections.emptyList() : list;
+	}
+
+	/** Atributos do nível de uma instância, incluindo os excluídos, em ordem de rótulo. */
+	public List<Attribute> getAttributes(StructureLevelInstance levelInstance) {
+		List<Attribute> list = attributes.get(levelInstance.getLevel().getId());
+		return list == null ? Collections.emptyList() : list;
+	}
+
+	/** Instância de um atributo, ou null se não foi preenchido. */
+	public AttributeInstance getInstance(StructureLevelInstance levelInstance, Long attributeId) {
+		Map<Long, AttributeInstance> byAttribute = instances.get(levelInstance.getId());
+		return byAttribute == null ? null : byAttribute.get(attributeId);
+	}
+
+	/** Instância do atributo que define a formatação dos valores de um nível. */
+	public AttributeInstance getFormatInstance(StructureLevelInstance levelInstance) {
+		for (Attribute attribute : this.getAttributes(levelInstance)) {
+			if (attribute.isFormatField()) {
+				AttributeInstance instance = this.getInstance(levelInstance, attribute.getId());
+				if (instance != null)
+					return instance;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Valor de exibição da instância de um atributo, convertido pelo tipo do
+	 * atributo como em {@code StructureBS.setAttributesInstances}.
+	 */
+	public String getDisplayValue(Attribute attribute, AttributeInstance instance) {
+		AttributeTypeWrapper wrapper = AttributeTypeFactory.getInstance().get(attribute.getType()).getWrapper();
+		if (instance.getValueAsDate() != null)
+			return wrapper.fromDatabaseDate(instance.getValueAsDate());
+		else if (instance.getValueAsNumber() != null)
+			return wrapper.fromDatabaseNumerical(instance.getValueAsNumber());
+		else
+			return wrapper.fromDatabase(instance.getValue());
+	}
+
+	/** Orçamentos de uma instância de nível. */
+	public List<BudgetDTO> getBudgets(StructureLevelInstance levelInstance) {
+		List<BudgetDTO> list = budgets.get(levelInstance.getId());
+		return list == null ? Collections.emptyList() : list;
+	}
+
+	/** Usuário responsável, ou null se não existir. */
+	public User getUser(Long id) {
+		return users.get(id);
+	}
+}
@@ -0,0 +1,115 @@
+package org.forpdi.system.reports;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.enterprise.context.RequestScoped;
+
+import org.forpdi.planning.document.DocumentSection;
+import org.forrisco.core.plan.PlanRisk;
+import org.forrisco.core.unit.Unit;
+import org.hibernate.Criteria;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.sql.JoinType;
+
+import br.com.caelum.vraptor.boilerplate.HibernateBusiness;
+
+/**
+ * Versão dos dados de cada relatório, lida de {@link ReportDataStamp} para
+ * os planos que alimentam o relatório.
+ */
+@RequestScoped
+public class ReportBS extends HibernateBusiness {
+
+	/**
+	 * Versão dos dados do documento de um plano macro.
+	 *
+	 * @param sections
+	 *            Ids das seções exportadas, separados por vírgula.
+	 * @return String Versão dos dados.
+	 */
+	public String documentVersion(String sections) {
+		List<Long> ids = this.parseIds(sections);
+		if (ids.isEmpty()) {
+			return "";
+		}
+		Criteria criteria = this.dao.newCriteria(DocumentSection.class)
+			.createAlias("document", "document", JoinType.INNER_JOIN)
+			.add(Restrictions.eq("id", ids.get(0)))
+			.setProjection(Projections.property("document.plan.id"));
+		return this.version(ReportScope.PLAN_MACRO, (Long) criteria.uniqueResult());
+	}
+
+	/**
+	 * Versão dos dados de uma política.
+	 */
+	public String policyVersion(Long policyId) {
+		return this.version(ReportScope.POLICY, policyId);
+	}
+
+	/**
+	 * Versão dos dados dos planos de risco de um conjunto de unidades.
+	 *
+	 * @param units
+	 *            Ids das unidades, separados por vírgula.
+	 * @return String Versão dos dados.
+	 */
+	public String unitVersion(String units) {
+		List<Long> ids = this.parseIds(units);
+		if (ids.isEmpty()) {
+			return "";
+		}
+		Criteria criteria = this.dao.newCriteria(Unit.class)
+			.add(Restrictions.in("id", ids))
+			.setProjection(Projections.distinct(Projections.property("planRisk.id")));
+		List<String> versions = new ArrayList<>();
+		for (Long planRiskId : this.dao.findByCriteria(criteria, Long.class)) {
+			versions.add(this.planRiskVersion(planRiskId));
+		}
+		return String.join(",", versions);
+	}
+
+	/**
+	 * Versão dos dados de um plano de risco e da sua política.
+	 */
+	public String planRiskVersion(Long planRiskId) {
+		if (planRiskId == null) {
+			return "";
+		}
+		Criteria criteria = this.dao.newCriteria(PlanRisk.class)
+			.add(Restrictions.eq("id", planRiskId))
+			.setProjection(Projections.property("policy.id"));
+		return this.version(ReportScope.PLAN_RISK, planRiskId) + ","
+			+ this.version(ReportScope.POLICY, (Long) criteria.uniqueResult());
+	}
+
+	private String version(ReportScope scope, Long id) {
+		if (id == null) {
+			return "";
+		}
+		Criteria criteria = this.dao.newCriteria(ReportDataStamp.class)
+			.add(Restrictions.eq("scope", scope.getId()))
+			.add(Restrictions.eq("scopeId", id))
+			.setProjection(Projections.property("version"));
+		Long version = (Long) criteria.uniqueResult();
+		return String.format("%d:%d=%d", scope.getId(), id, version == null ? 0L : version);
+	}
+
+	private List<Long> parseIds(String ids) {
+		if (ids == null || ids.trim().isEmpty()) {
+			return new ArrayList<>(0);
+		}
+		try {
+			return Arrays.stream(ids.split(","))
+				.map(String::trim)
+				.filter((id) -> !id.isEmpty())
+				.map(Long::valueOf)
+				.collect(Collectors.toList());
+		} catch (NumberFormatException ex) {
+			return new ArrayList<>(0);
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package org.forpdi.system.reports;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.forpdi.core.company.CompanyDomain;
+import org.forpdi.core.user.auth.UserAccessToken;
+import org.forpdi.core.user.auth.UserSession;
+
+/**
+ * Contexto em que um relatório é gerado: a instituição e o usuário que o
+ * pediu. Capturado na requisição e restaurado na thread que gera o
+ * relatório, já que os relatórios são filtrados pelas permissões do usuário.
+ */
+public final class ReportContext {
+
+	private final Long domainId;
+	private final long companyId;
+	private final UserAccessToken token;
+	private final List<String> permissions;
+	private final int accessLevel;
+
+	public ReportContext(CompanyDomain domain, UserSession session) {
+		this.domainId = domain.getId();
+		this.companyId = domain.getCompany().getId();
+		this.token = session.getToken();
+		this.permissions = session.getPermissions() == null ? Collections.<String>emptyList()
+				: Collections.unmodifiableList(new ArrayList<>(session.getPermissions()));
+		this.accessLevel = session.getAccessLevel();
+	}
+
+	public Long getDomainId() {
+		return domainId;
+	}
+
+	public long getCompanyId() {
+		return companyId;
+	}
+
+	public long getUserId() {
+		return token.getUser().getId();
+	}
+
+	/** Restaura o usuário na sessão da thread que gera o relatório. */
+	void restore(UserSession session) {
+		session.restore(this.token, this.permissions, this.accessLevel);
+	}
+}
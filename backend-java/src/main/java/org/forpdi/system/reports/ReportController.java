@@ -0,0 +1,190 @@
+package org.forpdi.system.reports;
+
+import java.io.File;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import javax.inject.Inject;
+
+import org.forpdi.core.abstractions.AbstractController;
+import org.forpdi.core.company.CompanyDomain;
+import org.forpdi.core.event.Current;
+import org.forpdi.core.user.authz.Permissioned;
+import org.forpdi.system.FileStreamer;
+
+import br.com.caelum.vraptor.Controller;
+import br.com.caelum.vraptor.Get;
+import br.com.caelum.vraptor.Post;
+import br.com.caelum.vraptor.boilerplate.NoCache;
+
+/**
+ * Agendamento, acompanhamento e download dos relatórios PDF gerados em
+ * segundo plano.
+ */
+@Controller
+public class ReportController extends AbstractController {
+
+	protected static final String PATH = BASEPATH + "/report";
+
+	@Inject @Current private CompanyDomain domain;
+	@Inject private ReportJobService jobs;
+	@Inject private ReportBS bs;
+
+	/**
+	 * Agenda a exportação do documento de um plano.
+	 *
+	 * @param author
+	 *            Autor do documento.
+	 * @param title
+	 *            Título do documento.
+	 * @param lista
+	 *            Lista de seções a serem exportadas.
+	 * @return ReportJob Relatório agendado.
+	 */
+	@Post(PATH + "/document")
+	@NoCache
+	@Permissioned
+	public void submitDocument(String author, String title, String lista) {
+		final String key = String.join("|", "document", author, title, lista);
+		this.submit((context) -> this.jobs.submitStream(context, key, this.bs.documentVersion(lista), title,
+			(pdf) -> pdf.exportDocument(author, title, lista)));
+	}
+
+	/**
+	 * Agenda o relatório de uma política.
+	 *
+	 * @param policyId
+	 *            Id da política.
+	 * @return ReportJob Relatório agendado.
+	 */
+	@Post(PATH + "/policy")
+	@NoCache
+	@Permissioned
+	public void submitPolicy(Long policyId, String title, String author, String itens, String subitens) {
+		final String key = String.join("|", "policy", String.valueOf(policyId), title, author, itens, subitens);
+		this.submit((context) -> this.jobs.submit(context, key, this.bs.policyVersion(policyId), title,
+			(pdf) -> pdf.exportPolicyReport(policyId, title, author, itens, subitens)));
+	}
+
+	/**
+	 * Agenda o relatório de unidades.
+	 *
+	 * @return ReportJob Relatório agendado.
+	 */
+	@Post(PATH + "/unit")
+	@NoCache
+	@Permissioned
+	public void submitUnit(String title, String author, String units, String subunits) {
+		final String key = String.join("|", "unit", title, author, units, subunits);
+		this.submit((context) -> this.jobs.submit(context, key, this.bs.unitVersion(units), title,
+			(pdf) -> pdf.exportUnitReport(title, author, units, subunits)));
+	}
+
+	/**
+	 * Agenda o relatório de um plano de risco.
+	 *
+	 * @param planId
+	 *            Id do plano de risco.
+	 * @return ReportJob Relatório agendado.
+	 */
+	@Post(PATH + "/planrisk")
+	@NoCache
+	@Permissioned
+	public void submitPlanRisk(Long planId, String title, String author, String itens, String subitens) {
+		final String key = String.join("|", "planrisk", String.valueOf(planId), title, author, itens, subitens);
+		this.submit((context) -> this.jobs.submit(context, key, this.bs.planRiskVersion(planId), title,
+			(pdf) -> pdf.exportPlanRiskReport(title, author, planId, itens, subitens)));
+	}
+
+	/**
+	 * Agenda o relatório do painel de bordo de um plano de risco.
+	 *
+	 * @param planId
+	 *            Id do plano de risco.
+	 * @return ReportJob Relatório agendado.
+	 */
+	@Post(PATH + "/board")
+	@NoCache
+	@Permissioned
+	public void submitBoard(Long planId, String title, String author, String selecao) {
+		final String key = String.join("|", "board", String.valueOf(planId), title, author, selecao);
+		this.submit((context) -> this.jobs.submit(context, key, this.bs.planRiskVersion(planId), title,
+			(pdf) -> pdf.exportBoardReport(title, author, planId, selecao)));
+	}
+
+	/**
+	 * Estado de um relatório agendado.
+	 *
+	 * @param id
+	 *            Id do relatório.
+	 * @return ReportJob Relatório.
+	 */
+	@Get(PATH + "/{id}")
+	@NoCache
+	@Permissioned
+	public void status(String id) {
+		try {
+			ReportJob job = this.jobs.retrieve(id, this.context());
+			if (job == null) {
+				this.fail("Relatório não encontrado.");
+				return;
+			}
+			this.success(job);
+		} catch (Throwable ex) {
+			LOGGER.error("Unexpected runtime error", ex);
+			this.fail("Ocorreu um erro inesperado: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Download de um relatório concluído.
+	 *
+	 * @param id
+	 *            Id do relatório.
+	 */
+	@Get(PATH + "/{id}/download")
+	@Permissioned
+	public void download(String id) {
+		try {
+			ReportJob job = this.jobs.retrieve(id, this.context());
+			if (job == null) {
+				this.fail("Relatório não encontrado.");
+				return;
+			}
+			if (!job.isDone()) {
+				this.fail("O relatório ainda não foi concluído.");
+				return;
+			}
+			File file = this.jobs.retrieveFile(job);
+			if (file == null) {
+				this.fail("O relatório expirou, solicite-o novamente.");
+				return;
+			}
+			FileStreamer.serve(this.request, this.response, file, "application/pdf",
+					"inline; filename=\"" + job.getTitle() + ".pdf\"");
+			this.result.nothing();
+		} catch (Throwable ex) {
+			LOGGER.error("Unexpected runtime error", ex);
+			this.fail("Ocorreu um erro inesperado: " + ex.getMessage());
+		}
+	}
+
+	private void submit(Function<ReportContext, ReportJob> submission) {
+		try {
+			if (this.domain == null) {
+				this.fail("Instituição não definida");
+				return;
+			}
+			this.success(submission.apply(this.context()));
+		} catch (RejectedExecutionException ex) {
+			this.fail("Há muitos relatórios sendo gerados, tente novamente em alguns minutos.");
+		} catch (Throwable ex) {
+			LOGGER.error("Unexpected runtime error", ex);
+			this.fail("Ocorreu um erro inesperado: " + ex.getMessage());
+		}
+	}
+
+	private ReportContext context() {
+		return this.domain == null ? null : new ReportContext(this.domain, this.userSession);
+	}
+}
@@ -0,0 +1,241 @@
+package org.forpdi.system.reports;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.forpdi.dashboard.manager.LevelInstanceHistory;
+import org.forpdi.planning.attribute.AggregateIndicator;
+import org.forpdi.planning.attribute.Attribute;
+import org.forpdi.planning.attribute.AttributeInstance;
+import org.forpdi.planning.document.Document;
+import org.forpdi.planning.document.DocumentAttribute;
+import org.forpdi.planning.document.DocumentSection;
+import org.forpdi.planning.fields.actionplan.ActionPlan;
+import org.forpdi.planning.fields.attachment.Attachment;
+import org.forpdi.planning.fields.budget.Budget;
+import org.forpdi.planning.fields.budget.BudgetElement;
+import org.forpdi.planning.fields.schedule.Schedule;
+import org.forpdi.planning.fields.schedule.ScheduleInstance;
+import org.forpdi.planning.fields.schedule.ScheduleStructure;
+import org.forpdi.planning.fields.schedule.ScheduleValues;
+import org.forpdi.planning.fields.table.TableFields;
+import org.forpdi.planning.fields.table.TableInstance;
+import org.forpdi.planning.fields.table.TableStructure;
+import org.forpdi.planning.fields.table.TableValues;
+import org.forpdi.planning.plan.Plan;
+import org.forpdi.planning.plan.PlanDetailed;
+import org.forpdi.planning.plan.PlanMacro;
+import org.forpdi.planning.plan.PlanMacroField;
+import org.forpdi.planning.structure.StructureLevel;
+import org.forpdi.planning.structure.StructureLevelInstance;
+import org.forpdi.planning.structure.StructureLevelInstanceDetailed;
+import org.forrisco.core.item.FieldItem;
+import org.forrisco.core.item.FieldSubItem;
+import org.forrisco.core.item.Item;
+import org.forrisco.core.item.PlanRiskItem;
+import org.forrisco.core.item.PlanRiskItemField;
+import org.forrisco.core.item.PlanRiskSubItem;
+import org.forrisco.core.item.PlanRiskSubItemField;
+import org.forrisco.core.item.SubItem;
+import org.forrisco.core.plan.PlanRisk;
+import org.forrisco.core.policy.Policy;
+import org.forrisco.core.process.Process;
+import org.forrisco.core.process.ProcessUnit;
+import org.forrisco.core.unit.Unit;
+import org.forrisco.risk.Contingency;
+import org.forrisco.risk.Incident;
+import org.forrisco.risk.Monitor;
+import org.forrisco.risk.MonitorHistory;
+import org.forrisco.risk.PreventiveAction;
+import org.forrisco.risk.Risk;
+import org.forrisco.risk.RiskHistory;
+import org.forrisco.risk.RiskLevel;
+import org.forrisco.risk.objective.RiskActivity;
+import org.forrisco.risk.objective.RiskProcess;
+import org.forrisco.risk.objective.RiskStrategy;
+
+/**
+ * Entidades que alimentam os relatórios, com o caminho de cada uma até o
+ * plano ({@link ReportScope}) cuja versão dos dados ela altera.
+ *
+ * A chave de uma entidade é o id do relacionamento indicado, lido do estado
+ * da entidade, ou o próprio id quando não há relacionamento. Se a chave não
+ * for o id do plano, a consulta converte as chaves em ids de plano; ela
+ * termina em um filtro {@code IN (%1$s)} completado com as chaves.
+ */
+public enum ReportDataSource {
+
+	PLAN_MACRO(PlanMacro.class, null, ReportScope.PLAN_MACRO, null),
+	PLAN_MACRO_FIELD(PlanMacroField.class, "macro", ReportScope.PLAN_MACRO, null),
+	PLAN(Plan.class, "parent", ReportScope.PLAN_MACRO, null),
+	PLAN_DETAILED(PlanDetailed.class, "plan", ReportScope.PLAN_MACRO, Sql.MACRO_BY_PLAN),
+	LEVEL_INSTANCE(StructureLevelInstance.class, "plan", ReportScope.PLAN_MACRO, Sql.MACRO_BY_PLAN),
+	LEVEL_INSTANCE_DETAILED(StructureLevelInstanceDetailed.class, "levelInstance", ReportScope.PLAN_MACRO,
+		Sql.MACRO_BY_LEVEL_INSTANCE),
+	LEVEL_INSTANCE_HISTORY(LevelInstanceHistory.class, "levelInstance", ReportScope.PLAN_MACRO,
+		Sql.MACRO_BY_LEVEL_INSTANCE),
+	ATTRIBUTE_INSTANCE(AttributeInstance.class, "levelInstance", ReportScope.PLAN_MACRO, Sql.MACRO_BY_LEVEL_INSTANCE),
+	AGGREGATE_INDICATOR(AggregateIndicator.class, "aggregate", ReportScope.PLAN_MACRO, Sql.MACRO_BY_LEVEL_INSTANCE),
+	ATTACHMENT(Attachment.class, "levelInstance", ReportScope.PLAN_MACRO, Sql.MACRO_BY_LEVEL_INSTANCE),
+	ACTION_PLAN(ActionPlan.class, "levelInstance", ReportScope.PLAN_MACRO, Sql.MACRO_BY_LEVEL_INSTANCE),
+	BUDGET(Budget.class, "levelInstance", ReportScope.PLAN_MACRO, Sql.MACRO_BY_LEVEL_INSTANCE),
+	BUDGET_ELEMENT(BudgetElement.class, null, ReportScope.PLAN_MACRO, Sql.MACRO_BY_BUDGET_ELEMENT),
+	DOCUMENT(Document.class, "plan", ReportScope.PLAN_MACRO, null),
+	DOCUMENT_SECTION(DocumentSection.class, "document", ReportScope.PLAN_MACRO, Sql.MACRO_BY_DOCUMENT),
+	DOCUMENT_ATTRIBUTE(DocumentAttribute.class, "section", ReportScope.PLAN_MACRO, Sql.MACRO_BY_SECTION),
+	TABLE_FIELDS(TableFields.class, null, ReportScope.PLAN_MACRO, Sql.MACRO_BY_TABLE_FIELDS),
+	TABLE_INSTANCE(TableInstance.class, "tableFields", ReportScope.PLAN_MACRO, Sql.MACRO_BY_TABLE_FIELDS),
+	TABLE_STRUCTURE(TableStructure.class, "tableFields", ReportScope.PLAN_MACRO, Sql.MACRO_BY_TABLE_FIELDS),
+	TABLE_VALUES(TableValues.class, "tableInstance", ReportScope.PLAN_MACRO, Sql.MACRO_BY_TABLE_INSTANCE),
+	SCHEDULE(Schedule.class, null, ReportScope.PLAN_MACRO, Sql.MACRO_BY_SCHEDULE),
+	SCHEDULE_INSTANCE(ScheduleInstance.class, "schedule", ReportScope.PLAN_MACRO, Sql.MACRO_BY_SCHEDULE),
+	SCHEDULE_STRUCTURE(ScheduleStructure.class, "schedule", ReportScope.PLAN_MACRO, Sql.MACRO_BY_SCHEDULE),
+	SCHEDULE_VALUES(ScheduleValues.class, "scheduleInstance", ReportScope.PLAN_MACRO,
+		Sql.MACRO_BY_SCHEDULE_INSTANCE),
+
+	POLICY(Policy.class, null, ReportScope.POLICY, null),
+	RISK_LEVEL(RiskLevel.class, "policy", ReportScope.POLICY, null),
+	ITEM(Item.class, "policy", ReportScope.POLICY, null),
+	FIELD_ITEM(FieldItem.class, "item", ReportScope.POLICY, Sql.POLICY_BY_ITEM),
+	SUBITEM(SubItem.class, "item", ReportScope.POLICY, Sql.POLICY_BY_ITEM),
+	FIELD_SUBITEM(FieldSubItem.class, "subitem", ReportScope.POLICY, Sql.POLICY_BY_SUBITEM),
+
+	PLAN_RISK(PlanRisk.class, null, ReportScope.PLAN_RISK, null),
+	PLAN_RISK_ITEM(PlanRiskItem.class, "planRisk", ReportScope.PLAN_RISK, null),
+	PLAN_RISK_ITEM_FIELD(PlanRiskItemField.class, "planRiskItem", ReportScope.PLAN_RISK, Sql.PLAN_RISK_BY_ITEM),
+	PLAN_RISK_SUBITEM(PlanRiskSubItem.class, "planRiskItem", ReportScope.PLAN_RISK, Sql.PLAN_RISK_BY_ITEM),
+	PLAN_RISK_SUBITEM_FIELD(PlanRiskSubItemField.class, "planRiskSubItem", ReportScope.PLAN_RISK,
+		Sql.PLAN_RISK_BY_SUBITEM),
+	UNIT(Unit.class, "planRisk", ReportScope.PLAN_RISK, null),
+	PROCESS(Process.class, null, ReportScope.PLAN_RISK, Sql.PLAN_RISK_BY_PROCESS),
+	PROCESS_UNIT(ProcessUnit.class, "unit", ReportScope.PLAN_RISK, Sql.PLAN_RISK_BY_UNIT),
+	RISK(Risk.class, "unit", ReportScope.PLAN_RISK, Sql.PLAN_RISK_BY_UNIT),
+	RISK_HISTORY(RiskHistory.class, "unit", ReportScope.PLAN_RISK, Sql.PLAN_RISK_BY_UNIT),
+	MONITOR_HISTORY(MonitorHistory.class, "unit", ReportScope.PLAN_RISK, Sql.PLAN_RISK_BY_UNIT),
+	MONITOR(Monitor.class, "risk", ReportScope.PLAN_RISK, Sql.PLAN_RISK_BY_RISK),
+	INCIDENT(Incident.class, "risk", ReportScope.PLAN_RISK, Sql.PLAN_RISK_BY_RISK),
+	PREVENTIVE_ACTION(PreventiveAction.class, "risk", ReportScope.PLAN_RISK, Sql.PLAN_RISK_BY_RISK),
+	CONTINGENCY(Contingency.class, "risk", ReportScope.PLAN_RISK, Sql.PLAN_RISK_BY_RISK),
+	RISK_PROCESS(RiskProcess.class, "risk", ReportScope.PLAN_RISK, Sql.PLAN_RISK_BY_RISK),
+	RISK_ACTIVITY(RiskActivity.class, "risk", ReportScope.PLAN_RISK, Sql.PLAN_RISK_BY_RISK),
+	RISK_STRATEGY(RiskStrategy.class, "risk", ReportScope.PLAN_RISK, Sql.PLAN_RISK_BY_RISK);
+
+	/** Consultas que convertem chaves em ids de plano. */
+	private static final class Sql {
+		static final String MACRO_BY_PLAN = "SELECT parent_id FROM " + Plan.TABLE + " WHERE id IN (%1$s)";
+		static final String MACRO_BY_LEVEL_INSTANCE = "SELECT p.parent_id"
+			+ " FROM " + StructureLevelInstance.TABLE + " li"
+			+ " JOIN " + Plan.TABLE + " p ON p.id = li.plan_id"
+			+ " WHERE li.id IN (%1$s)";
+		static final String MACRO_BY_BUDGET_ELEMENT = "SELECT m.id"
+			+ " FROM " + BudgetElement.TABLE + " b"
+			+ " JOIN " + PlanMacro.TABLE + " m ON m.company_id = b.company_id"
+			+ " WHERE b.id IN (%1$s)";
+		static final String MACRO_BY_DOCUMENT = "SELECT plan_id FROM " + Document.TABLE + " WHERE id IN (%1$s)";
+		static final String MACRO_BY_SECTION = "SELECT d.plan_id"
+			+ " FROM " + DocumentSection.TABLE + " s"
+			+ " JOIN " + Document.TABLE + " d ON d.id = s.document_id"
+			+ " WHERE s.id IN (%1$s)";
+		static final String MACRO_BY_TABLE_FIELDS = macroByField(TableFields.TABLE);
+		static final String MACRO_BY_TABLE_INSTANCE = String.format(MACRO_BY_TABLE_FIELDS,
+			"SELECT tableFields_id FROM " + TableInstance.TABLE + " WHERE id IN (%1$s)");
+		static final String MACRO_BY_SCHEDULE = macroByField(Schedule.TABLE);
+		static final String MACRO_BY_SCHEDULE_INSTANCE = String.format(MACRO_BY_SCHEDULE,
+			"SELECT schedule_id FROM " + ScheduleInstance.TABLE + " WHERE id IN (%1$s)");
+
+		static final String POLICY_BY_ITEM = "SELECT policy_id FROM " + Item.TABLE + " WHERE id IN (%1$s)";
+		static final String POLICY_BY_SUBITEM = "SELECT i.policy_id"
+			+ " FROM " + SubItem.TABLE + " s"
+			+ " JOIN " + Item.TABLE + " i ON i.id = s.item_id"
+			+ " WHERE s.id IN (%1$s)";
+
+		static final String PLAN_RISK_BY_ITEM = "SELECT planRisk_id FROM " + PlanRiskItem.TABLE
+			+ " WHERE id IN (%1$s)";
+		static final String PLAN_RISK_BY_SUBITEM = "SELECT i.planRisk_id"
+			+ " FROM " + PlanRiskSubItem.TABLE + " s"
+			+ " JOIN " + PlanRiskItem.TABLE + " i ON i.id = s.planRiskItem_id"
+			+ " WHERE s.id IN (%1$s)";
+		static final String PLAN_RISK_BY_UNIT = "SELECT planRisk_id FROM " + Unit.TABLE + " WHERE id IN (%1$s)";
+		static final String PLAN_RISK_BY_RISK = "SELECT u.planRisk_id"
+			+ " FROM " + Risk.TABLE + " r"
+			+ " JOIN " + Unit.TABLE + " u ON u.id = r.unit_id"
+			+ " WHERE r.id IN (%1$s)";
+		static final String PLAN_RISK_BY_PROCESS = "SELECT u.planRisk_id"
+			+ " FROM " + ProcessUnit.TABLE + " pu"
+			+ " JOIN " + Unit.TABLE + " u ON u.id = pu.unit_id"
+			+ " WHERE pu.process_id IN (%1$s)"
+			+ " UNION SELECT u.planRisk_id"
+			+ " FROM " + Process.TABLE + " p"
+			+ " JOIN " + Unit.TABLE + " u ON u.id = p.unitCreator_id"
+			+ " WHERE p.id IN (%1$s)";
+
+		/**
+		 * Tabelas e cronogramas pertencem a um atributo de documento ou a um
+		 * atributo da estrutura, usado por todos os planos da estrutura.
+		 */
+		private static String macroByField(String table) {
+			return "SELECT d.plan_id"
+				+ " FROM " + table + " f"
+				+ " JOIN " + DocumentAttribute.TABLE + " da ON da.id = f.attributeId"
+				+ " JOIN " + DocumentSection.TABLE + " s ON s.id = da.section_id"
+				+ " JOIN " + Document.TABLE + " d ON d.id = s.document_id"
+				+ " WHERE f.isDocument = 1 AND f.id IN (%1$s)"
+				+ " UNION SELECT p.parent_id"
+				+ " FROM " + table + " f"
+				+ " JOIN " + Attribute.TABLE + " a ON a.id = f.attributeId"
+				+ " JOIN " + StructureLevel.TABLE + " l ON l.id = a.level_id"
+				+ " JOIN " + Plan.TABLE + " p ON p.structure_id = l.structure_id"
+				+ " WHERE f.isDocument = 0 AND f.id IN (%1$s)";
+		}
+	}
+
+	private static final Map<Class<?>, ReportDataSource> BY_ENTITY = new HashMap<>();
+
+	static {
+		for (ReportDataSource source : values()) {
+			BY_ENTITY.put(source.entity, source);
+		}
+	}
+
+	private final Class<?> entity;
+	private final String property;
+	private final ReportScope scope;
+	private final String scopeIds;
+
+	private ReportDataSource(Class<?> entity, String property, ReportScope scope, String scopeIds) {
+		this.entity = entity;
+		this.property = property;
+		this.scope = scope;
+		this.scopeIds = scopeIds;
+	}
+
+	/**
+	 * Origem dos dados de uma entidade.
+	 *
+	 * @return ReportDataSource Origem, ou null se a entidade não alimenta os
+	 *         relatórios.
+	 */
+	public static ReportDataSource of(Class<?> entity) {
+		return BY_ENTITY.get(entity);
+	}
+
+	/** Relacionamento cujo id é a chave, ou null para o id da entidade. */
+	String getProperty() {
+		return property;
+	}
+
+	public ReportScope getScope() {
+		return scope;
+	}
+
+	/**
+	 * Consulta dos ids de plano de um conjunto de chaves.
+	 *
+	 * @param keys
+	 *            Chaves separadas por vírgula.
+	 * @return String Consulta, ou null se as chaves já são ids de plano.
+	 */
+	String scopeIds(String keys) {
+		return this.scopeIds == null ? null : String.format(this.scopeIds, keys);
+	}
+}
@@ -0,0 +1,55 @@
+package org.forpdi.system.reports;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import br.com.caelum.vraptor.boilerplate.SimpleEntity;
+
+/**
+ * Versão dos dados de um plano usados nos relatórios. Incrementada por
+ * {@link ReportDataVersion} na mesma transação que altera os dados.
+ */
+@Entity(name = ReportDataStamp.TABLE)
+@Table(name = ReportDataStamp.TABLE, uniqueConstraints = {
+	@UniqueConstraint(columnNames = { "scope", "scopeId" })
+})
+public class ReportDataStamp extends SimpleEntity {
+	public static final String TABLE = "fpdi_report_data_stamp";
+	private static final long serialVersionUID = 1L;
+
+	/** Tipo do escopo, {@link ReportScope#getId()}. */
+	@Column(nullable = false)
+	private int scope;
+
+	@Column(nullable = false)
+	private Long scopeId;
+
+	@Column(nullable = false)
+	private long version;
+
+	public int getScope() {
+		return scope;
+	}
+
+	public void setScope(int scope) {
+		this.scope = scope;
+	}
+
+	public Long getScopeId() {
+		return scopeId;
+	}
+
+	public void setScopeId(Long scopeId) {
+		this.scopeId = scopeId;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+}
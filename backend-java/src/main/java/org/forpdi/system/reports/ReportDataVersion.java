@@ -0,0 +1,192 @@
+package org.forpdi.system.reports;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.hibernate.Session;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+
+import br.com.caelum.vraptor.boilerplate.SimpleEntity;
+
+/**
+ * Versão dos dados usados nos relatórios, mantida por plano em
+ * {@link ReportDataStamp} e parte da chave do cache de relatórios: um
+ * relatório gerado com uma versão antiga não é mais reaproveitado.
+ *
+ * As entidades de {@link ReportDataSource} gravadas pelo Hibernate têm as
+ * suas chaves acumuladas durante a transação; antes do commit as chaves são
+ * convertidas em planos e a versão de cada plano é incrementada, na mesma
+ * transação. Gravações feitas diretamente por JDBC não passam pelos eventos
+ * do Hibernate e devem chamar
+ * {@link #touch(Connection, ReportDataSource, Collection)}.
+ */
+public final class ReportDataVersion implements PostInsertEventListener, PostUpdateEventListener,
+		PostDeleteEventListener {
+	private static final long serialVersionUID = 1L;
+
+	private static final int BATCH_SIZE = 500;
+
+	private static final String UPSERT_VERSION = "INSERT INTO " + ReportDataStamp.TABLE
+			+ " (scope, scopeId, version) VALUES (?, ?, 1) ON DUPLICATE KEY UPDATE version = version + 1";
+
+	/** Chaves alteradas em cada sessão, até o fim da transação. */
+	private static final Map<SessionImplementor, Map<ReportDataSource, Set<Long>>> CHANGES = Collections
+			.synchronizedMap(new IdentityHashMap<>());
+
+	/**
+	 * Incrementa a versão dos planos de um conjunto de chaves, para as
+	 * gravações feitas via JDBC.
+	 *
+	 * @param connection
+	 *            Conexão, na transação da gravação.
+	 * @param source
+	 *            Entidade gravada.
+	 * @param keys
+	 *            Chaves das entidades gravadas: ids do relacionamento de
+	 *            {@link ReportDataSource}, ou ids de plano para
+	 *            {@link ReportDataSource#PLAN_MACRO},
+	 *            {@link ReportDataSource#POLICY} e
+	 *            {@link ReportDataSource#PLAN_RISK}.
+	 * @throws SQLException
+	 */
+	public static void touch(Connection connection, ReportDataSource source, Collection<Long> keys)
+			throws SQLException {
+		Map<ReportDataSource, Set<Long>> changes = new EnumMap<>(ReportDataSource.class);
+		changes.put(source, new TreeSet<>(keys));
+		touch(connection, changes);
+	}
+
+	private static void touch(Connection connection, Map<ReportDataSource, Set<Long>> changes)
+			throws SQLException {
+		Map<ReportScope, Set<Long>> scopes = new EnumMap<>(ReportScope.class);
+		for (Map.Entry<ReportDataSource, Set<Long>> entry : changes.entrySet()) {
+			Set<Long> ids = scopes.computeIfAbsent(entry.getKey().getScope(), (scope) -> new TreeSet<>());
+			List<Long> keys = new ArrayList<>(entry.getValue());
+			for (int from = 0; from < keys.size(); from += BATCH_SIZE) {
+				String chunk = keys.subList(from, Math.min(from + BATCH_SIZE, keys.size())).stream()
+					.map(String::valueOf).collect(Collectors.joining(","));
+				String sql = entry.getKey().scopeIds(chunk);
+				if (sql == null) {
+					ids.addAll(keys.subList(from, Math.min(from + BATCH_SIZE, keys.size())));
+					continue;
+				}
+				try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+					while (rs.next()) {
+						long id = rs.getLong(1);
+						if (!rs.wasNull())
+							ids.add(id);
+					}
+				}
+			}
+		}
+		// Sempre na mesma ordem, para que transações concorrentes não travem.
+		try (PreparedStatement stmt = connection.prepareStatement(UPSERT_VERSION)) {
+			for (Map.Entry<ReportScope, Set<Long>> entry : scopes.entrySet()) {
+				for (Long id : entry.getValue()) {
+					stmt.setInt(1, entry.getKey().getId());
+					stmt.setLong(2, id);
+					stmt.executeUpdate();
+				}
+			}
+		}
+	}
+
+	private static void record(EventSource session, Object entity, Serializable id, EntityPersister persister,
+			Object[]... states) {
+		ReportDataSource source = ReportDataSource.of(entity.getClass());
+		if (source == null) {
+			return;
+		}
+		List<Long> keys = new ArrayList<>(2);
+		if (source.getProperty() == null) {
+			keys.add((Long) id);
+		} else {
+			int index = persister.getEntityMetamodel().getPropertyIndex(source.getProperty());
+			for (Object[] state : states) {
+				Long key = state == null ? null : idOf(state[index]);
+				if (key != null)
+					keys.add(key);
+			}
+		}
+		if (keys.isEmpty()) {
+			return;
+		}
+		Map<ReportDataSource, Set<Long>> changes = CHANGES.get(session);
+		if (changes == null) {
+			changes = new EnumMap<>(ReportDataSource.class);
+			CHANGES.put(session, changes);
+			session.getActionQueue().registerProcess(new BeforeTransactionCompletionProcess() {
+				@Override
+				public void doBeforeTransactionCompletion(SessionImplementor session) {
+					Map<ReportDataSource, Set<Long>> pending = CHANGES.remove(session);
+					if (pending != null && !pending.isEmpty()) {
+						((Session) session).doWork((connection) -> touch(connection, pending));
+					}
+				}
+			});
+			session.getActionQueue().registerProcess(new AfterTransactionCompletionProcess() {
+				@Override
+				public void doAfterTransactionCompletion(boolean success, SessionImplementor session) {
+					CHANGES.remove(session);
+				}
+			});
+		}
+		changes.computeIfAbsent(source, (key) -> new TreeSet<>()).addAll(keys);
+	}
+
+	/** Id de uma entidade relacionada, sem inicializar o proxy. */
+	private static Long idOf(Object value) {
+		if (value instanceof HibernateProxy) {
+			return (Long) ((HibernateProxy) value).getHibernateLazyInitializer().getIdentifier();
+		}
+		if (value instanceof SimpleEntity) {
+			return ((SimpleEntity) value).getId();
+		}
+		return null;
+	}
+
+	@Override
+	public void onPostInsert(PostInsertEvent event) {
+		record(event.getSession(), event.getEntity(), event.getId(), event.getPersister(), event.getState());
+	}
+
+	@Override
+	public void onPostUpdate(PostUpdateEvent event) {
+		record(event.getSession(), event.getEntity(), event.getId(), event.getPersister(), event.getState(),
+				event.getOldState());
+	}
+
+	@Override
+	public void onPostDelete(PostDeleteEvent event) {
+		record(event.getSession(), event.getEntity(), event.getId(), event.getPersister(), event.getDeletedState());
+	}
+
+	public boolean requiresPostCommitHanding(EntityPersister persister) {
+		return false;
+	}
+}
@@ -0,0 +1,99 @@
+package org.forpdi.system.reports;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Relatório PDF gerado em segundo plano pelo {@link ReportJobService}.
+ */
+public class ReportJob implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public static enum Status {
+		PENDING, RUNNING, DONE, FAILED
+	}
+
+	private final String id;
+	private final String title;
+	private final long companyId;
+	private final long userId;
+	private final String version;
+	private volatile Status status = Status.PENDING;
+	private volatile String error;
+	private final Date created = new Date();
+	private volatile Date finished;
+	private transient volatile File file;
+
+	ReportJob(String id, String title, long companyId, long userId, String version) {
+		this.id = id;
+		this.title = title;
+		this.companyId = companyId;
+		this.userId = userId;
+		this.version = version;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public Date getCreated() {
+		return created;
+	}
+
+	public Date getFinished() {
+		return finished;
+	}
+
+	public boolean isDone() {
+		return status == Status.DONE;
+	}
+
+	public boolean isFinished() {
+		return status == Status.DONE || status == Status.FAILED;
+	}
+
+	long getCompanyId() {
+		return companyId;
+	}
+
+	long getUserId() {
+		return userId;
+	}
+
+	String getVersion() {
+		return version;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	void running() {
+		this.status = Status.RUNNING;
+	}
+
+	void done(File file) {
+		this.file = file;
+		this.finished = new Date();
+		this.status = Status.DONE;
+	}
+
+	void failed(String error) {
+		this.error = error;
+		this.finished = new Date();
+		this.status = Status.FAILED;
+	}
+}
@@ -0,0 +1,288 @@
+package org.forpdi.system.reports;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.spi.CDI;
+import javax.inject.Inject;
+
+import org.forpdi.core.company.CompanyDomain;
+import org.forpdi.core.company.CurrentDomainProducer;
+import org.forpdi.core.properties.SystemConfigs;
+import org.forpdi.core.user.auth.UserSession;
+import org.forpdi.system.PDFgenerate;
+import org.jboss.logging.Logger;
+import org.jboss.weld.context.bound.Bound;
+import org.jboss.weld.context.bound.BoundRequestContext;
+import org.jboss.weld.context.bound.BoundSessionContext;
+
+import br.com.caelum.vraptor.boilerplate.HibernateDAO;
+
+/**
+ * Gera os relatórios PDF em segundo plano, em um pool limitado de threads,
+ * para não ocupar as threads das requisições HTTP.
+ *
+ * Os relatórios prontos ficam em cache, indexados pelo usuário, pelo tipo e
+ * parâmetros do relatório e pela {@link ReportDataVersion versão dos dados}
+ * dos planos do relatório: enquanto esses dados não mudam, um novo pedido do
+ * mesmo usuário é atendido com o arquivo já gerado. Um relatório que sai do
+ * cache continua disponível pelo seu id, e o arquivo é removido uma hora
+ * depois da conclusão.
+ */
+@ApplicationScoped
+public class ReportJobService {
+
+	private static final Logger LOG = Logger.getLogger(ReportJobService.class);
+
+	/** Tempo que os dados de um relatório concluído ficam disponíveis. */
+	private static final long JOB_TTL = TimeUnit.HOURS.toMillis(1);
+
+	/** Quantidade máxima de relatórios prontos mantidos em cache. */
+	private static final int CACHE_SIZE = 64;
+
+	/**
+	 * Gera o arquivo PDF do relatório.
+	 */
+	@FunctionalInterface
+	public static interface ReportGenerator {
+		File generate(PDFgenerate pdf) throws Exception;
+	}
+
+	/**
+	 * Gera o relatório como um fluxo de entrada, que é gravado em arquivo.
+	 */
+	@FunctionalInterface
+	public static interface ReportStreamGenerator {
+		InputStream generate(PDFgenerate pdf) throws Exception;
+	}
+
+	@Inject @Bound private BoundRequestContext requestContext;
+	@Inject @Bound private BoundSessionContext sessionContext;
+
+	private final Map<String, ReportJob> jobs = new ConcurrentHashMap<>();
+	private final Map<String, ReportJob> cache = new LinkedHashMap<String, ReportJob>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ReportJob> eldest) {
+			// o arquivo continua disponível pelo id até ser descartado por purge()
+			return this.size() > CACHE_SIZE;
+		}
+	};
+	private ThreadPoolExecutor executor;
+	private File outputDir;
+
+	@PostConstruct
+	public void initialize() {
+		final int workers = intConfig("report.workers", 2);
+		final int queue = intConfig("report.queue", 16);
+		final AtomicInteger count = new AtomicInteger();
+		final ThreadFactory factory = (runnable) -> {
+			Thread thread = new Thread(runnable, "forpdi-report-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queue), factory, new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * Agenda a geração de um relatório gravado em arquivo.
+	 *
+	 * @param context
+	 *            Instituição e usuário do relatório.
+	 * @param key
+	 *            Tipo e parâmetros do relatório, identificam o relatório no cache.
+	 * @param version
+	 *            Versão dos dados dos planos do relatório, lida por {@link ReportBS}.
+	 * @param title
+	 *            Título do relatório, usado no nome do arquivo.
+	 * @param generator
+	 *            Gera o arquivo do relatório.
+	 * @return ReportJob Relatório agendado, em andamento ou já concluído.
+	 * @throws RejectedExecutionException
+	 *             Se a fila de relatórios estiver cheia.
+	 */
+	public ReportJob submit(ReportContext context, String key, String version, String title,
+			ReportGenerator generator) {
+		final String cacheKey = context.getCompanyId() + ":" + context.getUserId() + ":" + key;
+		this.purge();
+		synchronized (this.cache) {
+			final ReportJob cached = this.cache.get(cacheKey);
+			if (cached != null && cached.getVersion().equals(version)
+					&& cached.getStatus() != ReportJob.Status.FAILED
+					&& (!cached.isDone() || cached.getFile().exists())) {
+				this.jobs.putIfAbsent(cached.getId(), cached);
+				return cached;
+			}
+			final ReportJob job = new ReportJob(UUID.randomUUID().toString(), title, context.getCompanyId(),
+					context.getUserId(), version);
+			this.executor.execute(() -> this.run(job, context, generator));
+			this.jobs.put(job.getId(), job);
+			this.cache.put(cacheKey, job);
+			return job;
+		}
+	}
+
+	/**
+	 * Agenda a geração de um relatório gerado como fluxo de entrada.
+	 *
+	 * @see #submit(ReportContext, String, String, String, ReportGenerator)
+	 */
+	public ReportJob submitStream(ReportContext context, String key, String version, String title,
+			ReportStreamGenerator generator) {
+		return this.submit(context, key, version, title, (pdf) -> {
+			final File file = File.createTempFile("fpdi-report-", ".pdf");
+			try (InputStream in = generator.generate(pdf)) {
+				Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			return file;
+		});
+	}
+
+	/**
+	 * Recupera um relatório agendado.
+	 *
+	 * @param id
+	 *            Id do relatório.
+	 * @param context
+	 *            Instituição e usuário atuais.
+	 * @return ReportJob Relatório ou null se não existir, tiver expirado ou
+	 *         pertencer a outro usuário.
+	 */
+	public ReportJob retrieve(String id, ReportContext context) {
+		if (id == null || context == null) {
+			return null;
+		}
+		final ReportJob job = this.jobs.get(id);
+		if (job == null || job.getCompanyId() != context.getCompanyId() || job.getUserId() != context.getUserId()) {
+			return null;
+		}
+		return job;
+	}
+
+	/**
+	 * Recupera o arquivo de um relatório concluído.
+	 *
+	 * @return File Arquivo do relatório ou null se não estiver mais disponível.
+	 */
+	public File retrieveFile(ReportJob job) {
+		final File file = job.getFile();
+		return (file != null && file.exists()) ? file : null;
+	}
+
+	private void run(ReportJob job, ReportContext context, ReportGenerator generator) {
+		job.running();
+		final Map<String, Object> requestStorage = new HashMap<>();
+		final Map<String, Object> sessionStorage = new HashMap<>();
+		this.requestContext.associate(requestStorage);
+		this.requestContext.activate();
+		this.sessionContext.associate(sessionStorage);
+		this.sessionContext.activate();
+		try {
+			final HibernateDAO dao = CDI.current().select(HibernateDAO.class).get();
+			final CurrentDomainProducer domainProducer = CDI.current().select(CurrentDomainProducer.class).get();
+			domainProducer.setInstance(dao.exists(context.getDomainId(), CompanyDomain.class));
+			context.restore(CDI.current().select(UserSession.class).get());
+			final PDFgenerate pdf = CDI.current().select(PDFgenerate.class).get();
+
+			final File generated = generator.generate(pdf);
+			final File target = new File(this.outputDir(), job.getId() + ".pdf");
+			try {
+				Files.move(generated.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException ex) {
+				Files.copy(generated.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				generated.delete();
+			}
+			job.done(target);
+			LOG.infof("Report %s (%s) generated.", job.getId(), job.getTitle());
+		} catch (Throwable ex) {
+			LOG.errorf(ex, "Error generating report %s (%s).", job.getId(), job.getTitle());
+			job.failed(ex.getMessage() == null ? ex.getClass().getSimpleName() : ex.getMessage());
+		} finally {
+			try {
+				this.sessionContext.invalidate();
+				this.sessionContext.deactivate();
+				this.requestContext.invalidate();
+				this.requestContext.deactivate();
+			} finally {
+				this.sessionContext.dissociate(sessionStorage);
+				this.requestContext.dissociate(requestStorage);
+			}
+		}
+	}
+
+	/**
+	 * Descarta os relatórios concluídos há mais de uma hora que não estão
+	 * mais em cache.
+	 */
+	private void purge() {
+		final long limit = System.currentTimeMillis() - JOB_TTL;
+		synchronized (this.cache) {
+			final Iterator<ReportJob> it = this.jobs.values().iterator();
+			while (it.hasNext()) {
+				final ReportJob job = it.next();
+				if (job.isFinished() && job.getFinished().getTime() < limit && !this.cache.containsValue(job)) {
+					this.deleteFile(job);
+					it.remove();
+				}
+			}
+		}
+	}
+
+	private void deleteFile(ReportJob job) {
+		final File file = job.getFile();
+		if (file != null && file.exists() && !file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+
+	private synchronized File outputDir() throws IOException {
+		if (this.outputDir == null) {
+			final String storagePath = SystemConfigs.getConfig("store.pdfs");
+			File dir;
+			if (storagePath == null || storagePath.equals("") || storagePath.startsWith("${")
+					|| storagePath.startsWith("???")) {
+				dir = new File(System.getProperty("java.io.tmpdir"), "fpdi-reports");
+			} else {
+				dir = new File(storagePath, "reports");
+			}
+			if (!dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("Failed to create report storage directory: " + dir.getPath());
+			}
+			this.outputDir = dir;
+		}
+		return this.outputDir;
+	}
+
+	private static int intConfig(String key, int defaultValue) {
+		try {
+			return Math.max(1, Integer.parseInt(SystemConfigs.getConfig(key).trim()));
+		} catch (RuntimeException ex) {
+			return defaultValue;
+		}
+	}
+}
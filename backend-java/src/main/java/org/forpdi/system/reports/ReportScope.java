@@ -0,0 +1,27 @@
+package org.forpdi.system.reports;
+
+/**
+ * Plano cujos dados alimentam um relatório. Cada escopo tem a sua própria
+ * {@link ReportDataVersion versão dos dados}.
+ */
+public enum ReportScope {
+
+	/** Plano macro: planos de metas, níveis, atributos e documento. */
+	PLAN_MACRO(1),
+
+	/** Política: itens, subitens e graus de risco. */
+	POLICY(2),
+
+	/** Plano de risco: itens, unidades, processos e riscos. */
+	PLAN_RISK(3);
+
+	private final int id;
+
+	private ReportScope(int id) {
+		this.id = id;
+	}
+
+	public int getId() {
+		return id;
+	}
+}
@@ -0,0 +1,223 @@
+package org.forpdi.system.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.enterprise.context.RequestScoped;
+
+import org.hibernate.Criteria;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.MatchMode;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
+import org.hibernate.sql.JoinType;
+
+import br.com.caelum.vraptor.boilerplate.HibernateBusiness;
+import br.com.caelum.vraptor.boilerplate.SimpleEntity;
+import br.com.caelum.vraptor.boilerplate.bean.PaginatedList;
+
+/**
+ * Busca textual sobre o índice invertido ({@link SearchTerm}).
+ *
+ * Cada termo buscado é comparado pelo prefixo com os termos indexados, e só
+ * são retornados os documentos que contêm todos os termos. Os resultados são
+ * ordenados pela soma dos pesos dos termos encontrados.
+ */
+@RequestScoped
+public class SearchBS extends HibernateBusiness {
+
+	/**
+	 * Busca documentos de um tipo em um escopo. Sem termos significativos na
+	 * busca, todos os documentos permitidos do escopo são retornados.
+	 *
+	 * @param type
+	 *            Tipo dos documentos.
+	 * @param scope
+	 *            Id do escopo: plano macro, política ou plano de risco.
+	 * @param terms
+	 *            Texto buscado.
+	 * @param documents
+	 *            Consulta que projeta os ids dos documentos permitidos, ou null
+	 *            para todos os documentos não excluídos.
+	 * @param ordResult
+	 *            Desempate entre documentos com a mesma relevância: 2 para os
+	 *            mais recentes primeiro, qualquer outro valor para os mais
+	 *            antigos.
+	 * @param first
+	 *            Primeiro resultado, ou null para o início.
+	 * @param max
+	 *            Número máximo de resultados, ou null para todos.
+	 * @return PaginatedList<Long> Ids dos documentos, em ordem de relevância, e
+	 *         o total de documentos encontrados.
+	 */
+	public PaginatedList<Long> search(SearchDocument type, Long scope, String terms, DetachedCriteria documents,
+			int ordResult, Integer first, Integer max) {
+		if (scope == null) {
+			return new PaginatedList<>(new ArrayList<>(0), 0L);
+		}
+		if (documents == null) {
+			documents = DetachedCriteria.forClass(type.getEntity())
+				.add(Restrictions.eq("deleted", false))
+				.setProjection(Projections.property("id"));
+		}
+		List<String> query = SearchTokenizer.query(terms);
+		if (query.isEmpty()) {
+			return this.listAll(type, scope, documents, ordResult, first, max);
+		}
+		this.ensureIndexed(type, scope);
+
+		Criteria criteria = this.termsCriteria(type, scope, query, documents)
+			.setProjection(Projections.projectionList()
+				.add(Projections.groupProperty("document"))
+				.add(Projections.alias(Projections.sum("weight"), "score")))
+			.addOrder(Order.desc("score"))
+			.addOrder(ordResult == 2 ? Order.desc("document") : Order.asc("document"));
+		if (first != null) {
+			criteria.setFirstResult(first);
+		}
+		if (max != null) {
+			criteria.setMaxResults(max);
+		}
+		List<Long> ids = new ArrayList<>();
+		for (Object[] row : this.dao.findByCriteria(criteria, Object[].class)) {
+			ids.add((Long) row[0]);
+		}
+
+		long total;
+		if (max == null && (first == null || first == 0)) {
+			total = ids.size();
+		} else {
+			Criteria count = this.termsCriteria(type, scope, query, documents)
+				.setProjection(Projections.countDistinct("document"));
+			total = (Long) count.uniqueResult();
+		}
+		return new PaginatedList<>(ids, total);
+	}
+
+	/**
+	 * Carrega entidades pelos ids, na ordem dos ids.
+	 *
+	 * @param clazz
+	 *            Classe das entidades.
+	 * @param ids
+	 *            Ids, em geral retornados por uma busca.
+	 * @return List<E> Entidades encontradas.
+	 */
+	public <E extends SimpleEntity> List<E> listByIds(Class<E> clazz, List<Long> ids) {
+		if (ids.isEmpty()) {
+			return new ArrayList<>(0);
+		}
+		Criteria criteria = this.dao.newCriteria(clazz).add(Restrictions.in("id", ids));
+		Map<Long, E> byId = new HashMap<>();
+		for (E entity : this.dao.findByCriteria(criteria, clazz)) {
+			byId.put(entity.getId(), entity);
+		}
+		List<E> list = new ArrayList<>(ids.size());
+		for (Long id : ids) {
+			E entity = byId.get(id);
+			if (entity != null)
+				list.add(entity);
+		}
+		return list;
+	}
+
+	/**
+	 * Descarta a indexação de um escopo, para os pontos que gravam documentos
+	 * sem passar pelos eventos do Hibernate.
+	 *
+	 * @param type
+	 *            Tipo dos documentos.
+	 * @param scope
+	 *            Id do escopo.
+	 */
+	public void invalidate(SearchDocument type, Long scope) {
+		this.dao.execute((session) -> {
+			session.doWork((connection) -> SearchIndex.invalidate(connection, type, scope));
+		});
+	}
+
+	/**
+	 * Todos os documentos permitidos de um escopo, para uma busca sem termos.
+	 */
+	private PaginatedList<Long> listAll(SearchDocument type, Long scope, DetachedCriteria documents, int ordResult,
+			Integer first, Integer max) {
+		Criteria criteria = this.scopeCriteria(type, scope, documents)
+			.setProjection(Projections.property("id"))
+			.addOrder(ordResult == 2 ? Order.desc("id") : Order.asc("id"));
+		if (first != null) {
+			criteria.setFirstResult(first);
+		}
+		if (max != null) {
+			criteria.setMaxResults(max);
+		}
+		List<Long> ids = this.dao.findByCriteria(criteria, Long.class);
+
+		long total;
+		if (max == null && (first == null || first == 0)) {
+			total = ids.size();
+		} else {
+			Criteria count = this.scopeCriteria(type, scope, documents).setProjection(Projections.rowCount());
+			total = (Long) count.uniqueResult();
+		}
+		return new PaginatedList<>(ids, total);
+	}
+
+	private Criteria scopeCriteria(SearchDocument type, Long scope, DetachedCriteria documents) {
+		Criteria criteria = this.dao.newCriteria(type.getEntity());
+		if (type.getScopeAssociation() != null) {
+			criteria.createAlias(type.getScopeAssociation(), type.getScopeAssociation(), JoinType.INNER_JOIN);
+		}
+		return criteria
+			.add(Restrictions.eq(type.getScopeProperty(), scope))
+			.add(Subqueries.propertyIn("id", documents));
+	}
+
+	private void ensureIndexed(SearchDocument type, Long scope) {
+		Criteria criteria = this.dao.newCriteria(SearchIndexedScope.class)
+			.add(Restrictions.eq("type", type.getId()))
+			.add(Restrictions.eq("scope", scope))
+			.add(Restrictions.eq("version", SearchIndex.VERSION))
+			.setProjection(Projections.rowCount());
+		if ((Long) criteria.uniqueResult() > 0) {
+			return;
+		}
+		try {
+			this.dao.execute((session) -> {
+				session.doWork((connection) -> {
+					int count = SearchIndex.rebuild(connection, type, scope);
+					LOGGER.info("Search index built for " + type + " " + scope + " with " + count + " documents.");
+				});
+			});
+		} catch (RuntimeException ex) {
+			// outra requisição indexou o mesmo escopo ao mesmo tempo
+			LOGGER.warn("Search index for " + type + " " + scope + " not built.", ex);
+		}
+	}
+
+	private Criteria termsCriteria(SearchDocument type, Long scope, List<String> query, DetachedCriteria documents) {
+		Criteria criteria = this.dao.newCriteria(SearchTerm.class)
+			.add(Restrictions.eq("type", type.getId()))
+			.add(Restrictions.eq("scope", scope))
+			.add(Subqueries.propertyIn("document", documents));
+		Disjunction any = Restrictions.disjunction();
+		for (String term : query) {
+			any.add(Restrictions.like("term", term, MatchMode.START));
+		}
+		criteria.add(any);
+		if (query.size() > 1) {
+			for (String term : query) {
+				criteria.add(Subqueries.propertyIn("document", DetachedCriteria.forClass(SearchTerm.class)
+					.add(Restrictions.eq("type", type.getId()))
+					.add(Restrictions.eq("scope", scope))
+					.add(Restrictions.like("term", term, MatchMode.START))
+					.setProjection(Projections.property("document"))));
+			}
+		}
+		return criteria;
+	}
+}
@@ -0,0 +1,186 @@
+package org.forpdi.system.search;
+
+import org.forpdi.planning.attribute.Attribute;
+import org.forpdi.planning.attribute.AttributeInstance;
+import org.forpdi.planning.attribute.types.ResponsibleField;
+import org.forpdi.planning.plan.Plan;
+import org.forpdi.planning.structure.StructureLevelInstance;
+import org.forrisco.core.item.FieldItem;
+import org.forrisco.core.item.FieldSubItem;
+import org.forrisco.core.item.Item;
+import org.forrisco.core.item.PlanRiskItem;
+import org.forrisco.core.item.PlanRiskItemField;
+import org.forrisco.core.item.PlanRiskSubItem;
+import org.forrisco.core.item.PlanRiskSubItemField;
+import org.forrisco.core.item.SubItem;
+import org.forrisco.core.unit.Unit;
+import org.forrisco.risk.Risk;
+
+import br.com.caelum.vraptor.boilerplate.SimpleLogicalDeletableEntity;
+
+/**
+ * Tipos de documento do índice de busca, com as consultas que leem os textos
+ * indexados de cada tipo.
+ *
+ * A consulta dos documentos retorna id, escopo, título e texto; a dos campos
+ * retorna o id do documento e dois textos. As duas terminam em um filtro
+ * completado com a coluna do escopo ou do documento.
+ */
+public enum SearchDocument {
+
+	/** Instâncias de nível, no escopo do plano macro: nome e valores dos atributos. */
+	LEVEL_INSTANCE(1, StructureLevelInstance.class, "plan", "plan.parent.id",
+		"SELECT li.id, p.parent_id, li.name, NULL"
+			+ " FROM " + StructureLevelInstance.TABLE + " li"
+			+ " JOIN " + Plan.TABLE + " p ON p.id = li.plan_id"
+			+ " WHERE li.deleted = 0 AND ",
+		"p.parent_id", "li.id",
+		"SELECT ai.levelInstance_id, ai.value, NULL"
+			+ " FROM " + AttributeInstance.TABLE + " ai"
+			+ " JOIN " + Attribute.TABLE + " a ON a.id = ai.attribute_id"
+			+ " JOIN " + StructureLevelInstance.TABLE + " li ON li.id = ai.levelInstance_id"
+			+ " JOIN " + Plan.TABLE + " p ON p.id = li.plan_id"
+			+ " WHERE ai.deleted = 0 AND a.type <> '" + ResponsibleField.class.getCanonicalName() + "' AND ",
+		"ai.levelInstance_id"),
+
+	/** Itens de uma política: nome, descrição e campos. */
+	POLICY_ITEM(2, Item.class, null, "policy.id",
+		"SELECT i.id, i.policy_id, i.name, i.description"
+			+ " FROM " + Item.TABLE + " i"
+			+ " WHERE i.deleted = 0 AND ",
+		"i.policy_id", "i.id",
+		"SELECT f.item_id, f.name, f.description"
+			+ " FROM " + FieldItem.TABLE + " f"
+			+ " JOIN " + Item.TABLE + " i ON i.id = f.item_id"
+			+ " WHERE f.deleted = 0 AND ",
+		"f.item_id"),
+
+	/** Subitens de uma política: nome, descrição e campos. */
+	POLICY_SUBITEM(3, SubItem.class, "item", "item.policy.id",
+		"SELECT s.id, i.policy_id, s.name, s.description"
+			+ " FROM " + SubItem.TABLE + " s"
+			+ " JOIN " + Item.TABLE + " i ON i.id = s.item_id"
+			+ " WHERE s.deleted = 0 AND ",
+		"i.policy_id", "s.id",
+		"SELECT f.subitem_id, f.name, f.description"
+			+ " FROM " + FieldSubItem.TABLE + " f"
+			+ " JOIN " + SubItem.TABLE + " s ON s.id = f.subitem_id"
+			+ " JOIN " + Item.TABLE + " i ON i.id = s.item_id"
+			+ " WHERE f.deleted = 0 AND ",
+		"f.subitem_id"),
+
+	/** Itens de um plano de risco: nome, descrição e campos. */
+	PLAN_RISK_ITEM(4, PlanRiskItem.class, null, "planRisk.id",
+		"SELECT i.id, i.planRisk_id, i.name, i.description"
+			+ " FROM " + PlanRiskItem.TABLE + " i"
+			+ " WHERE i.deleted = 0 AND ",
+		"i.planRisk_id", "i.id",
+		"SELECT f.planRiskItem_id, f.name, f.description"
+			+ " FROM " + PlanRiskItemField.TABLE + " f"
+			+ " JOIN " + PlanRiskItem.TABLE + " i ON i.id = f.planRiskItem_id"
+			+ " WHERE f.deleted = 0 AND ",
+		"f.planRiskItem_id"),
+
+	/** Subitens de um plano de risco: nome, descrição e campos. */
+	PLAN_RISK_SUBITEM(5, PlanRiskSubItem.class, "planRiskItem", "planRiskItem.planRisk.id",
+		"SELECT s.id, i.planRisk_id, s.name, s.description"
+			+ " FROM " + PlanRiskSubItem.TABLE + " s"
+			+ " JOIN " + PlanRiskItem.TABLE + " i ON i.id = s.planRiskItem_id"
+			+ " WHERE s.deleted = 0 AND ",
+		"i.planRisk_id", "s.id",
+		"SELECT f.planRiskSubItem_id, f.name, f.description"
+			+ " FROM " + PlanRiskSubItemField.TABLE + " f"
+			+ " JOIN " + PlanRiskSubItem.TABLE + " s ON s.id = f.planRiskSubItem_id"
+			+ " JOIN " + PlanRiskItem.TABLE + " i ON i.id = s.planRiskItem_id"
+			+ " WHERE f.deleted = 0 AND ",
+		"f.planRiskSubItem_id"),
+
+	/** Unidades de um plano de risco: nome, sigla e descrição. */
+	UNIT(6, Unit.class, null, "planRisk.id",
+		"SELECT u.id, u.planRisk_id, CONCAT_WS(' ', u.name, u.abbreviation), u.description"
+			+ " FROM " + Unit.TABLE + " u"
+			+ " WHERE u.deleted = 0 AND ",
+		"u.planRisk_id", "u.id",
+		null, null),
+
+	/** Riscos das unidades de um plano de risco: nome e código. */
+	RISK(7, Risk.class, "unit", "unit.planRisk.id",
+		"SELECT r.id, u.planRisk_id, CONCAT_WS(' ', r.name, r.code), NULL"
+			+ " FROM " + Risk.TABLE + " r"
+			+ " JOIN " + Unit.TABLE + " u ON u.id = r.unit_id"
+			+ " WHERE r.deleted = 0 AND ",
+		"u.planRisk_id", "r.id",
+		null, null);
+
+	private final int id;
+	private final Class<? extends SimpleLogicalDeletableEntity> entity;
+	private final String scopeAssociation;
+	private final String scopeProperty;
+	private final String documents;
+	private final String scopeColumn;
+	private final String idColumn;
+	private final String fields;
+	private final String fieldDocumentColumn;
+
+	private SearchDocument(int id, Class<? extends SimpleLogicalDeletableEntity> entity, String scopeAssociation,
+			String scopeProperty, String documents, String scopeColumn, String idColumn, String fields,
+			String fieldDocumentColumn) {
+		this.id = id;
+		this.entity = entity;
+		this.scopeAssociation = scopeAssociation;
+		this.scopeProperty = scopeProperty;
+		this.documents = documents;
+		this.scopeColumn = scopeColumn;
+		this.idColumn = idColumn;
+		this.fields = fields;
+		this.fieldDocumentColumn = fieldDocumentColumn;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	/** Tipo com o id informado, ou null se não existir. */
+	public static SearchDocument of(int id) {
+		for (SearchDocument type : values()) {
+			if (type.id == id) {
+				return type;
+			}
+		}
+		return null;
+	}
+
+	/** Entidade dos documentos, usada para descartar os excluídos na busca. */
+	public Class<? extends SimpleLogicalDeletableEntity> getEntity() {
+		return entity;
+	}
+
+	/**
+	 * Associação da entidade que leva ao escopo, a ser incluída com o próprio
+	 * nome como alias, ou null se o escopo é uma propriedade da entidade.
+	 */
+	public String getScopeAssociation() {
+		return scopeAssociation;
+	}
+
+	/** Propriedade da entidade com o id do escopo. */
+	public String getScopeProperty() {
+		return scopeProperty;
+	}
+
+	String documentsByScope() {
+		return this.documents + this.scopeColumn + " = ?";
+	}
+
+	String documentsById() {
+		return this.documents + this.idColumn + " = ?";
+	}
+
+	String fieldsByScope() {
+		return this.fields == null ? null : this.fields + this.scopeColumn + " = ?";
+	}
+
+	String fieldsById() {
+		return this.fields == null ? null : this.fields + this.fieldDocumentColumn + " = ?";
+	}
+}
@@ -0,0 +1,263 @@
+package org.forpdi.system.search;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Grava o índice invertido de busca ({@link SearchTerm}) via JDBC.
+ *
+ * Um escopo é indexado por inteiro na primeira busca e, a partir daí, cada
+ * documento gravado pelo Hibernate é registrado em {@link SearchPending} por
+ * {@link SearchIndexListener}, na mesma transação, e reindexado por
+ * {@link SearchIndexTask}. Os
+ * pontos que gravam documentos diretamente via JDBC devem chamar
+ * {@link #invalidate(Connection, SearchDocument, Long)}, para que o escopo
+ * seja indexado de novo na próxima busca.
+ */
+public final class SearchIndex {
+
+	/**
+	 * Versão da indexação, incrementada quando muda a forma como os textos
+	 * são quebrados em termos.
+	 */
+	public static final int VERSION = 2;
+
+	/** Peso das ocorrências de um termo no título (nome) do documento. */
+	public static final int TITLE_WEIGHT = 3;
+
+	private static final int BATCH_SIZE = 500;
+
+	private static final String DELETE_SCOPE = "DELETE FROM " + SearchTerm.TABLE + " WHERE type = ? AND scope = ?";
+	private static final String DELETE_DOCUMENT = "DELETE FROM " + SearchTerm.TABLE
+			+ " WHERE type = ? AND document = ?";
+	private static final String INSERT_TERM = "INSERT INTO " + SearchTerm.TABLE
+			+ " (type, document, scope, term, weight) VALUES (?, ?, ?, ?, ?)";
+	private static final String DELETE_INDEXED = "DELETE FROM " + SearchIndexedScope.TABLE
+			+ " WHERE type = ? AND scope = ?";
+	private static final String DELETE_INDEXED_TYPE = "DELETE FROM " + SearchIndexedScope.TABLE + " WHERE type = ?";
+	private static final String INSERT_INDEXED = "INSERT INTO " + SearchIndexedScope.TABLE
+			+ " (type, scope, version) VALUES (?, ?, " + VERSION + ")";
+
+	private static final String UPSERT_PENDING = "INSERT INTO " + SearchPending.TABLE
+			+ " (type, document, version) VALUES (?, ?, 1) ON DUPLICATE KEY UPDATE version = version + 1";
+	private static final String SELECT_PENDING = "SELECT type, document, version FROM " + SearchPending.TABLE
+			+ " ORDER BY id LIMIT ?";
+	private static final String DELETE_PENDING = "DELETE FROM " + SearchPending.TABLE
+			+ " WHERE type = ? AND document = ? AND version = ?";
+
+	private SearchIndex() {
+	}
+
+	/** Termos de um documento, com o peso somado das ocorrências. */
+	private static class Document {
+		private final long id;
+		private final long scope;
+		private final Map<String, Integer> weights = new HashMap<>();
+
+		private Document(long id, long scope) {
+			this.id = id;
+			this.scope = scope;
+		}
+
+		private void add(String text, int weight) {
+			for (Map.Entry<String, Integer> term : SearchTokenizer.terms(text).entrySet()) {
+				this.weights.merge(term.getKey(), term.getValue() * weight, Integer::sum);
+			}
+		}
+	}
+
+	/**
+	 * Indexa todos os documentos de um tipo em um escopo, substituindo os
+	 * termos já indexados, e marca o escopo como indexado.
+	 *
+	 * @param connection
+	 *            Conexão, na transação da chamada.
+	 * @param type
+	 *            Tipo dos documentos.
+	 * @param scope
+	 *            Id do escopo.
+	 * @return int Número de documentos indexados.
+	 * @throws SQLException
+	 */
+	public static int rebuild(Connection connection, SearchDocument type, long scope) throws SQLException {
+		execute(connection, DELETE_SCOPE, type, scope);
+		execute(connection, DELETE_INDEXED, type, scope);
+		Collection<Document> documents = read(connection, type.documentsByScope(), type.fieldsByScope(), scope);
+		write(connection, type, documents);
+		execute(connection, INSERT_INDEXED, type, scope);
+		return documents.size();
+	}
+
+	/**
+	 * Reindexa um documento. Documentos excluídos saem do índice.
+	 *
+	 * @param connection
+	 *            Conexão, na transação da chamada.
+	 * @param type
+	 *            Tipo do documento.
+	 * @param id
+	 *            Id do documento.
+	 * @throws SQLException
+	 */
+	public static void index(Connection connection, SearchDocument type, long id) throws SQLException {
+		execute(connection, DELETE_DOCUMENT, type, id);
+		write(connection, type, read(connection, type.documentsById(), type.fieldsById(), id));
+	}
+
+	/**
+	 * Descarta a indexação de um escopo, que será indexado de novo na próxima
+	 * busca.
+	 *
+	 * @param connection
+	 *            Conexão, na transação da chamada.
+	 * @param type
+	 *            Tipo dos documentos.
+	 * @param scope
+	 *            Id do escopo, ou null para todos os escopos do tipo.
+	 * @throws SQLException
+	 */
+	public static void invalidate(Connection connection, SearchDocument type, Long scope) throws SQLException {
+		if (scope == null) {
+			try (PreparedStatement stmt = connection.prepareStatement(DELETE_INDEXED_TYPE)) {
+				stmt.setInt(1, type.getId());
+				stmt.executeUpdate();
+			}
+		} else {
+			execute(connection, DELETE_INDEXED, type, scope);
+		}
+	}
+
+	/**
+	 * Registra documentos alterados para serem reindexados por
+	 * {@link SearchIndexTask}.
+	 *
+	 * @param connection
+	 *            Conexão, na transação que altera os documentos.
+	 * @param changes
+	 *            Ids dos documentos alterados, por tipo.
+	 * @throws SQLException
+	 */
+	public static void enqueue(Connection connection, Map<SearchDocument, ? extends Collection<Long>> changes)
+			throws SQLException {
+		try (PreparedStatement stmt = connection.prepareStatement(UPSERT_PENDING)) {
+			for (Map.Entry<SearchDocument, ? extends Collection<Long>> entry : changes.entrySet()) {
+				for (Long id : entry.getValue()) {
+					stmt.setInt(1, entry.getKey().getId());
+					stmt.setLong(2, id);
+					stmt.executeUpdate();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reindexa os documentos pendentes mais antigos e os retira da lista de
+	 * pendentes. Um documento alterado de novo durante a reindexação continua
+	 * pendente.
+	 *
+	 * @param connection
+	 *            Conexão, na transação da chamada.
+	 * @param limit
+	 *            Número máximo de documentos.
+	 * @return int Número de documentos reindexados.
+	 * @throws SQLException
+	 */
+	public static int indexPending(Connection connection, int limit) throws SQLException {
+		List<long[]> pending = new ArrayList<>();
+		try (PreparedStatement stmt = connection.prepareStatement(SELECT_PENDING)) {
+			stmt.setInt(1, limit);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					pending.add(new long[] { rs.getInt(1), rs.getLong(2), rs.getLong(3) });
+				}
+			}
+		}
+		for (long[] row : pending) {
+			SearchDocument type = SearchDocument.of((int) row[0]);
+			if (type != null) {
+				index(connection, type, row[1]);
+			}
+		}
+		try (PreparedStatement stmt = connection.prepareStatement(DELETE_PENDING)) {
+			for (long[] row : pending) {
+				stmt.setInt(1, (int) row[0]);
+				stmt.setLong(2, row[1]);
+				stmt.setLong(3, row[2]);
+				stmt.executeUpdate();
+			}
+		}
+		return pending.size();
+	}
+
+	private static void execute(Connection connection, String sql, SearchDocument type, long param)
+			throws SQLException {
+		try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+			stmt.setInt(1, type.getId());
+			stmt.setLong(2, param);
+			stmt.executeUpdate();
+		}
+	}
+
+	private static Collection<Document> read(Connection connection, String documentsSql, String fieldsSql, long param)
+			throws SQLException {
+		Map<Long, Document> documents = new LinkedHashMap<>();
+		try (PreparedStatement stmt = connection.prepareStatement(documentsSql)) {
+			stmt.setLong(1, param);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Document document = new Document(rs.getLong(1), rs.getLong(2));
+					document.add(rs.getString(3), TITLE_WEIGHT);
+					document.add(rs.getString(4), 1);
+					documents.put(document.id, document);
+				}
+			}
+		}
+		if (fieldsSql != null && !documents.isEmpty()) {
+			try (PreparedStatement stmt = connection.prepareStatement(fieldsSql)) {
+				stmt.setLong(1, param);
+				try (ResultSet rs = stmt.executeQuery()) {
+					while (rs.next()) {
+						Document document = documents.get(rs.getLong(1));
+						if (document != null) {
+							document.add(rs.getString(2), 1);
+							document.add(rs.getString(3), 1);
+						}
+					}
+				}
+			}
+		}
+		return documents.values();
+	}
+
+	private static void write(Connection connection, SearchDocument type, Collection<Document> documents)
+			throws SQLException {
+		try (PreparedStatement stmt = connection.prepareStatement(INSERT_TERM)) {
+			int batch = 0;
+			for (Document document : documents) {
+				for (Map.Entry<String, Integer> term : document.weights.entrySet()) {
+					stmt.setInt(1, type.getId());
+					stmt.setLong(2, document.id);
+					stmt.setLong(3, document.scope);
+					stmt.setString(4, term.getKey());
+					stmt.setInt(5, term.getValue());
+					stmt.addBatch();
+					if (++batch == BATCH_SIZE) {
+						stmt.executeBatch();
+						batch = 0;
+					}
+				}
+			}
+			if (batch > 0) {
+				stmt.executeBatch();
+			}
+		}
+	}
+}
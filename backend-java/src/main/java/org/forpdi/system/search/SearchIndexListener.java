@@ -0,0 +1,139 @@
+package org.forpdi.system.search;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.forpdi.planning.attribute.AttributeInstance;
+import org.forpdi.planning.structure.StructureLevelInstance;
+import org.forrisco.core.item.FieldItem;
+import org.forrisco.core.item.FieldSubItem;
+import org.forrisco.core.item.Item;
+import org.forrisco.core.item.PlanRiskItem;
+import org.forrisco.core.item.PlanRiskItemField;
+import org.forrisco.core.item.PlanRiskSubItem;
+import org.forrisco.core.item.PlanRiskSubItemField;
+import org.forrisco.core.item.SubItem;
+import org.forrisco.core.unit.Unit;
+import org.forrisco.risk.Risk;
+import org.hibernate.Session;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+
+import br.com.caelum.vraptor.boilerplate.SimpleEntity;
+
+/**
+ * Registra para reindexação os documentos de busca inseridos, alterados ou
+ * excluídos pelo Hibernate, inclusive quando a alteração é em um campo ou
+ * atributo do documento. Os documentos são acumulados durante a transação e
+ * gravados em {@link SearchPending} antes do commit. Registrado por
+ * {@link SearchIndexIntegrator}.
+ */
+public final class SearchIndexListener implements PostInsertEventListener, PostUpdateEventListener,
+		PostDeleteEventListener {
+	private static final long serialVersionUID = 1L;
+
+	/** Documentos alterados em cada sessão, até o fim da transação. */
+	private static final Map<SessionImplementor, Map<SearchDocument, Set<Long>>> CHANGES = Collections
+			.synchronizedMap(new IdentityHashMap<>());
+
+	private static void enqueue(EventSource session, Object entity) {
+		if (entity instanceof StructureLevelInstance) {
+			enqueue(session, SearchDocument.LEVEL_INSTANCE, idOf(entity));
+		} else if (entity instanceof AttributeInstance) {
+			enqueue(session, SearchDocument.LEVEL_INSTANCE, idOf(((AttributeInstance) entity).getLevelInstance()));
+		} else if (entity instanceof Item) {
+			enqueue(session, SearchDocument.POLICY_ITEM, idOf(entity));
+		} else if (entity instanceof FieldItem) {
+			enqueue(session, SearchDocument.POLICY_ITEM, idOf(((FieldItem) entity).getItem()));
+		} else if (entity instanceof SubItem) {
+			enqueue(session, SearchDocument.POLICY_SUBITEM, idOf(entity));
+		} else if (entity instanceof FieldSubItem) {
+			enqueue(session, SearchDocument.POLICY_SUBITEM, idOf(((FieldSubItem) entity).getSubitem()));
+		} else if (entity instanceof PlanRiskItem) {
+			enqueue(session, SearchDocument.PLAN_RISK_ITEM, idOf(entity));
+		} else if (entity instanceof PlanRiskItemField) {
+			enqueue(session, SearchDocument.PLAN_RISK_ITEM, idOf(((PlanRiskItemField) entity).getPlanRiskItem()));
+		} else if (entity instanceof PlanRiskSubItem) {
+			enqueue(session, SearchDocument.PLAN_RISK_SUBITEM, idOf(entity));
+		} else if (entity instanceof PlanRiskSubItemField) {
+			enqueue(session, SearchDocument.PLAN_RISK_SUBITEM,
+					idOf(((PlanRiskSubItemField) entity).getPlanRiskSubItem()));
+		} else if (entity instanceof Unit) {
+			enqueue(session, SearchDocument.UNIT, idOf(entity));
+		} else if (entity instanceof Risk) {
+			enqueue(session, SearchDocument.RISK, idOf(entity));
+		}
+	}
+
+	private static void enqueue(EventSource session, SearchDocument type, Long id) {
+		if (id == null) {
+			return;
+		}
+		Map<SearchDocument, Set<Long>> changes = CHANGES.get(session);
+		if (changes == null) {
+			changes = new EnumMap<>(SearchDocument.class);
+			CHANGES.put(session, changes);
+			session.getActionQueue().registerProcess(new BeforeTransactionCompletionProcess() {
+				@Override
+				public void doBeforeTransactionCompletion(SessionImplementor session) {
+					Map<SearchDocument, Set<Long>> pending = CHANGES.remove(session);
+					if (pending != null && !pending.isEmpty()) {
+						((Session) session).doWork((connection) -> SearchIndex.enqueue(connection, pending));
+					}
+				}
+			});
+			session.getActionQueue().registerProcess(new AfterTransactionCompletionProcess() {
+				@Override
+				public void doAfterTransactionCompletion(boolean success, SessionImplementor session) {
+					CHANGES.remove(session);
+				}
+			});
+		}
+		// ordenados, para que transações concorrentes não travem
+		changes.computeIfAbsent(type, (key) -> new TreeSet<>()).add(id);
+	}
+
+	/** Id de um documento, sem inicializar o proxy. */
+	private static Long idOf(Object value) {
+		if (value instanceof HibernateProxy) {
+			return (Long) ((HibernateProxy) value).getHibernateLazyInitializer().getIdentifier();
+		}
+		if (value instanceof SimpleEntity) {
+			return ((SimpleEntity) value).getId();
+		}
+		return null;
+	}
+
+	@Override
+	public void onPostInsert(PostInsertEvent event) {
+		enqueue(event.getSession(), event.getEntity());
+	}
+
+	@Override
+	public void onPostUpdate(PostUpdateEvent event) {
+		enqueue(event.getSession(), event.getEntity());
+	}
+
+	@Override
+	public void onPostDelete(PostDeleteEvent event) {
+		enqueue(event.getSession(), event.getEntity());
+	}
+
+	public boolean requiresPostCommitHanding(EntityPersister persister) {
+		return false;
+	}
+}
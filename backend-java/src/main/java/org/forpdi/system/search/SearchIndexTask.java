@@ -0,0 +1,47 @@
+package org.forpdi.system.search;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.spi.CDI;
+
+import org.hibernate.SessionFactory;
+import org.jboss.logging.Logger;
+
+import br.com.caelum.vraptor.boilerplate.HibernateDAO;
+import br.com.caelum.vraptor.boilerplate.factory.SessionManager;
+import br.com.caelum.vraptor.tasks.Task;
+import br.com.caelum.vraptor.tasks.scheduler.Scheduled;
+
+/**
+ * Reindexa os documentos de busca registrados em {@link SearchPending}, em
+ * uma transação por bloco de documentos. Se a reindexação falhar, os
+ * documentos continuam pendentes para a próxima execução.
+ */
+@ApplicationScoped
+@Scheduled(fixedRate = 10000, concurrent = false)
+public class SearchIndexTask implements Task {
+
+	private static final Logger LOG = Logger.getLogger(SearchIndexTask.class);
+
+	private static final int BATCH_SIZE = 200;
+
+	@Override
+	public synchronized void execute() {
+		SessionFactory factory = CDI.current().select(SessionFactory.class).get();
+		SessionManager mngr = new SessionManager(factory);
+		HibernateDAO dao = new HibernateDAO(mngr);
+		try {
+			AtomicInteger indexed = new AtomicInteger();
+			do {
+				dao.execute((session) -> {
+					session.doWork((connection) -> indexed.set(SearchIndex.indexPending(connection, BATCH_SIZE)));
+				});
+			} while (indexed.get() == BATCH_SIZE);
+		} catch (Throwable ex) {
+			LOG.errorf(ex, "Erro ao atualizar o índice de busca.");
+		} finally {
+			mngr.closeSession();
+		}
+	}
+}
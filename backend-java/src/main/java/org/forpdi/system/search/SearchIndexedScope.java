@@ -0,0 +1,59 @@
+package org.forpdi.system.search;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import br.com.caelum.vraptor.boilerplate.SimpleEntity;
+
+/**
+ * Escopo (plano macro, política ou plano de risco) cujos documentos de um
+ * tipo já estão no índice de busca. Escopos sem este registro são indexados
+ * por inteiro na primeira busca.
+ */
+@Entity(name = SearchIndexedScope.TABLE)
+@Table(name = SearchIndexedScope.TABLE, uniqueConstraints = {
+	@UniqueConstraint(columnNames = { "type", "scope" })
+})
+public class SearchIndexedScope extends SimpleEntity {
+	public static final String TABLE = "fpdi_search_indexed_scope";
+	private static final long serialVersionUID = 1L;
+
+	@Column(nullable = false)
+	private int type;
+
+	@Column(nullable = false)
+	private Long scope;
+
+	/**
+	 * Versão da indexação ({@link SearchIndex#VERSION}) usada no escopo.
+	 * Escopos indexados com outra versão são indexados de novo.
+	 */
+	@Column(nullable = false)
+	private int version;
+
+	public int getType() {
+		return type;
+	}
+
+	public void setType(int type) {
+		this.type = type;
+	}
+
+	public Long getScope() {
+		return scope;
+	}
+
+	public void setScope(Long scope) {
+		this.scope = scope;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public void setVersion(int version) {
+		this.version = version;
+	}
+}
@@ -0,0 +1,61 @@
+package org.forpdi.system.search;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import br.com.caelum.vraptor.boilerplate.SimpleEntity;
+
+/**
+ * Documento alterado que ainda não foi reindexado. Gravado por
+ * {@link SearchIndexListener} na mesma transação que altera o documento e
+ * removido por {@link SearchIndexTask} depois da reindexação, de forma que
+ * nenhuma alteração se perde se a aplicação for reiniciada.
+ */
+@Entity(name = SearchPending.TABLE)
+@Table(name = SearchPending.TABLE, uniqueConstraints = {
+	@UniqueConstraint(columnNames = { "type", "document" })
+})
+public class SearchPending extends SimpleEntity {
+	public static final String TABLE = "fpdi_search_pending";
+	private static final long serialVersionUID = 1L;
+
+	/** Tipo do documento, {@link SearchDocument#getId()}. */
+	@Column(nullable = false)
+	private int type;
+
+	@Column(nullable = false)
+	private Long document;
+
+	/**
+	 * Incrementada a cada nova alteração, para que uma alteração feita
+	 * durante a reindexação não seja descartada.
+	 */
+	@Column(nullable = false)
+	private long version;
+
+	public int getType() {
+		return type;
+	}
+
+	public void setType(int type) {
+		this.type = type;
+	}
+
+	public Long getDocument() {
+		return document;
+	}
+
+	public void setDocument(Long document) {
+		this.document = document;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+}
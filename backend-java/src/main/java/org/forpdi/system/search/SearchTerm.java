@@ -0,0 +1,82 @@
+package org.forpdi.system.search;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import br.com.caelum.vraptor.boilerplate.SimpleEntity;
+
+/**
+ * Entrada do índice invertido de busca: um termo radicalizado de um
+ * documento, com o peso das ocorrências do termo no documento. Mantido por
+ * {@link SearchIndex}.
+ */
+@Entity(name = SearchTerm.TABLE)
+@Table(name = SearchTerm.TABLE, indexes = {
+	@Index(columnList = "type,scope,term"),
+	@Index(columnList = "type,document")
+})
+public class SearchTerm extends SimpleEntity {
+	public static final String TABLE = "fpdi_search_term";
+	private static final long serialVersionUID = 1L;
+
+	/** Tamanho máximo de um termo. */
+	public static final int TERM_LENGTH = 64;
+
+	/** Tipo do documento, {@link SearchDocument#getId()}. */
+	@Column(nullable = false)
+	private int type;
+
+	@Column(nullable = false)
+	private Long document;
+
+	@Column(nullable = false)
+	private Long scope;
+
+	@Column(nullable = false, length = TERM_LENGTH)
+	private String term;
+
+	@Column(nullable = false)
+	private int weight;
+
+	public int getType() {
+		return type;
+	}
+
+	public void setType(int type) {
+		this.type = type;
+	}
+
+	public Long getDocument() {
+		return document;
+	}
+
+	public void setDocument(Long document) {
+		this.document = document;
+	}
+
+	public Long getScope() {
+		return scope;
+	}
+
+	public void setScope(Long scope) {
+		this.scope = scope;
+	}
+
+	public String getTerm() {
+		return term;
+	}
+
+	public void setTerm(String term) {
+		this.term = term;
+	}
+
+	public int getWeight() {
+		return weight;
+	}
+
+	public void setWeight(int weight) {
+		this.weight = weight;
+	}
+}
@@ -0,0 +1,125 @@
+package org.forpdi.system.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.tartarus.snowball.SnowballStemmer;
+import org.tartarus.snowball.ext.portugueseStemmer;
+
+/**
+ * Quebra textos em termos para o índice de busca: remove marcação HTML,
+ * separa as palavras, descarta palavras muito comuns, reduz cada palavra ao
+ * radical com o {@code portugueseStemmer} e remove os acentos do radical.
+ * Palavras com algarismos, como números e anos, são mantidas inteiras.
+ *
+ * Os textos indexados e os termos buscados passam pelo mesmo processo.
+ */
+public final class SearchTokenizer {
+
+	private static final Locale LOCALE = new Locale("pt", "BR");
+	private static final Pattern TAGS = Pattern.compile("<[^>]*>");
+	private static final Pattern ENTITIES = Pattern.compile("&(#[0-9]+|[a-zA-Z]+);");
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+	private static final Pattern DIGITS = Pattern.compile("[0-9]");
+
+	private static final Set<String> STOPWORDS = new HashSet<>(Arrays.asList(
+		"a", "ao", "aos", "as", "com", "da", "das", "de", "do", "dos", "e", "em", "na", "nas", "no", "nos",
+		"o", "os", "ou", "para", "pela", "pelas", "pelo", "pelos", "por", "que", "se", "um", "uma"
+	));
+
+	private SearchTokenizer() {
+	}
+
+	/**
+	 * Termos de um texto com o número de ocorrências de cada um.
+	 *
+	 * @param text
+	 *            Texto, simples ou HTML. Pode ser nulo.
+	 * @return Map<String, Integer> Ocorrências por termo, na ordem do texto.
+	 */
+	public static Map<String, Integer> terms(String text) {
+		Map<String, Integer> terms = new LinkedHashMap<>();
+		if (text == null || text.isEmpty()) {
+			return terms;
+		}
+		SnowballStemmer stemmer = new portugueseStemmer();
+		text = ENTITIES.matcher(TAGS.matcher(text).replaceAll(" ")).replaceAll(" ").toLowerCase(LOCALE);
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (letter && start < 0) {
+				start = i;
+			} else if (!letter && start >= 0) {
+				String term = term(stemmer, text.substring(start, i));
+				if (term != null) {
+					terms.merge(term, 1, Integer::sum);
+				}
+				start = -1;
+			}
+		}
+		return terms;
+	}
+
+	/**
+	 * Termos de uma busca, sem repetição.
+	 *
+	 * @param query
+	 *            Texto buscado.
+	 * @return List<String> Termos, vazia se nenhum termo for significativo.
+	 */
+	public static List<String> query(String query) {
+		return new ArrayList<>(terms(query).keySet());
+	}
+
+	/**
+	 * Verifica se um texto contém todos os termos de uma busca, comparando os
+	 * termos pelo prefixo como na busca no índice.
+	 *
+	 * @param text
+	 *            Texto, simples ou HTML. Pode ser nulo.
+	 * @param query
+	 *            Termos da busca, de {@link #query(String)}.
+	 * @return boolean Se todos os termos foram encontrados.
+	 */
+	public static boolean matches(String text, List<String> query) {
+		Set<String> terms = terms(text).keySet();
+		for (String term : query) {
+			boolean found = false;
+			for (String candidate : terms) {
+				if (candidate.startsWith(term)) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String term(SnowballStemmer stemmer, String word) {
+		if (STOPWORDS.contains(word)) {
+			return null;
+		}
+		String term = word;
+		if (!DIGITS.matcher(word).find()) {
+			stemmer.setCurrent(word);
+			stemmer.stem();
+			term = stemmer.getCurrent();
+		}
+		term = MARKS.matcher(Normalizer.normalize(term, Normalizer.Form.NFD)).replaceAll("");
+		if (term.isEmpty()) {
+			return null;
+		}
+		return term.length() > SearchTerm.TERM_LENGTH ? term.substring(0, SearchTerm.TERM_LENGTH) : term;
+	}
+}
@@ -0,0 +1,40 @@
+package org.forrisco.core.bean;
+
+import java.io.Serializable;
+
+/**
+ * Quantidade de riscos de uma célula da matriz de risco.
+ */
+public class MatrixCellBean implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private String probability;
+	private String impact;
+	private String level;
+	private Long quantity;
+
+	public String getProbability() {
+		return probability;
+	}
+	public void setProbability(String probability) {
+		this.probability = probability;
+	}
+	public String getImpact() {
+		return impact;
+	}
+	public void setImpact(String impact) {
+		this.impact = impact;
+	}
+	public String getLevel() {
+		return level;
+	}
+	public void setLevel(String level) {
+		this.level = level;
+	}
+	public Long getQuantity() {
+		return quantity;
+	}
+	public void setQuantity(Long quantity) {
+		this.quantity = quantity;
+	}
+}
@@ -1,8 +1,9 @@
 package org.forrisco.core.jobs;
 
-import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.spi.CDI;
 import javax.inject.Inject;
@@ -15,15 +16,15 @@ import org.forpdi.core.notification.NotificationType;
 import org.forpdi.core.user.User;
 import org.forpdi.core.user.authz.AccessLevels;
 import org.forrisco.core.plan.PlanRisk;
-import org.forrisco.risk.CloseToMaturityPeriod;
 import org.forrisco.risk.Monitor;
 import org.forrisco.risk.Risk;
 import org.forrisco.risk.RiskBS;
 
 import org.hibernate.Criteria;
 import org.hibernate.SessionFactory;
-import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.sql.JoinType;
 
 import org.jboss.logging.Logger;
 
@@ -43,6 +44,8 @@ import br.com.caelum.vraptor.boilerplate.factory.SessionManager;
 @Scheduled(fixedRate = 3600000, concurrent = false)
 public class RiskTask implements Task {
 
+	private static final long HOUR = 1000 * 60 * 60;
+
 	@Inject
 	private NotificationBS notificationBS;
 
@@ -79,40 +82,34 @@ public class RiskTask implements Task {
 		LOG.infof("Verificando monitoramento dos Riscos...");
 
 		try {
+			fillMonitoringDates();
+
+			for (Risk risk : listRisksCloseToMaturity(new Date())) {
+				// enviar email de notificação de monitoramento vencido
+				String texto = risk.getName();
+				CompanyDomain companyDomain = companyDomainByRisk(risk);
+				String url = companyDomain.getBaseUrl() + "/#/forrisco/plan-risk/"
+						+ risk.getUnit().getPlanRisk().getId() + "/unit/" + risk.getUnit().getId() + "/risk/"
+						+ risk.getId() + "/monitor";
+
+				// responsável pelo risco
+				this.notificationBS.sendNotificationEmail(NotificationType.FORRISCO_RISK_CLOSE_TO_MATURITY, texto,
+						"aux", risk.getUser(), url, companyDomain);
+
+				// responsável pela unidade
+				if (!risk.getUser().getId().equals(risk.getUnit().getUser().getId())) {
+					this.notificationBS.sendNotificationEmail(NotificationType.FORRISCO_RISK_CLOSE_TO_MATURITY,
+							texto, "aux", risk.getUnit().getUser(), url, companyDomain);
+				}
 
-			PaginatedList<Risk> list = listRiskState(1);
-			for (Risk risk : list.getList()) {
-
-				Date maturity = CloseToMaturityDate(risk);
-				if (new Date().getTime() - maturity.getTime() < 1000 * 60 * 60
-						&& new Date().getTime() - maturity.getTime() > 0) {// intervalo da última hora
-
-					// enviar email de notificação de monitoramento vencido
-					String texto = risk.getName();
-					CompanyDomain companyDomain = companyDomainByRisk(risk);
-					String url = companyDomain.getBaseUrl() + "/#/forrisco/plan-risk/"
-							+ risk.getUnit().getPlanRisk().getId() + "/unit/" + risk.getUnit().getId() + "/risk/"
-							+ risk.getId() + "/monitor";
-
-					// responsável pelo risco
-					this.notificationBS.sendNotificationEmail(NotificationType.FORRISCO_RISK_CLOSE_TO_MATURITY, texto,
-							"aux", risk.getUser(), url, companyDomain);
+				PaginatedList<User> admins = listByPermissionLevel(AccessLevels.COMPANY_ADMIN);
 
-					// responsável pela unidade
-					if (!risk.getUser().getId().equals(risk.getUnit().getUser().getId())) {
+				for (User admin : admins.getList()) {
+					// administradores
+					if (!admin.getId().equals(risk.getUser().getId())
+							&& !admin.getId().equals(risk.getUnit().getUser().getId())) {
 						this.notificationBS.sendNotificationEmail(NotificationType.FORRISCO_RISK_CLOSE_TO_MATURITY,
-								texto, "aux", risk.getUnit().getUser(), url, companyDomain);
-					}
-
-					PaginatedList<User> admins = listByPermissionLevel(AccessLevels.COMPANY_ADMIN);
-
-					for (User admin : admins.getList()) {
-						// administradores
-						if (!admin.getId().equals(risk.getUser().getId())
-								&& !admin.getId().equals(risk.getUnit().getUser().getId())) {
-							this.notificationBS.sendNotificationEmail(NotificationType.FORRISCO_RISK_CLOSE_TO_MATURITY,
-									texto, "aux", admin, url, companyDomain);
-						}
+								texto, "aux", admin, url, companyDomain);
 					}
 				}
 			}
@@ -121,95 +118,55 @@ public class RiskTask implements Task {
 		}
 	}
 
-	public Monitor lastMonitorbyRisk(Risk risk) {
-
-		Criteria criteria = this.dao.newCriteria(Monitor.class).add(Restrictions.eq("deleted", false))
-				.add(Restrictions.eq("risk", risk)).addOrder(Order.desc("begin"));
-
-		criteria.setMaxResults(1);
-		Monitor monitor = (Monitor) criteria.uniqueResult();
-
-		return monitor;
+	/**
+	 * Lista os riscos que ficaram próximos a vencer na última hora, pela data
+	 * gravada em cada risco.
+	 * 
+	 * @param now
+	 *            Data atual.
+	 * @return List<Risk> Riscos que ficaram próximos a vencer.
+	 */
+	public List<Risk> listRisksCloseToMaturity(Date now) {
+		Criteria criteria = this.dao.newCriteria(Risk.class)
+				.add(Restrictions.gt("closeToMaturity", new Date(now.getTime() - HOUR)))
+				.add(Restrictions.lt("closeToMaturity", now))
+				.add(Restrictions.eq("deleted", false));
+		return this.dao.findByCriteria(criteria, Risk.class);
 	}
 
-	public PaginatedList<Risk> listRiskState(int state) {
-
-		PaginatedList<Risk> results = new PaginatedList<Risk>();
-
-		Criteria criteria = this.dao.newCriteria(Risk.class).add(Restrictions.eq("deleted", false));
-
+	/**
+	 * Preenche as datas de monitoramento dos riscos gravados antes delas
+	 * existirem, buscando o último monitoramento de todos eles em uma única
+	 * consulta agrupada.
+	 */
+	public void fillMonitoringDates() {
+		Criteria criteria = this.dao.newCriteria(Risk.class)
+				.add(Restrictions.isNull("lastMonitoring"));
 		List<Risk> risks = this.dao.findByCriteria(criteria, Risk.class);
-		List<Risk> list = new ArrayList<>();
-
-		for (Risk risk : risks) {
-			Monitor monitor = lastMonitorbyRisk(risk);
-			Date date = risk.getBegin();
-
-			if (monitor != null) {
-				date = monitor.getBegin();
-			}
-
-			if (RiskBS.riskState(risk.getPeriodicity(), date) == state) {
-				list.add(risk);
-			}
+		if (risks.isEmpty()) {
+			return;
 		}
 
-		try {
-			this.dao.persist(null);
-		} catch (Exception e) {
-			Logger LOG = Logger.getLogger(EmailSenderTask.class);
-			LOG.infof("Exception");
+		Map<Long, Date> lastMonitors = new HashMap<>();
+		Criteria monitors = this.dao.newCriteria(Monitor.class)
+				.createAlias("risk", "risk", JoinType.INNER_JOIN)
+				.add(Restrictions.eq("deleted", false))
+				.add(Restrictions.isNull("risk.lastMonitoring"))
+				.setProjection(Projections.projectionList()
+						.add(Projections.groupProperty("risk.id"))
+						.add(Projections.max("begin")));
+		for (Object[] row : this.dao.findByCriteria(monitors, Object[].class)) {
+			lastMonitors.put((Long) row[0], (Date) row[1]);
 		}
 
-		results.setList(list);
-		results.setTotal((long) list.size());
-		return results;
-	}
-
-	public Date CloseToMaturityDate(Risk risk) {
-		// calcular corretamente o valor de próximo a vencer
-
-		Monitor lastMonitor = lastMonitorbyRisk(risk);
-
-		long time = lastMonitor != null ? lastMonitor.getBegin().getTime() : risk.getBegin().getTime();
-		long hour = 1000 * 60 * 60;
-		long day = hour * 24;
-
-		switch (risk.getPeriodicity().toLowerCase()) {
-		case "diária":
-			time += hour * (24 - CloseToMaturityPeriod.DIARIO.getValue());
-			break;
-
-		case "semanal":
-			time += day * (7 - CloseToMaturityPeriod.SEMANAL.getValue());
-			break;
-
-		case "quinzenal":
-			time += day * (15 - CloseToMaturityPeriod.QUINZENAL.getValue());
-			break;
-
-		case "mensal":
-			time += day * (30 - CloseToMaturityPeriod.MENSAL.getValue());
-			break;
-
-		case "bimestral":
-			time += day * (60 - CloseToMaturityPeriod.BIMESTRAL.getValue());
-			break;
-
-		case "trimestral":
-			time += day * (90 - CloseToMaturityPeriod.TRIMESTRAL.getValue());
-			break;
-
-		case "semestral":
-			time += day * (180 - CloseToMaturityPeriod.SEMESTRAL.getValue());
-			break;
-
-		case "anual":
-			time += day * (360 - CloseToMaturityPeriod.ANUAL.getValue());
-			break;
-		}
-
-		return new Date(time);
+		this.dao.execute((session) -> {
+			for (Risk risk : risks) {
+				Date date = lastMonitors.getOrDefault(risk.getId(), risk.getBegin());
+				risk.setLastMonitoring(date);
+				risk.setCloseToMaturity(RiskBS.closeToMaturityDate(risk.getPeriodicity(), date));
+				session.update(risk);
+			}
+		});
 	}
 
 	public CompanyDomain companyDomainByRisk(Risk risk) {
@@ -0,0 +1,64 @@
+package org.forrisco.core.jobs;
+
+import javax.inject.Inject;
+
+import org.forpdi.core.abstractions.AbstractController;
+import org.forrisco.risk.RiskHistoryBS;
+import org.quartz.SchedulerException;
+
+import br.com.caelum.vraptor.Controller;
+import br.com.caelum.vraptor.Post;
+import br.com.caelum.vraptor.Result;
+import br.com.caelum.vraptor.tasks.scheduler.Scheduled;
+
+/**
+ * Controller para as tarefas agendadas do histórico de riscos e de
+ * monitoramentos das unidades.
+ */
+@Controller
+public class ScheduledRiskHistoryController extends AbstractController {
+
+	@Inject
+	private RiskHistoryBS bs;
+	@Inject
+	private Result result;
+
+	/**
+	 * Tarefa para gravar o histórico de riscos e de monitoramentos de todas
+	 * as unidades no novo mês, executada todo dia 1º às 00:10
+	 *
+	 * @throws SchedulerException
+	 */
+	@Post(BASEPATH + "/forrisco/jobs/history")
+	// (second, minute, hour, day of month, month, day(s) of week)
+	@Scheduled(concurrent = false, cron = "0 10 0 1 * ?")
+	public void snapshotHistory() throws SchedulerException {
+		try {
+			this.bs.snapshot();
+			LOGGER.info("Histórico mensal de riscos e monitoramentos gravado.");
+		} catch (Throwable ex) {
+			LOGGER.error("Unexpected runtime error", ex);
+		} finally {
+			this.result.nothing();
+		}
+	}
+
+	/**
+	 * Tarefa para atualizar o estado dos monitoramentos no histórico do mês,
+	 * que muda com o passar do tempo, executada todo dia às 00:20
+	 *
+	 * @throws SchedulerException
+	 */
+	@Post(BASEPATH + "/forrisco/jobs/monitorHistory")
+	@Scheduled(concurrent = false, cron = "0 20 0 * * ?")
+	public void updateMonitorHistory() throws SchedulerException {
+		try {
+			this.bs.refreshAllMonitors();
+		} catch (Throwable ex) {
+			LOGGER.error("Unexpected runtime error", ex);
+		} finally {
+			this.result.nothing();
+		}
+	}
+
+}
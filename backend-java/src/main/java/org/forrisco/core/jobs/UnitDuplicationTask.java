@@ -0,0 +1,379 @@
+package org.forrisco.core.jobs;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.spi.CDI;
+
+import org.forpdi.core.jobs.DuplicationProgress;
+import org.forpdi.system.JdbcCopy;
+import org.forpdi.system.reports.ReportDataSource;
+import org.forpdi.system.reports.ReportDataVersion;
+import org.forpdi.system.search.SearchDocument;
+import org.forpdi.system.search.SearchIndex;
+import org.forrisco.core.process.ProcessUnit;
+import org.forrisco.core.unit.Unit;
+import org.forrisco.risk.Contingency;
+import org.forrisco.risk.Incident;
+import org.forrisco.risk.Monitor;
+import org.forrisco.risk.PreventiveAction;
+import org.forrisco.risk.Risk;
+import org.forrisco.risk.RiskHistory;
+import org.forrisco.risk.RiskHistoryBS;
+import org.forrisco.risk.objective.RiskActivity;
+import org.forrisco.risk.objective.RiskProcess;
+import org.forrisco.risk.objective.RiskStrategy;
+import org.hibernate.SessionFactory;
+import org.jboss.logging.Logger;
+
+import br.com.caelum.vraptor.boilerplate.HibernateDAO;
+import br.com.caelum.vraptor.boilerplate.factory.SessionManager;
+import br.com.caelum.vraptor.tasks.Task;
+import br.com.caelum.vraptor.tasks.scheduler.Scheduled;
+
+/**
+ * Tarefa para duplicar unidades de um plano de risco em outro, em segundo
+ * plano.
+ *
+ * As unidades selecionadas, suas subunidades e os riscos de todas elas são
+ * lidos com uma consulta por tabela e copiados em lotes por {@link JdbcCopy},
+ * que guarda a correspondência entre os ids antigos e novos em tabelas
+ * temporárias. Os processos das unidades e as ações preventivas,
+ * monitoramentos, incidentes, contingências, estratégias, atividades e
+ * processos dos riscos são copiados com um único INSERT ... SELECT sobre essas
+ * correspondências. Toda a duplicação é feita em uma transação, e o andamento
+ * pode ser consultado pelo id do plano de risco de destino. O andamento também
+ * é gravado em {@link DuplicationProgress}: uma duplicação perdida em um
+ * reinício da aplicação é informada como falha.
+ */
+@ApplicationScoped
+@Scheduled(fixedRate=5000, concurrent=false)
+public class UnitDuplicationTask implements Task {
+
+	/** Andamento de uma duplicação que falhou. */
+	public static final int FAILED = DuplicationProgress.FAILED;
+
+	/** Etapas de uma duplicação, para o cálculo do andamento. */
+	private static final int STEPS = 6;
+
+	private static final Logger LOG = Logger.getLogger(UnitDuplicationTask.class);
+
+	private static final String UNIT_MAPPING = "tmp_copy_unit";
+	private static final String RISK_MAPPING = "tmp_copy_risk";
+
+	private static final String SELECT_UNITS = "SELECT u.id, u.name, u.abbreviation, u.description, u.user_id,"
+			+ " ?, NULL"
+			+ " FROM " + Unit.TABLE + " u WHERE u.deleted = 0 AND u.id IN (%s)";
+	private static final String SELECT_SUBUNITS = "SELECT u.id, u.name, u.abbreviation, u.description, u.user_id,"
+			+ " ?, m.new_id"
+			+ " FROM " + Unit.TABLE + " u"
+			+ " JOIN " + UNIT_MAPPING + " m ON m.old_id = u.parent_id"
+			+ " WHERE u.deleted = 0 AND u.id NOT IN (%s)";
+	private static final String INSERT_UNIT = "INSERT INTO " + Unit.TABLE
+			+ " (deleted, name, abbreviation, description, user_id, planRisk_id, parent_id)"
+			+ " VALUES (0, ?, ?, ?, ?, ?, ?)";
+
+	private static final String COPY_PROCESS_UNITS = "INSERT INTO " + ProcessUnit.TABLE
+			+ " (deleted, process_id, unit_id)"
+			+ " SELECT 0, pu.process_id, m.new_id"
+			+ " FROM " + ProcessUnit.TABLE + " pu"
+			+ " JOIN " + UNIT_MAPPING + " m ON m.old_id = pu.unit_id"
+			+ " WHERE pu.deleted = 0";
+
+	private static final String SELECT_RISKS = "SELECT r.id, r.user_id, m.new_id, r.riskLevel_id, r.name, r.code,"
+			+ " r.reason, r.result, r.probability, r.impact, r.periodicity, r.tipology, r.type, r.risk_pdi,"
+			+ " r.risk_obj_process, r.risk_act_process, r.begin, r.linkFPDI, r.lastMonitoring, r.closeToMaturity"
+			+ " FROM " + Risk.TABLE + " r"
+			+ " JOIN " + UNIT_MAPPING + " m ON m.old_id = r.unit_id"
+			+ " WHERE r.deleted = 0";
+	private static final String INSERT_RISK = "INSERT INTO " + Risk.TABLE
+			+ " (deleted, user_id, unit_id, riskLevel_id, name, code, reason, result, probability, impact,"
+			+ " periodicity, tipology, type, risk_pdi, risk_obj_process, risk_act_process, begin, linkFPDI,"
+			+ " lastMonitoring, closeToMaturity)"
+			+ " VALUES (0, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String COPY_PREVENTIVE_ACTIONS = "INSERT INTO " + PreventiveAction.TABLE
+			+ " (deleted, risk_id, user_id, action, accomplished)"
+			+ " SELECT 0, m.new_id, a.user_id, a.action, a.accomplished"
+			+ " FROM " + PreventiveAction.TABLE + " a"
+			+ " JOIN " + RISK_MAPPING + " m ON m.old_id = a.risk_id"
+			+ " WHERE a.deleted = 0";
+	private static final String COPY_MONITORS = "INSERT INTO " + Monitor.TABLE
+			+ " (deleted, risk_id, user_id, report, probability, impact, begin)"
+			+ " SELECT 0, m.new_id, mo.user_id, mo.report, mo.probability, mo.impact, mo.begin"
+			+ " FROM " + Monitor.TABLE + " mo"
+			+ " JOIN " + RISK_MAPPING + " m ON m.old_id = mo.risk_id"
+			+ " WHERE mo.deleted = 0";
+	private static final String COPY_INCIDENTS = "INSERT INTO " + Incident.TABLE
+			+ " (deleted, risk_id, user_id, description, action, type, begin)"
+			+ " SELECT 0, m.new_id, i.user_id, i.description, i.action, i.type, i.begin"
+			+ " FROM " + Incident.TABLE + " i"
+			+ " JOIN " + RISK_MAPPING + " m ON m.old_id = i.risk_id"
+			+ " WHERE i.deleted = 0";
+	private static final String COPY_CONTINGENCIES = "INSERT INTO " + Contingency.TABLE
+			+ " (deleted, risk_id, user_id, action)"
+			+ " SELECT 0, m.new_id, c.user_id, c.action"
+			+ " FROM " + Contingency.TABLE + " c"
+			+ " JOIN " + RISK_MAPPING + " m ON m.old_id = c.risk_id"
+			+ " WHERE c.deleted = 0";
+	private static final String COPY_STRATEGIES = "INSERT INTO " + RiskStrategy.TABLE
+			+ " (deleted, risk_id, structure_id, linkFPDI, name)"
+			+ " SELECT 0, m.new_id, s.structure_id, s.linkFPDI, s.name"
+			+ " FROM " + RiskStrategy.TABLE + " s"
+			+ " JOIN " + RISK_MAPPING + " m ON m.old_id = s.risk_id"
+			+ " WHERE s.deleted = 0";
+	private static final String COPY_ACTIVITIES = "INSERT INTO " + RiskActivity.TABLE
+			+ " (deleted, risk_id, process_id, linkFPDI, name)"
+			+ " SELECT 0, m.new_id, a.process_id, a.linkFPDI, a.name"
+			+ " FROM " + RiskActivity.TABLE + " a"
+			+ " JOIN " + RISK_MAPPING + " m ON m.old_id = a.risk_id"
+			+ " WHERE a.deleted = 0";
+	private static final String COPY_RISK_PROCESSES = "INSERT INTO " + RiskProcess.TABLE
+			+ " (deleted, risk_id, process_id, linkFPDI)"
+			+ " SELECT 0, m.new_id, p.process_id, p.linkFPDI"
+			+ " FROM " + RiskProcess.TABLE + " p"
+			+ " JOIN " + RISK_MAPPING + " m ON m.old_id = p.risk_id"
+			+ " WHERE p.deleted = 0";
+
+	/** Histórico de riscos do mês atual das unidades criadas, como em {@link RiskHistoryBS}. */
+	private static final String INSERT_RISK_HISTORY = "INSERT INTO " + RiskHistory.TABLE
+			+ " (deleted, unit_id, riskLevel_id, month, year, threat, quantity)"
+			+ " SELECT 0, r.unit_id, r.riskLevel_id, ?, ?, r.type = ?, COUNT(*)"
+			+ " FROM " + Risk.TABLE + " r"
+			+ " JOIN " + UNIT_MAPPING + " m ON m.new_id = r.unit_id"
+			+ " WHERE r.deleted = 0 AND r.type IN (?, ?)"
+			+ " GROUP BY r.unit_id, r.riskLevel_id, r.type";
+
+	/**
+	 * Duplicação pendente de unidades.
+	 */
+	private static final class Duplication {
+		private final Long planRiskId;
+		private final List<Long> unitIds;
+
+		private Duplication(Long planRiskId, List<Long> unitIds) {
+			this.planRiskId = planRiskId;
+			this.unitIds = unitIds;
+		}
+	}
+
+	private ConcurrentLinkedQueue<Duplication> queue;
+	/** Andamento (0 a 100) das duplicações, indexado pelo id do plano de risco de destino. */
+	private Map<Long, Integer> progress;
+
+	public UnitDuplicationTask() {
+		this.queue = new ConcurrentLinkedQueue<>();
+		this.progress = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Adiciona uma duplicação à fila.
+	 *
+	 * @param dao
+	 *            DAO da requisição, para gravar o andamento.
+	 * @param planRiskId
+	 *            Id do plano de risco que recebe as cópias.
+	 * @param unitIds
+	 *            Ids das unidades duplicadas, com as suas subunidades.
+	 */
+	public void add(HibernateDAO dao, Long planRiskId, List<Long> unitIds) {
+		this.progress.put(planRiskId, 0);
+		try {
+			DuplicationProgress.save(dao, DuplicationProgress.Type.UNITS, planRiskId, 0);
+		} catch (RuntimeException ex) {
+			this.progress.remove(planRiskId);
+			throw ex;
+		}
+		this.queue.add(new Duplication(planRiskId, new ArrayList<>(new HashSet<>(unitIds))));
+	}
+
+	/**
+	 * Andamento da duplicação de unidades para um plano de risco. Sem
+	 * andamento na memória, é usado o andamento gravado; se ele é de uma
+	 * duplicação que não terminou, ela foi perdida em um reinício da
+	 * aplicação.
+	 *
+	 * @param dao
+	 *            DAO da requisição, para ler o andamento gravado.
+	 * @param planRiskId
+	 *            Id do plano de risco de destino.
+	 * @return Porcentagem concluída, {@link #FAILED} se a duplicação falhou ou
+	 *         foi perdida, ou -1 se não há duplicação para o plano.
+	 */
+	public int getProgress(HibernateDAO dao, Long planRiskId) {
+		Integer value = this.progress.get(planRiskId);
+		if (value == null) {
+			value = DuplicationProgress.load(dao, DuplicationProgress.Type.UNITS, planRiskId);
+			if (DuplicationProgress.unfinished(value) && !this.progress.containsKey(planRiskId)) {
+				LOG.warnf("Unit duplication into plan risk %d was lost on a restart.", planRiskId);
+				DuplicationProgress.save(dao, DuplicationProgress.Type.UNITS, planRiskId, FAILED);
+				value = FAILED;
+			}
+		}
+		return value == null ? -1 : value;
+	}
+
+	/**
+	 * Descarta o andamento de uma duplicação já concluída ou que falhou.
+	 *
+	 * @param dao
+	 *            DAO da requisição, para remover o andamento gravado.
+	 * @param planRiskId
+	 *            Id do plano de risco de destino.
+	 */
+	public void resetProgress(HibernateDAO dao, Long planRiskId) {
+		Integer value = this.progress.get(planRiskId);
+		if (value == null || value == DuplicationProgress.DONE || value == FAILED) {
+			DuplicationProgress.delete(dao, DuplicationProgress.Type.UNITS, planRiskId);
+			this.progress.remove(planRiskId, DuplicationProgress.DONE);
+			this.progress.remove(planRiskId, FAILED);
+		}
+	}
+
+	/**
+	 * Execução da tarefa, que duplica as unidades da fila.
+	 */
+	@Override
+	public synchronized void execute() {
+		if (this.queue.isEmpty()) {
+			return;
+		}
+		SessionFactory factory = CDI.current().select(SessionFactory.class).get();
+		SessionManager mngr = new SessionManager(factory);
+		HibernateDAO dao = new HibernateDAO(mngr);
+		try {
+			while (!this.queue.isEmpty()) {
+				this.duplicate(this.queue.poll(), dao);
+			}
+		} catch (Throwable ex) {
+			LOG.error("Unexpected error at unit duplication task.", ex);
+		} finally {
+			mngr.closeSession();
+		}
+	}
+
+	/**
+	 * Duplica as unidades em uma única transação.
+	 */
+	private void duplicate(Duplication dup, HibernateDAO dao) {
+		try {
+			LOG.infof("Duplicating %d units into plan risk %d...", dup.unitIds.size(), dup.planRiskId);
+			final long start = System.currentTimeMillis();
+			dao.execute((session) -> {
+				session.doWork((connection) -> {
+					new Copy(connection, dup).run();
+				});
+			});
+			this.progress.put(dup.planRiskId, DuplicationProgress.DONE);
+			LOG.infof("Units duplicated into plan risk %d in %d ms.", dup.planRiskId,
+					System.currentTimeMillis() - start);
+		} catch (Exception e) {
+			this.progress.put(dup.planRiskId, FAILED);
+			LOG.errorf(e, "Error duplicating units into plan risk %d.", dup.planRiskId);
+			try {
+				DuplicationProgress.save(dao, DuplicationProgress.Type.UNITS, dup.planRiskId, FAILED);
+			} catch (Exception ex) {
+				LOG.errorf(ex, "Error saving the failure of unit duplication %d.", dup.planRiskId);
+			}
+		}
+	}
+
+	/**
+	 * Cópia das unidades, na conexão da transação da duplicação.
+	 */
+	private final class Copy {
+		private final JdbcCopy jdbc;
+		private final Duplication dup;
+		private int step = 0;
+
+		private Copy(Connection connection, Duplication dup) {
+			this.jdbc = new JdbcCopy(connection);
+			this.dup = dup;
+		}
+
+		private void run() throws SQLException {
+			try {
+				if (!this.dup.unitIds.isEmpty()) {
+					this.copyUnits();
+					this.copyRisks();
+					this.updateHistory();
+				}
+				Connection connection = this.jdbc.getConnection();
+				SearchIndex.invalidate(connection, SearchDocument.UNIT, this.dup.planRiskId);
+				SearchIndex.invalidate(connection, SearchDocument.RISK, this.dup.planRiskId);
+				ReportDataVersion.touch(connection, ReportDataSource.PLAN_RISK,
+					Collections.singletonList(this.dup.planRiskId));
+				DuplicationProgress.save(connection, DuplicationProgress.Type.UNITS, this.dup.planRiskId,
+					DuplicationProgress.DONE);
+				this.done();
+			} finally {
+				this.jdbc.close();
+			}
+		}
+
+		/**
+		 * Copia as unidades selecionadas e as suas subunidades diretas, e
+		 * associa as cópias aos mesmos processos. Uma subunidade que também
+		 * foi selecionada é copiada apenas uma vez, como unidade.
+		 */
+		private void copyUnits() throws SQLException {
+			StringBuilder in = new StringBuilder();
+			for (int i = 0; i < this.dup.unitIds.size(); i++) {
+				in.append(i == 0 ? "?" : ", ?");
+			}
+			List<Object> params = new ArrayList<>();
+			params.add(this.dup.planRiskId);
+			params.addAll(this.dup.unitIds);
+
+			this.jdbc.copy(UNIT_MAPPING, String.format(SELECT_UNITS, in), INSERT_UNIT, params.toArray());
+			this.jdbc.copy(UNIT_MAPPING, String.format(SELECT_SUBUNITS, in), INSERT_UNIT, params.toArray());
+			this.done();
+			this.jdbc.update(COPY_PROCESS_UNITS);
+			this.done();
+		}
+
+		/**
+		 * Copia os riscos das unidades copiadas e os seus dependentes. Os
+		 * incidentes de cada risco são copiados apenas para a cópia do mesmo
+		 * risco.
+		 */
+		private void copyRisks() throws SQLException {
+			this.jdbc.copy(RISK_MAPPING, SELECT_RISKS, INSERT_RISK);
+			this.done();
+			this.jdbc.update(COPY_PREVENTIVE_ACTIONS);
+			this.jdbc.update(COPY_CONTINGENCIES);
+			this.jdbc.update(COPY_MONITORS);
+			this.jdbc.update(COPY_INCIDENTS);
+			this.done();
+			this.jdbc.update(COPY_STRATEGIES);
+			this.jdbc.update(COPY_ACTIVITIES);
+			this.jdbc.update(COPY_RISK_PROCESSES);
+			this.done();
+		}
+
+		/**
+		 * Grava o histórico de riscos do mês atual das unidades criadas. O
+		 * histórico de monitoramentos é gravado pela atualização diária do
+		 * {@link ScheduledRiskHistoryController}.
+		 */
+		private void updateHistory() throws SQLException {
+			Calendar now = Calendar.getInstance();
+			this.jdbc.update(INSERT_RISK_HISTORY, now.get(Calendar.MONTH) + 1, now.get(Calendar.YEAR),
+					RiskHistoryBS.THREAT, RiskHistoryBS.THREAT, RiskHistoryBS.OPPORTUNITY);
+		}
+
+		private void done() {
+			this.step++;
+			progress.put(this.dup.planRiskId, Math.min(99, Math.floorDiv(100 * this.step, STEPS)));
+		}
+	}
+}
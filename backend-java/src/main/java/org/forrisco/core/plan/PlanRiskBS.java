@@ -2,28 +2,27 @@ package org.forrisco.core.plan;
 
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
 
 import org.forpdi.core.company.Company;
+import org.forpdi.system.search.SearchBS;
+import org.forpdi.system.search.SearchDocument;
+import org.forpdi.system.search.SearchTokenizer;
 import org.forrisco.core.bean.ItemSearchBean;
 import org.forrisco.core.item.PlanRiskItem;
 import org.forrisco.core.item.PlanRiskItemField;
 import org.forrisco.core.item.PlanRiskSubItem;
-import org.forrisco.core.item.PlanRiskSubItemField;
 import org.forrisco.core.policy.Policy;
-
 import org.hibernate.Criteria;
-import org.hibernate.criterion.Criterion;
-import org.hibernate.criterion.Disjunction;
-import org.hibernate.criterion.LogicalExpression;
+import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
-import org.hibernate.sql.JoinType;
 import org.tartarus.snowball.SnowballStemmer;
 import org.tartarus.snowball.ext.portugueseStemmer;
 
@@ -32,6 +31,8 @@ import br.com.caelum.vraptor.boilerplate.bean.PaginatedList;
 
 @RequestScoped
 public class PlanRiskBS extends HibernateBusiness {
+	@Inject
+	private SearchBS searchBS;
 	
 	/**
 	 * Salva no banco de dados um novo item
@@ -132,54 +133,39 @@ public class PlanRiskBS extends HibernateBusiness {
 		if(itensSelect != null && itensSelect.length == 0) {
 			return new ArrayList<PlanRiskItem>();
 		}
-		
-		SnowballStemmer snowballStemmer = new portugueseStemmer();
-		snowballStemmer.setCurrent(terms);
-		snowballStemmer.stem();
-		String stemTerms = snowballStemmer.getCurrent();
-		
-		Criterion name = Restrictions.like("name", "%" + stemTerms + "%").ignoreCase();
-		Criterion description = Restrictions.like("description", "%" + stemTerms + "%").ignoreCase();
-		LogicalExpression orExp = Restrictions.or(name, description);
-		
-		Criteria criteria = this.dao.newCriteria(PlanRiskItem.class)
-				.add(Restrictions.eq("planRisk", planRisk))
-				.add(Restrictions.eq("deleted", false));	
-		
+
+		DetachedCriteria documents = DetachedCriteria.forClass(PlanRiskItem.class)
+				.add(Restrictions.eq("deleted", false));
 		if (itensSelect != null) {
-			Disjunction or = Restrictions.disjunction();
-			for (int i = 0; i < itensSelect.length; i++) {
-				or.add(Restrictions.eq("id", itensSelect[i]));
-			}
-			criteria.add(or);
+			documents.add(Restrictions.in("id", (Object[]) itensSelect));
 		}
+		documents.setProjection(Projections.property("id"));
 
-		Map<Long, PlanRiskItem> itens = new HashMap<Long,PlanRiskItem>();
-		List<PlanRiskItem> list = this.dao.findByCriteria(criteria, PlanRiskItem.class);
+		PaginatedList<Long> ids = this.searchBS.search(SearchDocument.PLAN_RISK_ITEM, planRisk.getId(), terms, documents,
+				ordResult, null, null);
+		List<PlanRiskItem> list = this.searchBS.listByIds(PlanRiskItem.class, ids.getList());
+		List<String> query = SearchTokenizer.query(terms);
+		if (list.isEmpty() || query.isEmpty()) {
+			return list;
+		}
 
-		for(int i=0; i < list.size(); i++) {
-			Criteria crit = this.dao.newCriteria(PlanRiskItemField.class)
+		// itens encontrados por um campo exibem o campo encontrado como descrição
+		Criteria criteria = this.dao.newCriteria(PlanRiskItemField.class)
 				.add(Restrictions.eq("deleted", false))
-				.add(Restrictions.eq("planRiskItem", list.get(i)))
-		 		.add(orExp);
-			List<PlanRiskItemField> fields = this.dao.findByCriteria(crit, PlanRiskItemField.class);
-
-			for(int j=0; j < fields.size(); j++) {
-				fields.get(j).getPlanRiskItem().setDescription(fields.get(j).getName());
-				itens.put(fields.get(j).getPlanRiskItem().getId(),fields.get(j).getPlanRiskItem());
+				.add(Restrictions.in("planRiskItem", list))
+				.addOrder(Order.asc("id"));
+		Set<Long> described = new HashSet<>();
+		for (PlanRiskItemField field : this.dao.findByCriteria(criteria, PlanRiskItemField.class)) {
+			PlanRiskItem item = field.getPlanRiskItem();
+			if (!described.contains(item.getId()) && (SearchTokenizer.matches(field.getName(), query)
+					|| SearchTokenizer.matches(field.getDescription(), query))) {
+				item.setDescription(field.getName());
+				described.add(item.getId());
 			}
 		}
-
-		criteria.add(orExp);
-		list = this.dao.findByCriteria(criteria, PlanRiskItem.class);
-		
-		for(int i=0; i< list.size(); i++) {
-			itens.put(list.get(i).getId(),list.get(i));
-		}
-		
-		return new ArrayList<PlanRiskItem>(itens.values());
+		return list;
 	}
-	
+
 	public List<PlanRiskSubItem> listSubitemTerms(PlanRisk planRisk, String terms, Long[] subitensSelect, int ordResult) {
 		if (terms == null || terms.isEmpty()) {
 			return new ArrayList<PlanRiskSubItem>();
@@ -187,54 +173,21 @@ public class PlanRiskBS extends HibernateBusiness {
 		if(subitensSelect != null && subitensSelect.length == 0) {
 			return new ArrayList<PlanRiskSubItem>();
 		}
-		
-		SnowballStemmer snowballStemmer = new portugueseStemmer();
-		snowballStemmer.setCurrent(terms);
-		snowballStemmer.stem();
-		String stemTerms = snowballStemmer.getCurrent();
 
-		Criterion name = Restrictions.like("name", "%" + stemTerms + "%").ignoreCase();
-		Criterion description = Restrictions.like("description", "%" + stemTerms + "%").ignoreCase();
-		LogicalExpression orExp = Restrictions.or(name,description);
-		
-		Criteria criteria = this.dao.newCriteria(PlanRiskSubItem.class)
-				.createAlias("planRiskItem", "planRiskItem", JoinType.INNER_JOIN)
-				.add(Restrictions.eq("planRiskItem.planRisk", planRisk))
+		DetachedCriteria documents = DetachedCriteria.forClass(PlanRiskSubItem.class)
 				.add(Restrictions.eq("deleted", false));
-		
 		if (subitensSelect != null) {
-			Disjunction or = Restrictions.disjunction();
-			for (int i = 0; i < subitensSelect.length; i++) {
-				or.add(Restrictions.eq("id", subitensSelect[i]));
-			}
-			criteria.add(or);
+			documents.add(Restrictions.in("id", (Object[]) subitensSelect));
 		}
+		documents.setProjection(Projections.property("id"));
 
-		Map<Long, PlanRiskSubItem> subitens = new HashMap<Long, PlanRiskSubItem>();
-		List<PlanRiskSubItem> list = this.dao.findByCriteria(criteria, PlanRiskSubItem.class);
-		
-		for(int i=0; i < list.size(); i++) {
-			Criteria crit = this.dao.newCriteria(PlanRiskSubItemField.class)
-				.add(Restrictions.eq("deleted", false))
-				.add(Restrictions.eq("planRiskSubItem", list.get(i)))
-		 		.add(orExp);
-			List<PlanRiskSubItemField> fields = this.dao.findByCriteria(crit, PlanRiskSubItemField.class);
-		
-			for(int j=0; j < fields.size(); j++) {
-				list.get(j).setItemId(list.get(j).getPlanRiskItem().getId());
-				subitens.put(fields.get(j).getPlanRiskSubItem().getId(),fields.get(j).getPlanRiskSubItem());
-			}
+		PaginatedList<Long> ids = this.searchBS.search(SearchDocument.PLAN_RISK_SUBITEM, planRisk.getId(), terms,
+				documents, ordResult, null, null);
+		List<PlanRiskSubItem> list = this.searchBS.listByIds(PlanRiskSubItem.class, ids.getList());
+		for (PlanRiskSubItem subItem : list) {
+			subItem.setItemId(subItem.getPlanRiskItem().getId());
 		}
-		
-		criteria.add(orExp);
-		list = this.dao.findByCriteria(criteria, PlanRiskSubItem.class);
-		
-		for(int i=0; i< list.size(); i++) {
-			list.get(i).setItemId(list.get(i).getPlanRiskItem().getId());
-			subitens.put(list.get(i).getId(),list.get(i));
-		}
-			
-		return new ArrayList<PlanRiskSubItem>(subitens.values());
+		return list;
 	}
 
 	public PaginatedList<ItemSearchBean> termResult(boolean includeGeneralInformation, PlanRisk planRisk, List<PlanRiskItem> itens,
@@ -12,6 +12,9 @@ import javax.persistence.TemporalType;
 import javax.persistence.Transient;
 
 import org.forpdi.core.company.Company;
+import org.forpdi.system.CacheRegions;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import br.com.caelum.vraptor.boilerplate.SimpleLogicalDeletableEntity;
 import br.com.caelum.vraptor.serialization.SkipSerialization;
@@ -23,6 +26,7 @@ import br.com.caelum.vraptor.serialization.SkipSerialization;
 @Entity(name = Policy.TABLE)
 @Table(name = Policy.TABLE)
 
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.POLICY)
 public class Policy extends SimpleLogicalDeletableEntity {
 	public static final String TABLE = "frisco_policy";
 	private static final long serialVersionUID = 1L;
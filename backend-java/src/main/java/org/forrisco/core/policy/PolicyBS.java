@@ -2,28 +2,28 @@ package org.forrisco.core.policy;
 
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
 
 import org.forpdi.core.company.Company;
+import org.forpdi.system.search.SearchBS;
+import org.forpdi.system.search.SearchDocument;
+import org.forpdi.system.search.SearchTokenizer;
 import org.forrisco.core.bean.ItemSearchBean;
 import org.forrisco.core.item.FieldItem;
-import org.forrisco.core.item.FieldSubItem;
 import org.forrisco.core.item.Item;
 import org.forrisco.core.item.SubItem;
 import org.forrisco.core.plan.PlanRisk;
 import org.forrisco.risk.RiskLevel;
 import org.hibernate.Criteria;
-import org.hibernate.criterion.Criterion;
-import org.hibernate.criterion.Disjunction;
-import org.hibernate.criterion.LogicalExpression;
+import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
-import org.hibernate.sql.JoinType;
 import org.tartarus.snowball.SnowballStemmer;
 import org.tartarus.snowball.ext.portugueseStemmer;
 
@@ -39,6 +39,9 @@ public class PolicyBS extends HibernateBusiness {
 	
 	
 	private static final int PAGESIZE = 50;
+
+	@Inject
+	private SearchBS searchBS;
 	
 	
 	
@@ -218,51 +221,36 @@ public class PolicyBS extends HibernateBusiness {
 			return new ArrayList<Item>();
 		}
 
-		SnowballStemmer snowballStemmer = new portugueseStemmer();
-		snowballStemmer.setCurrent(terms.toLowerCase());
-		snowballStemmer.stem();
-		String stemTerms = snowballStemmer.getCurrent();
-
-		Criterion name = Restrictions.like("name", "%" + stemTerms + "%").ignoreCase();
-		Criterion description = Restrictions.like("description", "%" + stemTerms + "%").ignoreCase();
-		LogicalExpression orExp = Restrictions.or(name, description);
-		
-		Criteria criteria = this.dao.newCriteria(Item.class)
-				.add(Restrictions.eq("policy", policy))
-				.add(Restrictions.eq("deleted", false));	
-		
+		DetachedCriteria documents = DetachedCriteria.forClass(Item.class)
+				.add(Restrictions.eq("deleted", false));
 		if (itensSelect != null) {
-			Disjunction or = Restrictions.disjunction();
-			for (int i = 0; i < itensSelect.length; i++) {
-				or.add(Restrictions.eq("id", itensSelect[i]));
-			}
-			criteria.add(or);
+			documents.add(Restrictions.in("id", (Object[]) itensSelect));
 		}
+		documents.setProjection(Projections.property("id"));
 
-		Map<Long,Item> itens = new HashMap<Long,Item>();
-		List<Item> list = this.dao.findByCriteria(criteria, Item.class);
+		PaginatedList<Long> ids = this.searchBS.search(SearchDocument.POLICY_ITEM, policy.getId(), terms, documents,
+				ordResult, null, null);
+		List<Item> list = this.searchBS.listByIds(Item.class, ids.getList());
+		List<String> query = SearchTokenizer.query(terms);
+		if (list.isEmpty() || query.isEmpty()) {
+			return list;
+		}
 
-		for(int i=0; i < list.size(); i++) {
-			Criteria crit = this.dao.newCriteria(FieldItem.class)
+		// itens encontrados por um campo exibem o campo encontrado como descrição
+		Criteria criteria = this.dao.newCriteria(FieldItem.class)
 				.add(Restrictions.eq("deleted", false))
-				.add(Restrictions.eq("item", list.get(i)))
-		 		.add(orExp);
-			List<FieldItem> fields = this.dao.findByCriteria(crit, FieldItem.class);
-
-			for(int j=0; j < fields.size(); j++) {
-				fields.get(j).getItem().setDescription(fields.get(j).getName());
-				itens.put(fields.get(j).getItem().getId(),fields.get(j).getItem());
+				.add(Restrictions.in("item", list))
+				.addOrder(Order.asc("id"));
+		Set<Long> described = new HashSet<>();
+		for (FieldItem field : this.dao.findByCriteria(criteria, FieldItem.class)) {
+			Item item = field.getItem();
+			if (!described.contains(item.getId()) && (SearchTokenizer.matches(field.getName(), query)
+					|| SearchTokenizer.matches(field.getDescription(), query))) {
+				item.setDescription(field.getName());
+				described.add(item.getId());
 			}
 		}
-
-		criteria.add(orExp);
-		list = this.dao.findByCriteria(criteria, Item.class);
-		
-		for(int i=0; i< list.size(); i++) {
-			itens.put(list.get(i).getId(),list.get(i));
-		}
-			
-		return new ArrayList<Item>(itens.values());
+		return list;
 	}
 
 	public List<SubItem> listSubitemTerms(Policy policy, String terms, Long[] subitensSelect, int ordResult) {
@@ -272,58 +260,23 @@ public class PolicyBS extends HibernateBusiness {
 		if(subitensSelect != null && subitensSelect.length == 0) {
 			return new ArrayList<SubItem>();
 		}
-		
-		SnowballStemmer snowballStemmer = new portugueseStemmer();
-		snowballStemmer.setCurrent(terms.toLowerCase());
-		snowballStemmer.stem();
-		String stemTerms = snowballStemmer.getCurrent();
 
-		Criterion name = Restrictions.like("name", "%" + stemTerms + "%").ignoreCase();
-		Criterion description = Restrictions.like("description", "%" + stemTerms + "%").ignoreCase();
-		LogicalExpression orExp = Restrictions.or(name,description);
-		
-		Criteria criteria = this.dao.newCriteria(SubItem.class)
-				.createAlias("item", "item", JoinType.INNER_JOIN)
-				.add(Restrictions.eq("item.policy", policy))
+		DetachedCriteria documents = DetachedCriteria.forClass(SubItem.class)
 				.add(Restrictions.eq("deleted", false));
-		
 		if (subitensSelect != null) {
-			Disjunction or = Restrictions.disjunction();
-			for (int i = 0; i < subitensSelect.length; i++) {
-				or.add(Restrictions.eq("id", subitensSelect[i]));
-			}
-			criteria.add(or);
+			documents.add(Restrictions.in("id", (Object[]) subitensSelect));
 		}
+		documents.setProjection(Projections.property("id"));
 
-		Map<Long,SubItem> subitens = new HashMap<Long,SubItem>();
-		List<SubItem> list = this.dao.findByCriteria(criteria, SubItem.class);
-		
+		PaginatedList<Long> ids = this.searchBS.search(SearchDocument.POLICY_SUBITEM, policy.getId(), terms,
+				documents, ordResult, null, null);
+		List<SubItem> list = this.searchBS.listByIds(SubItem.class, ids.getList());
 		for (SubItem subItem : list) {
-			Criteria crit = this.dao.newCriteria(FieldSubItem.class)
-				.add(Restrictions.eq("deleted", false))
-				.add(Restrictions.eq("subitem", subItem))
-		 		.add(orExp);
-			List<FieldSubItem> fields = this.dao.findByCriteria(crit, FieldSubItem.class);
-			for (FieldSubItem field : fields) {
-				subItem.setItemId(subItem.getItem().getId());
-				subitens.put(field.getSubitem().getId(), field.getSubitem());				
-			}
-		}
-		
-		criteria.add(orExp);
-		list = this.dao.findByCriteria(criteria, SubItem.class);
-		
-		for(int i=0; i< list.size(); i++) {
-			list.get(i).setItemId(list.get(i).getItem().getId());
-			subitens.put(list.get(i).getId(),list.get(i));
+			subItem.setItemId(subItem.getItem().getId());
 		}
-			
-		return new ArrayList<SubItem>(subitens.values());
+		return list;
 	}
-	
-	
 
-	
 	public PaginatedList<ItemSearchBean> termResult(boolean includeGeneralInformation, Policy policy, List<Item> itens,
 			List<SubItem> subitens,  Integer page,  Long limit){
 		int firstResult = 0;
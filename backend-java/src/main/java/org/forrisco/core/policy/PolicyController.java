@@ -27,6 +27,7 @@ import org.forrisco.core.unit.UnitBS;
 import org.forrisco.risk.Risk;
 import org.forrisco.risk.RiskBS;
 import org.forrisco.risk.RiskLevel;
+import org.forrisco.risk.RiskMatrix;
 
 import com.itextpdf.text.DocumentException;
 
@@ -360,6 +361,7 @@ public class PolicyController extends AbstractController {
 			existent.setNcolumn(policy.getNcolumn());
 			existent.setPIDescriptions(policy.getPIDescriptions());
 			this.policyBS.persist(existent);
+			RiskMatrix.invalidate(existent.getId());
 			
 			
 			//rótulos podem sempre ser alterados
@@ -378,8 +380,8 @@ public class PolicyController extends AbstractController {
 				for(int i=0; i<risks.size(); i++){
 					RiskLevel rl = this.riskBS.getRiskLevelByRisk(risks.get(i),existent);
 					risks.get(i).setRiskLevel(rl);
-					this.riskBS.saveRisk(risks.get(i));
 				}
+				this.riskBS.saveRisks(risks);
 			}
 
 			this.success(existent);
@@ -1,35 +1,28 @@
 package org.forrisco.core.unit;
 
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 
 import org.forpdi.core.jobs.EmailSenderTask;
+import org.forpdi.system.search.SearchBS;
+import org.forpdi.system.search.SearchDocument;
+import org.forrisco.core.jobs.UnitDuplicationTask;
 import org.forrisco.core.plan.PlanRisk;
 import org.forrisco.core.unit.Unit;
 import org.forrisco.risk.Incident;
 import org.forrisco.risk.Monitor;
-import org.forrisco.risk.MonitorHistory;
 import org.forrisco.risk.Risk;
 import org.forrisco.risk.RiskBS;
-import org.forrisco.risk.RiskHistory;
-import org.forrisco.risk.RiskLevel;
 import org.forrisco.core.process.Process;
 import org.forrisco.core.process.ProcessBS;
 import org.hibernate.Criteria;
-import org.hibernate.criterion.Criterion;
-import org.hibernate.criterion.Disjunction;
-import org.hibernate.criterion.LogicalExpression;
+import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
-import org.tartarus.snowball.SnowballStemmer;
-import org.tartarus.snowball.ext.portugueseStemmer;
 
 import com.google.gson.GsonBuilder;
 
@@ -48,6 +41,10 @@ public class UnitBS extends HibernateBusiness {
 	private RiskBS riskBS;
 	@Inject 
 	private ProcessBS processBS;
+	@Inject
+	private SearchBS searchBS;
+	@Inject
+	private UnitDuplicationTask duplicationTask;
 	
 	
 	/**
@@ -62,6 +59,36 @@ public class UnitBS extends HibernateBusiness {
 		this.persist(unit);
 	}
 
+	/**
+	 * Agenda a duplicação de unidades, com as suas subunidades, processos e
+	 * riscos, para um plano de risco.
+	 * 
+	 * @param plan
+	 *            Plano de risco que recebe as cópias.
+	 * @param unitIds
+	 *            Ids das unidades duplicadas.
+	 */
+	public void scheduleDuplication(PlanRisk plan, List<Long> unitIds) {
+		this.duplicationTask.add(this.dao, plan.getId(), unitIds);
+	}
+
+	/**
+	 * Andamento da duplicação de unidades para um plano de risco. Uma
+	 * duplicação concluída ou que falhou é descartada após ser consultada.
+	 * 
+	 * @param planId
+	 *            Id do plano de risco de destino.
+	 * @return int Porcentagem concluída, -2 se a duplicação falhou ou foi
+	 *         perdida em um reinício, ou -1 se não há duplicação para o plano.
+	 */
+	public int duplicationProgress(Long planId) {
+		int progress = this.duplicationTask.getProgress(this.dao, planId);
+		if (progress == 100 || progress == UnitDuplicationTask.FAILED) {
+			this.duplicationTask.resetProgress(this.dao, planId);
+		}
+		return progress;
+	}
+
 	public PaginatedList<Unit> listSubunitByUnit(Unit unit) {
 		PaginatedList<Unit> results = new PaginatedList<Unit>();
 
@@ -233,142 +260,6 @@ public class UnitBS extends HibernateBusiness {
 	
 	
 	
-	/**
-	 * Atualiza o historico de riscos
-	 * 
-	 * @param plan
-	 *            Plano de Risco
-	 *
-	 */
-	public void updateHistory(PlanRisk plan, boolean threat) {
-		if (plan == null) {
-			return;
-		}
-
-		Map<RiskLevel, Integer> map = new HashMap<RiskLevel, Integer>();
-		int year = new Date().getYear() + 1900;
-		int month = new Date().getMonth()+1;
-		
-		
-		PaginatedList<Unit> units = this.listUnitsbyPlanRisk(plan);
-		for (Unit unit : units.getList()) {
-			map.clear();
-			
-			Criteria criteria = this.dao.newCriteria(Risk.class)
-					.add(Restrictions.eq("deleted", false))
-					.add(Restrictions.eq("unit", unit))
-					.add(Restrictions.eq("type", threat?"Ameaça":"Oportunidade"));
-
-			List<Risk> risks = this.dao.findByCriteria(criteria, Risk.class);
-			
-			for (Risk risk : risks) {
-				RiskLevel level =  risk.getRiskLevel();
-				
-				if(!map.containsKey(level)) {
-					map.put(level,0);
-				}
-				map.put(level, map.get(level) + 1);
-			}
-
-			for ( RiskLevel level : map.keySet() ) {
-				criteria = this.dao.newCriteria(RiskHistory.class)
-						.add(Restrictions.eq("deleted", false))
-						.add(Restrictions.eq("month", month))
-						.add(Restrictions.eq("year", year))
-						.add(Restrictions.eq("riskLevel", level))
-						.add(Restrictions.eq("unit", unit))
-						.add(Restrictions.eq("threat", threat));
-
-				criteria.setMaxResults(1);
-				RiskHistory riskhistory = (RiskHistory) criteria.uniqueResult();
-
-				if (riskhistory == null) {
-					riskhistory = new RiskHistory();
-					riskhistory.setUnit(unit);
-					riskhistory.setMonth(month);
-					riskhistory.setYear(year);
-					riskhistory.setRiskLevel(level);
-					riskhistory.setThreat(threat);
-				}
-
-				riskhistory.setQuantity(map.get(level));
-				
-				this.persist(riskhistory);
-			}
-		}
-	}
-
-	/**
-	 * Atualiza o historico de monitoramentos
-	 * 
-	 * @param plan
-	 *            Plano de Risco com os monitoramentos
-	 *
-	 */
-	public void updateMonitorHistory(PlanRisk plan) {
-		if (plan == null) {
-			return;
-		}
-
-		Map<Integer, Integer> map = new HashMap<Integer, Integer>();
-		int year = new Date().getYear() + 1900;
-		int month = new Date().getMonth();
-
-		for (Unit unit : this.listUnitsbyPlanRisk(plan).getList()) {
-			for (int i = 0; i < 3; i++) {
-				map.put(i, 0);
-			}
-			Criteria criteria = this.dao.newCriteria(Risk.class)
-					.add(Restrictions.eq("deleted", false))
-					.add(Restrictions.eq("unit", unit));
-
-			
-			for (Risk risk : this.dao.findByCriteria(criteria, Risk.class)) {
-				Monitor monitor = this.riskBS.lastMonitorbyRisk(risk);
-				int state = this.riskBS.riskState(risk.getPeriodicity(), monitor != null ? monitor.getBegin() : risk.getBegin());
-				map.put(state, map.get(state) + 1);
-			}
-
-			for (int i = 0; i < map.size(); i++) {
-				Integer quantity = map.get(i);
-				String state = null;
-
-				switch (i) {
-					case 0:
-						state = "em dia";
-						break;
-					case 1:
-						state = "próximo a vencer";
-						break;
-					default:
-						state = "atrasado";
-				}
-				
-				criteria = this.dao.newCriteria(MonitorHistory.class)
-						.add(Restrictions.eq("deleted", false))
-						.add(Restrictions.eq("month", month))
-						.add(Restrictions.eq("year", year))
-						.add(Restrictions.eq("estado", state))
-						.add(Restrictions.eq("unit", unit));
-
-				criteria.setMaxResults(1);
-				MonitorHistory hmonitor = (MonitorHistory) criteria.uniqueResult();
-
-				if (hmonitor == null) {
-					hmonitor = new MonitorHistory();
-				}
-
-				hmonitor.setUnit(unit);
-				hmonitor.setMonth(month);
-				hmonitor.setYear(year);
-				hmonitor.setQuantity(quantity);
-				hmonitor.setEstado(state);
-
-				this.persist(hmonitor);
-			}
-		}
-	}
-
 	public List<Unit> listUnitTerms(PlanRisk planRisk, String terms, Long[] itensSelect, int ordResult) {
 		if (terms == null || terms.isEmpty()) {
 			return new ArrayList<Unit>();
@@ -377,71 +268,24 @@ public class UnitBS extends HibernateBusiness {
 			return new ArrayList<Unit>();
 		}
 		
-		ArrayList<Unit> result = new ArrayList<Unit>();
-		
-		SnowballStemmer snowballStemmer = new portugueseStemmer();
-		snowballStemmer.setCurrent(terms);
-		snowballStemmer.stem();
-		String stemTerms = snowballStemmer.getCurrent();
-		
-		Criterion name = Restrictions.like("name", "%" + stemTerms + "%").ignoreCase();
-		Criterion description = Restrictions.like("description", "%" + stemTerms + "%").ignoreCase();
-		Criterion abbreviation = Restrictions.like("abbreviation", "%" + stemTerms + "%").ignoreCase();
-		LogicalExpression orExp = Restrictions.or(name, description);
-		LogicalExpression Exp= Restrictions.or(orExp, abbreviation);
-		
-		Criteria criteria = this.dao.newCriteria(Unit.class)
-				.add(Restrictions.eq("planRisk", planRisk))
+		DetachedCriteria units = DetachedCriteria.forClass(Unit.class)
+				.add(Restrictions.eq("deleted", false));
+		DetachedCriteria risks = DetachedCriteria.forClass(Risk.class)
 				.add(Restrictions.eq("deleted", false));
-		
 		if (itensSelect != null) {
-			Disjunction or = Restrictions.disjunction();
-			for (int i = 0; i < itensSelect.length; i++) {
-				or.add(Restrictions.eq("id", itensSelect[i]));
-			}
-			criteria.add(or);
-		}
-		
-		Map<Long, Unit> unit = new HashMap<Long, Unit>(); //<SubUnit, Unit>
-		Map<Long, Risk> risk = new HashMap<Long, Risk>(); //<Risk>
-		List<Unit> list = this.dao.findByCriteria(criteria, Unit.class);
-		
-		
-		for(int i = 0; i < list.size(); i++) {
-			Criteria crit = this.dao.newCriteria(Unit.class)
-					.add(Restrictions.eq("deleted", false))
-					.add(Restrictions.eq("id", list.get(i).getId()))
-			 		.add(Exp);
-			 
-			List<Unit> subUnits =  this.dao.findByCriteria(crit, Unit.class);
-			
-			for(int j = 0; j < subUnits.size(); j++) {
-				unit.put(subUnits.get(j).getId(), subUnits.get(j));
-			}
+			units.add(Restrictions.in("id", (Object[]) itensSelect));
+			risks.add(Restrictions.in("unit.id", (Object[]) itensSelect));
 		}
+		units.setProjection(Projections.property("id"));
+		risks.setProjection(Projections.property("id"));
 		
-		result.addAll(unit.values());
+		PaginatedList<Long> unitIds = this.searchBS.search(SearchDocument.UNIT, planRisk.getId(), terms, units,
+				ordResult, null, null);
+		List<Unit> result = this.searchBS.listByIds(Unit.class, unitIds.getList());
 		
-		for(int i = 0; i < list.size(); i++) {
-		
-			Criterion code = Restrictions.like("code", "%" + terms + "%").ignoreCase();
-			LogicalExpression orExp2 = Restrictions.or(name, code);
-			
-			
-			Criteria crit= this.dao.newCriteria(Risk.class)
-					.add(Restrictions.eq("deleted", false))
-					.add(Restrictions.eq("unit", list.get(i)))
-					.add(orExp2);
-			
-			
-			List<Risk> risks = this.dao.findByCriteria(crit, Risk.class);
-			
-			for(int j = 0; j < risks.size(); j++) {
-				risk.put(risks.get(j).getId(), risks.get(j));
-			}
-		}
-		
-		for(Risk r: risk.values()) {
+		PaginatedList<Long> riskIds = this.searchBS.search(SearchDocument.RISK, planRisk.getId(), terms, risks,
+				ordResult, null, null);
+		for(Risk r: this.searchBS.listByIds(Risk.class, riskIds.getList())) {
 			Unit u= new Unit();
 			u.setName(r.getName());
 			u.setDescription(r.getCode());
@@ -449,7 +293,6 @@ public class UnitBS extends HibernateBusiness {
 			u.setRiskSearchId(r.getId());
 			result.add(u);
 		}
-
 		
 		return result;
 	}
@@ -5,10 +5,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import javax.inject.Inject;
 import javax.validation.Valid;
@@ -24,18 +21,9 @@ import org.forpdi.core.user.authz.AccessLevels;
 import org.forpdi.core.user.authz.Permissioned;
 import org.forpdi.system.PDFgenerate;
 import org.forrisco.core.plan.PlanRisk;
-import org.forrisco.risk.Contingency;
-import org.forrisco.risk.Incident;
-import org.forrisco.risk.Monitor;
-import org.forrisco.risk.PreventiveAction;
-import org.forrisco.risk.Risk;
 import org.forrisco.risk.RiskBS;
-import org.forrisco.risk.objective.RiskActivity;
-import org.forrisco.risk.objective.RiskProcess;
-import org.forrisco.risk.objective.RiskStrategy;
 import org.forrisco.core.process.Process;
 import org.forrisco.core.process.ProcessBS;
-import org.forrisco.core.process.ProcessUnit;
 import org.forrisco.core.unit.permissions.EditUnitPermission;
 import org.forrisco.core.unit.permissions.ManageUnitPermission;
 
@@ -68,8 +56,6 @@ public class UnitController extends AbstractController {
 	@Inject 
 	@Current 
 	private CompanyDomain domain;
-	
-	private static Map<Long, Long> duplicatesUnitsId= new HashMap <Long, Long>();
 
 	protected static final String PATH = BASEPATH + "/unit";
 
@@ -137,7 +123,9 @@ public class UnitController extends AbstractController {
 	 *  
 	 *  @Param List<Unit> lista de unidade com o id da unidade ogirinal
 	 *  				 e o id no plano a ser salvo a unidade duplicado
-	 * @return void
+	 * @return PlanRisk Plano de risco de destino. As unidades são copiadas em
+	 *         segundo plano, e o andamento é consultado em
+	 *         /unit/duplicate/state.
 	 */
 	@Post(PATH + "/duplicate")
 	@Consumes
@@ -149,176 +137,41 @@ public class UnitController extends AbstractController {
 			PlanRisk plan = this.unitBS.exists(planRisk.getId(), PlanRisk.class);
 			if (plan == null || plan.isDeleted()) {
 				this.fail("Plano de Risco não encontrado");
+				return;
 			}
 			
-			List<Unit> allunits = new ArrayList<>();
-			
-			//duplicar unidades/subunidades
-			for(Unit unit: units) {
-				
-				unit = this.unitBS.exists(unit.getId(), Unit.class);
-				if (unit == null || unit.isDeleted()) {
-					//this.fail("Unidade não possui Plano de Risco");
-					continue;
-				}
-	
-				Unit newUnit= new Unit(unit);
-				newUnit.setPlanRisk(plan);
-				this.unitBS.save(newUnit);
-				duplicatesUnitsId.put(unit.getId(), newUnit.getId());
-				allunits.add(newUnit);
-				
-				PaginatedList<Unit> subunits = this.unitBS.listSubunitByUnit(unit);	
-				
-				for(Unit subunit: subunits.getList()) {
-					Unit newSubunit= new Unit(subunit);
-					newSubunit.setParent(newUnit);
-					newSubunit.setPlanRisk(plan);
-					this.unitBS.save(newSubunit);
-					duplicatesUnitsId.put(subunit.getId(), newSubunit.getId());
-					allunits.add(newSubunit);
+			List<Long> unitIds = new ArrayList<>(units.size());
+			for (Unit unit : units) {
+				if (unit.getId() != null) {
+					unitIds.add(unit.getId());
 				}
 			}
+			this.unitBS.scheduleDuplication(plan, unitIds);
 			
-			for(Unit unit: allunits) {
-				duplicateProcess(unit);
-				duplicateRisk(unit);
-			}
-			
-			this.success("successfully duplicated plan risk");
+			this.success(plan);
 		} catch (Throwable ex) {
 			LOGGER.error("Unexpected runtime error", ex);
 			this.fail("Erro inesperado: " + ex.getMessage());
 		}
 	}
 
-	private void duplicateProcess(Unit unit) {
-		
-		unit = this.unitBS.exists(unit.getId(), Unit.class);
-		if (unit == null || unit.isDeleted()) {
-			return;
-		}
-		
-		Unit original = null;
-		for(Entry<Long, Long> entry : duplicatesUnitsId.entrySet()) {
-		    Long key = entry.getKey();
-		    Long value = entry.getValue();
-
-		    if(value==unit.getId()) {
-		    	original = this.unitBS.exists(key, Unit.class);
-		    	break;
-		    }
-		}
-		
-		if(original!=null) {
-
-			PaginatedList<Process> processes= this.processBS.listProcessByUnit(original);
-	
-			for(Process process : processes.getList()) {
-	
-				ProcessUnit processUnit = new ProcessUnit();
-				Unit mapedUnit = this.unitBS.exists(duplicatesUnitsId.get(original.getId()), Unit.class);
-				
-				processUnit.setUnit(mapedUnit);
-				processUnit.setProcess(process);
-				process.setRelatedUnits(null);
-				this.processBS.save(processUnit);
-			}
-
-		}
-		
-	}
-
-	private void duplicateRisk(Unit unit){
-		
-		PaginatedList<Risk> risks= new PaginatedList<>();
-		
-		for(Entry<Long, Long> entry : duplicatesUnitsId.entrySet()) {
-		    Long key = entry.getKey();
-		    Long value = entry.getValue();
-
-		    if(value==unit.getId()) {
-		    	
-		    	Unit original = this.unitBS.exists(key, Unit.class);
-				if (original == null || original.isDeleted()) {
-					continue;
-				}
-					risks = this.riskBS.listRiskByUnit(original);
-		    	break;
-		    }
-		}
-		
-		
-		for(Risk risk : risks.getList()) {
-			PaginatedList<PreventiveAction> actions =this.riskBS.listPreventiveActionByRisk(risk);
-			
-			PaginatedList<RiskStrategy> strategies = this.riskBS.listRiskStrategy(risk);
-			PaginatedList<RiskActivity> activities = this.riskBS.listRiskActivity(risk);
-			PaginatedList<RiskProcess> processes = this.riskBS.listRiskProcess(risk);
-			
-			PaginatedList<Monitor> monitors = this.riskBS.listMonitorByRisk(risk);
-			PaginatedList<Incident> incidents = this.riskBS.listIncidentsByRisk(risks);
-			PaginatedList<Contingency> contingencies = this.riskBS.listContingenciesByRisk(risk);
-			
-			Risk newRisk = new Risk(risk);
-			newRisk.setUnit(unit);
-			this.riskBS.saveRisk(newRisk);
-			
-			
-			for( PreventiveAction action : actions.getList()) {
-				PreventiveAction act= new PreventiveAction(action);
-				act.setRisk(newRisk);
-				this.riskBS.saveAction(act);
-			}
-			
-			for(Monitor monitor : monitors.getList()) {
-				monitor= new Monitor(monitor);
-				monitor.setRisk(newRisk);
-				this.riskBS.saveMonitor(monitor);
-				//nao esta salvando no banco
-			}
-			
-			for(Incident incident : incidents.getList()) {
-				Incident icd= new Incident(incident);
-				icd.setRisk(newRisk);
-				this.riskBS.saveIncident(icd);
-			}
-			
-			for(Contingency contingency : contingencies.getList()) {
-				Contingency cont= new Contingency(contingency);
-				cont.setRisk(newRisk);
-				this.riskBS.saveContingency(cont);
-			}
-			
-
-			if(strategies !=null) {
-				for(RiskStrategy strategy: strategies.getList()) {
-					RiskStrategy str= new RiskStrategy();
-					str.setLinkFPDI(strategy.getLinkFPDI());
-					str.setName(strategy.getName());
-					str.setRisk(newRisk);
-					str.setStructure(strategy.getStructure());
-					this.riskBS.persist(str);
-				}
-			}
-			
-			if(activities !=null) {
-				for(RiskActivity activity: activities.getList()) {
-					RiskActivity act = new RiskActivity(activity);
-						act.setRisk(newRisk);
-						act.setProcess(activity.getProcess());
-						this.riskBS.persist(act);
-				}
-			}
-			
-			if(processes !=null) {
-				for(RiskProcess process: processes.getList()) {
-					RiskProcess riskpro = new RiskProcess(process);
-					riskpro.setRisk(newRisk);
-					riskpro.setProcess(process.getProcess());
-					this.riskBS.persist(riskpro);
-				}
-			}
+	/**
+	 * Andamento da duplicação de unidades para um plano de risco.
+	 * 
+	 * @param planId
+	 *            Id do plano de risco de destino.
+	 * @return Porcentagem concluída, -2 se a duplicação falhou ou -1 se não há
+	 *         duplicação para o plano.
+	 */
+	@Get(PATH + "/duplicate/state")
+	@NoCache
+	@Permissioned
+	public void duplicateState(Long planId) {
+		try {
+			this.success(String.valueOf(this.unitBS.duplicationProgress(planId)));
+		} catch (Throwable ex) {
+			LOGGER.error("Unexpected runtime error", ex);
+			this.fail("Erro inesperado: " + ex.getMessage());
 		}
 	}
 	
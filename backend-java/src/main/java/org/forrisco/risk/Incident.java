@@ -5,6 +5,7 @@ import java.util.Date;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.Transient;
@@ -18,7 +19,9 @@ import br.com.caelum.vraptor.boilerplate.SimpleLogicalDeletableEntity;
  * 
  */
 @Entity(name = Incident.TABLE)
-@Table(name = Incident.TABLE)
+@Table(name = Incident.TABLE, indexes = {
+	@Index(columnList = "risk_id,begin")
+})
 
 public class Incident extends SimpleLogicalDeletableEntity {
 	public static final String TABLE = "frisco_incident";
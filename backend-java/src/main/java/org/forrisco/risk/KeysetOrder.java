@@ -0,0 +1,72 @@
+package org.forrisco.risk;
+
+import java.util.Date;
+
+import org.hibernate.Criteria;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+
+/**
+ * Ordenação das listas de incidentes e monitoramentos paginadas por chave. A
+ * próxima página começa depois do último registro recebido, identificado pelo
+ * seu id.
+ */
+enum KeysetOrder {
+	/** Ordem de cadastro, a padrão. */
+	ID,
+	/** Mais antigos primeiro, pela data e, na mesma data, pelo id. */
+	DATE_ASC,
+	/** Mais recentes primeiro, pela data e, na mesma data, pelo id. */
+	DATE_DESC;
+
+	/**
+	 * @param ascending
+	 *            Se os mais antigos vêm primeiro, ou null para a ordem de
+	 *            cadastro.
+	 */
+	static KeysetOrder of(Boolean ascending) {
+		if (ascending == null) {
+			return ID;
+		}
+		return ascending ? DATE_ASC : DATE_DESC;
+	}
+
+	/** Se a posição na lista depende da data do último registro. */
+	boolean byDate() {
+		return this != ID;
+	}
+
+	/**
+	 * Restrição aos registros depois do último recebido.
+	 *
+	 * @param begin
+	 *            Data do último registro, usada apenas na ordenação por data.
+	 * @param after
+	 *            Id do último registro.
+	 */
+	Criterion after(Date begin, Long after) {
+		switch (this) {
+		case DATE_ASC:
+			return Restrictions.or(Restrictions.gt("begin", begin),
+					Restrictions.and(Restrictions.eq("begin", begin), Restrictions.gt("id", after)));
+		case DATE_DESC:
+			return Restrictions.or(Restrictions.lt("begin", begin),
+					Restrictions.and(Restrictions.eq("begin", begin), Restrictions.lt("id", after)));
+		default:
+			return Restrictions.gt("id", after);
+		}
+	}
+
+	/** Adiciona a ordenação a uma consulta. */
+	Criteria addOrders(Criteria criteria) {
+		switch (this) {
+		case DATE_ASC:
+			return criteria.addOrder(Order.asc("begin")).addOrder(Order.asc("id"));
+		case DATE_DESC:
+			return criteria.addOrder(Order.desc("begin")).addOrder(Order.desc("id"));
+		default:
+			return criteria.addOrder(Order.asc("id"));
+		}
+	}
+}
@@ -3,6 +3,7 @@ package org.forrisco.risk;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
@@ -16,7 +17,9 @@ import br.com.caelum.vraptor.boilerplate.SimpleLogicalDeletableEntity;
  * 
  */
 @Entity(name = MonitorHistory.TABLE)
-@Table(name = MonitorHistory.TABLE)
+@Table(name = MonitorHistory.TABLE, indexes = {
+	@Index(columnList = "unit_id,year,month")
+})
 public class MonitorHistory extends SimpleLogicalDeletableEntity {
 	public static final String TABLE = "frisco_monitor_history";
 	private static final long serialVersionUID = 1L;
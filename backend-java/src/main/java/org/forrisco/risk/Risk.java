@@ -5,6 +5,7 @@ import java.util.Date;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.Transient;
@@ -23,7 +24,9 @@ import br.com.caelum.vraptor.boilerplate.bean.PaginatedList;
  * 
  */
 @Entity(name = Risk.TABLE)
-@Table(name = Risk.TABLE)
+@Table(name = Risk.TABLE, indexes = {
+	@Index(columnList = "closeToMaturity")
+})
 
 public class Risk extends SimpleLogicalDeletableEntity {
 	public static final String TABLE = "frisco_risk";
@@ -80,6 +83,14 @@ public class Risk extends SimpleLogicalDeletableEntity {
 	@Column(nullable = true)
 	private String linkFPDI;
 
+	/** Data do último monitoramento, ou de início se o risco ainda não foi monitorado. */
+	@Column(nullable = true)
+	private Date lastMonitoring;
+
+	/** Data em que o risco passa a estar próximo a vencer, de acordo com a periodicidade. */
+	@Column(nullable = true)
+	private Date closeToMaturity;
+
 	@Transient
 	private PaginatedList<RiskActivity> activities;
 
@@ -247,6 +258,22 @@ public class Risk extends SimpleLogicalDeletableEntity {
 		this.linkFPDI = linkFPDI;
 	}
 
+	public Date getLastMonitoring() {
+		return lastMonitoring;
+	}
+
+	public void setLastMonitoring(Date lastMonitoring) {
+		this.lastMonitoring = lastMonitoring;
+	}
+
+	public Date getCloseToMaturity() {
+		return closeToMaturity;
+	}
+
+	public void setCloseToMaturity(Date closeToMaturity) {
+		this.closeToMaturity = closeToMaturity;
+	}
+
 	public PaginatedList<RiskActivity> getActivities() {
 		return activities;
 	}
@@ -1,11 +1,10 @@
 package org.forrisco.risk;
 
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
@@ -19,6 +18,7 @@ import org.forpdi.core.notification.NotificationBS;
 import org.forpdi.core.notification.NotificationType;
 import org.forpdi.planning.plan.Plan;
 import org.forpdi.planning.structure.StructureLevelInstance;
+import org.forrisco.core.bean.MatrixCellBean;
 import org.forrisco.core.plan.PlanRisk;
 import org.forrisco.core.policy.Policy;
 import org.forrisco.core.unit.Unit;
@@ -49,6 +49,8 @@ public class RiskBS extends HibernateBusiness {
 	protected HttpServletRequest request;
 	@Inject
 	protected NotificationBS notificationBS;
+	@Inject
+	protected RiskHistoryBS historyBS;
 
 	private static final int PAGESIZE = 10;
 
@@ -60,7 +62,39 @@ public class RiskBS extends HibernateBusiness {
 	 */
 	public void saveRisk(Risk risk) {
 		risk.setDeleted(false);
+		this.setMonitoringDates(risk);
+		this.persist(risk);
+		this.historyBS.refresh(risk.getUnit());
+	}
+
+	/**
+	 * Salva um conjunto de riscos e atualiza o histórico de riscos de cada
+	 * unidade uma única vez, depois de salvar todos.
+	 * 
+	 * @param risks,
+	 *            riscos a serem salvos
+	 */
+	public void saveRisks(List<Risk> risks) {
+		List<Unit> units = new ArrayList<>(risks.size());
+		for (Risk risk : risks) {
+			risk.setDeleted(false);
+			this.setMonitoringDates(risk);
+			this.persist(risk);
+			units.add(risk.getUnit());
+		}
+		this.historyBS.refresh(units);
+	}
+
+	/**
+	 * Salva as alterações de um risco existente, como o grau de risco após um
+	 * monitoramento, e atualiza o histórico de riscos da unidade.
+	 * 
+	 * @param Risk,
+	 *            instância do risco alterado
+	 */
+	public void updateRisk(Risk risk) {
 		this.persist(risk);
+		this.historyBS.refreshRisks(risk.getUnit());
 	}
 
 	/**
@@ -83,6 +117,7 @@ public class RiskBS extends HibernateBusiness {
 				this.persist(rk);
 			}
 		}
+		RiskMatrix.invalidate(policy.getId());
 	}
 
 	/**
@@ -106,6 +141,7 @@ public class RiskBS extends HibernateBusiness {
 	public void saveMonitor(Monitor monitor) {
 		monitor.setDeleted(false);
 		this.persist(monitor);
+		this.updateMonitoringDates(monitor.getRisk());
 	}
 
 	/**
@@ -117,6 +153,7 @@ public class RiskBS extends HibernateBusiness {
 	public void saveRiskLevel(RiskLevel risklevel) {
 		risklevel.setDeleted(false);
 		this.persist(risklevel);
+		RiskMatrix.invalidate(risklevel.getPolicy().getId());
 	}
 
 	/**
@@ -251,6 +288,7 @@ public class RiskBS extends HibernateBusiness {
 	public void delete(RiskLevel risklevel) {
 		risklevel.setDeleted(true);
 		this.persist(risklevel);
+		RiskMatrix.invalidate(risklevel.getPolicy().getId());
 	}
 
 	/**
@@ -273,6 +311,7 @@ public class RiskBS extends HibernateBusiness {
 	public void delete(Monitor monitor) {
 		monitor.setDeleted(true);
 		this.persist(monitor);
+		this.updateMonitoringDates(monitor.getRisk());
 	}
 
 	/**
@@ -370,6 +409,7 @@ public class RiskBS extends HibernateBusiness {
 	public void delete(Risk risk) {
 		risk.setDeleted(true);
 		this.persist(risk);
+		this.historyBS.refresh(risk.getUnit());
 	}
 
 	/**
@@ -581,36 +621,21 @@ public class RiskBS extends HibernateBusiness {
 			}
 		}
 
-		int total = policy.getNline() * policy.getNcolumn() + policy.getNline() + policy.getNcolumn();
-		String[][] matrix = getMatrixVector(policy);
-
-		int linha = 0;
-		int coluna = 0;
-		for (int i = 0; i < total; i++) {
-			if (i % (policy.getNline() + 1) == 0) {
-
-				if (risk.getProbability().equals(matrix[i][0])) {
-					i = total;
-				}
-				linha += 1;
-			}
+		RiskMatrix matrix = this.getRiskMatrix(policy);
+		String result = matrix.level(risk.getProbability(), risk.getImpact());
+		if (result == null) {
+			throw new Exception("falha ao carregar grau de risco");
 		}
 
-		for (int i = total - policy.getNcolumn(); i < total; i++) {
-			if (risk.getImpact().equals(matrix[i][0])) {
-				i = total;
+		Long levelId = matrix.levelId(risk.getProbability(), risk.getImpact());
+		if (levelId != null) {
+			RiskLevel level = this.exists(levelId, RiskLevel.class);
+			if (level != null && !level.isDeleted()) {
+				return level;
 			}
-			coluna += 1;
+			RiskMatrix.invalidate(policy.getId());
 		}
 
-		int position = ((linha - 1) * (policy.getNcolumn() + 1)) + coluna;
-
-		if (position >= total) {
-			throw new Exception("falha ao carregar grau de risco");
-		}
-
-		String result = matrix[position][0];
-
 		Criteria criteria = this.dao.newCriteria(RiskLevel.class).add(Restrictions.eq("deleted", false))
 				.add(Restrictions.eq("policy", policy)).add(Restrictions.eq("level", result));
 
@@ -811,6 +836,146 @@ public class RiskBS extends HibernateBusiness {
 		return incident;
 	}
 
+	/**
+	 * Retorna os incidentes dos riscos de um plano de risco, buscados em uma
+	 * única consulta que passa pela unidade e pelo risco. A lista é ordenada
+	 * pelo id, ou pela data do incidente, e paginada por chave: a próxima
+	 * página começa depois do último incidente recebido.
+	 * 
+	 * @param planRisk
+	 *            plano de risco
+	 * @param unitId
+	 *            id da unidade, ou null para todas
+	 * @param type
+	 *            tipo do incidente, ou null para todos
+	 * @param year
+	 *            ano do incidente, ou null para todos
+	 * @param ascending
+	 *            se os incidentes mais antigos vêm primeiro, ou null para a
+	 *            ordem de cadastro
+	 * @param after
+	 *            id do último incidente da página anterior, ou null para a
+	 *            primeira página
+	 * @param pageSize
+	 *            tamanho da página, ou null para todos os incidentes
+	 * 
+	 * @return PaginatedList<Incident> incidentes, com o total preenchido na
+	 *         primeira página
+	 */
+	public PaginatedList<Incident> listIncidentsByPlan(PlanRisk planRisk, Long unitId, Integer type, Integer year,
+			Boolean ascending, Long after, Integer pageSize) {
+		Criteria criteria = this.planCriteria(Incident.class, planRisk, unitId, year);
+		Criteria count = this.planCriteria(Incident.class, planRisk, unitId, year);
+		if (type != null) {
+			criteria.add(Restrictions.eq("type", type));
+			count.add(Restrictions.eq("type", type));
+		}
+		PaginatedList<Incident> results = this.keysetPage(Incident.class, criteria, count, KeysetOrder.of(ascending),
+				after, pageSize);
+		for (Incident incident : results.getList()) {
+			incident.setUnitId(incident.getRisk().getUnit().getId());
+		}
+		return results;
+	}
+
+	/**
+	 * Retorna os monitoramentos dos riscos de um plano de risco, buscados em
+	 * uma única consulta que passa pela unidade e pelo risco. A lista é
+	 * ordenada pelo id, ou pela data do monitoramento, e paginada por chave.
+	 * 
+	 * @param planRisk
+	 *            plano de risco
+	 * @param unitId
+	 *            id da unidade, ou null para todas
+	 * @param year
+	 *            ano do monitoramento, ou null para todos
+	 * @param ascending
+	 *            se os monitoramentos mais antigos vêm primeiro, ou null
+	 *            para a ordem de cadastro
+	 * @param after
+	 *            id do último monitoramento da página anterior, ou null para
+	 *            a primeira página
+	 * @param pageSize
+	 *            tamanho da página, ou null para todos os monitoramentos
+	 * 
+	 * @return PaginatedList<Monitor> monitoramentos, com o total preenchido
+	 *         na primeira página
+	 */
+	public PaginatedList<Monitor> listMonitorsByPlan(PlanRisk planRisk, Long unitId, Integer year, Boolean ascending,
+			Long after, Integer pageSize) {
+		Criteria criteria = this.planCriteria(Monitor.class, planRisk, unitId, year);
+		Criteria count = this.planCriteria(Monitor.class, planRisk, unitId, year);
+		PaginatedList<Monitor> results = this.keysetPage(Monitor.class, criteria, count, KeysetOrder.of(ascending),
+				after, pageSize);
+		for (Monitor monitor : results.getList()) {
+			monitor.setUnitId(monitor.getRisk().getUnit().getId());
+		}
+		return results;
+	}
+
+	/**
+	 * Consulta dos registros não excluídos ligados aos riscos e unidades não
+	 * excluídos de um plano de risco.
+	 */
+	private Criteria planCriteria(Class<?> clazz, PlanRisk planRisk, Long unitId, Integer year) {
+		Criteria criteria = this.dao.newCriteria(clazz)
+				.createAlias("risk", "risk")
+				.createAlias("risk.unit", "unit")
+				.add(Restrictions.eq("deleted", false))
+				.add(Restrictions.eq("risk.deleted", false))
+				.add(Restrictions.eq("unit.deleted", false))
+				.add(Restrictions.eq("unit.planRisk", planRisk));
+		if (unitId != null) {
+			criteria.add(Restrictions.eq("unit.id", unitId));
+		}
+		if (year != null) {
+			Calendar calendar = Calendar.getInstance();
+			calendar.clear();
+			calendar.set(year, Calendar.JANUARY, 1);
+			Date begin = calendar.getTime();
+			calendar.add(Calendar.YEAR, 1);
+			criteria.add(Restrictions.ge("begin", begin)).add(Restrictions.lt("begin", calendar.getTime()));
+		}
+		return criteria;
+	}
+
+	/**
+	 * Aplica a ordenação e a paginação por chave a uma consulta. O total é
+	 * contado apenas na primeira página.
+	 */
+	private <T> PaginatedList<T> keysetPage(Class<T> clazz, Criteria criteria, Criteria count, KeysetOrder order,
+			Long after, Integer pageSize) {
+		PaginatedList<T> results = new PaginatedList<T>();
+		if (after != null) {
+			Date begin = null;
+			if (order.byDate()) {
+				Criteria cursor = this.dao.newCriteria(clazz)
+						.add(Restrictions.idEq(after))
+						.setProjection(Projections.property("begin"));
+				begin = (Date) cursor.uniqueResult();
+				if (begin == null) {
+					results.setList(new ArrayList<T>());
+					return results;
+				}
+			}
+			criteria.add(order.after(begin, after));
+		}
+		order.addOrders(criteria);
+		if (pageSize != null && pageSize > 0) {
+			criteria.setMaxResults(pageSize);
+		}
+		List<T> list = this.dao.findByCriteria(criteria, clazz);
+		results.setList(list);
+		if (after == null) {
+			if (pageSize == null || pageSize <= 0 || list.size() < pageSize) {
+				results.setTotal((long) list.size());
+			} else {
+				results.setTotal((Long) count.setProjection(Projections.rowCount()).uniqueResult());
+			}
+		}
+		return results;
+	}
+
 	/**
 	 * Retorna os contingenciamentos a partir de um risco
 	 * 
@@ -918,64 +1083,71 @@ public class RiskBS extends HibernateBusiness {
 		return results;
 	}
 
-	public PaginatedList<RiskHistory> listHistoryByUnits(PaginatedList<Unit> units, boolean threat) {
-
-		PaginatedList<RiskHistory> results = new PaginatedList<RiskHistory>();
-		List<RiskHistory> list = new ArrayList<>();
-
-		for (Unit unit : units.getList()) {
-			Criteria criteria = this.dao.newCriteria(RiskHistory.class).add(Restrictions.eq("unit", unit))
-					.add(Restrictions.eq("deleted", false)).add(Restrictions.eq("threat", threat))
-					.addOrder(Order.asc("id"));
-
-			list.addAll(this.dao.findByCriteria(criteria, RiskHistory.class));
+	/**
+	 * Transforma a string matrix em vetor
+	 * 
+	 * 
+	 * @param policy
+	 * @return
+	 */
+	public String[][] getMatrixVector(Policy policy) {
+		RiskMatrix matrix = RiskMatrix.cached(policy);
+		if (matrix == null) {
+			matrix = RiskMatrix.parse(policy);
 		}
-
-		results.setList(list);
-		results.setTotal((long) list.size());
-		return results;
-
+		return matrix.toVector();
 	}
 
-	public PaginatedList<MonitorHistory> listMonitorHistoryByUnits(PaginatedList<Unit> units) {
-
-		PaginatedList<MonitorHistory> results = new PaginatedList<MonitorHistory>();
-		List<MonitorHistory> list = new ArrayList<>();
-
-		for (Unit unit : units.getList()) {
-			Criteria criteria = this.dao.newCriteria(MonitorHistory.class).add(Restrictions.eq("unit", unit))
-					.add(Restrictions.eq("deleted", false)).addOrder(Order.asc("id"));
-
-			list.addAll(this.dao.findByCriteria(criteria, MonitorHistory.class));
+	/**
+	 * Retorna a matriz de risco de uma política salva, montando-a apenas se
+	 * ela não estiver em memória ou tiver sido alterada.
+	 * 
+	 * @param policy
+	 *            instância da política
+	 * @return RiskMatrix matriz de risco
+	 */
+	public RiskMatrix getRiskMatrix(Policy policy) {
+		RiskMatrix matrix = RiskMatrix.cached(policy);
+		if (matrix == null) {
+			matrix = RiskMatrix.compile(policy, this.listRiskLevelByPolicy(policy).getList());
 		}
-
-		results.setList(list);
-		results.setTotal((long) list.size());
-		return results;
+		return matrix;
 	}
 
 	/**
-	 * Transforma a string matrix em vetor
+	 * Conta os riscos de um plano de risco em cada célula da matriz, com uma
+	 * única consulta agrupada por probabilidade e impacto.
 	 * 
-	 * 
-	 * @param policy
-	 * @return
+	 * @param planRisk
+	 *            plano de risco
+	 * @return PaginatedList<MatrixCellBean> células com pelo menos um risco
 	 */
-	public String[][] getMatrixVector(Policy policy) {
-		int total = policy.getNline() * policy.getNcolumn() + policy.getNline() + policy.getNcolumn();
-		String[] aux = policy.getMatrix().split(";");
-		String[][] matrix = new String[total][3];
-
-		for (int i = 0; i < aux.length; i++) {
-			matrix[i][0] = aux[i].split("\\[.*\\]")[1];
-			Pattern pattern = Pattern.compile("\\[.*\\]");
-			Matcher matcher = pattern.matcher(aux[i]);
-			if (matcher.find()) {
-				matrix[i][1] = matcher.group(0).split(",")[0].split("\\[")[1];
-				matrix[i][2] = matcher.group(0).split(",")[1].split("\\]")[0];
+	public PaginatedList<MatrixCellBean> countRisksByPI(PlanRisk planRisk) {
+		Criteria criteria = this.dao.newCriteria(Risk.class).createAlias("unit", "unit")
+				.add(Restrictions.eq("unit.planRisk", planRisk)).add(Restrictions.eq("unit.deleted", false))
+				.add(Restrictions.eq("deleted", false))
+				.setProjection(Projections.projectionList()
+						.add(Projections.groupProperty("probability"))
+						.add(Projections.groupProperty("impact"))
+						.add(Projections.rowCount()));
+
+		RiskMatrix matrix = planRisk.getPolicy() == null ? null : this.getRiskMatrix(planRisk.getPolicy());
+		List<MatrixCellBean> cells = new ArrayList<>();
+		for (Object[] row : this.dao.findByCriteria(criteria, Object[].class)) {
+			MatrixCellBean cell = new MatrixCellBean();
+			cell.setProbability((String) row[0]);
+			cell.setImpact((String) row[1]);
+			cell.setQuantity((Long) row[2]);
+			if (matrix != null) {
+				cell.setLevel(matrix.level(cell.getProbability(), cell.getImpact()));
 			}
+			cells.add(cell);
 		}
-		return matrix;
+
+		PaginatedList<MatrixCellBean> results = new PaginatedList<MatrixCellBean>();
+		results.setList(cells);
+		results.setTotal((long) cells.size());
+		return results;
 	}
 
 	/**
@@ -1154,6 +1326,94 @@ public class RiskBS extends HibernateBusiness {
 		return state;
 	}
 
+	/**
+	 * Calcula a data em que um risco passa a estar próximo a vencer, a partir
+	 * da data do último monitoramento.
+	 * 
+	 * @param periodicity
+	 *            Periodicidade do risco
+	 * @param date
+	 *            Data do último monitoramento, ou de início do risco
+	 * 
+	 * @return Date data em que o risco fica próximo a vencer, ou null se a
+	 *         periodicidade não for conhecida
+	 */
+	public static Date closeToMaturityDate(String periodicity, Date date) {
+		if (periodicity == null || date == null) {
+			return null;
+		}
+		long time = date.getTime();
+		long hour = 1000 * 60 * 60;
+		long day = hour * 24;
+
+		switch (periodicity.toLowerCase()) {
+		case "diária":
+			return new Date(time + hour * (long) (24 - CloseToMaturityPeriod.DIARIO.getValue()));
+		case "semanal":
+			return new Date(time + day * (long) (7 - CloseToMaturityPeriod.SEMANAL.getValue()));
+		case "quinzenal":
+			return new Date(time + day * (long) (15 - CloseToMaturityPeriod.QUINZENAL.getValue()));
+		case "mensal":
+			return new Date(time + day * (long) (30 - CloseToMaturityPeriod.MENSAL.getValue()));
+		case "bimestral":
+			return new Date(time + day * (long) (60 - CloseToMaturityPeriod.BIMESTRAL.getValue()));
+		case "trimestral":
+			return new Date(time + day * (long) (90 - CloseToMaturityPeriod.TRIMESTRAL.getValue()));
+		case "semestral":
+			return new Date(time + day * (long) (180 - CloseToMaturityPeriod.SEMESTRAL.getValue()));
+		case "anual":
+			return new Date(time + day * (long) (360 - CloseToMaturityPeriod.ANUAL.getValue()));
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Retorna a data do último monitoramento de um risco, ou a data de início
+	 * se ele ainda não foi monitorado. Usa a data gravada no risco, e consulta
+	 * os monitoramentos apenas se ela ainda não foi preenchida.
+	 * 
+	 * @param risk
+	 *            instância de um risco
+	 * 
+	 * @return Date data do último monitoramento
+	 */
+	public Date lastMonitoringDate(Risk risk) {
+		if (risk.getLastMonitoring() != null) {
+			return risk.getLastMonitoring();
+		}
+		Monitor monitor = this.lastMonitorbyRisk(risk);
+		return monitor != null ? monitor.getBegin() : risk.getBegin();
+	}
+
+	/**
+	 * Recalcula a data do último monitoramento e a data em que o risco fica
+	 * próximo a vencer, depois de um monitoramento ser salvo ou excluído, e
+	 * atualiza o histórico de monitoramentos da unidade.
+	 * 
+	 * @param risk
+	 *            instância de um risco
+	 */
+	public void updateMonitoringDates(Risk risk) {
+		if (risk == null || risk.getId() == null) {
+			return;
+		}
+		Risk existent = this.exists(risk.getId(), Risk.class);
+		if (existent == null) {
+			return;
+		}
+		this.setMonitoringDates(existent);
+		this.persist(existent);
+		this.historyBS.refreshMonitors(existent.getUnit());
+	}
+
+	private void setMonitoringDates(Risk risk) {
+		Monitor monitor = risk.getId() == null ? null : this.lastMonitorbyRisk(risk);
+		Date date = monitor != null ? monitor.getBegin() : risk.getBegin();
+		risk.setLastMonitoring(date);
+		risk.setCloseToMaturity(closeToMaturityDate(risk.getPeriodicity(), date));
+	}
+
 	/**
 	 * Retorna o ultimo monitoramento de um risco
 	 * 
@@ -1183,14 +1443,7 @@ public class RiskBS extends HibernateBusiness {
 		List<Risk> list = new ArrayList<>();
 
 		for (Risk risk : risks) {
-			Monitor monitor = lastMonitorbyRisk(risk);
-			Date date = risk.getBegin();
-
-			if (monitor != null) {
-				date = monitor.getBegin();
-			}
-
-			if (new RiskBS().riskState(risk.getPeriodicity(), date) == state) {
+			if (riskState(risk.getPeriodicity(), this.lastMonitoringDate(risk)) == state) {
 				list.add(risk);
 			}
 		}
@@ -38,6 +38,7 @@ public class RiskController extends AbstractController {
 	
 	@Inject @Current private CompanyDomain domain;
 	@Inject private RiskBS riskBS;
+	@Inject private RiskHistoryBS historyBS;
 	@Inject private UnitBS unitBS ;
 
 	protected static final String PATH =  BASEPATH +"/risk";
@@ -163,7 +164,7 @@ public class RiskController extends AbstractController {
 			risk.setImpact(monitor.getImpact());
 			risk.setProbability(monitor.getProbability());
 			risk.setRiskLevel(this.riskBS.getRiskLevelByRisk(risk,null));
-			this.riskBS.persist(risk);
+			this.riskBS.updateRisk(risk);
 		
 			this.success(monitor);
 		} catch (Throwable e) {
@@ -406,6 +407,33 @@ public class RiskController extends AbstractController {
 		}
 	}
 	
+	/**
+	 * Retorna a quantidade de riscos de um plano em cada célula da matriz de
+	 * risco.
+	 * 
+	 * @param planId
+	 *			Id do plano de risco.
+	 * @return <PaginedList> MatrixCellBean
+	 * 			 Retorna as células com pelo menos um risco.
+	 */
+	@Get(PATH + "/matrixCount")
+	@NoCache
+	@Permissioned
+	public void countRisksByPI(@NotNull Long planId) {
+		try {
+			PlanRisk plan = this.riskBS.exists(planId, PlanRisk.class);
+			if (plan == null || plan.isDeleted()) {
+				this.fail("O Plano não foi encontrado.");
+				return;
+			}
+			
+			this.success(this.riskBS.countRisksByPI(plan));
+		} catch (Throwable ex) {
+			LOGGER.error("Unexpected runtime error", ex);
+			this.fail("Ocorreu um erro inesperado: " + ex.getMessage());
+		}
+	}
+	
 	
 	/**
 	 * Retorna ações de prevenção.
@@ -477,17 +505,29 @@ public class RiskController extends AbstractController {
 	
 	
 	/**
-	 * Retorna monitoramentos.
+	 * Retorna os monitoramentos dos riscos de um plano.
 	 * 
 	 * @param planId
 	 *			Id do plano.
+	 * @param unitId
+	 *			Id da unidade, ou null para todas.
+	 * @param year
+	 *			Ano dos monitoramentos, ou null para todos.
+	 * @param ascending
+	 *			Se os monitoramentos mais antigos vêm primeiro, ou null para a
+	 *			ordem de cadastro.
+	 * @param after
+	 *			Id do último monitoramento da página anterior.
+	 * @param pageSize
+	 *			Tamanho da página, ou null para todos os monitoramentos.
 	 * @return <PaginedList> Monitor
-	 * 			 Retorna lista de monitoramentos do risco.
+	 * 			 Retorna lista de monitoramentos do plano.
 	 */
 	@Get( PATH + "/monitors")
 	@NoCache
 	@Permissioned
-	public void listMonitors(@NotNull Long planId) {
+	public void listMonitors(@NotNull Long planId, Long unitId, Integer year, Boolean ascending, Long after,
+			Integer pageSize) {
 		try {
 			PlanRisk plan = this.riskBS.exists(planId, PlanRisk.class);
 			if (plan == null) {
@@ -495,32 +535,7 @@ public class RiskController extends AbstractController {
 				return;
 			} 
 			
-			PaginatedList<Unit> units= this.unitBS.listUnitsbyPlanRisk(plan);
-			
-			List<Risk> risks = new ArrayList<>();
-			List<Monitor> monitors = new ArrayList<>();
-		
-			
-			 for(Unit unit : units.getList()) {
-				 PaginatedList<Risk> list= this.riskBS.listRiskByUnit(unit);
-				 risks.addAll(list.getList());
-			 }
-			 
-			 for(Risk risk : risks) {
-				 PaginatedList<Monitor> list = this.riskBS.listMonitorByRisk(risk);
-				 monitors.addAll(list.getList());
-			 }
-			 
-			 for(Monitor monitor : monitors) {
-				 monitor.setUnitId(monitor.getRisk().getUnit().getId());
-			 }
-	
-			PaginatedList<Monitor> monitor = new  PaginatedList<Monitor>();
-			
-			monitor.setList(monitors);
-			monitor.setTotal((long) monitors.size());
-			
-			this.success(monitor);
+			this.success(this.riskBS.listMonitorsByPlan(plan, unitId, year, ascending, after, pageSize));
 			
 		} catch (Throwable ex) {
 			LOGGER.error("Unexpected runtime error", ex);
@@ -562,17 +577,31 @@ public class RiskController extends AbstractController {
 	
 	
 	/**
-	 * Retorna incidentes.
+	 * Retorna os incidentes dos riscos de um plano.
 	 * 
 	 * @param planId
 	 *			Id do plano.
+	 * @param unitId
+	 *			Id da unidade, ou null para todas.
+	 * @param type
+	 *			Tipo dos incidentes, ou null para todos.
+	 * @param year
+	 *			Ano dos incidentes, ou null para todos.
+	 * @param ascending
+	 *			Se os incidentes mais antigos vêm primeiro, ou null para a ordem
+	 *			de cadastro.
+	 * @param after
+	 *			Id do último incidente da página anterior.
+	 * @param pageSize
+	 *			Tamanho da página, ou null para todos os incidentes.
 	 * @return <PaginedList> Incident
-	 * 			 Retorna lista de incidentes do risco.
+	 * 			 Retorna lista de incidentes do plano.
 	 */
 	@Get( PATH + "/incidents")
 	@NoCache
 	@Permissioned
-	public void listIncidents(@NotNull Long planId) {
+	public void listIncidents(@NotNull Long planId, Long unitId, Integer type, Integer year, Boolean ascending,
+			Long after, Integer pageSize) {
 		try {
 			PlanRisk plan = this.riskBS.exists(planId, PlanRisk.class);
 			if (plan == null) {
@@ -580,31 +609,7 @@ public class RiskController extends AbstractController {
 				return;
 			} 
 			
-			PaginatedList<Unit> units= this.unitBS.listUnitsbyPlanRisk(plan);
-			
-			List<Risk> risks = new ArrayList<>();
-			List<Incident> incidents = new ArrayList<>();
-			
-			 for(Unit unit : units.getList()) {
-				 PaginatedList<Risk> list= this.riskBS.listRiskByUnit(unit);
-				 risks.addAll(list.getList());
-			 }
-			 
-			 for(Risk risk : risks) {
-				 PaginatedList<Incident> list = this.riskBS.listIncidentsByRisk(risk);
-				 incidents.addAll(list.getList());
-			 }
-			 
-			 for(Incident incident : incidents) {
-				 incident.setUnitId(incident.getRisk().getUnit().getId());
-			 }
-	
-			PaginatedList<Incident> incident = new  PaginatedList<Incident>();
-			
-			incident.setList(incidents);
-			incident.setTotal((long) incidents.size());
-			
-			this.success(incident);
+			this.success(this.riskBS.listIncidentsByPlan(plan, unitId, type, year, ascending, after, pageSize));
 			
 		} catch (Throwable ex) {
 			LOGGER.error("Unexpected runtime error", ex);
@@ -634,39 +639,29 @@ public class RiskController extends AbstractController {
 	}
 	
 	/**
-	 * Retorna riscos a partir de uma unidade
+	 * Retorna os incidentes dos riscos de uma unidade.
+	 * 
 	 * @param unitId
+	 *			Id da unidade.
+	 * @param after
+	 *			Id do último incidente da página anterior.
+	 * @param pageSize
+	 *			Tamanho da página, ou null para todos os incidentes.
 	 */
-	
 	@Get( PATH + "/incidentByUnit")
 	@NoCache
 	@Permissioned
-	public void listIncidentsByUnit(@NotNull Long unitId) {
+	public void listIncidentsByUnit(@NotNull Long unitId, Long after, Integer pageSize) {
 		
 		try {
 			Unit unit = this.riskBS.exists(unitId, Unit.class);
-			List<Risk> risks = new ArrayList<>();
-			List<Incident> incidents = new ArrayList<>();
-			
 			if (unit == null) {
 				this.fail("A unidade solicitada não foi encontrado.");
 				return;
 			}
 			
-			PaginatedList<Risk> listRisk = this.riskBS.listRiskByUnit(unit);
-			risks.addAll(listRisk.getList());
-			
-			for(Risk risk : risks) {
-				PaginatedList<Incident> list = this.riskBS.listIncidentsByRisk(risk);
-				incidents.addAll(list.getList());
-			}
-			
-			PaginatedList<Incident> incident = new  PaginatedList<Incident>();
-			
-			incident.setList(incidents);
-			incident.setTotal((long) incidents.size());
-			
-			this.success(incident);
+			this.success(this.riskBS.listIncidentsByPlan(unit.getPlanRisk(), unit.getId(), null, null, null,
+					after, pageSize));
 		} catch (Throwable ex) {
 			LOGGER.error("Unexpected runtime error", ex);
 			this.fail("Erro inesperado: " + ex.getMessage());
@@ -735,10 +730,6 @@ public class RiskController extends AbstractController {
 				return;
 			} 
 			
-			this.unitBS.updateHistory(plan,true);
-			this.unitBS.updateHistory(plan,false);
-			
-			
 			if(unitId== -1) {
 				units = this.unitBS.listUnitsbyPlanRisk(plan);
 			}else {
@@ -754,7 +745,7 @@ public class RiskController extends AbstractController {
 				units.setList(list);
 			}
 			
-			PaginatedList<RiskHistory> history = this.riskBS.listHistoryByUnits(units, threat);
+			PaginatedList<RiskHistory> history = this.historyBS.listRiskHistory(units.getList(), threat);
 						
 			this.success(history);
 			
@@ -821,9 +812,6 @@ public class RiskController extends AbstractController {
 				return;
 			} 
 			
-			this.unitBS.updateMonitorHistory(plan);
-			
-			
 			if(unitId== -1) {
 				units = this.unitBS.listUnitsbyPlanRisk(plan);
 			}else {
@@ -839,7 +827,7 @@ public class RiskController extends AbstractController {
 				units.setList(list);
 			}
 			
-			PaginatedList<MonitorHistory> history = this.riskBS.listMonitorHistoryByUnits(units);
+			PaginatedList<MonitorHistory> history = this.historyBS.listMonitorHistory(units.getList());
 						
 			this.success(history);
 			
@@ -881,6 +869,7 @@ public class RiskController extends AbstractController {
 				return;
 			}
 			
+			Unit previousUnit = oldrisk.getUnit();
 			oldrisk.setUnit(unit);
 			oldrisk.setUser(user);
 			oldrisk.setImpact(risk.getImpact());
@@ -912,6 +901,9 @@ public class RiskController extends AbstractController {
 			this.riskBS.saveStrategies(risk);
 			
 			this.riskBS.saveRisk(oldrisk);
+			if (!previousUnit.getId().equals(unit.getId())) {
+				this.historyBS.refresh(previousUnit);
+			}
 			
 			this.success(oldrisk);
 		} catch (Throwable ex) {
@@ -1004,7 +996,7 @@ public class RiskController extends AbstractController {
 			risk.setImpact(monitor.getImpact());
 			risk.setProbability(monitor.getProbability());
 			risk.setRiskLevel(this.riskBS.getRiskLevelByRisk(risk,null));
-			this.riskBS.persist(risk);
+			this.riskBS.updateRisk(risk);
 			
 			this.success(oldmonitor);
 		} catch (Throwable ex) {
@@ -3,6 +3,7 @@ package org.forrisco.risk;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
@@ -15,7 +16,9 @@ import br.com.caelum.vraptor.boilerplate.SimpleLogicalDeletableEntity;
  * 
  */
 @Entity(name = RiskHistory.TABLE)
-@Table(name = RiskHistory.TABLE)
+@Table(name = RiskHistory.TABLE, indexes = {
+	@Index(columnList = "unit_id,year,month")
+})
 public class RiskHistory extends SimpleLogicalDeletableEntity {
 	public static final String TABLE = "frisco_risk_history";
 	private static final long serialVersionUID = 1L;
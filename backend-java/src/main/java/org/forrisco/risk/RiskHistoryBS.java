@@ -0,0 +1,351 @@
+package org.forrisco.risk;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.enterprise.context.RequestScoped;
+
+import org.forrisco.core.unit.Unit;
+import org.hibernate.Criteria;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+
+import br.com.caelum.vraptor.boilerplate.HibernateBusiness;
+import br.com.caelum.vraptor.boilerplate.bean.PaginatedList;
+
+/**
+ * Mantém o histórico mensal dos riscos por grau ({@link RiskHistory}) e dos
+ * monitoramentos por estado ({@link MonitorHistory}) de cada unidade.
+ *
+ * O histórico do mês atual de uma unidade é recalculado com consultas
+ * agrupadas sempre que um risco ou monitoramento dela é alterado. O
+ * histórico de todas as unidades é gravado no início de cada mês, e os
+ * estados de monitoramento, que mudam com o passar do tempo, são atualizados
+ * diariamente pelo {@link org.forrisco.core.jobs.ScheduledRiskHistoryController}.
+ * As consultas de histórico apenas leem as linhas gravadas.
+ *
+ * O mês do histórico de riscos é gravado de 1 a 12 e o do histórico de
+ * monitoramentos de 0 a 11, como já era interpretado pelos gráficos.
+ */
+@RequestScoped
+public class RiskHistoryBS extends HibernateBusiness {
+
+	public static final String THREAT = "Ameaça";
+	public static final String OPPORTUNITY = "Oportunidade";
+
+	/** Estados de monitoramento, na ordem de {@link RiskBS#riskState(String, Date)}. */
+	private static final String[] MONITOR_STATES = { "em dia", "próximo a vencer", "atrasado" };
+
+	/**
+	 * Recalcula o histórico de riscos e de monitoramentos do mês atual de uma
+	 * unidade.
+	 *
+	 * @param unit
+	 *            Unidade alterada.
+	 */
+	public void refresh(Unit unit) {
+		if (unit == null || unit.getId() == null) {
+			return;
+		}
+		List<Long> unitIds = Collections.singletonList(unit.getId());
+		this.refreshRisks(unitIds);
+		this.refreshMonitors(unitIds);
+	}
+
+	/**
+	 * Recalcula o histórico de riscos e de monitoramentos do mês atual de um
+	 * conjunto de unidades, uma única vez para cada unidade.
+	 *
+	 * @param units
+	 *            Unidades alteradas, possivelmente repetidas.
+	 */
+	public void refresh(Collection<Unit> units) {
+		Set<Long> unitIds = new LinkedHashSet<>();
+		for (Unit unit : units) {
+			if (unit != null && unit.getId() != null) {
+				unitIds.add(unit.getId());
+			}
+		}
+		if (unitIds.isEmpty()) {
+			return;
+		}
+		this.refreshRisks(new ArrayList<>(unitIds));
+		this.refreshMonitors(new ArrayList<>(unitIds));
+	}
+
+	/**
+	 * Recalcula o histórico de riscos do mês atual de uma unidade, depois de
+	 * o grau de algum risco dela mudar.
+	 *
+	 * @param unit
+	 *            Unidade alterada.
+	 */
+	public void refreshRisks(Unit unit) {
+		if (unit == null || unit.getId() == null) {
+			return;
+		}
+		this.refreshRisks(Collections.singletonList(unit.getId()));
+	}
+
+	/**
+	 * Recalcula o histórico de monitoramentos do mês atual de uma unidade,
+	 * depois de um monitoramento ser salvo ou excluído.
+	 *
+	 * @param unit
+	 *            Unidade alterada.
+	 */
+	public void refreshMonitors(Unit unit) {
+		if (unit == null || unit.getId() == null) {
+			return;
+		}
+		this.refreshMonitors(Collections.singletonList(unit.getId()));
+	}
+
+	/**
+	 * Grava o histórico de riscos e de monitoramentos do mês atual de todas
+	 * as unidades.
+	 */
+	public void snapshot() {
+		this.refreshRisks((List<Long>) null);
+		this.refreshMonitors((List<Long>) null);
+	}
+
+	/**
+	 * Atualiza o histórico de monitoramentos do mês atual de todas as
+	 * unidades.
+	 */
+	public void refreshAllMonitors() {
+		this.refreshMonitors((List<Long>) null);
+	}
+
+	/**
+	 * Lista o histórico de riscos de um conjunto de unidades.
+	 *
+	 * @param units
+	 *            Unidades.
+	 * @param threat
+	 *            Se devem ser listados os riscos de ameaça ou de oportunidade.
+	 * @return PaginatedList<RiskHistory> Histórico ordenado por unidade.
+	 */
+	public PaginatedList<RiskHistory> listRiskHistory(List<Unit> units, boolean threat) {
+		PaginatedList<RiskHistory> results = new PaginatedList<RiskHistory>();
+		List<RiskHistory> list = new ArrayList<>();
+		if (!units.isEmpty()) {
+			Criteria criteria = this.dao.newCriteria(RiskHistory.class)
+					.add(Restrictions.in("unit", units))
+					.add(Restrictions.eq("deleted", false))
+					.add(Restrictions.eq("threat", threat))
+					.addOrder(Order.asc("unit.id"))
+					.addOrder(Order.asc("id"));
+			list = this.dao.findByCriteria(criteria, RiskHistory.class);
+		}
+		results.setList(list);
+		results.setTotal((long) list.size());
+		return results;
+	}
+
+	/**
+	 * Lista o histórico de monitoramentos de um conjunto de unidades.
+	 *
+	 * @param units
+	 *            Unidades.
+	 * @return PaginatedList<MonitorHistory> Histórico ordenado por unidade.
+	 */
+	public PaginatedList<MonitorHistory> listMonitorHistory(List<Unit> units) {
+		PaginatedList<MonitorHistory> results = new PaginatedList<MonitorHistory>();
+		List<MonitorHistory> list = new ArrayList<>();
+		if (!units.isEmpty()) {
+			Criteria criteria = this.dao.newCriteria(MonitorHistory.class)
+					.add(Restrictions.in("unit", units))
+					.add(Restrictions.eq("deleted", false))
+					.addOrder(Order.asc("unit.id"))
+					.addOrder(Order.asc("id"));
+			list = this.dao.findByCriteria(criteria, MonitorHistory.class);
+		}
+		results.setList(list);
+		results.setTotal((long) list.size());
+		return results;
+	}
+
+	/**
+	 * Recalcula o histórico de riscos do mês atual, contando os riscos de
+	 * cada unidade por grau e tipo em uma única consulta.
+	 *
+	 * @param unitIds
+	 *            Ids das unidades, ou null para todas.
+	 */
+	private void refreshRisks(List<Long> unitIds) {
+		Calendar now = Calendar.getInstance();
+		final int year = now.get(Calendar.YEAR);
+		final int month = now.get(Calendar.MONTH) + 1;
+
+		Criteria criteria = this.dao.newCriteria(Risk.class)
+				.createAlias("unit", "unit")
+				.add(Restrictions.eq("deleted", false))
+				.add(Restrictions.eq("unit.deleted", false))
+				.add(Restrictions.in("type", new Object[] { THREAT, OPPORTUNITY }))
+				.setProjection(Projections.projectionList()
+						.add(Projections.groupProperty("unit.id"))
+						.add(Projections.groupProperty("riskLevel.id"))
+						.add(Projections.groupProperty("type"))
+						.add(Projections.rowCount()));
+		if (unitIds != null) {
+			criteria.add(Restrictions.in("unit.id", unitIds));
+		}
+		Map<String, Object[]> counts = new LinkedHashMap<>();
+		for (Object[] row : this.dao.findByCriteria(criteria, Object[].class)) {
+			counts.put(row[0] + ":" + row[1] + ":" + THREAT.equals(row[2]), row);
+		}
+
+		Criteria existent = this.dao.newCriteria(RiskHistory.class)
+				.add(Restrictions.eq("deleted", false))
+				.add(Restrictions.eq("year", year))
+				.add(Restrictions.eq("month", month));
+		if (unitIds != null) {
+			existent.add(Restrictions.in("unit.id", unitIds));
+		}
+		List<RiskHistory> rows = this.dao.findByCriteria(existent, RiskHistory.class);
+
+		this.dao.execute((session) -> {
+			Set<String> seen = new HashSet<>();
+			for (RiskHistory history : rows) {
+				String key = history.getUnit().getId() + ":" + history.getRiskLevel().getId() + ":"
+						+ history.isThreat();
+				if (!seen.add(key)) {
+					history.setDeleted(true);
+					session.update(history);
+					continue;
+				}
+				Object[] count = counts.remove(key);
+				int quantity = count == null ? 0 : ((Number) count[3]).intValue();
+				if (history.getQuantity() != quantity) {
+					history.setQuantity(quantity);
+					session.update(history);
+				}
+			}
+			for (Object[] count : counts.values()) {
+				RiskHistory history = new RiskHistory();
+				history.setUnit((Unit) session.load(Unit.class, (Long) count[0]));
+				history.setRiskLevel((RiskLevel) session.load(RiskLevel.class, (Long) count[1]));
+				history.setThreat(THREAT.equals(count[2]));
+				history.setYear(year);
+				history.setMonth(month);
+				history.setQuantity(((Number) count[3]).intValue());
+				history.setDeleted(false);
+				session.save(history);
+			}
+		});
+	}
+
+	/**
+	 * Recalcula o histórico de monitoramentos do mês atual, a partir da data
+	 * do último monitoramento gravada em cada risco.
+	 *
+	 * @param unitIds
+	 *            Ids das unidades, ou null para todas.
+	 */
+	private void refreshMonitors(List<Long> unitIds) {
+		Calendar now = Calendar.getInstance();
+		final int year = now.get(Calendar.YEAR);
+		final int month = now.get(Calendar.MONTH);
+
+		Map<Long, int[]> counts = new HashMap<>();
+		if (unitIds == null) {
+			Criteria units = this.dao.newCriteria(Unit.class)
+					.add(Restrictions.eq("deleted", false))
+					.setProjection(Projections.id());
+			for (Long unitId : this.dao.findByCriteria(units, Long.class)) {
+				counts.put(unitId, new int[MONITOR_STATES.length]);
+			}
+		} else {
+			for (Long unitId : unitIds) {
+				counts.put(unitId, new int[MONITOR_STATES.length]);
+			}
+		}
+
+		Criteria criteria = this.dao.newCriteria(Risk.class)
+				.createAlias("unit", "unit")
+				.add(Restrictions.eq("deleted", false))
+				.add(Restrictions.eq("unit.deleted", false))
+				.setProjection(Projections.projectionList()
+						.add(Projections.property("unit.id"))
+						.add(Projections.property("periodicity"))
+						.add(Projections.property("lastMonitoring"))
+						.add(Projections.property("begin")));
+		if (unitIds != null) {
+			criteria.add(Restrictions.in("unit.id", unitIds));
+		}
+		for (Object[] row : this.dao.findByCriteria(criteria, Object[].class)) {
+			int[] unitCounts = counts.get(row[0]);
+			Date date = row[2] != null ? (Date) row[2] : (Date) row[3];
+			if (unitCounts != null && row[1] != null && date != null) {
+				unitCounts[RiskBS.riskState((String) row[1], date)]++;
+			}
+		}
+
+		Criteria existent = this.dao.newCriteria(MonitorHistory.class)
+				.add(Restrictions.eq("deleted", false))
+				.add(Restrictions.eq("year", year))
+				.add(Restrictions.eq("month", month));
+		if (unitIds != null) {
+			existent.add(Restrictions.in("unit.id", unitIds));
+		}
+		List<MonitorHistory> rows = this.dao.findByCriteria(existent, MonitorHistory.class);
+
+		this.dao.execute((session) -> {
+			Set<String> seen = new HashSet<>();
+			for (MonitorHistory history : rows) {
+				Long unitId = history.getUnit().getId();
+				int state = stateIndex(history.getEstado());
+				if (state < 0 || !counts.containsKey(unitId)) {
+					continue;
+				}
+				if (!seen.add(unitId + ":" + state)) {
+					history.setDeleted(true);
+					session.update(history);
+					continue;
+				}
+				int quantity = counts.get(unitId)[state];
+				if (history.getQuantity() != quantity) {
+					history.setQuantity(quantity);
+					session.update(history);
+				}
+			}
+			for (Map.Entry<Long, int[]> entry : counts.entrySet()) {
+				for (int state = 0; state < MONITOR_STATES.length; state++) {
+					if (seen.contains(entry.getKey() + ":" + state)) {
+						continue;
+					}
+					MonitorHistory history = new MonitorHistory();
+					history.setUnit((Unit) session.load(Unit.class, entry.getKey()));
+					history.setEstado(MONITOR_STATES[state]);
+					history.setYear(year);
+					history.setMonth(month);
+					history.setQuantity(entry.getValue()[state]);
+					history.setDeleted(false);
+					session.save(history);
+				}
+			}
+		});
+	}
+
+	private static int stateIndex(String estado) {
+		for (int i = 0; i < MONITOR_STATES.length; i++) {
+			if (MONITOR_STATES[i].equals(estado)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
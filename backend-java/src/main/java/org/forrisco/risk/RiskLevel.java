@@ -6,7 +6,10 @@ import javax.persistence.FetchType;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
+import org.forpdi.system.CacheRegions;
 import org.forrisco.core.policy.Policy;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import br.com.caelum.vraptor.boilerplate.SimpleLogicalDeletableEntity;
 import br.com.caelum.vraptor.serialization.SkipSerialization;
@@ -18,6 +21,7 @@ import br.com.caelum.vraptor.serialization.SkipSerialization;
 @Entity(name = RiskLevel.TABLE)
 @Table(name = RiskLevel.TABLE)
 
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.POLICY)
 public class RiskLevel extends SimpleLogicalDeletableEntity {
 	public static final String TABLE = "frisco_risk_level";
 	private static final long serialVersionUID = 1L;
@@ -0,0 +1,191 @@
+package org.forrisco.risk;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.forrisco.core.policy.Policy;
+
+/**
+ * Matriz de risco de uma política já interpretada, com os graus de risco
+ * indexados por probabilidade e impacto.
+ *
+ * A matriz é gravada na política como uma lista de células "[linha,coluna]valor"
+ * separadas por ponto e vírgula. A primeira coluna de cada linha traz a
+ * probabilidade e a última linha traz os impactos, a partir da segunda
+ * coluna. As demais células trazem o nome do grau de risco.
+ *
+ * As matrizes das políticas ficam em memória e são descartadas quando a
+ * política ou os seus graus de risco são alterados. Uma matriz também é
+ * descartada se o texto gravado na política não for mais o mesmo.
+ */
+public final class RiskMatrix {
+
+	private static final Pattern CELL = Pattern.compile("^\\[\\s*(\\d+)\\s*,\\s*(\\d+)\\s*\\](.*)$", Pattern.DOTALL);
+
+	private static final Map<Long, RiskMatrix> CACHE = new ConcurrentHashMap<>();
+
+	private final String source;
+	private final int nline;
+	private final int ncolumn;
+	private final String[][] vector;
+	private final Map<String, Integer> probabilities = new HashMap<>();
+	private final Map<String, Integer> impacts = new HashMap<>();
+	private final Map<String, String> levels = new HashMap<>();
+	private final Map<String, Long> levelIds;
+
+	private RiskMatrix(String source, int nline, int ncolumn, Map<String, Long> levelIds) {
+		this.source = source;
+		this.nline = nline;
+		this.ncolumn = ncolumn;
+		this.levelIds = levelIds;
+
+		int total = nline * ncolumn + nline + ncolumn;
+		this.vector = new String[total][3];
+		String[][] cells = new String[nline + 1][ncolumn + 1];
+		String[] parts = source == null ? new String[0] : source.split(";");
+		for (int i = 0; i < parts.length && i < total; i++) {
+			Matcher matcher = CELL.matcher(parts[i]);
+			if (!matcher.find()) {
+				continue;
+			}
+			this.vector[i][0] = matcher.group(3);
+			this.vector[i][1] = matcher.group(1);
+			this.vector[i][2] = matcher.group(2);
+			int line = Integer.parseInt(matcher.group(1));
+			int column = Integer.parseInt(matcher.group(2));
+			if (line <= nline && column <= ncolumn) {
+				cells[line][column] = matcher.group(3);
+			}
+		}
+
+		for (int line = 0; line < nline; line++) {
+			if (cells[line][0] != null) {
+				this.probabilities.putIfAbsent(cells[line][0], line);
+			}
+		}
+		for (int column = 1; column <= ncolumn; column++) {
+			if (cells[nline][column] != null) {
+				this.impacts.putIfAbsent(cells[nline][column], column);
+			}
+		}
+		for (int line = 0; line < nline; line++) {
+			for (int column = 1; column <= ncolumn; column++) {
+				this.levels.put(key(line, column), cells[line][column]);
+			}
+		}
+	}
+
+	private static String key(int line, int column) {
+		return line + "," + column;
+	}
+
+	/**
+	 * Interpreta a matriz de uma política, sem guardá-la em memória.
+	 *
+	 * @param policy
+	 *            Política, que pode ainda não estar salva.
+	 * @return RiskMatrix Matriz interpretada.
+	 */
+	public static RiskMatrix parse(Policy policy) {
+		return new RiskMatrix(policy.getMatrix(), policy.getNline(), policy.getNcolumn(),
+				Collections.<String, Long>emptyMap());
+	}
+
+	/**
+	 * Retorna a matriz de uma política guardada em memória, se ela ainda
+	 * corresponder ao que está gravado na política.
+	 *
+	 * @param policy
+	 *            Política salva.
+	 * @return RiskMatrix Matriz, ou null se ela precisar ser montada.
+	 */
+	public static RiskMatrix cached(Policy policy) {
+		if (policy.getId() == null) {
+			return null;
+		}
+		RiskMatrix matrix = CACHE.get(policy.getId());
+		if (matrix == null || matrix.nline != policy.getNline() || matrix.ncolumn != policy.getNcolumn()
+				|| !matrix.source.equals(policy.getMatrix())) {
+			return null;
+		}
+		return matrix;
+	}
+
+	/**
+	 * Monta a matriz de uma política salva, com os ids dos seus graus de
+	 * risco, e a guarda em memória.
+	 *
+	 * @param policy
+	 *            Política salva.
+	 * @param riskLevels
+	 *            Graus de risco não excluídos da política.
+	 * @return RiskMatrix Matriz montada.
+	 */
+	public static RiskMatrix compile(Policy policy, List<RiskLevel> riskLevels) {
+		Map<String, Long> levelIds = new HashMap<>();
+		for (RiskLevel level : riskLevels) {
+			levelIds.putIfAbsent(level.getLevel(), level.getId());
+		}
+		RiskMatrix matrix = new RiskMatrix(policy.getMatrix() == null ? "" : policy.getMatrix(), policy.getNline(),
+				policy.getNcolumn(), levelIds);
+		CACHE.put(policy.getId(), matrix);
+		return matrix;
+	}
+
+	/**
+	 * Descarta a matriz de uma política, depois de a política ou os seus
+	 * graus de risco serem alterados.
+	 *
+	 * @param policyId
+	 *            Id da política.
+	 */
+	public static void invalidate(Long policyId) {
+		if (policyId != null) {
+			CACHE.remove(policyId);
+		}
+	}
+
+	/**
+	 * Matriz no formato de {@link RiskBS#getMatrixVector(Policy)}: para cada
+	 * célula, na ordem gravada, o valor, a linha e a coluna.
+	 *
+	 * @return String[][] Cópia das células.
+	 */
+	public String[][] toVector() {
+		String[][] copy = new String[this.vector.length][];
+		for (int i = 0; i < this.vector.length; i++) {
+			copy[i] = this.vector[i].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * Nome do grau de risco de uma probabilidade e um impacto.
+	 *
+	 * @return String Nome do grau, ou null se a probabilidade ou o impacto
+	 *         não existirem na matriz.
+	 */
+	public String level(String probability, String impact) {
+		Integer line = this.probabilities.get(probability);
+		Integer column = this.impacts.get(impact);
+		if (line == null || column == null) {
+			return null;
+		}
+		return this.levels.get(key(line, column));
+	}
+
+	/**
+	 * Id do grau de risco de uma probabilidade e um impacto.
+	 *
+	 * @return Long Id do grau, ou null se ele não for encontrado.
+	 */
+	public Long levelId(String probability, String impact) {
+		String level = this.level(probability, impact);
+		return level == null ? null : this.levelIds.get(level);
+	}
+}
@@ -0,0 +1,97 @@
+package org.forpdi.core.company;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.forpdi.core.exception.RestoreException;
+import org.forpdi.core.utils.LongLongMap;
+import org.forpdi.planning.plan.PlanMacro;
+import org.forpdi.planning.structure.StructureLevelInstance;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BackupAndRestoreHelperTest {
+
+	/** Entidades com os ids informados, em ordem. */
+	private static List<PlanMacro> entities(long... ids) {
+		List<PlanMacro> list = new ArrayList<>();
+		for (long id : ids) {
+			PlanMacro macro = new PlanMacro();
+			macro.setId(id);
+			list.add(macro);
+		}
+		return list;
+	}
+
+	/**
+	 * Simula a consulta paginada: ids maiores que o último, até o tamanho da
+	 * página, carregados em novas instâncias.
+	 */
+	private static List<PlanMacro> page(long[] table, Long lastId, int pageSize, List<Long> queries) {
+		queries.add(lastId);
+		return entities(Arrays.stream(table).filter((id) -> id > lastId).limit(pageSize).toArray());
+	}
+
+	@Test
+	public void testExportPagesFollowTheLastId() throws IOException {
+		long[] table = { 3, 5, 8, 13, 21, 34, 55 };
+		List<Long> queries = new ArrayList<>();
+		List<Long> written = new ArrayList<>();
+		List<Integer> pages = new ArrayList<>();
+		int total = BackupAndRestoreHelper.forEachPage((lastId) -> page(table, lastId, 3, queries), 3, (list) -> {
+			pages.add(list.size());
+			list.forEach((macro) -> written.add(macro.getId()));
+		});
+		Assert.assertEquals(7, total);
+		Assert.assertEquals(Arrays.stream(table).boxed().collect(Collectors.toList()), written);
+		Assert.assertEquals(Arrays.asList(0L, 8L, 34L), queries);
+		Assert.assertEquals(Arrays.asList(3, 3, 1), pages);
+	}
+
+	@Test
+	public void testExportFullLastPageEndsOnEmptyPage() throws IOException {
+		long[] table = { 1, 2, 3, 4 };
+		List<Long> queries = new ArrayList<>();
+		List<Integer> pages = new ArrayList<>();
+		int total = BackupAndRestoreHelper.forEachPage((lastId) -> page(table, lastId, 2, queries), 2,
+				(list) -> pages.add(list.size()));
+		Assert.assertEquals(4, total);
+		Assert.assertEquals(Arrays.asList(0L, 2L, 4L), queries);
+		Assert.assertEquals(Arrays.asList(2, 2, 0), pages);
+	}
+
+	@Test
+	public void testExportLastIdIsReadBeforeWriting() throws IOException {
+		// a escrita pode desvincular as entidades; a próxima página não depende dela
+		long[] table = { 10, 20, 30 };
+		List<Long> queries = new ArrayList<>();
+		int total = BackupAndRestoreHelper.forEachPage((lastId) -> page(table, lastId, 2, queries), 2,
+				(list) -> list.forEach((macro) -> macro.setId(null)));
+		Assert.assertEquals(3, total);
+		Assert.assertEquals(Arrays.asList(0L, 20L), queries);
+	}
+
+	@Test
+	public void testRestoreRemapsImportedIds() {
+		LongLongMap ids = new LongLongMap();
+		ids.put(7L, 1007L);
+		Assert.assertEquals(Long.valueOf(1007L), BackupAndRestoreHelper.importedId(ids, 7L));
+		Assert.assertEquals(Long.valueOf(1007L), BackupAndRestoreHelper.newId(ids, 7L, StructureLevelInstance.class));
+		Assert.assertNull(BackupAndRestoreHelper.importedId(ids, 8L));
+		Assert.assertNull(BackupAndRestoreHelper.importedId(ids, null));
+	}
+
+	@Test
+	public void testRestoreFailsOnMissingReference() {
+		LongLongMap ids = new LongLongMap();
+		try {
+			BackupAndRestoreHelper.newId(ids, 8L, StructureLevelInstance.class);
+			Assert.fail("Uma referência fora do backup deveria falhar.");
+		} catch (RestoreException ex) {
+			Assert.assertTrue(ex.getCause().getMessage().contains("StructureLevelInstance"));
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package org.forpdi.core.jobs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.MessagingException;
+
+import org.forpdi.system.SmtpSender;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EmailSenderTaskTest {
+
+	private EmailSenderTask task;
+	private final List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+
+	/** Servidor SMTP que recusa os destinatários iniciados por "falha". */
+	private class StubSender extends SmtpSender {
+		private StubSender() {
+			super("localhost", 25, null, null, false, false, "forpdi@forpdi.org", "ForPDI", "/tmp/");
+		}
+
+		@Override
+		public void send(String toEmail, String toName, String subject, String msg, String attach)
+				throws MessagingException {
+			if (toEmail.startsWith("falha")) {
+				throw new MessagingException("550 destinatário recusado");
+			}
+			delivered.add(toEmail);
+		}
+	}
+
+	private static OutboxEmail email(String address) {
+		return new OutboxEmail(new NotificationEmail(address, "Usuário", "Assunto", "<p>Corpo</p>", null));
+	}
+
+	@Before
+	public void setUp() {
+		this.task = new EmailSenderTask();
+		this.task.configure(2, 100, 3, 1000);
+	}
+
+	@After
+	public void tearDown() {
+		this.task.shutdown();
+	}
+
+	@Test
+	public void testPartitionAlternatesBetweenWorkers() {
+		List<OutboxEmail> emails = Arrays.asList(email("a"), email("b"), email("c"), email("d"), email("e"));
+		List<List<OutboxEmail>> parts = EmailSenderTask.partition(emails, 2);
+		Assert.assertEquals(2, parts.size());
+		Assert.assertEquals(Arrays.asList(emails.get(0), emails.get(2), emails.get(4)), parts.get(0));
+		Assert.assertEquals(Arrays.asList(emails.get(1), emails.get(3)), parts.get(1));
+		Assert.assertEquals(1, EmailSenderTask.partition(emails.subList(0, 1), 4).size());
+		Assert.assertTrue(EmailSenderTask.partition(new ArrayList<>(), 2).isEmpty());
+	}
+
+	@Test
+	public void testRetryDelayDoublesUpToTheLimit() {
+		Assert.assertEquals(TimeUnit.MINUTES.toMillis(1), EmailSenderTask.retryDelay(1));
+		Assert.assertEquals(TimeUnit.MINUTES.toMillis(2), EmailSenderTask.retryDelay(2));
+		Assert.assertEquals(TimeUnit.MINUTES.toMillis(4), EmailSenderTask.retryDelay(3));
+		Assert.assertEquals(EmailSenderTask.MAX_RETRY_DELAY, EmailSenderTask.retryDelay(10));
+		Assert.assertEquals(EmailSenderTask.MAX_RETRY_DELAY, EmailSenderTask.retryDelay(1000));
+	}
+
+	@Test
+	public void testFailureSchedulesRetry() {
+		OutboxEmail email = email("falha@forpdi.org");
+		long now = System.currentTimeMillis();
+		Assert.assertFalse(EmailSenderTask.failed(email, "timeout", 3, now));
+		Assert.assertEquals(1, email.getAttempts());
+		Assert.assertFalse(email.isFailed());
+		Assert.assertEquals("timeout", email.getLastError());
+		Assert.assertEquals(new Date(now + EmailSenderTask.RETRY_DELAY), email.getNextAttempt());
+
+		Assert.assertFalse(EmailSenderTask.failed(email, "timeout", 3, now));
+		Assert.assertEquals(new Date(now + 2 * EmailSenderTask.RETRY_DELAY), email.getNextAttempt());
+	}
+
+	@Test
+	public void testFailureExhaustsAttempts() {
+		OutboxEmail email = email("falha@forpdi.org");
+		char[] longError = new char[EmailSenderTask.ERROR_LENGTH + 50];
+		Arrays.fill(longError, 'x');
+		long now = System.currentTimeMillis();
+		Assert.assertFalse(EmailSenderTask.failed(email, "erro", 3, now));
+		Assert.assertFalse(EmailSenderTask.failed(email, "erro", 3, now));
+		Assert.assertTrue(EmailSenderTask.failed(email, new String(longError), 3, now));
+		Assert.assertTrue(email.isFailed());
+		Assert.assertEquals(3, email.getAttempts());
+		Assert.assertEquals(EmailSenderTask.ERROR_LENGTH, email.getLastError().length());
+	}
+
+	@Test
+	public void testSendAllRecordsEachResult() throws InterruptedException {
+		OutboxEmail ok1 = email("um@forpdi.org");
+		OutboxEmail ok2 = email("dois@forpdi.org");
+		OutboxEmail bad = email("falha@forpdi.org");
+		bad.setAttempts(2);
+		bad.setLastError("erro anterior");
+		OutboxEmail retry = email("falha.temporaria@forpdi.org");
+
+		this.task.sendAll(Arrays.asList(ok1, bad, ok2, retry), StubSender::new);
+
+		Assert.assertEquals(2, this.delivered.size());
+		Assert.assertTrue(this.delivered.containsAll(Arrays.asList("um@forpdi.org", "dois@forpdi.org")));
+		Assert.assertNotNull(ok1.getSent());
+		Assert.assertNotNull(ok2.getSent());
+		Assert.assertEquals(1, ok1.getAttempts());
+		Assert.assertNull(ok1.getLastError());
+
+		Assert.assertNull(bad.getSent());
+		Assert.assertTrue(bad.isFailed());
+		Assert.assertEquals(3, bad.getAttempts());
+
+		Assert.assertNull(retry.getSent());
+		Assert.assertFalse(retry.isFailed());
+		Assert.assertEquals(1, retry.getAttempts());
+		Assert.assertTrue(retry.getNextAttempt().after(new Date()));
+
+		Assert.assertEquals(2, this.task.getSentCount());
+		Assert.assertEquals(2, this.task.getFailureCount());
+	}
+}
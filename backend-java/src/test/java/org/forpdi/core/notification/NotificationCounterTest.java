@@ -0,0 +1,44 @@
+package org.forpdi.core.notification;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NotificationCounterTest {
+
+	@Test
+	public void testCountIsReadFromTheDatabaseAfterEviction() {
+		AtomicLong database = new AtomicLong(3);
+		Assert.assertEquals(Long.valueOf(3), NotificationCounter.unread(1L, 10L, database::get));
+		database.set(2);
+		Assert.assertEquals(Long.valueOf(3), NotificationCounter.unread(1L, 10L, database::get));
+		NotificationCounter.evict(1L, 10L);
+		Assert.assertEquals(Long.valueOf(2), NotificationCounter.unread(1L, 10L, database::get));
+	}
+
+	@Test
+	public void testEvictCompany() {
+		AtomicLong database = new AtomicLong(5);
+		NotificationCounter.unread(2L, 20L, database::get);
+		NotificationCounter.unread(3L, 21L, database::get);
+		database.set(0);
+		NotificationCounter.evictCompany(20L);
+		Assert.assertEquals(Long.valueOf(0), NotificationCounter.unread(2L, 20L, database::get));
+		Assert.assertEquals(Long.valueOf(5), NotificationCounter.unread(3L, 21L, database::get));
+	}
+
+	@Test
+	public void testCountTakenBeforeEvictionIsNotKept() {
+		AtomicLong database = new AtomicLong(4);
+		Long unread = NotificationCounter.unread(4L, 30L, () -> {
+			// a notificação é lida enquanto a contagem antiga é feita
+			long count = database.get();
+			database.set(3);
+			NotificationCounter.evict(4L, 30L);
+			return count;
+		});
+		Assert.assertEquals(Long.valueOf(4), unread);
+		Assert.assertEquals(Long.valueOf(3), NotificationCounter.unread(4L, 30L, database::get));
+	}
+}
@@ -0,0 +1,62 @@
+package org.forpdi.core.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LongLongMapTest {
+
+	@Test
+	public void testPutAndGet() {
+		LongLongMap map = new LongLongMap();
+		Assert.assertTrue(map.isEmpty());
+		map.put(1L, 10L);
+		map.put(0L, 20L);
+		map.put(-5L, 30L);
+		Assert.assertEquals(3, map.size());
+		Assert.assertEquals(10L, map.get(1L, -1L));
+		Assert.assertEquals(20L, map.get(0L, -1L));
+		Assert.assertEquals(30L, map.get(-5L, -1L));
+		Assert.assertEquals(-1L, map.get(2L, -1L));
+		Assert.assertTrue(map.containsKey(0L));
+		Assert.assertFalse(map.containsKey(2L));
+	}
+
+	@Test
+	public void testPutReplacesValue() {
+		LongLongMap map = new LongLongMap();
+		map.put(1L, 10L);
+		map.put(1L, 11L);
+		Assert.assertEquals(1, map.size());
+		Assert.assertEquals(11L, map.get(1L, -1L));
+	}
+
+	@Test
+	public void testGrowsKeepingEntries() {
+		LongLongMap map = new LongLongMap(4);
+		Map<Long, Long> expected = new HashMap<>();
+		for (long key = 1; key <= 10000; key++) {
+			map.put(key * 31, key + 1000000);
+			expected.put(key * 31, key + 1000000);
+		}
+		Assert.assertEquals(expected.size(), map.size());
+		Map<Long, Long> actual = new HashMap<>();
+		map.forEach(actual::put);
+		Assert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testInvalidKey() {
+		LongLongMap map = new LongLongMap();
+		Assert.assertFalse(map.containsKey(Long.MIN_VALUE));
+		Assert.assertEquals(-1L, map.get(Long.MIN_VALUE, -1L));
+		try {
+			map.put(Long.MIN_VALUE, 1L);
+			Assert.fail("Long.MIN_VALUE não pode ser chave.");
+		} catch (IllegalArgumentException ex) {
+			Assert.assertTrue(ex.getMessage().contains("Invalid key"));
+		}
+	}
+}
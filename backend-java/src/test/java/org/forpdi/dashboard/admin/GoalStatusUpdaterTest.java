@@ -0,0 +1,100 @@
+package org.forpdi.dashboard.admin;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import org.apache.commons.lang.time.DateUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GoalStatusUpdaterTest {
+
+	private static Date day(int year, int month, int day) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(year, month - 1, day);
+		return calendar.getTime();
+	}
+
+	private static GoalStatus classify(Date finish, Double reach, Date today) {
+		GoalStatus status = new GoalStatus();
+		GoalStatusUpdater.classify(status, false, finish, 100d, reach, 50d, 150d, null, today);
+		return status;
+	}
+
+	@Test
+	public void testNextChangeBeforeCloseToMaturity() {
+		Date finish = day(2026, 3, 31);
+		Date today = DateUtils.addHours(day(2026, 3, 1), 9);
+		Assert.assertEquals(day(2026, 3, 21), GoalStatusUpdater.nextChange(finish, today));
+	}
+
+	@Test
+	public void testNextChangeCloseToMaturity() {
+		Date finish = day(2026, 3, 31);
+		Date today = DateUtils.addHours(day(2026, 3, 25), 9);
+		Assert.assertEquals(finish, GoalStatusUpdater.nextChange(finish, today));
+	}
+
+	@Test
+	public void testNextChangeLate() {
+		Date finish = day(2026, 3, 31);
+		Assert.assertNull(GoalStatusUpdater.nextChange(finish, DateUtils.addMinutes(day(2026, 4, 1), 5)));
+		Assert.assertNull(GoalStatusUpdater.nextChange(null, day(2026, 4, 1)));
+	}
+
+	@Test
+	public void testProgressChangesAtNextChange() {
+		// a situação calculada em cada data só muda na próxima mudança
+		Date finish = day(2026, 3, 31);
+		Date today = DateUtils.addMinutes(day(2026, 3, 1), 5);
+		int changes = 0;
+		int progress = classify(finish, 10d, today).getProgress();
+		Date next = GoalStatusUpdater.nextChange(finish, today);
+		for (int i = 0; i < 60; i++) {
+			Date date = DateUtils.addDays(today, i);
+			int current = classify(finish, 10d, date).getProgress();
+			if (current != progress) {
+				Assert.assertNotNull("Mudança sem data prevista em " + date, next);
+				Assert.assertFalse("Mudança antes da data prevista em " + date, date.before(next));
+				progress = current;
+				next = GoalStatusUpdater.nextChange(finish, date);
+				changes++;
+			}
+		}
+		Assert.assertEquals(2, changes);
+		Assert.assertNull(next);
+	}
+
+	@Test
+	public void testRolloverCatchesUpMissedDays() {
+		// a tarefa não rodou entre o cálculo e o vencimento: a meta continua
+		// pendente de recálculo, já que a próxima mudança ficou no passado
+		Date finish = day(2026, 3, 31);
+		Date calculated = DateUtils.addMinutes(day(2026, 3, 1), 5);
+		Date next = GoalStatusUpdater.nextChange(finish, calculated);
+		Date resumed = DateUtils.addMinutes(day(2026, 4, 10), 5);
+		Assert.assertFalse(next.after(resumed));
+		Assert.assertEquals(GoalStatus.IN_DAY, classify(finish, 10d, calculated).getProgress());
+		Assert.assertEquals(GoalStatus.LATE, classify(finish, 10d, resumed).getProgress());
+	}
+
+	@Test
+	public void testClassifyProgress() {
+		Date finish = day(2026, 3, 31);
+		Assert.assertEquals(GoalStatus.IN_DAY, classify(finish, 10d, day(2026, 3, 20)).getProgress());
+		Assert.assertEquals(GoalStatus.CLOSE_TO_MATURITY, classify(finish, 10d, day(2026, 3, 21)).getProgress());
+		Assert.assertEquals(GoalStatus.LATE, classify(finish, 10d, day(2026, 4, 1)).getProgress());
+		Assert.assertEquals(GoalStatus.NOT_STARTED, classify(finish, null, day(2026, 3, 1)).getProgress());
+	}
+
+	@Test
+	public void testClassifyPerformance() {
+		Date finish = day(2026, 3, 31);
+		Date today = day(2026, 3, 1);
+		Assert.assertEquals(GoalStatus.BELOW_MINIMUM, classify(finish, 10d, today).getPerformance());
+		Assert.assertEquals(GoalStatus.BELOW_EXPECTED, classify(finish, 60d, today).getPerformance());
+		Assert.assertEquals(GoalStatus.REACHED, classify(finish, 100d, today).getPerformance());
+		Assert.assertEquals(GoalStatus.ABOVE_EXPECTED, classify(finish, 200d, today).getPerformance());
+	}
+}
@@ -0,0 +1,91 @@
+package org.forpdi.planning.jobs;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GoalsGenerationTaskTest {
+
+	private static Date day(int year, int month, int day) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(year, month - 1, day);
+		return calendar.getTime();
+	}
+
+	private static List<Date> ends(String periodicity, Date begin, Date end) {
+		GoalDTO goal = new GoalDTO();
+		goal.setPeriodicity(periodicity);
+		goal.setBeginDate(begin);
+		goal.setEndDate(end);
+		return new GoalsGenerationTask().computePeriodEnds(goal);
+	}
+
+	@Test
+	public void testDaily() {
+		Assert.assertEquals(Arrays.asList(day(2026, 3, 2), day(2026, 3, 3), day(2026, 3, 4), day(2026, 3, 5)),
+				ends("Diária", day(2026, 3, 1), day(2026, 3, 5)));
+	}
+
+	@Test
+	public void testWeekly() {
+		Assert.assertEquals(Arrays.asList(day(2026, 3, 8), day(2026, 3, 15), day(2026, 3, 20)),
+				ends("Semanal", day(2026, 3, 1), day(2026, 3, 20)));
+	}
+
+	@Test
+	public void testFortnightly() {
+		Assert.assertEquals(Arrays.asList(day(2026, 1, 16), day(2026, 1, 31), day(2026, 2, 1)),
+				ends("Quinzenal", day(2026, 1, 1), day(2026, 2, 1)));
+	}
+
+	@Test
+	public void testMonthly() {
+		List<Date> ends = ends("Mensal", day(2026, 1, 1), day(2026, 12, 31));
+		Assert.assertEquals(12, ends.size());
+		Assert.assertEquals(day(2026, 2, 1), ends.get(0));
+		Assert.assertEquals(day(2026, 12, 1), ends.get(10));
+		Assert.assertEquals(day(2026, 12, 31), ends.get(11));
+	}
+
+	@Test
+	public void testBimonthly() {
+		Assert.assertEquals(Arrays.asList(day(2026, 3, 1), day(2026, 5, 1), day(2026, 7, 1), day(2026, 9, 1),
+				day(2026, 11, 1), day(2026, 12, 31)), ends("Bimestral", day(2026, 1, 1), day(2026, 12, 31)));
+	}
+
+	@Test
+	public void testQuarterly() {
+		Assert.assertEquals(Arrays.asList(day(2026, 4, 1), day(2026, 7, 1), day(2026, 10, 1), day(2026, 12, 31)),
+				ends("Trimestral", day(2026, 1, 1), day(2026, 12, 31)));
+	}
+
+	@Test
+	public void testHalfYearly() {
+		Assert.assertEquals(Arrays.asList(day(2026, 7, 1), day(2026, 12, 31)),
+				ends("Semestral", day(2026, 1, 1), day(2026, 12, 31)));
+	}
+
+	@Test
+	public void testYearly() {
+		Assert.assertEquals(Arrays.asList(day(2027, 1, 1), day(2028, 1, 1), day(2028, 6, 30)),
+				ends("Anual", day(2026, 1, 1), day(2028, 6, 30)));
+	}
+
+	@Test
+	public void testBiennial() {
+		// o último período termina exatamente na data final
+		Assert.assertEquals(Arrays.asList(day(2028, 1, 1), day(2029, 1, 1)),
+				ends("Bienal", day(2026, 1, 1), day(2029, 1, 1)));
+	}
+
+	@Test
+	public void testNoPeriods() {
+		Assert.assertTrue(ends("Mensal", day(2026, 1, 1), day(2026, 1, 1)).isEmpty());
+		Assert.assertTrue(ends("Desconhecida", day(2026, 1, 1), day(2026, 12, 31)).isEmpty());
+	}
+}
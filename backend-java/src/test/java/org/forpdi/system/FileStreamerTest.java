@@ -0,0 +1,71 @@
+package org.forpdi.system;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FileStreamerTest {
+
+	private static final String ETAG = "\"64-18f3a2b1c00\"";
+	private static final long LAST_MODIFIED = 1700000000000L;
+
+	@Test
+	public void testSingleRange() {
+		Assert.assertArrayEquals(new long[] { 0, 9 }, FileStreamer.parseRange("bytes=0-9", 100));
+		Assert.assertArrayEquals(new long[] { 50, 99 }, FileStreamer.parseRange("bytes=50-", 100));
+		Assert.assertArrayEquals(new long[] { 90, 99 }, FileStreamer.parseRange("bytes=90-200", 100));
+	}
+
+	@Test
+	public void testSuffixRange() {
+		Assert.assertArrayEquals(new long[] { 80, 99 }, FileStreamer.parseRange("bytes=-20", 100));
+		Assert.assertArrayEquals(new long[] { 0, 99 }, FileStreamer.parseRange("bytes=-500", 100));
+		Assert.assertNull(FileStreamer.parseRange("bytes=-0", 100));
+	}
+
+	@Test
+	public void testUnsatisfiableRange() {
+		Assert.assertNull(FileStreamer.parseRange("bytes=100-", 100));
+		Assert.assertNull(FileStreamer.parseRange("bytes=20-10", 100));
+		Assert.assertNull(FileStreamer.parseRange("bytes=0-9", 0));
+		Assert.assertNull(FileStreamer.parseRange("items=0-9", 100));
+		Assert.assertNull(FileStreamer.parseRange("bytes=a-b", 100));
+		Assert.assertNull(FileStreamer.parseRange("bytes=10", 100));
+	}
+
+	@Test
+	public void testIfRangeWithoutHeader() {
+		Assert.assertTrue(FileStreamer.rangeApplies(null, -1, ETAG, LAST_MODIFIED));
+	}
+
+	@Test
+	public void testIfRangeStrongEtag() {
+		Assert.assertTrue(FileStreamer.rangeApplies(ETAG, -1, ETAG, LAST_MODIFIED));
+		Assert.assertTrue(FileStreamer.rangeApplies(" " + ETAG + " ", -1, ETAG, LAST_MODIFIED));
+		Assert.assertFalse(FileStreamer.rangeApplies("\"outro\"", -1, ETAG, LAST_MODIFIED));
+	}
+
+	@Test
+	public void testIfRangeWeakEtagNeverMatches() {
+		Assert.assertFalse(FileStreamer.rangeApplies("W/" + ETAG, -1, ETAG, LAST_MODIFIED));
+		Assert.assertFalse(FileStreamer.rangeApplies("W/" + ETAG, -1, "W/" + ETAG, LAST_MODIFIED));
+		Assert.assertFalse(FileStreamer.rangeApplies(ETAG, -1, "W/" + ETAG, LAST_MODIFIED));
+	}
+
+	@Test
+	public void testIfRangeDate() {
+		String date = "Tue, 14 Nov 2023 22:13:20 GMT";
+		Assert.assertTrue(FileStreamer.rangeApplies(date, LAST_MODIFIED, ETAG, LAST_MODIFIED));
+		Assert.assertFalse(FileStreamer.rangeApplies(date, LAST_MODIFIED + 1000, ETAG, LAST_MODIFIED));
+		Assert.assertFalse(FileStreamer.rangeApplies(date, LAST_MODIFIED - 1000, ETAG, LAST_MODIFIED));
+		Assert.assertFalse(FileStreamer.rangeApplies("data inválida", -1, ETAG, LAST_MODIFIED));
+	}
+
+	@Test
+	public void testIfNoneMatchIsWeak() {
+		Assert.assertTrue(FileStreamer.matches(ETAG, ETAG));
+		Assert.assertTrue(FileStreamer.matches("W/" + ETAG, ETAG));
+		Assert.assertTrue(FileStreamer.matches("\"outro\", " + ETAG, ETAG));
+		Assert.assertTrue(FileStreamer.matches("*", ETAG));
+		Assert.assertFalse(FileStreamer.matches("\"outro\"", ETAG));
+	}
+}
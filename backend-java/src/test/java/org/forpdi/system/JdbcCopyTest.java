@@ -0,0 +1,216 @@
+package org.forpdi.system;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JdbcCopyTest {
+
+	private static final String SELECT = "SELECT id, name FROM source";
+	private static final String INSERT = "INSERT INTO target (name) VALUES (?)";
+
+	/** Linhas retornadas por cada consulta. */
+	private Map<String, List<Object[]>> results;
+	/** Parâmetros de cada linha inserida, por comando. */
+	private Map<String, List<List<Object>>> inserted;
+	/** Tamanho de cada lote executado, por comando. */
+	private Map<String, List<Integer>> batches;
+	/** Comandos executados sem parâmetros. */
+	private List<String> statements;
+	/** Quantas chaves geradas o banco devolve em cada lote, ou -1 para todas. */
+	private int keysPerBatch;
+	private long nextKey;
+
+	@Before
+	public void setUp() {
+		this.results = new HashMap<>();
+		this.inserted = new HashMap<>();
+		this.batches = new HashMap<>();
+		this.statements = new ArrayList<>();
+		this.keysPerBatch = -1;
+		this.nextKey = 1000;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, java.lang.reflect.InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(JdbcCopyTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+	private ResultSet resultSet(List<Object[]> rows, int columns) {
+		int[] position = { -1 };
+		ResultSetMetaData meta = proxy(ResultSetMetaData.class, (p, method, args) -> {
+			if ("getColumnCount".equals(method.getName())) {
+				return columns;
+			}
+			throw new UnsupportedOperationException(method.getName());
+		});
+		return proxy(ResultSet.class, (p, method, args) -> {
+			switch (method.getName()) {
+			case "next":
+				return ++position[0] < rows.size();
+			case "getMetaData":
+				return meta;
+			case "getObject":
+				return rows.get(position[0])[(Integer) args[0] - 1];
+			case "getLong":
+				return ((Number) rows.get(position[0])[(Integer) args[0] - 1]).longValue();
+			case "close":
+				return null;
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private PreparedStatement prepared(String sql) {
+		Map<Integer, Object> params = new TreeMap<>();
+		List<List<Object>> pending = new ArrayList<>();
+		int[] lastBatch = { 0 };
+		return proxy(PreparedStatement.class, (p, method, args) -> {
+			switch (method.getName()) {
+			case "setObject":
+				params.put((Integer) args[0], args[1]);
+				return null;
+			case "addBatch":
+				pending.add(new ArrayList<>(params.values()));
+				params.clear();
+				return null;
+			case "executeBatch":
+				this.inserted.computeIfAbsent(sql, (key) -> new ArrayList<>()).addAll(pending);
+				this.batches.computeIfAbsent(sql, (key) -> new ArrayList<>()).add(pending.size());
+				lastBatch[0] = pending.size();
+				int[] counts = new int[pending.size()];
+				Arrays.fill(counts, 1);
+				pending.clear();
+				return counts;
+			case "getGeneratedKeys":
+				int count = this.keysPerBatch < 0 ? lastBatch[0] : Math.min(this.keysPerBatch, lastBatch[0]);
+				List<Object[]> keys = new ArrayList<>();
+				for (int i = 0; i < count; i++) {
+					keys.add(new Object[] { this.nextKey++ });
+				}
+				return this.resultSet(keys, 1);
+			case "executeQuery":
+				return this.resultSet(this.results.get(sql), this.results.get(sql).get(0).length);
+			case "executeUpdate":
+				this.statements.add(sql + " " + params.values());
+				return 1;
+			case "close":
+				return null;
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private Connection connection() {
+		Statement statement = proxy(Statement.class, (p, method, args) -> {
+			switch (method.getName()) {
+			case "executeUpdate":
+				this.statements.add((String) args[0]);
+				return 0;
+			case "close":
+				return null;
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+		return proxy(Connection.class, (p, method, args) -> {
+			switch (method.getName()) {
+			case "prepareStatement":
+				return this.prepared((String) args[0]);
+			case "createStatement":
+				return statement;
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private void source(int rows) {
+		List<Object[]> list = new ArrayList<>();
+		for (int i = 1; i <= rows; i++) {
+			list.add(new Object[] { (long) i, "linha " + i });
+		}
+		this.results.put(SELECT, list);
+	}
+
+	@Test
+	public void testCopyMapsSourceIdsToGeneratedKeys() throws SQLException {
+		this.source(5);
+		JdbcCopy copy = new JdbcCopy(this.connection(), 2);
+		Map<Long, Long> ids = copy.copy("tmp_copy_source", SELECT, INSERT);
+
+		Assert.assertEquals(Arrays.asList(2, 2, 1), this.batches.get(INSERT));
+		Assert.assertEquals(Arrays.asList("linha 1"), this.inserted.get(INSERT).get(0));
+		Assert.assertEquals(5, ids.size());
+		for (long i = 1; i <= 5; i++) {
+			Assert.assertEquals(Long.valueOf(999 + i), ids.get(i));
+		}
+		List<List<Object>> mapping = this.inserted.get("INSERT INTO tmp_copy_source (old_id, new_id) VALUES (?, ?)");
+		Assert.assertEquals(5, mapping.size());
+		Assert.assertTrue(mapping.contains(Arrays.asList(3L, 1002L)));
+	}
+
+	@Test
+	public void testMappingTableIsCreatedOnceAndDroppedOnClose() throws SQLException {
+		this.source(1);
+		JdbcCopy copy = new JdbcCopy(this.connection(), 10);
+		copy.copy("tmp_copy_source", SELECT, INSERT);
+		copy.copy("tmp_copy_source", SELECT, INSERT);
+		long creates = this.statements.stream().filter((sql) -> sql.startsWith("CREATE TEMPORARY TABLE")).count();
+		Assert.assertEquals(1, creates);
+		Assert.assertEquals(2, this.inserted.get("INSERT INTO tmp_copy_source (old_id, new_id) VALUES (?, ?)").size());
+
+		this.statements.clear();
+		copy.close();
+		Assert.assertEquals(Arrays.asList("DROP TEMPORARY TABLE IF EXISTS tmp_copy_source"), this.statements);
+	}
+
+	@Test
+	public void testMissingGeneratedKeysFail() {
+		this.source(3);
+		this.keysPerBatch = 1;
+		JdbcCopy copy = new JdbcCopy(this.connection(), 2);
+		try {
+			copy.copy("tmp_copy_source", SELECT, INSERT);
+			Assert.fail("A cópia sem todas as chaves geradas deveria falhar.");
+		} catch (SQLException ex) {
+			Assert.assertTrue(ex.getMessage().contains("2 of 3"));
+		}
+	}
+
+	@Test
+	public void testEmptyCopy() throws SQLException {
+		this.results.put(SELECT, new ArrayList<>());
+		JdbcCopy copy = new JdbcCopy(this.connection(), 2);
+		Assert.assertTrue(copy.copy("tmp_copy_source", new ArrayList<>(), INSERT).isEmpty());
+		Assert.assertNull(this.batches.get(INSERT));
+	}
+
+	@Test
+	public void testInsertAndUpdateBindAllColumns() throws SQLException {
+		JdbcCopy copy = new JdbcCopy(this.connection(), 2);
+		copy.insert("INSERT INTO target (a, b) VALUES (?, ?)",
+				Arrays.asList(new Object[] { 1, "x" }, new Object[] { 2, "y" }, new Object[] { 3, "z" }));
+		Assert.assertEquals(Arrays.asList(2, 1), this.batches.get("INSERT INTO target (a, b) VALUES (?, ?)"));
+		Assert.assertEquals(Arrays.asList(3, "z"), this.inserted.get("INSERT INTO target (a, b) VALUES (?, ?)").get(2));
+
+		Assert.assertEquals(1, copy.update("UPDATE target SET a = ? WHERE b = ?", 5, "x"));
+		Assert.assertEquals(Arrays.asList("UPDATE target SET a = ? WHERE b = ? [5, x]"), this.statements);
+	}
+}
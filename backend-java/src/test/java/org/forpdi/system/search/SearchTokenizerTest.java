@@ -0,0 +1,70 @@
+package org.forpdi.system.search;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SearchTokenizerTest {
+
+	@Test
+	public void testEmptyText() {
+		Assert.assertTrue(SearchTokenizer.terms(null).isEmpty());
+		Assert.assertTrue(SearchTokenizer.terms("").isEmpty());
+		Assert.assertTrue(SearchTokenizer.query("  ").isEmpty());
+	}
+
+	@Test
+	public void testStopwordsOnly() {
+		Assert.assertTrue(SearchTokenizer.query("de da e o").isEmpty());
+	}
+
+	@Test
+	public void testHtmlIsStripped() {
+		Map<String, Integer> terms = SearchTokenizer.terms("<p><b>Riscos</b>&nbsp;operacionais</p>");
+		Assert.assertFalse(terms.containsKey("p"));
+		Assert.assertFalse(terms.containsKey("b"));
+		Assert.assertFalse(terms.containsKey("nbsp"));
+		Assert.assertEquals(2, terms.size());
+	}
+
+	@Test
+	public void testOccurrencesAreCounted() {
+		Map<String, Integer> terms = SearchTokenizer.terms("Risco, riscos e RISCO");
+		Assert.assertEquals(1, terms.size());
+		Assert.assertEquals(Integer.valueOf(3), terms.values().iterator().next());
+	}
+
+	@Test
+	public void testShortTokens() {
+		Assert.assertEquals(Collections.singletonList("x"), SearchTokenizer.query("x"));
+		Assert.assertTrue(SearchTokenizer.matches("Eixo x do plano", SearchTokenizer.query("x")));
+	}
+
+	@Test
+	public void testNumericTokens() {
+		Assert.assertEquals(Collections.singletonList("2020"), SearchTokenizer.query("2020"));
+		Assert.assertEquals(Arrays.asList("1", "2"), SearchTokenizer.query("1.2"));
+		Assert.assertTrue(SearchTokenizer.matches("Meta para 2020", SearchTokenizer.query("2020")));
+		Assert.assertTrue(SearchTokenizer.matches("Objetivo 1", SearchTokenizer.query("1")));
+		Assert.assertTrue(SearchTokenizer.matches("Objetivo 12", SearchTokenizer.query("1")));
+		Assert.assertFalse(SearchTokenizer.matches("Objetivo 2", SearchTokenizer.query("1")));
+	}
+
+	@Test
+	public void testStemsMatchByPrefix() {
+		Assert.assertTrue(SearchTokenizer.matches("Riscos operacionais", SearchTokenizer.query("risco")));
+		Assert.assertTrue(SearchTokenizer.matches("Riscos operacionais", SearchTokenizer.query("RISC")));
+		Assert.assertTrue(SearchTokenizer.matches("<p>Avaliação dos riscos</p>",
+				SearchTokenizer.query("avaliação")));
+	}
+
+	@Test
+	public void testAllTermsRequired() {
+		Assert.assertTrue(SearchTokenizer.matches("Riscos operacionais", SearchTokenizer.query("operacionais riscos")));
+		Assert.assertFalse(SearchTokenizer.matches("Riscos operacionais", SearchTokenizer.query("riscos financeiros")));
+		Assert.assertFalse(SearchTokenizer.matches(null, SearchTokenizer.query("riscos")));
+	}
+}
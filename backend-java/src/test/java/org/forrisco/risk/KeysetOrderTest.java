@@ -0,0 +1,153 @@
+package org.forrisco.risk;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hibernate.Criteria;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.LogicalExpression;
+import org.hibernate.criterion.Order;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KeysetOrderTest {
+
+	private static final int PAGE_SIZE = 2;
+
+	/** Incidente ou monitoramento, com as propriedades usadas na paginação. */
+	private static class Row {
+		private final Long id;
+		private final Date begin;
+
+		private Row(long id, long begin) {
+			this.id = id;
+			this.begin = new Date(begin);
+		}
+
+		@SuppressWarnings("rawtypes")
+		private Comparable get(String property) {
+			return "id".equals(property) ? this.id : this.begin;
+		}
+	}
+
+	/** Datas repetidas, para que os empates atravessem as páginas. */
+	private static final List<Row> ROWS = Arrays.asList(new Row(1, 2000), new Row(2, 1000), new Row(3, 2000),
+			new Row(4, 1000), new Row(5, 3000), new Row(6, 2000));
+
+	private static Object field(Object target, String name) {
+		for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+			try {
+				Field field = type.getDeclaredField(name);
+				field.setAccessible(true);
+				return field.get(target);
+			} catch (NoSuchFieldException ex) {
+				// procura na superclasse
+			} catch (IllegalAccessException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+		throw new IllegalArgumentException(name);
+	}
+
+	/** Avalia a restrição do cursor em uma linha, como o banco faria. */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static boolean matches(Criterion criterion, Row row) {
+		String op = (String) field(criterion, "op");
+		if (criterion instanceof LogicalExpression) {
+			boolean lhs = matches((Criterion) field(criterion, "lhs"), row);
+			boolean rhs = matches((Criterion) field(criterion, "rhs"), row);
+			return "and".equalsIgnoreCase(op) ? lhs && rhs : lhs || rhs;
+		}
+		Comparable value = row.get((String) field(criterion, "propertyName"));
+		int cmp = value.compareTo(field(criterion, "value"));
+		switch (op) {
+		case "=":
+			return cmp == 0;
+		case ">":
+			return cmp > 0;
+		case "<":
+			return cmp < 0;
+		default:
+			throw new IllegalArgumentException(op);
+		}
+	}
+
+	/** Ordenação adicionada por {@link KeysetOrder#addOrders(Criteria)}. */
+	@SuppressWarnings("unchecked")
+	private static Comparator<Row> comparator(KeysetOrder order) {
+		List<Order> orders = new ArrayList<>();
+		Criteria[] criteria = new Criteria[1];
+		criteria[0] = (Criteria) Proxy.newProxyInstance(KeysetOrderTest.class.getClassLoader(),
+				new Class<?>[] { Criteria.class }, (proxy, method, args) -> {
+					if ("addOrder".equals(method.getName())) {
+						orders.add((Order) args[0]);
+						return criteria[0];
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+		order.addOrders(criteria[0]);
+		Assert.assertFalse(orders.isEmpty());
+		return (a, b) -> {
+			for (Order o : orders) {
+				String property = (String) field(o, "propertyName");
+				int cmp = a.get(property).compareTo(b.get(property));
+				if (cmp != 0) {
+					return (Boolean) field(o, "ascending") ? cmp : -cmp;
+				}
+			}
+			return 0;
+		};
+	}
+
+	/** Percorre as páginas, cada uma começando depois do último registro da anterior. */
+	private static List<List<Long>> pages(KeysetOrder order) {
+		Comparator<Row> comparator = comparator(order);
+		List<List<Long>> pages = new ArrayList<>();
+		Row last = null;
+		List<Row> page;
+		do {
+			final Row cursor = last;
+			page = ROWS.stream()
+					.filter((row) -> cursor == null
+							|| matches(order.after(order.byDate() ? cursor.begin : null, cursor.id), row))
+					.sorted(comparator)
+					.limit(PAGE_SIZE)
+					.collect(Collectors.toList());
+			if (!page.isEmpty()) {
+				pages.add(page.stream().map((row) -> row.id).collect(Collectors.toList()));
+				last = page.get(page.size() - 1);
+			}
+		} while (page.size() == PAGE_SIZE);
+		return pages;
+	}
+
+	@Test
+	public void testDefaultOrderIsById() {
+		Assert.assertEquals(KeysetOrder.ID, KeysetOrder.of(null));
+		Assert.assertFalse(KeysetOrder.ID.byDate());
+		Assert.assertEquals(Arrays.asList(Arrays.asList(1L, 2L), Arrays.asList(3L, 4L), Arrays.asList(5L, 6L)),
+				pages(KeysetOrder.ID));
+	}
+
+	@Test
+	public void testOldestFirstBreaksTiesById() {
+		Assert.assertEquals(KeysetOrder.DATE_ASC, KeysetOrder.of(true));
+		Assert.assertTrue(KeysetOrder.DATE_ASC.byDate());
+		Assert.assertEquals(Arrays.asList(Arrays.asList(2L, 4L), Arrays.asList(1L, 3L), Arrays.asList(6L, 5L)),
+				pages(KeysetOrder.DATE_ASC));
+	}
+
+	@Test
+	public void testNewestFirstBreaksTiesById() {
+		Assert.assertEquals(KeysetOrder.DATE_DESC, KeysetOrder.of(false));
+		Assert.assertTrue(KeysetOrder.DATE_DESC.byDate());
+		Assert.assertEquals(Arrays.asList(Arrays.asList(5L, 6L), Arrays.asList(3L, 1L), Arrays.asList(4L, 2L)),
+				pages(KeysetOrder.DATE_DESC));
+	}
+}
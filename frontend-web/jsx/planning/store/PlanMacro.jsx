@@ -45,6 +45,7 @@ var PlanMacroStore = Fluxbone.Store.extend({
 	ACTION_RETRIEVE: 'planmacro-retrieve',
 	ACTION_UPDATE: 'planmacro-update',
 	ACTION_DUPLICATE: "planmacro-duplicate",
+	ACTION_DUPLICATION_STATE: "planmacro-duplicationState",
 	ACTION_NEWPLAN: "planmacro-newPlan",
 	ACTION_ARCHIVE: "planmacro-archive",
 	ACTION_UNARCHIVE: "planmacro-unarchive",
@@ -82,6 +83,24 @@ var PlanMacroStore = Fluxbone.Store.extend({
 		});
 	},
 
+	duplicationState(macroId){
+		var me = this;
+		$.ajax({
+			url: me.url+"/duplicate/state",
+			method: 'GET',
+			dataType: 'json',
+			data: {
+				macroId: macroId
+			},
+			success(model) {
+				me.trigger("planmacroduplicationstate", model);
+			},
+			error(opts, status, errorMsg) {
+				me.trigger("planmacroduplicationstate", opts);
+			}
+		});
+	},
+
 	findArchived(data){
 		var me = this;
 		$.ajax({
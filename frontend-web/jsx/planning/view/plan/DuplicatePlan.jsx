@@ -98,28 +98,46 @@ export default React.createClass({
 			return;
 		}
 		
-		PlanMacroStore.on("planmacroduplicated", (model) => {			
-			this.setState({
-				loading: false
-			});
+		PlanMacroStore.on("planmacroduplicated", (model) => {
 			//Toastr.remove();
 			if(model.status == undefined || model.status == 200){
+				// os planos de metas e o documento são copiados em segundo plano
+				me.duplicatedId = model.data.id;
+				me.duplicationState();
+			} else {
+				this.setState({
+					loading: false
+				});
+				//Toastr.error(model.responseJSON.message);
+				this.context.toastr.addAlertError(model.responseJSON.message);
+			}
+		}, me);
+		PlanMacroStore.on("planmacroduplicationstate", (model) => {
+			if (model.status != undefined && model.status != 200) {
+				this.setState({
+					loading: false
+				});
+				this.context.toastr.addAlertError(model.responseJSON ? model.responseJSON.message : Messages.get("label.error.planDuplicate"));
+				return;
+			}
+			var progress = parseInt(model.data);
+			if (progress == -2) {
+				this.setState({
+					loading: false
+				});
+				this.context.toastr.addAlertError(Messages.get("label.error.planDuplicate"));
+				this.refreshPlans();
+			} else if (progress == 100 || progress == -1) {
+				this.setState({
+					loading: false
+				});
 				//Toastr.success("Plano duplicado com sucesso");
 				this.context.toastr.addAlertSuccess(Messages.get("label.success.planDuplicate"));
 				me.close();
-				me.context.router.push("/plan/"+model.data.id+"/details/");
-				PlanMacroStore.dispatch({
-            		action: PlanMacroStore.ACTION_FIND
-        		});
-        		PlanMacroStore.dispatch({
-                     action: PlanMacroStore.ACTION_FIND_ARCHIVED
-                });   
-                PlanMacroStore.dispatch({
-                     action: PlanMacroStore.ACTION_FIND_UNARCHIVED
-                });   
+				me.context.router.push("/plan/"+me.duplicatedId+"/details/");
+				this.refreshPlans();
 			} else {
-				//Toastr.error(model.responseJSON.message);
-				this.context.toastr.addAlertError(model.responseJSON.message);
+				me.duplicationTimeout = setTimeout(me.duplicationState, 2000);
 			}
 		}, me);
 		PlanMacroStore.on("retrieve", (model) => {
@@ -137,9 +155,29 @@ export default React.createClass({
 		}
 	},
 	componentWillUnmount() {
+		clearTimeout(this.duplicationTimeout);
 		PlanMacroStore.off(null, null, this);
 	},
 
+	duplicationState() {
+		PlanMacroStore.dispatch({
+			action: PlanMacroStore.ACTION_DUPLICATION_STATE,
+			data: this.duplicatedId
+		});
+	},
+
+	refreshPlans() {
+		PlanMacroStore.dispatch({
+			action: PlanMacroStore.ACTION_FIND
+		});
+		PlanMacroStore.dispatch({
+			action: PlanMacroStore.ACTION_FIND_ARCHIVED
+		});
+		PlanMacroStore.dispatch({
+			action: PlanMacroStore.ACTION_FIND_UNARCHIVED
+		});
+	},
+
 	close(){
 		this.context.tabPanel.removeTabByPath(this.props.location.pathname);
 	},
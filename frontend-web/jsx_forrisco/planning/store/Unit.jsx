@@ -29,6 +29,7 @@ var UnitStore = Fluxbone.Store.extend({
 	ACTION_NEW_UNIT: "unit-newUnit",
 	ACTION_DELETE_UNIT: "unit-deleteUnit",
 	ACTION_DUPLICATE: "unit-duplicateUnits",
+	ACTION_DUPLICATION_STATE: "unit-duplicationState",
 	ACTION_NEW_SUBUNIT: "unit-newSubunit",
 	ACTION_CUSTOM_UPDATE: "unit-customUpdate",
 	ACTION_FIND_BY_PLAN: "unit-findByPlan",
@@ -171,6 +172,24 @@ var UnitStore = Fluxbone.Store.extend({
 		});
 	},
 
+	duplicationState(planId) {
+		var me = this;
+		$.ajax({
+			url: me.url + '/duplicate/state',
+			method: 'GET',
+			dataType: 'json',
+			data: {
+				planId: planId
+			},
+			success(model) {
+				me.trigger("unitduplicationstate", model);
+			},
+			error(opts, status, errorMsg) {
+				me.trigger("unitduplicationstate", {msg: opts.responseJSON ? opts.responseJSON.message : null, data: null});
+			}
+		});
+	},
+
 	archive(data) {
 		var me = this;
 		$.ajax({
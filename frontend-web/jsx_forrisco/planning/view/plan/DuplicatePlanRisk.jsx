@@ -72,7 +72,25 @@ export default React.createClass({
 			console.log("duplicatedItens",response)
 		},this);
 		UnitStore.on("duplicatedUnits",(response) => {
-			console.log("duplicatedUnits",response)
+			// as unidades são copiadas em segundo plano
+			if (this.duplicatedPlanId == null) {
+				return;
+			}
+			if (response.success) {
+				this.duplicationState();
+			} else {
+				this.duplicationDone("Erro ao duplicar as unidades do plano" + (response.msg ? ": " + response.msg : ""));
+			}
+		},this);
+		UnitStore.on("unitduplicationstate", (response) => {
+			var progress = response.success ? parseInt(response.data) : -2;
+			if (progress == -2) {
+				this.duplicationDone("Erro ao duplicar as unidades do plano");
+			} else if (progress == 100 || progress == -1) {
+				this.duplicationDone();
+			} else {
+				this.duplicationTimeout = setTimeout(this.duplicationState, 2000);
+			}
 		},this);
 
 		PlanRiskStore.on('plariskcreated', (response) => {
@@ -112,13 +130,12 @@ export default React.createClass({
 						}
 				});
 
-
-				this.context.tabPanel.removeTabByPath(this.props.location.pathname);
-				this.context.router.push("/forrisco/plan-risk/"+response.data.id+"/item/overview")
-
-				PlanRiskStore.dispatch({
-					action: PlanRiskStore.ACTION_FIND_UNARCHIVED_FOR_MENU
-				});
+				this.duplicatedPlanId = response.data.id;
+				if (units.length > 0) {
+					this.setState({ isLoading: true });
+				} else {
+					this.duplicationDone();
+				}
 
 			}else{
 				var msg = response.msg ? "Erro ao duplicar Plano: "+response.msg.message : "Erro ao duplicar Plano"
@@ -147,7 +164,32 @@ export default React.createClass({
 		});
 	},
 
+	duplicationState() {
+		UnitStore.dispatch({
+			action: UnitStore.ACTION_DUPLICATION_STATE,
+			data: this.duplicatedPlanId
+		});
+	},
+
+	duplicationDone(error) {
+		if (this.duplicatedPlanId == null) {
+			return;
+		}
+		if (error) {
+			this.context.toastr.addAlertError(error);
+		}
+		var planRiskId = this.duplicatedPlanId;
+		this.duplicatedPlanId = null;
+		this.context.tabPanel.removeTabByPath(this.props.location.pathname);
+		this.context.router.push("/forrisco/plan-risk/"+planRiskId+"/item/overview")
+
+		PlanRiskStore.dispatch({
+			action: PlanRiskStore.ACTION_FIND_UNARCHIVED_FOR_MENU
+		});
+	},
+
 	componentWillUnmount() {
+		clearTimeout(this.duplicationTimeout);
 		PlanRiskItemStore.off(null, null, this);
 		PlanRiskStore.off(null, null, this);
 		UnitStore.off(null, null, this);